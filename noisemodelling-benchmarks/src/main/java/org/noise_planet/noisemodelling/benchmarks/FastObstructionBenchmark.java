@@ -0,0 +1,128 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.jdbc.SyntheticCity;
+import org.noise_planet.noisemodelling.pathfinder.ComputeRays;
+import org.noise_planet.noisemodelling.pathfinder.FastObstructionTest;
+import org.noise_planet.noisemodelling.pathfinder.LayerDelaunayError;
+import org.noise_planet.noisemodelling.pathfinder.PropagationProcessData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Geometry queries done on the triangulation for each source-receiver pair.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FastObstructionBenchmark {
+    private static final int POINT_COUNT = 1024;
+
+    /** City area in square kilometers */
+    @Param({"0.25", "1", "4"})
+    public double area;
+
+    /** Distance between DEM points in meters, 0 for a flat ground */
+    @Param({"0", "10"})
+    public double demSpacing;
+
+    /** Maximum vertical error of the DEM simplification in meters, 0 to keep all the DEM points */
+    @Param({"0", "0.5"})
+    public double demMaximumError;
+
+    /** Radius of the wall query in meters */
+    @Param({"50", "200"})
+    public double wallSearchDistance;
+
+    private FastObstructionTest obstructionTest;
+    private ComputeRays computeRays;
+    private Coordinate[] receivers;
+    private Coordinate[] sources;
+    private int index = 0;
+
+    @Setup
+    public void setUp() throws LayerDelaunayError {
+        SyntheticCity city = SyntheticCity.ofArea(area, BenchmarkRunner.CITY_SEED);
+        city.setDemSpacing(demSpacing);
+        city.setDemMaximumError(demMaximumError);
+        obstructionTest = city.buildObstructionTest();
+        computeRays = new ComputeRays(new PropagationProcessData(obstructionTest));
+        receivers = city.randomPoints(POINT_COUNT, 4, 1);
+        sources = city.randomPoints(POINT_COUNT, 0.05, 2);
+    }
+
+    private int nextIndex() {
+        index = (index + 1) % POINT_COUNT;
+        return index;
+    }
+
+    @Benchmark
+    public boolean computePropagationPath() {
+        int i = nextIndex();
+        return obstructionTest.computePropagationPath(receivers[i], sources[i], false,
+                FastObstructionTest.getWalkContext(), true, true);
+    }
+
+    @Benchmark
+    public int getTriangleIdByCoordinate() {
+        return obstructionTest.getTriangleIdByCoordinate(receivers[nextIndex()]);
+    }
+
+    @Benchmark
+    public int getLimitsInRange() {
+        return obstructionTest.getLimitsInRange(wallSearchDistance, receivers[nextIndex()], false).size();
+    }
+
+    @Benchmark
+    public int computeSideHull() {
+        int i = nextIndex();
+        return computeRays.computeSideHull(i % 2 == 0, receivers[i], sources[i]).size();
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineSegment;
+import org.noise_planet.noisemodelling.jdbc.SyntheticCity;
+import org.noise_planet.noisemodelling.pathfinder.FastObstructionTest;
+import org.noise_planet.noisemodelling.pathfinder.LayerDelaunayError;
+import org.noise_planet.noisemodelling.pathfinder.MirrorReceiverIterator;
+import org.noise_planet.noisemodelling.pathfinder.MirrorReceiverResult;
+import org.noise_planet.noisemodelling.pathfinder.MirrorReceiverTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enumeration of the image receivers of one receiver for one source, with {@link MirrorReceiverIterator} and
+ * {@link MirrorReceiverTree}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MirrorReceiverBenchmark {
+    private static final int POINT_COUNT = 64;
+    private static final double MAXIMUM_PROPAGATION_DISTANCE = 500;
+
+    /** City area in square kilometers */
+    @Param({"1"})
+    public double area;
+
+    @Param({"1", "2", "3", "4", "5"})
+    public int reflectionOrder;
+
+    /** Maximum distance between the walls and the source-receiver segment */
+    @Param({"50"})
+    public double maximumReflectionDistance;
+
+    private Coordinate[] receivers;
+    private LineSegment[] sourceReceivers;
+    private List<List<FastObstructionTest.Wall>> walls;
+    private int index = 0;
+
+    @Setup
+    public void setUp() throws LayerDelaunayError {
+        SyntheticCity city = SyntheticCity.ofArea(area, BenchmarkRunner.CITY_SEED);
+        city.setDemSpacing(0);
+        FastObstructionTest obstructionTest = city.buildObstructionTest();
+        receivers = city.randomPoints(POINT_COUNT, 4, 1);
+        Coordinate[] sources = city.randomPoints(POINT_COUNT, 0.05, 2);
+        sourceReceivers = new LineSegment[POINT_COUNT];
+        walls = new ArrayList<>(POINT_COUNT);
+        for(int i = 0; i < POINT_COUNT; i++) {
+            sourceReceivers[i] = new LineSegment(sources[i], receivers[i]);
+            walls.add(new ArrayList<>(obstructionTest.getLimitsInRange(maximumReflectionDistance, receivers[i],
+                    false)));
+        }
+    }
+
+    @Benchmark
+    public int mirrorReceiverIterator() {
+        index = (index + 1) % POINT_COUNT;
+        int count = 0;
+        for(MirrorReceiverResult result : new MirrorReceiverIterator.It(receivers[index], walls.get(index),
+                sourceReceivers[index], maximumReflectionDistance, reflectionOrder, MAXIMUM_PROPAGATION_DISTANCE)) {
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int mirrorReceiverTree() {
+        index = (index + 1) % POINT_COUNT;
+        int count = 0;
+        for(MirrorReceiverResult result : new MirrorReceiverTree(receivers[index], walls.get(index),
+                sourceReceivers[index], maximumReflectionDistance, reflectionOrder, MAXIMUM_PROPAGATION_DISTANCE)) {
+            count++;
+        }
+        return count;
+    }
+}
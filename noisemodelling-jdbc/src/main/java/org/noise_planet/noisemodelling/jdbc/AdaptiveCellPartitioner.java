@@ -0,0 +1,312 @@
+/**
+ * NoiseModelling is a free and open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by Université Gustave Eiffel and CNRS
+ * <http://noise-planet.org/noisemodelling.html>
+ * as part of:
+ * the Eval-PDU project (ANR-08-VILL-0005) 2008-2011, funded by the Agence Nationale de la Recherche (French)
+ * the CENSE project (ANR-16-CE22-0012) 2017-2021, funded by the Agence Nationale de la Recherche (French)
+ * the Nature4cities (N4C) project, funded by European Union’s Horizon 2020 research and innovation programme under grant agreement No 730468
+ *
+ * Noisemap is distributed under GPL 3 license.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488) and Ifsttar
+ * Copyright (C) 2013-2019 Ifsttar and CNRS
+ * Copyright (C) 2020 Université Gustave Eiffel and CNRS
+ *
+ * @Author Pierre Aumond, Université Gustave Eiffel
+ * @Author Nicolas Fortin, Université Gustave Eiffel
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.SFSUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Split the computation area of a {@link PointNoiseMap} with a quadtree instead of the fixed
+ * {@link JdbcNoiseMap#getGridDim()} grid. A quad is subdivided while its estimated memory or work exceeds the targets,
+ * so dense areas get small cells and sparse areas keep large cells that share the cost of the propagation distance
+ * margin.
+ *
+ * The estimation uses the number of receivers of the quad and the number of vertices of the buildings, sources and
+ * digital elevation model in the quad expanded by the maximum propagation distance. These numbers are counted by the
+ * database. Quads without receivers are discarded.
+ *
+ * The cells are evaluated with {@link PointNoiseMap#evaluateCell(Connection, Envelope, int, org.h2gis.api.ProgressVisitor, java.util.Set)}
+ * or with {@link PipelinedCellEvaluator} and {@link ConcurrentCellEvaluator}, see {@link #getCellEnvelopes(List)}
+ */
+public class AdaptiveCellPartitioner {
+    /** Default maximum estimated memory of a cell, 256 MB */
+    public static final long DEFAULT_MAXIMUM_CELL_MEMORY = 256L * 1024 * 1024;
+    public static final double DEFAULT_MINIMUM_CELL_SIZE = 50;
+    public static final int DEFAULT_MAXIMUM_DEPTH = 12;
+
+    private final PointNoiseMap pointNoiseMap;
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+    private long maximumCellMemory = DEFAULT_MAXIMUM_CELL_MEMORY;
+    private long maximumCellWork = 0;
+    private double minimumCellSize = DEFAULT_MINIMUM_CELL_SIZE;
+    private int maximumDepth = DEFAULT_MAXIMUM_DEPTH;
+
+    /**
+     * @param pointNoiseMap Initialised noise map, see {@link PointNoiseMap#initialize(Connection, org.h2gis.api.ProgressVisitor)}
+     */
+    public AdaptiveCellPartitioner(PointNoiseMap pointNoiseMap) {
+        this.pointNoiseMap = pointNoiseMap;
+    }
+
+    /**
+     * @return Maximum estimated memory of a cell in bytes, see {@link PointNoiseMap#estimateCellMemory(long, long, long)}
+     */
+    public long getMaximumCellMemory() {
+        return maximumCellMemory;
+    }
+
+    /**
+     * @param maximumCellMemory Maximum estimated memory of a cell in bytes,
+     *                          see {@link PointNoiseMap#estimateCellMemory(long, long, long)}
+     */
+    public void setMaximumCellMemory(long maximumCellMemory) {
+        this.maximumCellMemory = maximumCellMemory;
+    }
+
+    /**
+     * @return Maximum work of a cell, the number of receivers multiplied by the number of sources vertices.
+     * 0 to not limit the work.
+     */
+    public long getMaximumCellWork() {
+        return maximumCellWork;
+    }
+
+    /**
+     * @param maximumCellWork Maximum work of a cell, the number of receivers multiplied by the number of sources
+     *                        vertices. 0 to not limit the work.
+     */
+    public void setMaximumCellWork(long maximumCellWork) {
+        this.maximumCellWork = maximumCellWork;
+    }
+
+    /**
+     * @return Quads smaller than this size (m) are not subdivided
+     */
+    public double getMinimumCellSize() {
+        return minimumCellSize;
+    }
+
+    /**
+     * @param minimumCellSize Quads smaller than this size (m) are not subdivided
+     */
+    public void setMinimumCellSize(double minimumCellSize) {
+        this.minimumCellSize = minimumCellSize;
+    }
+
+    /**
+     * @return Maximum subdivision level of the computation area
+     */
+    public int getMaximumDepth() {
+        return maximumDepth;
+    }
+
+    /**
+     * @param maximumDepth Maximum subdivision level of the computation area
+     */
+    public void setMaximumDepth(int maximumDepth) {
+        this.maximumDepth = maximumDepth;
+    }
+
+    /**
+     * Subdivide the computation area
+     * @param connection JDBC Connection
+     * @return Cells that contain receivers, in the quadtree depth-first order
+     * @throws SQLException
+     */
+    public List<Cell> partition(Connection connection) throws SQLException {
+        Envelope mainEnvelope = pointNoiseMap.getMainEnvelope();
+        if(mainEnvelope == null || mainEnvelope.isNull()) {
+            throw new IllegalStateException("Call initialize before calling partition");
+        }
+        boolean isH2 = JDBCUtilities.isH2DataBase(connection.getMetaData());
+        List<Cell> cells = new ArrayList<>();
+        try(CountQuery receivers = new CountQuery(connection, pointNoiseMap.getReceiverTableName(), isH2, false);
+            CountQuery sources = new CountQuery(connection, pointNoiseMap.getSourcesTableName(), isH2, true);
+            CountQuery buildings = new CountQuery(connection, pointNoiseMap.getBuildingsTableName(), isH2, true);
+            CountQuery dem = pointNoiseMap.getDemTable().isEmpty() ? null :
+                    new CountQuery(connection, pointNoiseMap.getDemTable(), isH2, false)) {
+            subdivide(new Envelope(mainEnvelope), 0, receivers, sources, buildings, dem, cells);
+        }
+        return cells;
+    }
+
+    /**
+     * @param cells Cells returned by {@link #partition(Connection)}
+     * @return Cell identifier and receivers area of each cell, in the order of the list. Used by
+     * {@link PipelinedCellEvaluator} and {@link ConcurrentCellEvaluator}.
+     */
+    public static Map<Integer, Envelope> getCellEnvelopes(List<Cell> cells) {
+        Map<Integer, Envelope> cellEnvelopes = new LinkedHashMap<>();
+        for(Cell cell : cells) {
+            cellEnvelopes.put(cell.getCellId(), cell.getEnvelope());
+        }
+        return cellEnvelopes;
+    }
+
+    private void subdivide(Envelope envelope, int depth, CountQuery receivers, CountQuery sources,
+                           CountQuery buildings, CountQuery dem, List<Cell> cells) throws SQLException {
+        long receiverCount = receivers.count(envelope);
+        if(receiverCount == 0) {
+            return;
+        }
+        Envelope expandedEnvelope = new Envelope(envelope);
+        expandedEnvelope.expandBy(pointNoiseMap.getMaximumPropagationDistance());
+        Cell cell = new Cell(envelope, depth, receiverCount, sources.count(expandedEnvelope),
+                buildings.count(expandedEnvelope), dem == null ? 0 : dem.count(expandedEnvelope));
+        boolean overTarget = cell.getEstimatedMemory() > maximumCellMemory ||
+                (maximumCellWork > 0 && cell.getWork() > maximumCellWork);
+        if(overTarget && receiverCount > 1 && depth < maximumDepth &&
+                envelope.maxExtent() / 2 >= minimumCellSize) {
+            double midX = envelope.centre().x;
+            double midY = envelope.centre().y;
+            subdivide(new Envelope(envelope.getMinX(), midX, envelope.getMinY(), midY), depth + 1,
+                    receivers, sources, buildings, dem, cells);
+            subdivide(new Envelope(midX, envelope.getMaxX(), envelope.getMinY(), midY), depth + 1,
+                    receivers, sources, buildings, dem, cells);
+            subdivide(new Envelope(envelope.getMinX(), midX, midY, envelope.getMaxY()), depth + 1,
+                    receivers, sources, buildings, dem, cells);
+            subdivide(new Envelope(midX, envelope.getMaxX(), midY, envelope.getMaxY()), depth + 1,
+                    receivers, sources, buildings, dem, cells);
+        } else {
+            cell.cellId = cells.size() + 1;
+            cells.add(cell);
+        }
+    }
+
+    /**
+     * Count the rows or the vertices of the geometries of a table in an envelope
+     */
+    private final class CountQuery implements AutoCloseable {
+        private final PreparedStatement st;
+
+        CountQuery(Connection connection, String tableName, boolean isH2, boolean countVertices) throws SQLException {
+            List<String> geomFields = SFSUtilities.getGeometryFields(connection, TableLocation.parse(tableName));
+            if(geomFields.isEmpty()) {
+                throw new SQLException("Table \"" + tableName + "\" must exist and contain a geometry field");
+            }
+            String geomField = TableLocation.quoteIdentifier(geomFields.get(0), isH2);
+            st = connection.prepareStatement("SELECT " + (countVertices ? "SUM(ST_NPOINTS(" + geomField + "))" :
+                    "COUNT(*)") + " FROM " + tableName + " WHERE " + geomField + " && ?::geometry");
+        }
+
+        long count(Envelope envelope) throws SQLException {
+            st.setObject(1, geometryFactory.toGeometry(envelope));
+            try(ResultSet rs = st.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            st.close();
+        }
+    }
+
+    /**
+     * Leaf of the quadtree
+     */
+    public static class Cell {
+        private final Envelope envelope;
+        private final int depth;
+        private final long receiverCount;
+        private final long sourceCoordinateCount;
+        private final long buildingCoordinateCount;
+        private final long demPointCount;
+        private int cellId;
+
+        public Cell(Envelope envelope, int depth, long receiverCount, long sourceCoordinateCount,
+                    long buildingCoordinateCount, long demPointCount) {
+            this.envelope = envelope;
+            this.depth = depth;
+            this.receiverCount = receiverCount;
+            this.sourceCoordinateCount = sourceCoordinateCount;
+            this.buildingCoordinateCount = buildingCoordinateCount;
+            this.demPointCount = demPointCount;
+        }
+
+        /**
+         * @return Receivers area of the cell
+         */
+        public Envelope getEnvelope() {
+            return envelope;
+        }
+
+        /**
+         * @return Subdivision level of the cell
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * @return Cell identifier [1-cell count]
+         */
+        public int getCellId() {
+            return cellId;
+        }
+
+        /**
+         * @return Number of receivers in the cell, receivers on the cell border are also counted by the neighbor cell
+         */
+        public long getReceiverCount() {
+            return receiverCount;
+        }
+
+        /**
+         * @return Number of sources vertices in the expanded cell
+         */
+        public long getSourceCoordinateCount() {
+            return sourceCoordinateCount;
+        }
+
+        /**
+         * @return Number of buildings vertices in the expanded cell
+         */
+        public long getBuildingCoordinateCount() {
+            return buildingCoordinateCount;
+        }
+
+        /**
+         * @return Number of digital elevation model points in the expanded cell
+         */
+        public long getDemPointCount() {
+            return demPointCount;
+        }
+
+        /**
+         * @return Estimated memory of the cell in bytes, a Delaunay triangulation has about two triangles by vertex
+         */
+        public long getEstimatedMemory() {
+            return PointNoiseMap.estimateCellMemory(2 * (buildingCoordinateCount + demPointCount),
+                    sourceCoordinateCount, receiverCount);
+        }
+
+        /**
+         * @return Number of receivers multiplied by the number of sources vertices
+         */
+        public long getWork() {
+            return receiverCount * sourceCoordinateCount;
+        }
+    }
+}
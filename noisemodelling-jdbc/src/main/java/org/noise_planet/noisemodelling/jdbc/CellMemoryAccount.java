@@ -0,0 +1,85 @@
+/**
+ * NoiseModelling is a free and open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by Université Gustave Eiffel and CNRS
+ * <http://noise-planet.org/noisemodelling.html>
+ * as part of:
+ * the Eval-PDU project (ANR-08-VILL-0005) 2008-2011, funded by the Agence Nationale de la Recherche (French)
+ * the CENSE project (ANR-16-CE22-0012) 2017-2021, funded by the Agence Nationale de la Recherche (French)
+ * the Nature4cities (N4C) project, funded by European Union’s Horizon 2020 research and innovation programme under grant agreement No 730468
+ *
+ * Noisemap is distributed under GPL 3 license.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488) and Ifsttar
+ * Copyright (C) 2013-2019 Ifsttar and CNRS
+ * Copyright (C) 2020 Université Gustave Eiffel and CNRS
+ *
+ * @Author Pierre Aumond, Université Gustave Eiffel
+ * @Author Nicolas Fortin, Université Gustave Eiffel
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.noise_planet.noisemodelling.pathfinder.FastObstructionTest;
+import org.noise_planet.noisemodelling.pathfinder.PropagationProcessData;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Estimated memory of a group of prepared cells. The cells of a shared mesh tile use the same
+ * {@link FastObstructionTest}, so the mesh is counted once while at least one cell of the group uses it.
+ * Not thread safe.
+ */
+final class CellMemoryAccount {
+    private final Map<FastObstructionTest, Integer> meshUsers = new IdentityHashMap<>();
+    private long memory = 0;
+
+    /**
+     * @return Estimated memory in bytes of the cells of the group
+     */
+    long getMemory() {
+        return memory;
+    }
+
+    /**
+     * @param data Prepared cell
+     * @return Memory in bytes added to the group by {@link #add(PropagationProcessData)}
+     */
+    long getAddedMemory(PropagationProcessData data) {
+        long cellMemory = PointNoiseMap.estimateCellMemory(data);
+        if(meshUsers.containsKey(data.freeFieldFinder)) {
+            cellMemory -= PointNoiseMap.estimateMeshMemory(data.freeFieldFinder);
+        }
+        return cellMemory;
+    }
+
+    /**
+     * @param data Prepared cell to add to the group
+     */
+    void add(PropagationProcessData data) {
+        memory += getAddedMemory(data);
+        Integer users = meshUsers.get(data.freeFieldFinder);
+        meshUsers.put(data.freeFieldFinder, users == null ? 1 : users + 1);
+    }
+
+    /**
+     * @param data Cell previously added with {@link #add(PropagationProcessData)}
+     */
+    void remove(PropagationProcessData data) {
+        memory -= PointNoiseMap.estimateCellMemory(data) - PointNoiseMap.estimateMeshMemory(data.freeFieldFinder);
+        Integer users = meshUsers.get(data.freeFieldFinder);
+        if(users == null || users <= 1) {
+            meshUsers.remove(data.freeFieldFinder);
+            memory -= PointNoiseMap.estimateMeshMemory(data.freeFieldFinder);
+        } else {
+            meshUsers.put(data.freeFieldFinder, users - 1);
+        }
+    }
+
+    void clear() {
+        meshUsers.clear();
+        memory = 0;
+    }
+}
@@ -0,0 +1,297 @@
+/**
+ * NoiseModelling is a free and open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by Université Gustave Eiffel and CNRS
+ * <http://noise-planet.org/noisemodelling.html>
+ * as part of:
+ * the Eval-PDU project (ANR-08-VILL-0005) 2008-2011, funded by the Agence Nationale de la Recherche (French)
+ * the CENSE project (ANR-16-CE22-0012) 2017-2021, funded by the Agence Nationale de la Recherche (French)
+ * the Nature4cities (N4C) project, funded by European Union’s Horizon 2020 research and innovation programme under grant agreement No 730468
+ *
+ * Noisemap is distributed under GPL 3 license.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488) and Ifsttar
+ * Copyright (C) 2013-2019 Ifsttar and CNRS
+ * Copyright (C) 2020 Université Gustave Eiffel and CNRS
+ *
+ * @Author Pierre Aumond, Université Gustave Eiffel
+ * @Author Nicolas Fortin, Université Gustave Eiffel
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.api.ProgressVisitor;
+import org.locationtech.jts.geom.Envelope;
+import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
+import org.noise_planet.noisemodelling.pathfinder.PropagationProcessData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evaluate several cells of a {@link PointNoiseMap} at the same time. Small cells do not contain enough receivers
+ * to use all the processors, so the computation of the next cells starts before the end of the previous ones.
+ *
+ * The cells are prepared one after the other in the calling thread, in the order of
+ * {@link PointNoiseMap#searchPopulatedCells(Connection)}. The connection and the skipReceivers set are then only used
+ * by the calling thread and the receivers shared by several cells are attributed as with
+ * {@link PointNoiseMap#evaluateCell}. The cells of {@link AdaptiveCellPartitioner} are evaluated with
+ * {@link #evaluateCellEnvelopes(Map, ProgressVisitor, Set, PipelinedCellEvaluator.CellListener)}.
+ * A prepared cell is admitted for computation only if the estimated memory of the running cells, see
+ * {@link PointNoiseMap#estimateCellMemory(PropagationProcessData)}, stays below the memory budget. A cell is always
+ * admitted when no other cell is running. The mesh of a shared tile is counted once for all the running cells of
+ * the tile, see {@link PointNoiseMap#setSharedMeshTileSize(double)}. The next cell is not prepared before the budget can hold the largest
+ * cell prepared so far, so the data of a waiting cell does not come on top of the running ones.
+ *
+ * The results are pushed by the computation threads of all the running cells, so the
+ * {@link PointNoiseMap.IComputeRaysOutFactory} outputs must be thread safe, as {@link LDENPointNoiseMapFactory} is.
+ */
+public class ConcurrentCellEvaluator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConcurrentCellEvaluator.class);
+    public static final int DEFAULT_MAXIMUM_CONCURRENT_CELLS = 2;
+
+    private final PointNoiseMap pointNoiseMap;
+    private final Connection connection;
+    private int maximumConcurrentCells = DEFAULT_MAXIMUM_CONCURRENT_CELLS;
+    private long memoryBudget = 0;
+    private int cellThreadCount = 0;
+
+    // Shared with the computation threads
+    private final Object lock = new Object();
+    private final Object listenerLock = new Object();
+    private int runningCells = 0;
+    private final CellMemoryAccount runningCellsMemory = new CellMemoryAccount();
+    private Throwable computationError = null;
+
+    /**
+     * @param pointNoiseMap Initialised noise map, see {@link PointNoiseMap#initialize(Connection, ProgressVisitor)}
+     * @param connection Connection used to prepare the cells
+     */
+    public ConcurrentCellEvaluator(PointNoiseMap pointNoiseMap, Connection connection) {
+        this.pointNoiseMap = pointNoiseMap;
+        this.connection = connection;
+    }
+
+    /**
+     * @return Maximum number of cells computed at the same time
+     */
+    public int getMaximumConcurrentCells() {
+        return maximumConcurrentCells;
+    }
+
+    /**
+     * @param maximumConcurrentCells Maximum number of cells computed at the same time
+     */
+    public void setMaximumConcurrentCells(int maximumConcurrentCells) {
+        this.maximumConcurrentCells = Math.max(1, maximumConcurrentCells);
+    }
+
+    /**
+     * @return Maximum estimated memory in bytes of the running cells, 0 to use half of the maximum heap size
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * @param memoryBudget Maximum estimated memory in bytes of the running cells, 0 to use half of the maximum heap
+     *                     size. See {@link PointNoiseMap#estimateCellMemory(PropagationProcessData)}
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * @return Number of computation threads of each cell, 0 to use {@link PointNoiseMap#getThreadCount()} or share
+     * the available processors between the concurrent cells
+     */
+    public int getCellThreadCount() {
+        return cellThreadCount;
+    }
+
+    /**
+     * @param cellThreadCount Number of computation threads of each cell, 0 to use
+     * {@link PointNoiseMap#getThreadCount()} or share the available processors between the concurrent cells
+     */
+    public void setCellThreadCount(int cellThreadCount) {
+        this.cellThreadCount = cellThreadCount;
+    }
+
+    private int computeCellThreadCount() {
+        if(cellThreadCount > 0) {
+            return cellThreadCount;
+        } else if(pointNoiseMap.getThreadCount() > 0) {
+            return pointNoiseMap.getThreadCount();
+        } else {
+            return Math.max(1, Runtime.getRuntime().availableProcessors() / maximumConcurrentCells);
+        }
+    }
+
+    private long computeMemoryBudget() {
+        return memoryBudget > 0 ? memoryBudget : Runtime.getRuntime().maxMemory() / 2;
+    }
+
+    /**
+     * Evaluate the cells in the order of {@link PointNoiseMap.CellIndex}
+     * @param cells Cells returned by {@link PointNoiseMap#searchPopulatedCells(Connection)}
+     * @param progression Progression info, a sub process is created for each cell
+     * @param skipReceivers Receivers already processed, updated by the calling thread
+     * @param cellListener Called after the computation of each cell, may be null. The calls are not concurrent but
+     *                     they are done by the computation threads, in the order of completion of the cells.
+     */
+    public void evaluateCells(Map<PointNoiseMap.CellIndex, Integer> cells, ProgressVisitor progression,
+                              Set<Long> skipReceivers, PipelinedCellEvaluator.CellListener cellListener)
+            throws SQLException, IOException {
+        evaluateCellEnvelopes(pointNoiseMap.getCellEnvelopes(new TreeSet<>(cells.keySet())), progression,
+                skipReceivers, cellListener);
+    }
+
+    /**
+     * Evaluate the cells, the computation of the cells is started in the iteration order of the map
+     * @param cells Cell identifier and receivers area of the cells to evaluate, see
+     *              {@link PointNoiseMap#getCellEnvelopes} and {@link AdaptiveCellPartitioner#getCellEnvelopes}
+     * @param progression Progression info, a sub process is created for each cell
+     * @param skipReceivers Receivers already processed, updated by the calling thread
+     * @param cellListener Called after the computation of each cell, may be null. The calls are not concurrent but
+     *                     they are done by the computation threads, in the order of completion of the cells.
+     */
+    public void evaluateCellEnvelopes(Map<Integer, Envelope> cells, ProgressVisitor progression,
+                              Set<Long> skipReceivers, PipelinedCellEvaluator.CellListener cellListener)
+            throws SQLException, IOException {
+        final int threadCount = computeCellThreadCount();
+        final long budget = computeMemoryBudget();
+        long expectedMemory = 0;
+        synchronized (lock) {
+            runningCells = 0;
+            runningCellsMemory.clear();
+            computationError = null;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(maximumConcurrentCells,
+                new CellThreadFactory());
+        try {
+            for (Map.Entry<Integer, Envelope> cell : cells.entrySet()) {
+                if(progression != null && progression.isCanceled()) {
+                    break;
+                }
+                // Wait for room before loading the cell data
+                synchronized (lock) {
+                    while (computationError == null && runningCells > 0 && (runningCells >= maximumConcurrentCells
+                            || runningCellsMemory.getMemory() + expectedMemory > budget)) {
+                        lock.wait();
+                    }
+                    if(computationError != null) {
+                        break;
+                    }
+                }
+                PropagationProcessData data = pointNoiseMap.prepareCell(connection, cell.getValue(), cell.getKey(),
+                        progression, skipReceivers);
+                synchronized (lock) {
+                    while (computationError == null && runningCells > 0 && (runningCells >= maximumConcurrentCells
+                            || runningCellsMemory.getMemory() + runningCellsMemory.getAddedMemory(data) > budget)) {
+                        lock.wait();
+                    }
+                    if(computationError != null) {
+                        break;
+                    }
+                    expectedMemory = Math.max(expectedMemory, runningCellsMemory.getAddedMemory(data));
+                    runningCells++;
+                    runningCellsMemory.add(data);
+                }
+                executor.execute(new CellComputation(cell.getKey(), data, threadCount, cellListener));
+            }
+            synchronized (lock) {
+                while (runningCells > 0) {
+                    lock.wait();
+                }
+                if(computationError != null) {
+                    throwComputationError();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for cell computation", ex);
+        } finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void throwComputationError() throws SQLException, IOException {
+        if(computationError instanceof SQLException) {
+            throw (SQLException) computationError;
+        } else if(computationError instanceof IOException) {
+            throw (IOException) computationError;
+        } else if(computationError instanceof Error) {
+            throw (Error) computationError;
+        } else {
+            throw new IllegalStateException(computationError);
+        }
+    }
+
+    private static final class CellThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ConcurrentCellEvaluator-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private final class CellComputation implements Runnable {
+        private final int cellId;
+        private final PropagationProcessData data;
+        private final int threadCount;
+        private final PipelinedCellEvaluator.CellListener cellListener;
+
+        CellComputation(int cellId, PropagationProcessData data, int threadCount,
+                        PipelinedCellEvaluator.CellListener cellListener) {
+            this.cellId = cellId;
+            this.data = data;
+            this.threadCount = threadCount;
+            this.cellListener = cellListener;
+        }
+
+        @Override
+        public void run() {
+            Throwable error = null;
+            try {
+                IComputeRaysOut out = pointNoiseMap.computeCell(data, threadCount);
+                if (cellListener != null) {
+                    synchronized (listenerLock) {
+                        cellListener.cellComputed(cellId, out);
+                    }
+                }
+            } catch (SQLException | IOException | RuntimeException | Error ex) {
+                LOGGER.error(ex.getLocalizedMessage(), ex);
+                error = ex;
+            } finally {
+                synchronized (lock) {
+                    if(error != null && computationError == null) {
+                        computationError = error;
+                    }
+                    runningCells--;
+                    runningCellsMemory.remove(data);
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -10,6 +10,7 @@ import org.locationtech.jts.io.WKTWriter;
 import org.noise_planet.noisemodelling.pathfinder.GeoWithSoilType;
 import org.noise_planet.noisemodelling.pathfinder.MeshBuilder;
 import org.noise_planet.noisemodelling.pathfinder.PropagationProcessData;
+import org.noise_planet.noisemodelling.pathfinder.TerrainSimplifier;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,6 +41,8 @@ public abstract class JdbcNoiseMap {
     protected String soilTableName = "";
     // Digital elevation model table. (Contains points or triangles)
     protected String demTable = "";
+    // If greater than 0, the DEM points are simplified with this maximum vertical error in meters
+    protected double demMaximumError = 0;
     protected String sound_lvl_field = "DB_M";
     // True if Z of sound source and receivers are relative to the ground
     protected boolean receiverHasAbsoluteZCoordinates = false;
@@ -48,14 +51,20 @@ public abstract class JdbcNoiseMap {
     protected double maximumReflectionDistance = 100;
     // Soil areas are splited by the provided size in order to reduce the propagation time
     protected double groundSurfaceSplitSideLength = 200;
+    // If greater than 0, soil areas are rasterised with this cell size
+    protected double soilGridCellSize = 0;
     protected int soundReflectionOrder = 2;
     public boolean verbose = true;
     protected boolean computeHorizontalDiffraction = true;
     protected boolean computeVerticalDiffraction = true;
+    protected boolean reuseReceiverImageTree = false;
+    protected boolean sourceClustering = false;
     /** TODO missing reference to the SIGMA value of materials */
     protected double wallAbsorption = 100000;
     /** maximum dB Error, stop calculation if the sum of further sources contributions are smaller than this value */
     public double maximumError = Double.NEGATIVE_INFINITY;
+    /** dB attenuation of obstructed sources used with maximumError, 0 to not test the obstruction */
+    protected double minimumDiffractionLoss = 0;
     protected String heightField = "";
     protected GeometryFactory geometryFactory;
     protected int parallelComputationCount = 0;
@@ -137,14 +146,21 @@ public abstract class JdbcNoiseMap {
                             demTable + " WHERE " +
                             TableLocation.quoteIdentifier(topoGeomName) + " && ?::geometry")) {
                 st.setObject(1, geometryFactory.toGeometry(fetchEnvelope));
+                List<Coordinate> demPoints = new ArrayList<>();
                 try (SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
                     while (rs.next()) {
                         Geometry pt = rs.getGeometry();
                         if(pt != null) {
-                            mesh.addTopographicPoint(pt.getCoordinate());
+                            demPoints.add(pt.getCoordinate());
                         }
                     }
                 }
+                if(demMaximumError > 0) {
+                    mesh.setTerrainSimplifier(new TerrainSimplifier(demMaximumError));
+                }
+                for(Coordinate demPoint : demPoints) {
+                    mesh.addTopographicPoint(demPoint);
+                }
             }
         }
     }
@@ -452,6 +468,38 @@ public abstract class JdbcNoiseMap {
         this.soilTableName = soilTableName;
     }
 
+    /**
+     * @return Maximum vertical error in meters of the DEM simplification, 0 if all the DEM points are triangulated
+     */
+    public double getDemMaximumError() {
+        return demMaximumError;
+    }
+
+    /**
+     * @param demMaximumError Simplify the DEM points of each cell before the triangulation, the removed points are
+     *                        within this vertical distance in meters of the triangulation. 0 to keep all the points
+     * @see TerrainSimplifier
+     */
+    public void setDemMaximumError(double demMaximumError) {
+        this.demMaximumError = demMaximumError;
+    }
+
+    /**
+     * @return Cell size of the soil grid in meters, 0 if the soil areas are intersected with each path
+     */
+    public double getSoilGridCellSize() {
+        return soilGridCellSize;
+    }
+
+    /**
+     * @param soilGridCellSize Rasterise the soil areas with this cell size in meters, 0 to use the exact soil
+     *                         geometries
+     * @see PropagationProcessData#setSoilGridCellSize(double)
+     */
+    public void setSoilGridCellSize(double soilGridCellSize) {
+        this.soilGridCellSize = soilGridCellSize;
+    }
+
     /**
      * Digital Elevation model table name. Currently only a table with POINTZ column is supported.
      * DEM points too close with buildings are not fetched.
@@ -651,4 +699,51 @@ public abstract class JdbcNoiseMap {
         this.computeVerticalDiffraction = computeVerticalDiffraction;
     }
 
+    /**
+     * @return True if the image receivers are computed once per receiver for all sources
+     */
+    public boolean isReuseReceiverImageTree() {
+        return reuseReceiverImageTree;
+    }
+
+    /**
+     * @param reuseReceiverImageTree Compute the image receivers once per receiver for all sources
+     * @see PropagationProcessData#setReuseReceiverImageTree(boolean)
+     */
+    public void setReuseReceiverImageTree(boolean reuseReceiverImageTree) {
+        this.reuseReceiverImageTree = reuseReceiverImageTree;
+    }
+
+    /**
+     * @return True if the sources are processed from a cluster tree
+     */
+    public boolean isSourceClustering() {
+        return sourceClustering;
+    }
+
+    /**
+     * @param sourceClustering Process the sources from a cluster tree, in order to skip distant sources when
+     *                         {@link #maximumError} is set
+     * @see PropagationProcessData#setSourceClustering(boolean)
+     */
+    public void setSourceClustering(boolean sourceClustering) {
+        this.sourceClustering = sourceClustering;
+    }
+
+    /**
+     * @return dB attenuation of obstructed sources used to estimate their maximal power with maximumError
+     */
+    public double getMinimumDiffractionLoss() {
+        return minimumDiffractionLoss;
+    }
+
+    /**
+     * @param minimumDiffractionLoss dB attenuation of obstructed sources used to estimate their maximal power with
+     *                               maximumError, 0 to not test the obstruction
+     * @see org.noise_planet.noisemodelling.pathfinder.PowerBoundEstimator#setMinimumDiffractionLoss(double)
+     */
+    public void setMinimumDiffractionLoss(double minimumDiffractionLoss) {
+        this.minimumDiffractionLoss = minimumDiffractionLoss;
+    }
+
 }
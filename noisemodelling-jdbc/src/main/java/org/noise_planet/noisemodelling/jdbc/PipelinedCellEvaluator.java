@@ -0,0 +1,292 @@
+/**
+ * NoiseModelling is a free and open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by Université Gustave Eiffel and CNRS
+ * <http://noise-planet.org/noisemodelling.html>
+ * as part of:
+ * the Eval-PDU project (ANR-08-VILL-0005) 2008-2011, funded by the Agence Nationale de la Recherche (French)
+ * the CENSE project (ANR-16-CE22-0012) 2017-2021, funded by the Agence Nationale de la Recherche (French)
+ * the Nature4cities (N4C) project, funded by European Union’s Horizon 2020 research and innovation programme under grant agreement No 730468
+ *
+ * Noisemap is distributed under GPL 3 license.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488) and Ifsttar
+ * Copyright (C) 2013-2019 Ifsttar and CNRS
+ * Copyright (C) 2020 Université Gustave Eiffel and CNRS
+ *
+ * @Author Pierre Aumond, Université Gustave Eiffel
+ * @Author Nicolas Fortin, Université Gustave Eiffel
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.api.ProgressVisitor;
+import org.locationtech.jts.geom.Envelope;
+import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
+import org.noise_planet.noisemodelling.pathfinder.PropagationProcessData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Evaluate the cells of a {@link PointNoiseMap} while the next cells are prepared on a background thread.
+ * The preparation of a cell (database fetch, triangulation) uses a single thread, so it is done while the
+ * computation threads of {@link PointNoiseMap#computeCell(PropagationProcessData)} work on the previous cell.
+ *
+ * Cells are prepared in the order of {@link PointNoiseMap#searchPopulatedCells(Connection)}, so the receivers
+ * shared by several cells are attributed as with {@link PointNoiseMap#evaluateCell}. The cells of
+ * {@link AdaptiveCellPartitioner} are evaluated with
+ * {@link #evaluateCellEnvelopes(Map, ProgressVisitor, Set, CellListener)}.
+ * The connection is used by the preparation thread, it must not be used by the caller until the end of
+ * {@link #evaluateCells}.
+ */
+public class PipelinedCellEvaluator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PipelinedCellEvaluator.class);
+    public static final int DEFAULT_LOOK_AHEAD = 1;
+
+    private final PointNoiseMap pointNoiseMap;
+    private final Connection connection;
+    private int lookAhead = DEFAULT_LOOK_AHEAD;
+    private long memoryCap = 0;
+
+    // Shared with the preparation thread
+    private final Object lock = new Object();
+    private final Deque<PreparedCell> preparedCells = new ArrayDeque<>();
+    private final CellMemoryAccount preparedCellsMemory = new CellMemoryAccount();
+    private boolean preparationDone = false;
+    private boolean canceled = false;
+    private Exception preparationError = null;
+
+    /**
+     * @param pointNoiseMap Initialised noise map, see {@link PointNoiseMap#initialize(Connection, ProgressVisitor)}
+     * @param connection Connection used to prepare the cells
+     */
+    public PipelinedCellEvaluator(PointNoiseMap pointNoiseMap, Connection connection) {
+        this.pointNoiseMap = pointNoiseMap;
+        this.connection = connection;
+    }
+
+    /**
+     * @return Maximum number of prepared cells waiting for the computation
+     */
+    public int getLookAhead() {
+        return lookAhead;
+    }
+
+    /**
+     * @param lookAhead Maximum number of prepared cells waiting for the computation. 0 to prepare and compute the
+     *                  cells one after the other in the calling thread.
+     */
+    public void setLookAhead(int lookAhead) {
+        this.lookAhead = lookAhead;
+    }
+
+    /**
+     * @return Maximum estimated memory in bytes of the prepared cells waiting for the computation, 0 if not limited
+     */
+    public long getMemoryCap() {
+        return memoryCap;
+    }
+
+    /**
+     * @param memoryCap Maximum estimated memory in bytes of the prepared cells waiting for the computation, the
+     *                  preparation of the next cell waits while this cap is reached. At least one cell is always
+     *                  prepared in advance. 0 to not limit the memory. The mesh of a shared tile is counted once.
+     *                  See {@link PointNoiseMap#estimateCellMemory(PropagationProcessData)}
+     */
+    public void setMemoryCap(long memoryCap) {
+        this.memoryCap = memoryCap;
+    }
+
+    /**
+     * Evaluate the cells in the order of {@link PointNoiseMap.CellIndex}
+     * @param cells Cells returned by {@link PointNoiseMap#searchPopulatedCells(Connection)}
+     * @param progression Progression info, a sub process is created for each cell
+     * @param skipReceivers Receivers already processed, updated by the preparation thread
+     * @param cellListener Called in the calling thread after the computation of each cell, may be null
+     */
+    public void evaluateCells(Map<PointNoiseMap.CellIndex, Integer> cells, ProgressVisitor progression,
+                              Set<Long> skipReceivers, CellListener cellListener) throws SQLException, IOException {
+        evaluateCellEnvelopes(pointNoiseMap.getCellEnvelopes(new TreeSet<>(cells.keySet())), progression,
+                skipReceivers, cellListener);
+    }
+
+    /**
+     * Evaluate the cells in the iteration order of the map
+     * @param cells Cell identifier and receivers area of the cells to evaluate, see
+     *              {@link PointNoiseMap#getCellEnvelopes} and {@link AdaptiveCellPartitioner#getCellEnvelopes}
+     * @param progression Progression info, a sub process is created for each cell
+     * @param skipReceivers Receivers already processed, updated by the preparation thread
+     * @param cellListener Called in the calling thread after the computation of each cell, may be null
+     */
+    public void evaluateCellEnvelopes(Map<Integer, Envelope> cells, ProgressVisitor progression,
+                              Set<Long> skipReceivers, CellListener cellListener) throws SQLException, IOException {
+        if(lookAhead <= 0) {
+            for(Map.Entry<Integer, Envelope> cell : cells.entrySet()) {
+                IComputeRaysOut out = pointNoiseMap.evaluateCell(connection, cell.getValue(), cell.getKey(),
+                        progression, skipReceivers);
+                if(cellListener != null) {
+                    cellListener.cellComputed(cell.getKey(), out);
+                }
+            }
+            return;
+        }
+        synchronized (lock) {
+            preparedCells.clear();
+            preparedCellsMemory.clear();
+            preparationDone = false;
+            canceled = false;
+            preparationError = null;
+        }
+        Thread preparationThread = new Thread(new CellPreparation(new ArrayList<>(cells.entrySet()), progression,
+                skipReceivers), "PipelinedCellEvaluator");
+        preparationThread.setDaemon(true);
+        preparationThread.start();
+        try {
+            while (true) {
+                PreparedCell cell;
+                synchronized (lock) {
+                    while (preparedCells.isEmpty() && !preparationDone && preparationError == null) {
+                        lock.wait();
+                    }
+                    if (preparationError != null) {
+                        throwPreparationError();
+                    }
+                    if (preparedCells.isEmpty()) {
+                        break;
+                    }
+                    cell = preparedCells.pollFirst();
+                    preparedCellsMemory.remove(cell.data);
+                    lock.notifyAll();
+                }
+                IComputeRaysOut out = pointNoiseMap.computeCell(cell.data);
+                if (cellListener != null) {
+                    cellListener.cellComputed(cell.cellId, out);
+                }
+                if(progression != null && progression.isCanceled()) {
+                    break;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for cell preparation", ex);
+        } finally {
+            synchronized (lock) {
+                canceled = true;
+                preparedCells.clear();
+                preparedCellsMemory.clear();
+                lock.notifyAll();
+            }
+            try {
+                preparationThread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void throwPreparationError() throws SQLException, IOException {
+        if(preparationError instanceof SQLException) {
+            throw (SQLException) preparationError;
+        } else if(preparationError instanceof IOException) {
+            throw (IOException) preparationError;
+        } else {
+            throw new IllegalStateException(preparationError);
+        }
+    }
+
+    /**
+     * Called when a cell has been computed
+     */
+    public interface CellListener {
+        /**
+         * @param cellId Cell identifier, see {@link PointNoiseMap#getCellEnvelopes}
+         * @param out Propagation output of the cell
+         */
+        void cellComputed(int cellId, IComputeRaysOut out) throws SQLException, IOException;
+    }
+
+    private static final class PreparedCell {
+        final int cellId;
+        final PropagationProcessData data;
+
+        PreparedCell(int cellId, PropagationProcessData data) {
+            this.cellId = cellId;
+            this.data = data;
+        }
+    }
+
+    private final class CellPreparation implements Runnable {
+        private final List<Map.Entry<Integer, Envelope>> cells;
+        private final ProgressVisitor progression;
+        private final Set<Long> skipReceivers;
+
+        CellPreparation(List<Map.Entry<Integer, Envelope>> cells, ProgressVisitor progression,
+                        Set<Long> skipReceivers) {
+            this.cells = cells;
+            this.progression = progression;
+            this.skipReceivers = skipReceivers;
+        }
+
+        /**
+         * @return True if the next cell can be prepared
+         */
+        private boolean canPrepare() {
+            if(preparedCells.isEmpty()) {
+                return true;
+            }
+            return preparedCells.size() < lookAhead && (memoryCap <= 0 || preparedCellsMemory.getMemory() < memoryCap);
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (Map.Entry<Integer, Envelope> cellEnvelope : cells) {
+                    synchronized (lock) {
+                        while (!canceled && !canPrepare()) {
+                            lock.wait();
+                        }
+                        if (canceled) {
+                            break;
+                        }
+                    }
+                    PreparedCell cell = new PreparedCell(cellEnvelope.getKey(), pointNoiseMap.prepareCell(
+                            connection, cellEnvelope.getValue(), cellEnvelope.getKey(), progression,
+                            skipReceivers));
+                    synchronized (lock) {
+                        if(canceled) {
+                            break;
+                        }
+                        preparedCells.addLast(cell);
+                        preparedCellsMemory.add(cell.data);
+                        lock.notifyAll();
+                    }
+                }
+            } catch (SQLException | IOException | RuntimeException ex) {
+                LOGGER.error(ex.getLocalizedMessage(), ex);
+                synchronized (lock) {
+                    preparationError = ex;
+                    lock.notifyAll();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                synchronized (lock) {
+                    preparationDone = true;
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+}
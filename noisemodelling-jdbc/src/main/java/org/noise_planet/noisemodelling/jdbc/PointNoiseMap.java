@@ -7,17 +7,23 @@ import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.index.strtree.STRtree;
+import org.noise_planet.noisemodelling.pathfinder.CompactMesh;
 import org.noise_planet.noisemodelling.pathfinder.ComputeRays;
+import org.noise_planet.noisemodelling.propagation.AtmosphericPowerBoundEstimator;
 import org.noise_planet.noisemodelling.propagation.ComputeRaysOut;
 import org.noise_planet.noisemodelling.pathfinder.FastObstructionTest;
 import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
+import org.noise_planet.noisemodelling.pathfinder.IPathFinderStatisticsListener;
 import org.noise_planet.noisemodelling.pathfinder.LayerDelaunayError;
 import org.noise_planet.noisemodelling.pathfinder.MeshBuilder;
+import org.noise_planet.noisemodelling.pathfinder.MeshCacheFile;
 import org.noise_planet.noisemodelling.pathfinder.PropagationProcessData;
+import org.noise_planet.noisemodelling.pathfinder.TerrainSimplifier;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -35,6 +41,11 @@ public class PointNoiseMap extends JdbcNoiseMap {
     private IComputeRaysOutFactory computeRaysOutFactory;
     private Logger logger = LoggerFactory.getLogger(PointNoiseMap.class);
     private int threadCount = 0;
+    private IPathFinderStatisticsListener statisticsListener;
+    private double sharedMeshTileSize = 0;
+    private int sharedMeshCacheSize = 0;
+    private SharedMeshTiles sharedMeshTiles;
+    private File meshCacheDirectory;
 
     public PointNoiseMap(String buildingsTableName, String sourcesTableName, String receiverTableName) {
         super(buildingsTableName, sourcesTableName);
@@ -57,6 +68,79 @@ public class PointNoiseMap extends JdbcNoiseMap {
         this.threadCount = threadCount;
     }
 
+    /**
+     * @return Side length (m) of the tiles of the shared mesh, 0 if each cell triangulates its own area
+     */
+    public double getSharedMeshTileSize() {
+        return sharedMeshTileSize;
+    }
+
+    /**
+     * Triangulate the scene by large tiles shared by the cells instead of triangulating the expanded area of each
+     * cell. A tile covers the cells whose centre are inside the tile, and it is expanded by the maximum propagation
+     * distance. With a tile size greater than the computation area the whole scene is triangulated once.
+     * The triangle count of a shared tile is included in the memory estimation of each of its cells,
+     * see {@link #estimateCellMemory(PropagationProcessData)}.
+     * @param sharedMeshTileSize Side length (m) of the tiles of the shared mesh, 0 if each cell triangulates its own
+     *                           area
+     */
+    public void setSharedMeshTileSize(double sharedMeshTileSize) {
+        this.sharedMeshTileSize = sharedMeshTileSize;
+        this.sharedMeshTiles = null;
+    }
+
+    /**
+     * @return Maximum number of tiles kept in memory, 0 to keep a row of tiles
+     */
+    public int getSharedMeshCacheSize() {
+        return sharedMeshCacheSize;
+    }
+
+    /**
+     * @param sharedMeshCacheSize Maximum number of tiles kept in memory, the least recently used tile is released
+     *                            first. 0 to keep a row of tiles.
+     */
+    public void setSharedMeshCacheSize(int sharedMeshCacheSize) {
+        this.sharedMeshCacheSize = sharedMeshCacheSize;
+        this.sharedMeshTiles = null;
+    }
+
+    /**
+     * @return Directory of the triangulation cache, null if the cache is disabled
+     */
+    public File getMeshCacheDirectory() {
+        return meshCacheDirectory;
+    }
+
+    /**
+     * Store the triangulation of each cell or shared tile in a directory. The file name is a digest of the
+     * buildings, topography and mesh parameters, so the next runs over the same scene load the mesh from the file
+     * instead of computing the triangulation again. The buildings and topography are still fetched from the database.
+     * @param meshCacheDirectory Directory of the triangulation cache, null to disable the cache
+     */
+    public void setMeshCacheDirectory(File meshCacheDirectory) {
+        this.meshCacheDirectory = meshCacheDirectory;
+    }
+
+    /**
+     * @return Table name that contains receivers
+     */
+    public String getReceiverTableName() {
+        return receiverTableName;
+    }
+
+    public IPathFinderStatisticsListener getStatisticsListener() {
+        return statisticsListener;
+    }
+
+    /**
+     * @param statisticsListener Notified with the time spent in each phase of the path finder when a cell is done,
+     *                           may be null
+     */
+    public void setStatisticsListener(IPathFinderStatisticsListener statisticsListener) {
+        this.statisticsListener = statisticsListener;
+    }
+
     /**
      * Initialisation of data structures needed for sound propagation.
      * @param connection JDBC Connection
@@ -68,39 +152,42 @@ public class PointNoiseMap extends JdbcNoiseMap {
      */
     public PropagationProcessData prepareCell(Connection connection,int cellI, int cellJ,
                                               ProgressVisitor progression, Set<Long> skipReceivers) throws SQLException, IOException {
-        boolean isH2 = JDBCUtilities.isH2DataBase(connection.getMetaData());
-        MeshBuilder mesh = new MeshBuilder();
         int ij = cellI * gridDim + cellJ + 1;
         if(verbose) {
             logger.info("Begin processing of cell " + ij + " / " + gridDim * gridDim);
         }
         Envelope cellEnvelope = getCellEnv(mainEnvelope, cellI,
                 cellJ, getCellWidth(), getCellHeight());
+        return prepareCell(connection, cellEnvelope, ij, progression, skipReceivers);
+    }
 
+    /**
+     * Initialisation of data structures needed for sound propagation of an arbitrary cell,
+     * see {@link AdaptiveCellPartitioner}
+     * @param connection JDBC Connection
+     * @param cellEnvelope Receivers area of the cell
+     * @param cellId Cell identifier
+     * @param progression Progression info
+     * @param skipReceivers Receivers already processed, updated with the receivers of this cell
+     * @return Data input for cell evaluation
+     * @throws SQLException
+     */
+    public PropagationProcessData prepareCell(Connection connection, Envelope cellEnvelope, int cellId,
+                                              ProgressVisitor progression, Set<Long> skipReceivers) throws SQLException, IOException {
+        boolean isH2 = JDBCUtilities.isH2DataBase(connection.getMetaData());
 
         Envelope expandedCellEnvelop = new Envelope(cellEnvelope);
         expandedCellEnvelop.expandBy(maximumPropagationDistance);
 
-        // //////////////////////////////////////////////////////
-        // feed freeFieldFinder for fast intersection query
-        // optimization
-        // Fetch buildings in extendedEnvelope
-        fetchCellBuildings(connection, expandedCellEnvelop, mesh);
-        //if we have topographic points data
-        fetchCellDem(connection, expandedCellEnvelop, mesh);
-
-        // Data fetching for collision test is done.
-        Envelope meshEnvelope = new Envelope(expandedCellEnvelop);
-        // Expand again envelope for sound sources or buildings sides that are close to the edge
-        meshEnvelope.expandBy(10);
-        try {
-            mesh.finishPolygonFeeding(expandedCellEnvelop);
-        } catch (LayerDelaunayError ex) {
-            throw new SQLException(ex.getLocalizedMessage(), ex);
+        FastObstructionTest freeFieldFinder;
+        if(sharedMeshTileSize > 0) {
+            if(sharedMeshTiles == null) {
+                sharedMeshTiles = new SharedMeshTiles(this, sharedMeshTileSize, sharedMeshCacheSize);
+            }
+            freeFieldFinder = sharedMeshTiles.getMesh(connection, cellEnvelope);
+        } else {
+            freeFieldFinder = buildMesh(connection, expandedCellEnvelop);
         }
-        FastObstructionTest freeFieldFinder = new FastObstructionTest(mesh.getPolygonWithHeight(),
-                mesh.getTriangles(), mesh.getTriNeighbors(), mesh.getVertices());
-
 
         PropagationProcessData propagationProcessData;
         if(propagationProcessDataFactory != null) {
@@ -114,11 +201,20 @@ public class PointNoiseMap extends JdbcNoiseMap {
         propagationProcessData.maxSrcDist = maximumPropagationDistance;
         propagationProcessData.setComputeVerticalDiffraction(computeVerticalDiffraction);
         propagationProcessData.setComputeHorizontalDiffraction(computeHorizontalDiffraction);
+        propagationProcessData.setReuseReceiverImageTree(reuseReceiverImageTree);
+        propagationProcessData.setSoilGridCellSize(soilGridCellSize);
+        propagationProcessData.setSourceClustering(sourceClustering);
+        if(getMaximumError() > 0 && propagationProcessPathData != null) {
+            // Tighter power bound of sources, for the early termination of receivers
+            AtmosphericPowerBoundEstimator powerBoundEstimator = new AtmosphericPowerBoundEstimator(propagationProcessPathData);
+            powerBoundEstimator.setMinimumDiffractionLoss(minimumDiffractionLoss);
+            propagationProcessData.setPowerBoundEstimator(powerBoundEstimator);
+        }
 
         // Fetch all source located in expandedCellEnvelop
         fetchCellSource(connection, expandedCellEnvelop, propagationProcessData);
 
-        propagationProcessData.cellId = ij;
+        propagationProcessData.cellId = cellId;
 
         // Fetch soil areas
         fetchCellSoilAreas(connection, expandedCellEnvelop, propagationProcessData.getSoilList());
@@ -160,11 +256,81 @@ public class PointNoiseMap extends JdbcNoiseMap {
         return propagationProcessData;
     }
 
+    /**
+     * Fetch buildings and topography then triangulate the provided area
+     * @param connection JDBC Connection
+     * @param fetchEnvelope Area of the mesh
+     * @return Obstruction test over the mesh
+     * @throws SQLException
+     */
+    FastObstructionTest buildMesh(Connection connection, Envelope fetchEnvelope) throws SQLException {
+        MeshBuilder mesh = new MeshBuilder();
+        // //////////////////////////////////////////////////////
+        // feed freeFieldFinder for fast intersection query
+        // optimization
+        // Fetch buildings in extendedEnvelope
+        fetchCellBuildings(connection, fetchEnvelope, mesh);
+        //if we have topographic points data
+        fetchCellDem(connection, fetchEnvelope, mesh);
+
+        // Data fetching for collision test is done.
+        File cacheFile = null;
+        if(meshCacheDirectory != null) {
+            cacheFile = new File(meshCacheDirectory, mesh.computeInputDigest(fetchEnvelope) +
+                    MeshCacheFile.FILE_EXTENSION);
+            if(cacheFile.exists()) {
+                try {
+                    return MeshCacheFile.read(cacheFile);
+                } catch (IOException ex) {
+                    logger.warn("Ignore mesh cache file", ex);
+                }
+            }
+        }
+        try {
+            mesh.finishPolygonFeeding(fetchEnvelope);
+        } catch (LayerDelaunayError ex) {
+            throw new SQLException(ex.getLocalizedMessage(), ex);
+        }
+        TerrainSimplifier terrainSimplifier = mesh.getTerrainSimplifier();
+        if(terrainSimplifier != null && verbose) {
+            logger.info(String.format(Locale.ROOT, "DEM simplified from %d to %d points in %d passes and %d " +
+                            "reinsertion passes", terrainSimplifier.getInputPointCount(),
+                    terrainSimplifier.getOutputPointCount(), terrainSimplifier.getPassCount(),
+                    terrainSimplifier.getReinsertionPassCount()));
+        }
+        CompactMesh compactMesh = CompactMesh.fromLists(mesh.getTriangles(), mesh.getTriNeighbors(),
+                mesh.getVertices());
+        if(cacheFile != null) {
+            try {
+                MeshCacheFile.write(cacheFile, mesh.getPolygonWithHeight(), compactMesh);
+            } catch (IOException ex) {
+                logger.warn("Cannot write mesh cache file", ex);
+            }
+        }
+        return new FastObstructionTest(mesh.getPolygonWithHeight(), compactMesh);
+    }
+
     @Override
     protected Envelope getComputationEnvelope(Connection connection) throws SQLException {
         return SFSUtilities.getTableEnvelope(connection, TableLocation.parse(receiverTableName), "");
     }
 
+    /**
+     * @param cells Grid cells, see {@link #searchPopulatedCells(Connection)}
+     * @return Cell identifier and receivers area of each cell, in the iteration order of the provided cells. The
+     * identifiers are the ones of {@link #prepareCell(Connection, int, int, ProgressVisitor, Set)}.
+     */
+    public Map<Integer, Envelope> getCellEnvelopes(Collection<CellIndex> cells) {
+        Map<Integer, Envelope> cellEnvelopes = new LinkedHashMap<>();
+        for(CellIndex cellIndex : cells) {
+            int cellI = cellIndex.getLatitudeIndex();
+            int cellJ = cellIndex.getLongitudeIndex();
+            cellEnvelopes.put(cellI * gridDim + cellJ + 1, getCellEnv(mainEnvelope, cellI, cellJ, getCellWidth(),
+                    getCellHeight()));
+        }
+        return cellEnvelopes;
+    }
+
     /**
      * Fetch all receivers and compute cells that contains receivers
      * @param connection
@@ -223,7 +389,42 @@ public class PointNoiseMap extends JdbcNoiseMap {
     public IComputeRaysOut evaluateCell(Connection connection, int cellI, int cellJ,
                                         ProgressVisitor progression, Set<Long> skipReceivers) throws SQLException, IOException {
         PropagationProcessData threadData = prepareCell(connection, cellI, cellJ, progression, skipReceivers);
+        return computeCell(threadData);
+    }
 
+    /**
+     * Launch sound propagation on an arbitrary cell, see {@link AdaptiveCellPartitioner}
+     * @param connection JDBC Connection
+     * @param cellEnvelope Receivers area of the cell
+     * @param cellId Cell identifier
+     * @param progression Progression info
+     * @param skipReceivers Receivers already processed, updated with the receivers of this cell
+     * @return Propagation output of the cell
+     * @throws SQLException
+     */
+    public IComputeRaysOut evaluateCell(Connection connection, Envelope cellEnvelope, int cellId,
+                                        ProgressVisitor progression, Set<Long> skipReceivers) throws SQLException, IOException {
+        return computeCell(prepareCell(connection, cellEnvelope, cellId, progression, skipReceivers));
+    }
+
+    /**
+     * Launch sound propagation on a cell returned by
+     * {@link #prepareCell(Connection, int, int, ProgressVisitor, Set)}. The database is not used.
+     * @param threadData Cell data
+     * @return Propagation output of the cell
+     */
+    public IComputeRaysOut computeCell(PropagationProcessData threadData) {
+        return computeCell(threadData, threadCount);
+    }
+
+    /**
+     * Launch sound propagation on a cell returned by
+     * {@link #prepareCell(Connection, int, int, ProgressVisitor, Set)}. The database is not used.
+     * @param threadData Cell data
+     * @param threadCount Number of threads used for this cell, 0 to use all available processors
+     * @return Propagation output of the cell
+     */
+    public IComputeRaysOut computeCell(PropagationProcessData threadData, int threadCount) {
         if(verbose) {
             logger.info(String.format("This computation area contains %d receivers %d sound sources and %d buildings",
                     threadData.receivers.size(), threadData.sourceGeometries.size(),
@@ -241,6 +442,7 @@ public class PointNoiseMap extends JdbcNoiseMap {
         if(threadCount > 0) {
             computeRays.setThreadCount(threadCount);
         }
+        computeRays.setStatisticsListener(statisticsListener);
 
         if(!receiverHasAbsoluteZCoordinates) {
             computeRays.makeReceiverRelativeZToAbsolute();
@@ -255,9 +457,51 @@ public class PointNoiseMap extends JdbcNoiseMap {
         return computeRaysOut;
     }
 
+    /**
+     * Rough estimation of the memory used by a prepared cell
+     * @param triangleCount Number of triangles of the cell mesh
+     * @param sourceCoordinateCount Number of vertices of the sources geometries
+     * @param receiverCount Number of receivers
+     * @return Estimated size in bytes
+     */
+    public static long estimateCellMemory(long triangleCount, long sourceCoordinateCount, long receiverCount) {
+        // Mesh arrays, triangles index and walls (about 2 vertices and 1 wall for each triangle)
+        final long triangleSize = 160;
+        // Coordinate, spatial index entry and cached discretization
+        final long sourceCoordinateSize = 120;
+        // Coordinate, primary key and attributes
+        final long receiverSize = 100;
+        return triangleCount * triangleSize + sourceCoordinateCount * sourceCoordinateSize +
+                receiverCount * receiverSize;
+    }
+
+    /**
+     * @param data Cell data returned by {@link #prepareCell(Connection, int, int, ProgressVisitor, Set)}
+     * @return Estimated size in bytes, including the mesh. With {@link #setSharedMeshTileSize(double)} the mesh is
+     * shared by the cells of a tile, see {@link #estimateMeshMemory(FastObstructionTest)}
+     * @see #estimateCellMemory(long, long, long)
+     */
+    public static long estimateCellMemory(PropagationProcessData data) {
+        long sourceCoordinateCount = 0;
+        for(Geometry source : data.sourceGeometries) {
+            sourceCoordinateCount += source.getNumPoints();
+        }
+        return estimateCellMemory(data.freeFieldFinder.getMesh().getTriangleCount(), sourceCoordinateCount,
+                data.receivers.size());
+    }
+
+    /**
+     * @param mesh Mesh of a cell or of a shared tile
+     * @return Estimated size in bytes of the mesh part of {@link #estimateCellMemory(PropagationProcessData)}
+     */
+    public static long estimateMeshMemory(FastObstructionTest mesh) {
+        return estimateCellMemory(mesh.getMesh().getTriangleCount(), 0, 0);
+    }
+
     @Override
     public void initialize(Connection connection, ProgressVisitor progression) throws SQLException {
         super.initialize(connection, progression);
+        sharedMeshTiles = null;
         if(propagationProcessDataFactory != null) {
             propagationProcessDataFactory.initialize(connection, this);
         }
@@ -0,0 +1,96 @@
+/**
+ * NoiseModelling is a free and open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by Université Gustave Eiffel and CNRS
+ * <http://noise-planet.org/noisemodelling.html>
+ * as part of:
+ * the Eval-PDU project (ANR-08-VILL-0005) 2008-2011, funded by the Agence Nationale de la Recherche (French)
+ * the CENSE project (ANR-16-CE22-0012) 2017-2021, funded by the Agence Nationale de la Recherche (French)
+ * the Nature4cities (N4C) project, funded by European Union’s Horizon 2020 research and innovation programme under grant agreement No 730468
+ *
+ * Noisemap is distributed under GPL 3 license.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488) and Ifsttar
+ * Copyright (C) 2013-2019 Ifsttar and CNRS
+ * Copyright (C) 2020 Université Gustave Eiffel and CNRS
+ *
+ * @Author Pierre Aumond, Université Gustave Eiffel
+ * @Author Nicolas Fortin, Université Gustave Eiffel
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.noise_planet.noisemodelling.pathfinder.FastObstructionTest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Meshes of large tiles of the scene, shared by the cells of a {@link PointNoiseMap}.
+ * The tiles are aligned on the computation area. The mesh of a tile covers the tile and the cells whose centre are
+ * inside the tile, expanded by the maximum propagation distance. A {@link FastObstructionTest} is not modified by
+ * the propagation, so the same instance is used by all the cells of the tile.
+ */
+final class SharedMeshTiles {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedMeshTiles.class);
+    private final PointNoiseMap pointNoiseMap;
+    private final double tileSize;
+    private final Map<Envelope, FastObstructionTest> tiles;
+
+    /**
+     * @param pointNoiseMap Initialised noise map
+     * @param tileSize Side length of the tiles
+     * @param cacheSize Maximum number of tiles kept in memory, 0 to keep a row of tiles
+     */
+    SharedMeshTiles(PointNoiseMap pointNoiseMap, double tileSize, int cacheSize) {
+        this.pointNoiseMap = pointNoiseMap;
+        this.tileSize = tileSize;
+        final int maximumTiles = cacheSize > 0 ? cacheSize :
+                (int) Math.ceil(pointNoiseMap.getMainEnvelope().maxExtent() / tileSize) + 1;
+        this.tiles = new LinkedHashMap<Envelope, FastObstructionTest>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Envelope, FastObstructionTest> eldest) {
+                return size() > maximumTiles;
+            }
+        };
+    }
+
+    /**
+     * @param connection JDBC Connection
+     * @param cellEnvelope Receivers area of the cell
+     * @return Mesh that covers the cell expanded by the maximum propagation distance
+     * @throws SQLException
+     */
+    synchronized FastObstructionTest getMesh(Connection connection, Envelope cellEnvelope) throws SQLException {
+        Envelope expandedCellEnvelope = new Envelope(cellEnvelope);
+        expandedCellEnvelope.expandBy(pointNoiseMap.getMaximumPropagationDistance());
+        for(Map.Entry<Envelope, FastObstructionTest> entry : tiles.entrySet()) {
+            if(entry.getKey().covers(expandedCellEnvelope)) {
+                // Update the access order
+                return tiles.get(entry.getKey());
+            }
+        }
+        Envelope mainEnvelope = pointNoiseMap.getMainEnvelope();
+        Coordinate centre = cellEnvelope.centre();
+        double tileMinX = mainEnvelope.getMinX() + Math.floor((centre.x - mainEnvelope.getMinX()) / tileSize) * tileSize;
+        double tileMinY = mainEnvelope.getMinY() + Math.floor((centre.y - mainEnvelope.getMinY()) / tileSize) * tileSize;
+        Envelope tileEnvelope = new Envelope(tileMinX, tileMinX + tileSize, tileMinY, tileMinY + tileSize);
+        // Do not triangulate outside of the computation area
+        tileEnvelope = tileEnvelope.intersection(mainEnvelope);
+        tileEnvelope.expandToInclude(cellEnvelope);
+        tileEnvelope.expandBy(pointNoiseMap.getMaximumPropagationDistance());
+        if(pointNoiseMap.isVerbose()) {
+            LOGGER.info(String.format("Triangulate shared mesh tile %s", tileEnvelope));
+        }
+        FastObstructionTest mesh = pointNoiseMap.buildMesh(connection, tileEnvelope);
+        tiles.put(tileEnvelope, mesh);
+        return mesh;
+    }
+}
@@ -9,6 +9,16 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineSegment;
+import org.noise_planet.noisemodelling.pathfinder.FastObstructionTest;
+import org.noise_planet.noisemodelling.pathfinder.LayerDelaunayError;
+import org.noise_planet.noisemodelling.pathfinder.MeshBuilder;
+import org.noise_planet.noisemodelling.pathfinder.MirrorReceiverIterator;
+import org.noise_planet.noisemodelling.pathfinder.MirrorReceiverResult;
+import org.noise_planet.noisemodelling.pathfinder.MirrorReceiverTree;
+import org.noise_planet.noisemodelling.pathfinder.PropagationProcessData;
 
 import java.io.IOException;
 import java.sql.Connection;
@@ -19,12 +29,12 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class CnossosBench {
-
     private Connection connection;
 
     @Before
@@ -39,9 +49,7 @@ public class CnossosBench {
         }
     }
 
-    @Test
-    public void testReflectionOrder() throws SQLException, IOException {
-
+    private void createReflectionScene() throws SQLException, IOException {
         GeoJsonRead.readGeoJson(connection, CnossosBench.class.getResource("testrefl_buildings.geojson").getFile());
 
         Coordinate src = new Coordinate(-1.5587684512138364,
@@ -57,6 +65,12 @@ public class CnossosBench {
 
             st.execute(String.format(Locale.ROOT,"CREATE TABLE RECEIVERS(pk serial primary key, geom geometry) as select null, ST_Transform(st_setsrid(ST_MakePoint(%.5f, %.5f, 1.6),4326), 2154) the_geom",receiver.x, receiver.y));
         }
+    }
+
+    @Test
+    public void testReflectionOrder() throws SQLException, IOException {
+
+        createReflectionScene();
 
         LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_LW_DEN);
 
@@ -106,4 +120,59 @@ public class CnossosBench {
         assertEquals(0, levels.get(levels.size() - 1) - levels.get(0), 9.0);
 
     }
+
+    /**
+     * Compare the image receivers enumeration of MirrorReceiverIterator and MirrorReceiverTree on the reflection
+     * order scene
+     */
+    @Test
+    public void testMirrorReceiverTree() throws SQLException, IOException, LayerDelaunayError {
+        createReflectionScene();
+        MeshBuilder mesh = new MeshBuilder();
+        Envelope envelope = new Envelope();
+        Coordinate source;
+        Coordinate receiver;
+        try(Statement st = connection.createStatement()) {
+            try(ResultSet rs = st.executeQuery("SELECT geom, height FROM BUILDINGS")) {
+                while (rs.next()) {
+                    Geometry building = (Geometry) rs.getObject(1);
+                    envelope.expandToInclude(building.getEnvelopeInternal());
+                    mesh.addGeometry(building, rs.getDouble(2));
+                }
+            }
+            try(ResultSet rs = st.executeQuery("SELECT S.GEOM, R.GEOM FROM SRC S, RECEIVERS R")) {
+                assertTrue(rs.next());
+                source = ((Geometry) rs.getObject(1)).getCoordinate();
+                receiver = ((Geometry) rs.getObject(2)).getCoordinate();
+            }
+        }
+        envelope.expandToInclude(source);
+        envelope.expandToInclude(receiver);
+        envelope.expandBy(50);
+        mesh.finishPolygonFeeding(envelope);
+        FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+                mesh.getTriNeighbors(), mesh.getVertices());
+        Set<FastObstructionTest.Wall> wallSet = new HashSet<>(manager.getLimitsInRange(
+                PropagationProcessData.DEFAULT_MAXIMUM_REF_DIST, receiver, false));
+        wallSet.addAll(manager.getLimitsInRange(PropagationProcessData.DEFAULT_MAXIMUM_REF_DIST, source, false));
+        List<FastObstructionTest.Wall> walls = new ArrayList<>(wallSet);
+        LineSegment srcReceiver = new LineSegment(source, receiver);
+        for(int order = 1; order <= 5; order++) {
+            List<MirrorReceiverResult> expected = new ArrayList<>();
+            for (MirrorReceiverResult result : new MirrorReceiverIterator.It(receiver, walls, srcReceiver,
+                    Integer.MAX_VALUE, order, 300)) {
+                expected.add(result);
+            }
+            List<MirrorReceiverResult> got = new ArrayList<>();
+            for (MirrorReceiverResult result : new MirrorReceiverTree(receiver, walls, srcReceiver,
+                    Integer.MAX_VALUE, order, 300)) {
+                got.add(result);
+            }
+            assertEquals(expected.size(), got.size());
+            for(int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getReceiverPos(), got.get(i).getReceiverPos());
+                assertEquals(expected.get(i).getWallId(), got.get(i).getWallId());
+            }
+        }
+    }
 }
@@ -2562,4 +2562,70 @@ public class EvaluateAttenuationCnossosTest {
         }
 
     }
-}
\ No newline at end of file
+
+    /**
+     * Compute the levels of a scene with the free field paths given as descriptors or as propagation paths
+     * @param keepRays If true the propagation paths are built for all the paths
+     * @return Levels by receiver and source
+     */
+    private static Map<String, double[]> computePathDescriptorScene(boolean keepRays) throws LayerDelaunayError {
+        GeometryFactory factory = new GeometryFactory();
+        MeshBuilder mesh = new MeshBuilder();
+        mesh.addGeometry(factory.toGeometry(new Envelope(40, 60, 20, 60)), 12);
+        mesh.addGeometry(factory.toGeometry(new Envelope(110, 130, -40, -10)), 8);
+        // Hill between the sources and the receivers
+        mesh.addTopographicPoint(new Coordinate(80, -60, 0));
+        mesh.addTopographicPoint(new Coordinate(80, 80, 0));
+        mesh.addTopographicPoint(new Coordinate(90, 0, 6));
+        mesh.addTopographicPoint(new Coordinate(100, -60, 0));
+        mesh.addTopographicPoint(new Coordinate(100, 80, 0));
+        mesh.finishPolygonFeeding(new Envelope(-250, 250, -250, 250));
+        FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+                mesh.getTriNeighbors(), mesh.getVertices());
+        PropagationProcessData rayData = new PropagationProcessData(manager);
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                rayData.addReceiver(new Coordinate(150 + i * 25, -50 + j * 50, 4));
+            }
+        }
+        rayData.addSource(factory.createPoint(new Coordinate(0, 0, 1)));
+        rayData.addSource(factory.createPoint(new Coordinate(10, 80, 0.05)));
+        rayData.addSource(factory.createLineString(new Coordinate[]{new Coordinate(-20, -80, 0.5),
+                new Coordinate(30, -60, 0.5)}));
+        rayData.addSoilType(new GeoWithSoilType(factory.toGeometry(new Envelope(-100, 70, -100, 100)), 0.7));
+        rayData.addSoilType(new GeoWithSoilType(factory.toGeometry(new Envelope(70, 160, -100, 100)), 0.));
+        rayData.setComputeHorizontalDiffraction(true);
+        rayData.setComputeVerticalDiffraction(true);
+        rayData.setReflexionOrder(1);
+        rayData.maxSrcDist = 500;
+        rayData.setGs(0.5);
+
+        PropagationProcessPathData attData = new PropagationProcessPathData();
+        ComputeRaysOut propDataOut = new ComputeRaysOut(keepRays, attData);
+        ComputeRays computeRays = new ComputeRays(rayData);
+        computeRays.setThreadCount(1);
+        computeRays.run(propDataOut);
+        Map<String, double[]> levels = new HashMap<>();
+        for (ComputeRaysOut.VerticeSL level : propDataOut.getVerticesSoundLevel()) {
+            levels.put(level.receiverId + "-" + level.sourceId, level.value);
+        }
+        return levels;
+    }
+
+    /**
+     * The free field paths given as descriptors must have the same attenuation than the propagation path objects
+     */
+    @Test
+    public void testPathDescriptor() throws LayerDelaunayError {
+        PropagationProcessPathData attData = new PropagationProcessPathData();
+        assertTrue(new ComputeRaysOut(false, attData).subProcess(0, 0).isPathDescriptorSupported());
+        assertFalse(new ComputeRaysOut(true, attData).subProcess(0, 0).isPathDescriptorSupported());
+        Map<String, double[]> expected = computePathDescriptorScene(true);
+        Map<String, double[]> levels = computePathDescriptorScene(false);
+        assertEquals(27, expected.size());
+        assertEquals(expected.keySet(), levels.keySet());
+        for (Map.Entry<String, double[]> entry : expected.entrySet()) {
+            assertArrayEquals(entry.getKey(), entry.getValue(), levels.get(entry.getKey()), 1e-9);
+        }
+    }
+}
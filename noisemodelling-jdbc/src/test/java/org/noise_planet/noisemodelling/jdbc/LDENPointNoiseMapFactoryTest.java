@@ -10,18 +10,24 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
 import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 import org.noise_planet.noisemodelling.pathfinder.RootProgressVisitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -528,4 +534,291 @@ public class LDENPointNoiseMapFactoryTest {
         }
 
     }
-}
\ No newline at end of file
+
+    private interface CellsEvaluation {
+        void evaluateCells(PointNoiseMap pointNoiseMap, Map<PointNoiseMap.CellIndex, Integer> cells,
+                           ProgressVisitor progressVisitor, Set<Long> receivers) throws SQLException, IOException;
+    }
+
+    /**
+     * Evaluate the cells one after the other, in the cell index order
+     */
+    private void evaluateCellsSequentially(PointNoiseMap pointNoiseMap, Map<PointNoiseMap.CellIndex, Integer> cells,
+                                           ProgressVisitor progressVisitor, Set<Long> receivers)
+            throws SQLException, IOException {
+        for(PointNoiseMap.CellIndex cellIndex : new TreeSet<>(cells.keySet())) {
+            pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(),
+                    progressVisitor, receivers);
+        }
+    }
+
+    /**
+     * Compute the day level of the synthetic city tables on a 3x3 cells grid
+     * @param lDayTable Output table
+     * @param cellsEvaluation Configure the initialized point noise map then evaluate the cells
+     * @return Computed receivers
+     */
+    private Set<Long> computeSyntheticCity(String lDayTable, CellsEvaluation cellsEvaluation)
+            throws SQLException, IOException {
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_LW_DEN);
+        ldenConfig.setComputeLDay(true);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(false);
+        ldenConfig.setComputeLDEN(false);
+        ldenConfig.setlDayTable(lDayTable);
+
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+
+        PointNoiseMap pointNoiseMap = new PointNoiseMap(SyntheticCity.BUILDINGS_TABLE, SyntheticCity.ROADS_TABLE,
+                SyntheticCity.RECEIVERS_TABLE);
+        pointNoiseMap.setComputeRaysOutFactory(factory);
+        pointNoiseMap.setPropagationProcessDataFactory(factory);
+        pointNoiseMap.setHeightField("HEIGHT");
+        pointNoiseMap.setDemTable(SyntheticCity.DEM_TABLE);
+        pointNoiseMap.setMaximumPropagationDistance(100.0);
+        pointNoiseMap.setSoundReflectionOrder(1);
+
+        Set<Long> receivers = new HashSet<>();
+        try {
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            pointNoiseMap.setGridDim(3);
+            factory.start();
+            RootProgressVisitor progressLogger = new RootProgressVisitor(1, false, 1);
+            Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+            ProgressVisitor progressVisitor = progressLogger.subProcess(cells.size());
+            cellsEvaluation.evaluateCells(pointNoiseMap, cells, progressVisitor, receivers);
+        } finally {
+            factory.stop();
+        }
+        connection.commit();
+        return receivers;
+    }
+
+    /**
+     * @return Maximum absolute difference of the day level of each receiver between the two tables
+     */
+    private double maximumLevelDifference(String referenceTable, String table, int receiverCount) throws SQLException {
+        try (ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*), MAX(ABS(S.LAEQ - P.LAEQ))" +
+                " FROM " + referenceTable + " S, " + table + " P WHERE S.IDRECEIVER = P.IDRECEIVER")) {
+            assertTrue(rs.next());
+            assertEquals(receiverCount, rs.getInt(1));
+            return rs.getDouble(2);
+        }
+    }
+
+    @Test
+    public void testSyntheticCity() throws SQLException, IOException {
+        SyntheticCity city = SyntheticCity.ofArea(0.16, 1);
+        city.setReceiverSpacing(40);
+        // Same seed, same city
+        assertEquals(city.getBuildings(), SyntheticCity.ofArea(0.16, 1).getBuildings());
+        assertNotEquals(city.getBuildings(), SyntheticCity.ofArea(0.16, 2).getBuildings());
+        assertFalse(city.getBuildings().isEmpty());
+        assertFalse(city.getTopographicPoints().isEmpty());
+        city.createTables(connection);
+
+        Set<Long> receivers = computeSyntheticCity("LDAY_SOIL", (pointNoiseMap, cells, progressVisitor, rcv) -> {
+            pointNoiseMap.setSoilTableName(SyntheticCity.SOIL_TABLE);
+            evaluateCellsSequentially(pointNoiseMap, cells, progressVisitor, rcv);
+        });
+        assertEquals(city.getReceivers().size(), receivers.size());
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*), MAX(LAEQ) FROM LDAY_SOIL")) {
+            assertTrue(rs.next());
+            assertEquals(city.getReceivers().size(), rs.getInt(1));
+            assertTrue(rs.getDouble(2) > 40);
+        }
+    }
+
+    private void computeSyntheticCity(String lDayTable, int lookAhead, long memoryCap) throws SQLException, IOException {
+        computeSyntheticCity(lDayTable, (pointNoiseMap, cells, progressVisitor, receivers) -> {
+            PipelinedCellEvaluator evaluator = new PipelinedCellEvaluator(pointNoiseMap, connection);
+            evaluator.setLookAhead(lookAhead);
+            evaluator.setMemoryCap(memoryCap);
+            List<Integer> computedCells = new ArrayList<>();
+            evaluator.evaluateCells(cells, progressVisitor, receivers,
+                    (cellId, out) -> computedCells.add(cellId));
+            assertEquals(new ArrayList<>(pointNoiseMap.getCellEnvelopes(new TreeSet<>(cells.keySet())).keySet()),
+                    computedCells);
+        });
+    }
+
+    @Test
+    public void testPipelinedCellEvaluator() throws SQLException, IOException {
+        SyntheticCity city = new SyntheticCity(600, 1);
+        city.setReceiverSpacing(40);
+        city.createTables(connection);
+        int receiverCount = city.getReceivers().size();
+        computeSyntheticCity("LDAY_SEQUENTIAL", this::evaluateCellsSequentially);
+        computeSyntheticCity("LDAY_PIPELINE", 2, 0);
+        // Only one prepared cell waiting with a memory cap of 1 byte
+        computeSyntheticCity("LDAY_PIPELINE_CAP", 2, 1);
+        assertEquals(0, maximumLevelDifference("LDAY_SEQUENTIAL", "LDAY_PIPELINE", receiverCount), 1e-6);
+        assertEquals(0, maximumLevelDifference("LDAY_SEQUENTIAL", "LDAY_PIPELINE_CAP", receiverCount), 1e-6);
+    }
+
+    @Test
+    public void testConcurrentCellEvaluator() throws SQLException, IOException {
+        SyntheticCity city = new SyntheticCity(600, 1);
+        city.setReceiverSpacing(40);
+        city.createTables(connection);
+        int receiverCount = city.getReceivers().size();
+        computeSyntheticCity("LDAY_SEQUENTIAL", this::evaluateCellsSequentially);
+        computeSyntheticCity("LDAY_CONCURRENT", (pointNoiseMap, cells, progressVisitor, receivers) -> {
+            ConcurrentCellEvaluator evaluator = new ConcurrentCellEvaluator(pointNoiseMap, connection);
+            evaluator.setMaximumConcurrentCells(3);
+            Set<Integer> computedCells = new HashSet<>();
+            evaluator.evaluateCells(cells, progressVisitor, receivers,
+                    (cellId, out) -> computedCells.add(cellId));
+            assertEquals(pointNoiseMap.getCellEnvelopes(cells.keySet()).keySet(), computedCells);
+        });
+        // Cells of the adaptive partitioner, prepared and computed by the same evaluator. The terrain triangulation
+        // depends on the cell extent so the comparison is done without the DEM, the source lines are still
+        // discretized from the cell extent
+        computeSyntheticCity("LDAY_SEQUENTIAL_NO_DEM", (pointNoiseMap, cells, progressVisitor, receivers) -> {
+            pointNoiseMap.setDemTable("");
+            evaluateCellsSequentially(pointNoiseMap, cells, progressVisitor, receivers);
+        });
+        computeSyntheticCity("LDAY_CONCURRENT_ADAPTIVE", (pointNoiseMap, cells, progressVisitor, receivers) -> {
+            pointNoiseMap.setDemTable("");
+            AdaptiveCellPartitioner partitioner = new AdaptiveCellPartitioner(pointNoiseMap);
+            partitioner.setMaximumCellWork(partitioner.partition(connection).get(0).getWork() / 8);
+            Map<Integer, Envelope> adaptiveCells = AdaptiveCellPartitioner.getCellEnvelopes(
+                    partitioner.partition(connection));
+            assertTrue(adaptiveCells.size() > 1);
+            ConcurrentCellEvaluator evaluator = new ConcurrentCellEvaluator(pointNoiseMap, connection);
+            evaluator.setMaximumConcurrentCells(3);
+            Set<Integer> computedCells = new HashSet<>();
+            evaluator.evaluateCellEnvelopes(adaptiveCells, progressVisitor, receivers,
+                    (cellId, out) -> computedCells.add(cellId));
+            assertEquals(adaptiveCells.keySet(), computedCells);
+        });
+        // A memory budget of 1 byte admits only one running cell
+        computeSyntheticCity("LDAY_CONCURRENT_BUDGET", (pointNoiseMap, cells, progressVisitor, receivers) -> {
+            ConcurrentCellEvaluator evaluator = new ConcurrentCellEvaluator(pointNoiseMap, connection);
+            evaluator.setMaximumConcurrentCells(3);
+            evaluator.setMemoryBudget(1);
+            evaluator.evaluateCells(cells, progressVisitor, receivers, null);
+        });
+        assertEquals(0, maximumLevelDifference("LDAY_SEQUENTIAL", "LDAY_CONCURRENT", receiverCount), 1e-6);
+        assertEquals(0, maximumLevelDifference("LDAY_SEQUENTIAL", "LDAY_CONCURRENT_BUDGET", receiverCount), 1e-6);
+        assertEquals(0, maximumLevelDifference("LDAY_SEQUENTIAL_NO_DEM", "LDAY_CONCURRENT_ADAPTIVE", receiverCount),
+                0.2);
+    }
+
+    private void computeSyntheticCityWithSharedMesh(String lDayTable, double tileSize, boolean useDem)
+            throws SQLException, IOException {
+        computeSyntheticCity(lDayTable, (pointNoiseMap, cells, progressVisitor, receivers) -> {
+            pointNoiseMap.setSharedMeshTileSize(tileSize);
+            if(!useDem) {
+                pointNoiseMap.setDemTable("");
+            }
+            evaluateCellsSequentially(pointNoiseMap, cells, progressVisitor, receivers);
+        });
+    }
+
+    @Test
+    public void testSharedMesh() throws SQLException, IOException {
+        SyntheticCity city = new SyntheticCity(600, 1);
+        city.setReceiverSpacing(40);
+        city.createTables(connection);
+        int receiverCount = city.getReceivers().size();
+        computeSyntheticCityWithSharedMesh("LDAY_NO_DEM", 0, false);
+        // 2x2 tiles of 3x3 cells
+        computeSyntheticCityWithSharedMesh("LDAY_TILES_NO_DEM", 300, false);
+        // The whole scene in one mesh
+        computeSyntheticCityWithSharedMesh("LDAY_SCENE_NO_DEM", Double.MAX_VALUE, false);
+        assertEquals(0, maximumLevelDifference("LDAY_NO_DEM", "LDAY_TILES_NO_DEM", receiverCount), 1e-6);
+        assertEquals(0, maximumLevelDifference("LDAY_NO_DEM", "LDAY_SCENE_NO_DEM", receiverCount), 1e-6);
+        // The terrain triangulation is not clipped at the border of each cell
+        computeSyntheticCityWithSharedMesh("LDAY_DEM", 0, true);
+        computeSyntheticCityWithSharedMesh("LDAY_SCENE_DEM", Double.MAX_VALUE, true);
+        assertEquals(0, maximumLevelDifference("LDAY_DEM", "LDAY_SCENE_DEM", receiverCount), 1);
+    }
+
+    private void computeSyntheticCityWithMeshCache(String lDayTable, File cacheDirectory) throws SQLException, IOException {
+        computeSyntheticCity(lDayTable, (pointNoiseMap, cells, progressVisitor, receivers) -> {
+            pointNoiseMap.setMeshCacheDirectory(cacheDirectory);
+            evaluateCellsSequentially(pointNoiseMap, cells, progressVisitor, receivers);
+        });
+    }
+
+    @Test
+    public void testMeshCache() throws SQLException, IOException {
+        SyntheticCity city = new SyntheticCity(600, 1);
+        city.setReceiverSpacing(40);
+        city.createTables(connection);
+        int receiverCount = city.getReceivers().size();
+        File cacheDirectory = Files.createTempDirectory("testMeshCache").toFile();
+        try {
+            computeSyntheticCity("LDAY_SEQUENTIAL", this::evaluateCellsSequentially);
+            computeSyntheticCityWithMeshCache("LDAY_COLD", cacheDirectory);
+            File[] cacheFiles = cacheDirectory.listFiles();
+            assertNotNull(cacheFiles);
+            // One mesh by cell
+            assertEquals(9, cacheFiles.length);
+            Map<String, Long> lastModified = new HashMap<>();
+            for(File cacheFile : cacheFiles) {
+                lastModified.put(cacheFile.getName(), cacheFile.lastModified());
+            }
+            // The meshes are loaded from the cache
+            computeSyntheticCityWithMeshCache("LDAY_WARM", cacheDirectory);
+            cacheFiles = cacheDirectory.listFiles();
+            assertNotNull(cacheFiles);
+            assertEquals(lastModified.size(), cacheFiles.length);
+            for(File cacheFile : cacheFiles) {
+                assertEquals(lastModified.get(cacheFile.getName()), Long.valueOf(cacheFile.lastModified()));
+            }
+            assertEquals(0, maximumLevelDifference("LDAY_SEQUENTIAL", "LDAY_COLD", receiverCount), 1e-6);
+            assertEquals(0, maximumLevelDifference("LDAY_SEQUENTIAL", "LDAY_WARM", receiverCount), 1e-6);
+        } finally {
+            File[] cacheFiles = cacheDirectory.listFiles();
+            if(cacheFiles != null) {
+                for(File cacheFile : cacheFiles) {
+                    assertTrue(cacheFile.delete());
+                }
+            }
+            assertTrue(cacheDirectory.delete());
+        }
+    }
+
+    /**
+     * @return Number of vertices of the mesh of the first cell
+     */
+    private int computeSyntheticCityWithDemMaximumError(String lDayTable, double demMaximumError)
+            throws SQLException, IOException {
+        int[] vertexCount = new int[1];
+        computeSyntheticCity(lDayTable, (pointNoiseMap, cells, progressVisitor, receivers) -> {
+            pointNoiseMap.setDemMaximumError(demMaximumError);
+            vertexCount[0] = pointNoiseMap.prepareCell(connection, 0, 0, null,
+                    new HashSet<>()).freeFieldFinder.getMesh().getVertexCount();
+            evaluateCellsSequentially(pointNoiseMap, cells, progressVisitor, receivers);
+        });
+        return vertexCount[0];
+    }
+
+    @Test
+    public void testDemSimplification() throws SQLException, IOException {
+        SyntheticCity city = new SyntheticCity(600, 1);
+        city.setReceiverSpacing(40);
+        city.setDemSpacing(10);
+        city.createTables(connection);
+        int receiverCount = city.getReceivers().size();
+        int vertexCount = computeSyntheticCityWithDemMaximumError("LDAY_DEM", 0);
+        int simplifiedVertexCount = computeSyntheticCityWithDemMaximumError("LDAY_SIMPLIFIED_DEM", 0.01);
+        // Vertical accuracy of a lidar DEM
+        int lidarVertexCount = computeSyntheticCityWithDemMaximumError("LDAY_LIDAR_DEM", 0.1);
+        assertTrue(simplifiedVertexCount < vertexCount / 2);
+        assertTrue(lidarVertexCount < vertexCount / 2);
+        // The DEM points are within the error bound of the final mesh, the ground between the DEM points still moves
+        // a little and the low sources are sensitive to the terrain
+        assertEquals(0, maximumLevelDifference("LDAY_DEM", "LDAY_SIMPLIFIED_DEM", receiverCount), 0.5);
+        assertEquals(0, maximumLevelDifference("LDAY_DEM", "LDAY_LIDAR_DEM", receiverCount), 1.5);
+        try (ResultSet rs = connection.createStatement().executeQuery("SELECT AVG(ABS(S.LAEQ - P.LAEQ))," +
+                " AVG(ABS(S.LAEQ - L.LAEQ)) FROM LDAY_DEM S, LDAY_SIMPLIFIED_DEM P, LDAY_LIDAR_DEM L" +
+                " WHERE S.IDRECEIVER = P.IDRECEIVER AND S.IDRECEIVER = L.IDRECEIVER")) {
+            assertTrue(rs.next());
+            assertEquals(0, rs.getDouble(1), 0.1);
+            assertEquals(0, rs.getDouble(2), 0.1);
+        }
+    }
+}
@@ -6,11 +6,14 @@ import org.h2gis.utilities.SFSUtilities;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
 import org.noise_planet.noisemodelling.jdbc.Utils.JDBCComputeRaysOut;
 import org.noise_planet.noisemodelling.jdbc.Utils.JDBCPropagationData;
 import org.noise_planet.noisemodelling.pathfinder.GeoWithSoilType;
 import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
 import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
+import org.noise_planet.noisemodelling.pathfinder.PropagationProcessData;
 import org.noise_planet.noisemodelling.pathfinder.RootProgressVisitor;
 import org.noise_planet.noisemodelling.propagation.ComputeRaysOut;
 
@@ -24,6 +27,7 @@ import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -164,4 +168,111 @@ public class PointNoiseMapTest {
 
 
 
-}
\ No newline at end of file
+    @Test
+    public void testSyntheticCityTriangleNoiseMap() throws Exception {
+        SyntheticCity city = new SyntheticCity(350, 1);
+        city.createTables(connection);
+        TriangleNoiseMap noisemap = new TriangleNoiseMap(SyntheticCity.BUILDINGS_TABLE, SyntheticCity.ROADS_TABLE);
+        noisemap.setHeightField("HEIGHT");
+        noisemap.setDemTable(SyntheticCity.DEM_TABLE);
+        noisemap.initialize(connection, new EmptyProgressVisitor());
+
+        AtomicInteger pk = new AtomicInteger(0);
+        for(int i=0; i < noisemap.getGridDim(); i++) {
+            for(int j=0; j < noisemap.getGridDim(); j++) {
+                noisemap.generateReceivers(connection, i, j, "NM_RECEIVERS", "TRIANGLES", pk);
+            }
+        }
+        assertTrue(pk.get() > city.getBuildings().size());
+    }
+
+    @Test
+    public void testAdaptiveCellPartitioner() throws Exception {
+        SyntheticCity city = new SyntheticCity(600, 1);
+        city.setReceiverSpacing(40);
+        city.createTables(connection);
+        // Dense cluster of receivers in a corner of the city
+        try(Statement st = connection.createStatement()) {
+            for(int i = 0; i < 20; i++) {
+                for(int j = 0; j < 20; j++) {
+                    st.execute(String.format(Locale.ROOT, "INSERT INTO %s(THE_GEOM) VALUES ('POINT(%f %f)')",
+                            SyntheticCity.RECEIVERS_TABLE, 5 + i * 2.0, 5 + j * 2.0));
+                }
+            }
+        }
+        int receiverCount = city.getReceivers().size() + 400;
+        PointNoiseMap pointNoiseMap = new PointNoiseMap(SyntheticCity.BUILDINGS_TABLE, SyntheticCity.ROADS_TABLE,
+                SyntheticCity.RECEIVERS_TABLE);
+        pointNoiseMap.setHeightField("HEIGHT");
+        pointNoiseMap.setDemTable(SyntheticCity.DEM_TABLE);
+        pointNoiseMap.setMaximumPropagationDistance(100);
+        pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+
+        AdaptiveCellPartitioner partitioner = new AdaptiveCellPartitioner(pointNoiseMap);
+        List<AdaptiveCellPartitioner.Cell> cells = partitioner.partition(connection);
+        // The whole city fits in the default memory target
+        assertEquals(1, cells.size());
+        assertEquals(receiverCount, cells.get(0).getReceiverCount());
+        partitioner.setMaximumCellWork(cells.get(0).getWork() / 8);
+        cells = partitioner.partition(connection);
+        assertTrue(cells.size() > 1);
+        double maximumArea = 0;
+        AdaptiveCellPartitioner.Cell denseCell = null;
+        for(AdaptiveCellPartitioner.Cell cell : cells) {
+            assertTrue(pointNoiseMap.getMainEnvelope().contains(cell.getEnvelope()));
+            maximumArea = Math.max(maximumArea, cell.getEnvelope().getArea());
+            if(cell.getEnvelope().contains(10, 10)) {
+                denseCell = cell;
+            }
+        }
+        // Dense area is more subdivided
+        assertNotNull(denseCell);
+        assertTrue(denseCell.getEnvelope().getArea() < maximumArea);
+
+        // Each receiver is computed once
+        Set<Long> receivers = new HashSet<>();
+        int computedReceivers = 0;
+        for(AdaptiveCellPartitioner.Cell cell : cells) {
+            computedReceivers += pointNoiseMap.prepareCell(connection, cell.getEnvelope(), cell.getCellId(),
+                    null, receivers).receivers.size();
+        }
+        assertEquals(receiverCount, receivers.size());
+        assertEquals(receiverCount, computedReceivers);
+    }
+
+    @Test
+    public void testSharedMeshMemory() throws Exception {
+        SyntheticCity city = new SyntheticCity(600, 1);
+        city.setReceiverSpacing(40);
+        city.createTables(connection);
+        PointNoiseMap pointNoiseMap = new PointNoiseMap(SyntheticCity.BUILDINGS_TABLE, SyntheticCity.ROADS_TABLE,
+                SyntheticCity.RECEIVERS_TABLE);
+        pointNoiseMap.setHeightField("HEIGHT");
+        pointNoiseMap.setDemTable(SyntheticCity.DEM_TABLE);
+        pointNoiseMap.setMaximumPropagationDistance(100);
+        pointNoiseMap.setSharedMeshTileSize(Double.MAX_VALUE);
+        pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+        Envelope mainEnvelope = pointNoiseMap.getMainEnvelope();
+        Coordinate centre = mainEnvelope.centre();
+        Set<Long> receivers = new HashSet<>();
+        PropagationProcessData first = pointNoiseMap.prepareCell(connection, new Envelope(mainEnvelope.getMinX(),
+                centre.x, mainEnvelope.getMinY(), mainEnvelope.getMaxY()), 1, null, receivers);
+        PropagationProcessData second = pointNoiseMap.prepareCell(connection, new Envelope(centre.x,
+                mainEnvelope.getMaxX(), mainEnvelope.getMinY(), mainEnvelope.getMaxY()), 2, null, receivers);
+        // Both cells use the mesh of the whole scene
+        assertSame(first.freeFieldFinder, second.freeFieldFinder);
+        long meshMemory = PointNoiseMap.estimateMeshMemory(first.freeFieldFinder);
+        assertTrue(meshMemory > 0);
+        CellMemoryAccount account = new CellMemoryAccount();
+        account.add(first);
+        assertEquals(PointNoiseMap.estimateCellMemory(first), account.getMemory());
+        assertEquals(PointNoiseMap.estimateCellMemory(second) - meshMemory, account.getAddedMemory(second));
+        account.add(second);
+        assertEquals(PointNoiseMap.estimateCellMemory(first) + PointNoiseMap.estimateCellMemory(second) -
+                meshMemory, account.getMemory());
+        account.remove(first);
+        assertEquals(PointNoiseMap.estimateCellMemory(second), account.getMemory());
+        account.remove(second);
+        assertEquals(0, account.getMemory());
+    }
+}
@@ -0,0 +1,704 @@
+/**
+ * NoiseModelling is a free and open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by Université Gustave Eiffel and CNRS
+ * <http://noise-planet.org/noisemodelling.html>
+ * as part of:
+ * the Eval-PDU project (ANR-08-VILL-0005) 2008-2011, funded by the Agence Nationale de la Recherche (French)
+ * the CENSE project (ANR-16-CE22-0012) 2017-2021, funded by the Agence Nationale de la Recherche (French)
+ * the Nature4cities (N4C) project, funded by European Union’s Horizon 2020 research and innovation programme under grant agreement No 730468
+ *
+ * Noisemap is distributed under GPL 3 license.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488) and Ifsttar
+ * Copyright (C) 2013-2019 Ifsttar and CNRS
+ * Copyright (C) 2020 Université Gustave Eiffel and CNRS
+ *
+ * @Author Pierre Aumond, Université Gustave Eiffel
+ * @Author Nicolas Fortin, Université Gustave Eiffel
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
+import org.noise_planet.noisemodelling.emission.EvaluateRoadSourceCnossos;
+import org.noise_planet.noisemodelling.emission.RSParametersCnossos;
+import org.noise_planet.noisemodelling.pathfinder.FastObstructionTest;
+import org.noise_planet.noisemodelling.pathfinder.GeoWithSoilType;
+import org.noise_planet.noisemodelling.pathfinder.LayerDelaunayError;
+import org.noise_planet.noisemodelling.pathfinder.MeshBuilder;
+import org.noise_planet.noisemodelling.pathfinder.PropagationProcessData;
+import org.noise_planet.noisemodelling.pathfinder.TerrainSimplifier;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded generator of a city used for scale and performance tests. The city is a regular street grid, blocks are
+ * split into parcels holding one building or a garden, some blocks are parks. The same parameters and seed always
+ * give the same city.
+ *
+ * The city limits are the outer blocks edges, streets cross the whole city.
+ *
+ * The city can be written into H2GIS tables for {@link PointNoiseMap}, {@link TriangleNoiseMap} and
+ * {@link LDENPointNoiseMapFactory} (traffic and LW_D/E/N columns), or fed directly into a
+ * {@link PropagationProcessData}.
+ */
+public class SyntheticCity {
+    public static final String BUILDINGS_TABLE = "BUILDINGS";
+    public static final String ROADS_TABLE = "ROADS";
+    public static final String DEM_TABLE = "DEM";
+    public static final String SOIL_TABLE = "LAND_G";
+    public static final String RECEIVERS_TABLE = "RECEIVERS";
+    public static final int[] FREQUENCIES = new int[]{63, 125, 250, 500, 1000, 2000, 4000, 8000};
+    public static final String[] PERIODS = new String[]{"D", "E", "N"};
+    /** Source height relative to the ground */
+    public static final double SOURCE_HEIGHT = 0.05;
+
+    // Random generators are derived from the seed for each layer, so that changing the DEM or receivers parameters
+    // does not move the buildings
+    private static final long BUILDINGS_SEED = 1;
+    private static final long ROADS_SEED = 2;
+    private static final long DEM_SEED = 3;
+
+    private final double width;
+    private final long seed;
+    private double blockSize = 100;
+    private double streetWidth = 16;
+    private int parcelsPerSide = 3;
+    private double parkRatio = 0.1;
+    private double emptyParcelRatio = 0.15;
+    private double maxBuildingHeight = 30;
+    private int mainRoadInterval = 5;
+    private double demSpacing = 25;
+    private double demAmplitude = 10;
+    private double demMaximumError = 0;
+    private double receiverSpacing = 50;
+    private double receiverHeight = 4;
+    private double blockG = 0.2;
+    private double parkG = 1;
+
+    // Generated city
+    private boolean generated = false;
+    private Envelope envelope;
+    private int blockCount;
+    private double[] terrainPhase;
+    private final List<Polygon> buildings = new ArrayList<>();
+    private final List<Double> buildingHeights = new ArrayList<>();
+    private final List<Road> roads = new ArrayList<>();
+    private final List<GeoWithSoilType> soilAreas = new ArrayList<>();
+    private final List<Coordinate> topographicPoints = new ArrayList<>();
+    private final List<Coordinate> receivers = new ArrayList<>();
+    /** Building index for each parcel, -1 if there is no building */
+    private int[] parcelBuilding;
+
+    /**
+     * @param width Width of the square city in meters, rounded down to a whole number of blocks
+     * @param seed Random seed
+     */
+    public SyntheticCity(double width, long seed) {
+        this.width = width;
+        this.seed = seed;
+    }
+
+    /**
+     * @param area Area of the city in square kilometers
+     * @param seed Random seed
+     * @return City with the default parameters
+     */
+    public static SyntheticCity ofArea(double area, long seed) {
+        return new SyntheticCity(Math.sqrt(area) * 1000, seed);
+    }
+
+    /**
+     * @param blockSize Width of blocks between streets in meters
+     */
+    public void setBlockSize(double blockSize) {
+        this.blockSize = blockSize;
+        generated = false;
+    }
+
+    /**
+     * @param streetWidth Width of streets between the blocks in meters
+     */
+    public void setStreetWidth(double streetWidth) {
+        this.streetWidth = streetWidth;
+        generated = false;
+    }
+
+    /**
+     * @param parcelsPerSide Blocks are split into parcelsPerSide x parcelsPerSide parcels
+     */
+    public void setParcelsPerSide(int parcelsPerSide) {
+        this.parcelsPerSide = parcelsPerSide;
+        generated = false;
+    }
+
+    /**
+     * @param parkRatio Ratio of blocks without buildings [0-1]
+     */
+    public void setParkRatio(double parkRatio) {
+        this.parkRatio = parkRatio;
+        generated = false;
+    }
+
+    /**
+     * @param emptyParcelRatio Ratio of parcels without buildings in built blocks [0-1]
+     */
+    public void setEmptyParcelRatio(double emptyParcelRatio) {
+        this.emptyParcelRatio = emptyParcelRatio;
+        generated = false;
+    }
+
+    /**
+     * @param maxBuildingHeight Height of the highest buildings in meters, buildings are higher near the city center
+     */
+    public void setMaxBuildingHeight(double maxBuildingHeight) {
+        this.maxBuildingHeight = maxBuildingHeight;
+        generated = false;
+    }
+
+    /**
+     * @param mainRoadInterval One street every mainRoadInterval streets is a main road with a higher traffic
+     */
+    public void setMainRoadInterval(int mainRoadInterval) {
+        this.mainRoadInterval = mainRoadInterval;
+        generated = false;
+    }
+
+    /**
+     * @param demSpacing Distance between DEM points in meters, 0 for a flat city without DEM
+     */
+    public void setDemSpacing(double demSpacing) {
+        this.demSpacing = demSpacing;
+        generated = false;
+    }
+
+    /**
+     * @param demAmplitude Maximum altitude of the ground in meters
+     */
+    public void setDemAmplitude(double demAmplitude) {
+        this.demAmplitude = demAmplitude;
+        generated = false;
+    }
+
+    /**
+     * @param demMaximumError Maximum vertical error in meters of the DEM simplification done by {@link #feedMesh()},
+     *                        0 to keep all the DEM points
+     */
+    public void setDemMaximumError(double demMaximumError) {
+        this.demMaximumError = demMaximumError;
+    }
+
+    /**
+     * @param receiverSpacing Distance between receivers of the regular grid in meters, 0 for no receivers.
+     *                        Receivers inside buildings are skipped.
+     */
+    public void setReceiverSpacing(double receiverSpacing) {
+        this.receiverSpacing = receiverSpacing;
+        generated = false;
+    }
+
+    /**
+     * @param receiverHeight Receivers height relative to the ground
+     */
+    public void setReceiverHeight(double receiverHeight) {
+        this.receiverHeight = receiverHeight;
+        generated = false;
+    }
+
+    /**
+     * @param blockG Ground factor of built blocks
+     * @param parkG Ground factor of parks
+     */
+    public void setGroundFactor(double blockG, double parkG) {
+        this.blockG = blockG;
+        this.parkG = parkG;
+        generated = false;
+    }
+
+    /**
+     * @return Extent of the city
+     */
+    public Envelope getEnvelope() {
+        generate();
+        return envelope;
+    }
+
+    /**
+     * @return Building footprints
+     */
+    public List<Polygon> getBuildings() {
+        generate();
+        return buildings;
+    }
+
+    /**
+     * @return Height of buildings, in the order of {@link #getBuildings()}
+     */
+    public List<Double> getBuildingHeights() {
+        generate();
+        return buildingHeights;
+    }
+
+    /**
+     * @return Road segments between two crossroads
+     */
+    public List<Road> getRoads() {
+        generate();
+        return roads;
+    }
+
+    /**
+     * @return Ground factor of blocks and parks, streets are not covered
+     */
+    public List<GeoWithSoilType> getSoilAreas() {
+        generate();
+        return soilAreas;
+    }
+
+    /**
+     * @return DEM points, Z is the altitude
+     */
+    public List<Coordinate> getTopographicPoints() {
+        generate();
+        return topographicPoints;
+    }
+
+    /**
+     * @return Receivers, Z is the height relative to the ground
+     */
+    public List<Coordinate> getReceivers() {
+        generate();
+        return receivers;
+    }
+
+    /**
+     * @return Altitude of the ground, 0 if there is no DEM
+     */
+    public double getGroundZ(double x, double y) {
+        generate();
+        if(demSpacing <= 0) {
+            return 0;
+        }
+        // Sum of low frequency waves of 3 km, 1.5 km and 750 m, normalised into [0, demAmplitude]
+        double z = 0;
+        double amplitudeSum = 0;
+        double wavelength = 3000;
+        double amplitude = 1;
+        for(int i = 0; i < terrainPhase.length; i += 2) {
+            z += amplitude * (Math.sin(2 * Math.PI * x / wavelength + terrainPhase[i]) *
+                    Math.sin(2 * Math.PI * y / wavelength + terrainPhase[i + 1]) + 1) / 2;
+            amplitudeSum += amplitude;
+            wavelength /= 2;
+            amplitude /= 2;
+        }
+        return demAmplitude * z / amplitudeSum;
+    }
+
+    /**
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @return Building index in {@link #getBuildings()} or -1 if the location is not inside a building
+     */
+    public int getBuildingAt(double x, double y) {
+        generate();
+        double pitch = blockSize + streetWidth;
+        int blockX = (int)Math.floor(x / pitch);
+        int blockY = (int)Math.floor(y / pitch);
+        if(blockX < 0 || blockY < 0 || blockX >= blockCount || blockY >= blockCount) {
+            return -1;
+        }
+        double localX = x - blockX * pitch - streetWidth / 2;
+        double localY = y - blockY * pitch - streetWidth / 2;
+        if(localX < 0 || localY < 0 || localX >= blockSize || localY >= blockSize) {
+            return -1;
+        }
+        double parcelSize = blockSize / parcelsPerSide;
+        int parcelX = Math.min(parcelsPerSide - 1, (int)(localX / parcelSize));
+        int parcelY = Math.min(parcelsPerSide - 1, (int)(localY / parcelSize));
+        int buildingId = parcelBuilding[getParcelIndex(blockX, blockY, parcelX, parcelY)];
+        if(buildingId >= 0 && buildings.get(buildingId).getEnvelopeInternal().contains(x, y)) {
+            return buildingId;
+        }
+        return -1;
+    }
+
+    private int getParcelIndex(int blockX, int blockY, int parcelX, int parcelY) {
+        return ((blockY * blockCount + blockX) * parcelsPerSide + parcelY) * parcelsPerSide + parcelX;
+    }
+
+    private void generate() {
+        if(generated) {
+            return;
+        }
+        generated = true;
+        buildings.clear();
+        buildingHeights.clear();
+        roads.clear();
+        soilAreas.clear();
+        topographicPoints.clear();
+        receivers.clear();
+        double pitch = blockSize + streetWidth;
+        blockCount = Math.max(1, (int)(width / pitch));
+        envelope = new Envelope(0, blockCount * pitch, 0, blockCount * pitch);
+        Random demRandom = new Random(seed * 31 + DEM_SEED);
+        terrainPhase = new double[6];
+        for(int i = 0; i < terrainPhase.length; i++) {
+            terrainPhase[i] = demRandom.nextDouble() * 2 * Math.PI;
+        }
+        generateBlocks(pitch);
+        generateRoads(pitch);
+        if(demSpacing > 0) {
+            for(double y = envelope.getMinY(); y <= envelope.getMaxY(); y += demSpacing) {
+                for(double x = envelope.getMinX(); x <= envelope.getMaxX(); x += demSpacing) {
+                    // Jitter points in order to avoid co-circular points in the triangulation
+                    double px = Math.min(envelope.getMaxX(), x + demRandom.nextDouble() * demSpacing * 0.1);
+                    double py = Math.min(envelope.getMaxY(), y + demRandom.nextDouble() * demSpacing * 0.1);
+                    topographicPoints.add(new Coordinate(px, py, getGroundZ(px, py)));
+                }
+            }
+        }
+        if(receiverSpacing > 0) {
+            for(double y = receiverSpacing / 2; y < envelope.getMaxY(); y += receiverSpacing) {
+                for(double x = receiverSpacing / 2; x < envelope.getMaxX(); x += receiverSpacing) {
+                    if(getBuildingAt(x, y) == -1) {
+                        receivers.add(new Coordinate(x, y, receiverHeight));
+                    }
+                }
+            }
+        }
+    }
+
+    private void generateBlocks(double pitch) {
+        GeometryFactory factory = new GeometryFactory();
+        Random random = new Random(seed * 31 + BUILDINGS_SEED);
+        parcelBuilding = new int[blockCount * blockCount * parcelsPerSide * parcelsPerSide];
+        Arrays.fill(parcelBuilding, -1);
+        double parcelSize = blockSize / parcelsPerSide;
+        double maxDistance = envelope.getWidth() / Math.sqrt(2);
+        for(int blockY = 0; blockY < blockCount; blockY++) {
+            for(int blockX = 0; blockX < blockCount; blockX++) {
+                double minX = blockX * pitch + streetWidth / 2;
+                double minY = blockY * pitch + streetWidth / 2;
+                boolean park = random.nextDouble() < parkRatio;
+                soilAreas.add(new GeoWithSoilType(factory.toGeometry(new Envelope(minX, minX + blockSize, minY,
+                        minY + blockSize)), park ? parkG : blockG));
+                if(park) {
+                    continue;
+                }
+                double centerFactor = 1 - envelope.centre().distance(new Coordinate(minX + blockSize / 2,
+                        minY + blockSize / 2)) / maxDistance;
+                for(int parcelY = 0; parcelY < parcelsPerSide; parcelY++) {
+                    for(int parcelX = 0; parcelX < parcelsPerSide; parcelX++) {
+                        if(random.nextDouble() < emptyParcelRatio) {
+                            continue;
+                        }
+                        double maxSetback = parcelSize / 4;
+                        double x0 = minX + parcelX * parcelSize + 1 + random.nextDouble() * maxSetback;
+                        double x1 = minX + (parcelX + 1) * parcelSize - 1 - random.nextDouble() * maxSetback;
+                        double y0 = minY + parcelY * parcelSize + 1 + random.nextDouble() * maxSetback;
+                        double y1 = minY + (parcelY + 1) * parcelSize - 1 - random.nextDouble() * maxSetback;
+                        parcelBuilding[getParcelIndex(blockX, blockY, parcelX, parcelY)] = buildings.size();
+                        buildings.add(factory.createPolygon(new Coordinate[]{new Coordinate(x0, y0),
+                                new Coordinate(x1, y0), new Coordinate(x1, y1), new Coordinate(x0, y1),
+                                new Coordinate(x0, y0)}));
+                        buildingHeights.add(6 + (maxBuildingHeight - 6) * (0.3 + 0.7 * centerFactor) *
+                                (0.5 + 0.5 * random.nextDouble()));
+                    }
+                }
+            }
+        }
+    }
+
+    private void generateRoads(double pitch) {
+        GeometryFactory factory = new GeometryFactory();
+        Random random = new Random(seed * 31 + ROADS_SEED);
+        // There is no street on the city limits, the outer blocks border open land
+        for(int horizontal = 0; horizontal < 2; horizontal++) {
+            for(int street = 1; street < blockCount; street++) {
+                boolean mainRoad = street % mainRoadInterval == 0;
+                for(int i = 0; i < blockCount; i++) {
+                    Coordinate p0 = horizontal == 1 ? new Coordinate(i * pitch, street * pitch) :
+                            new Coordinate(street * pitch, i * pitch);
+                    Coordinate p1 = horizontal == 1 ? new Coordinate((i + 1) * pitch, street * pitch) :
+                            new Coordinate(street * pitch, (i + 1) * pitch);
+                    p0.z = SOURCE_HEIGHT;
+                    p1.z = SOURCE_HEIGHT;
+                    double trafficFactor = 0.5 + random.nextDouble();
+                    double lvPerHour = (mainRoad ? 1000 : 200) * trafficFactor;
+                    double hgvPerHour = (mainRoad ? 80 : 5) * trafficFactor;
+                    roads.add(new Road(factory.createLineString(new Coordinate[]{p0, p1}), mainRoad,
+                            new double[]{lvPerHour, lvPerHour * 0.6, lvPerHour * 0.15},
+                            new double[]{hgvPerHour, hgvPerHour * 0.5, hgvPerHour * 0.2}, mainRoad ? 50 : 30));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param count Number of points
+     * @param height Height of the points relative to the ground
+     * @param seed Random seed
+     * @return Random points in the city, Z is the altitude. Points can be inside buildings.
+     */
+    public Coordinate[] randomPoints(int count, double height, long seed) {
+        generate();
+        Random random = new Random(seed);
+        Coordinate[] points = new Coordinate[count];
+        for(int i = 0; i < count; i++) {
+            double x = envelope.getMinX() + random.nextDouble() * envelope.getWidth();
+            double y = envelope.getMinY() + random.nextDouble() * envelope.getHeight();
+            points[i] = new Coordinate(x, y, getGroundZ(x, y) + height);
+        }
+        return points;
+    }
+
+    /**
+     * @return Mesh builder fed with the buildings and the DEM, {@link MeshBuilder#finishPolygonFeeding(Envelope)} is
+     * not called
+     */
+    public MeshBuilder feedMesh() {
+        generate();
+        MeshBuilder mesh = new MeshBuilder();
+        for(int i = 0; i < buildings.size(); i++) {
+            mesh.addGeometry(buildings.get(i), buildingHeights.get(i));
+        }
+        if(demMaximumError > 0) {
+            mesh.setTerrainSimplifier(new TerrainSimplifier(demMaximumError));
+        }
+        for(Coordinate pt : topographicPoints) {
+            mesh.addTopographicPoint(pt);
+        }
+        return mesh;
+    }
+
+    /**
+     * Triangulate the buildings and the DEM
+     * @return Mesh builder after {@link MeshBuilder#finishPolygonFeeding(Envelope)}
+     */
+    public MeshBuilder buildMesh() throws LayerDelaunayError {
+        MeshBuilder mesh = feedMesh();
+        mesh.finishPolygonFeeding(getEnvelope());
+        return mesh;
+    }
+
+    /**
+     * @return Obstruction test of the whole city
+     */
+    public FastObstructionTest buildObstructionTest() throws LayerDelaunayError {
+        MeshBuilder mesh = buildMesh();
+        return new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(), mesh.getTriNeighbors(),
+                mesh.getVertices());
+    }
+
+    /**
+     * Add the roads, receivers and soil areas of the city. Z of sources and receivers are converted to altitude.
+     * Source and receiver primary keys are the index in {@link #getRoads()} and {@link #getReceivers()}
+     * @param data Data built on {@link #buildObstructionTest()}
+     */
+    public void feedPropagationData(PropagationProcessData data) {
+        generate();
+        GeometryFactory factory = new GeometryFactory();
+        for(int i = 0; i < roads.size(); i++) {
+            Coordinate[] coordinates = roads.get(i).getGeometry().getCoordinates();
+            Coordinate[] absolute = new Coordinate[coordinates.length];
+            for(int j = 0; j < coordinates.length; j++) {
+                absolute[j] = new Coordinate(coordinates[j].x, coordinates[j].y,
+                        getGroundZ(coordinates[j].x, coordinates[j].y) + coordinates[j].z);
+            }
+            data.addSource((long) i, factory.createLineString(absolute));
+        }
+        for(int i = 0; i < receivers.size(); i++) {
+            Coordinate receiver = receivers.get(i);
+            data.addReceiver(i, new Coordinate(receiver.x, receiver.y, getGroundZ(receiver.x, receiver.y) +
+                    receiver.z));
+        }
+        for(GeoWithSoilType soil : soilAreas) {
+            data.addSoilType(soil);
+        }
+    }
+
+    /**
+     * Create the tables {@link #BUILDINGS_TABLE}, {@link #ROADS_TABLE}, {@link #DEM_TABLE}, {@link #SOIL_TABLE} and
+     * {@link #RECEIVERS_TABLE}. Existing tables are replaced.
+     * Roads and receivers Z are relative to the ground.
+     * @param connection Active connection
+     */
+    public void createTables(Connection connection) throws SQLException, IOException {
+        generate();
+        try(Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + BUILDINGS_TABLE + ", " + ROADS_TABLE + ", " + DEM_TABLE + ", " +
+                    SOIL_TABLE + ", " + RECEIVERS_TABLE);
+            st.execute("CREATE TABLE " + BUILDINGS_TABLE + "(PK SERIAL PRIMARY KEY, THE_GEOM POLYGON, HEIGHT DOUBLE)");
+            StringBuilder roadColumns = new StringBuilder("PK SERIAL PRIMARY KEY, THE_GEOM LINESTRING, PVMT VARCHAR");
+            for(String period : PERIODS) {
+                roadColumns.append(", LV_").append(period).append(" DOUBLE, HGV_").append(period)
+                        .append(" DOUBLE, LV_SPD_").append(period).append(" DOUBLE, HGV_SPD_").append(period)
+                        .append(" DOUBLE");
+            }
+            for(String period : PERIODS) {
+                for(int freq : FREQUENCIES) {
+                    roadColumns.append(", LW").append(period).append(freq).append(" DOUBLE");
+                }
+            }
+            st.execute("CREATE TABLE " + ROADS_TABLE + "(" + roadColumns + ")");
+            st.execute("CREATE TABLE " + DEM_TABLE + "(THE_GEOM POINT)");
+            st.execute("CREATE TABLE " + SOIL_TABLE + "(THE_GEOM POLYGON, G DOUBLE)");
+            st.execute("CREATE TABLE " + RECEIVERS_TABLE + "(PK SERIAL PRIMARY KEY, THE_GEOM POINT)");
+        }
+        try(PreparedStatement ps = connection.prepareStatement("INSERT INTO " + BUILDINGS_TABLE +
+                "(THE_GEOM, HEIGHT) VALUES (?, ?)")) {
+            for(int i = 0; i < buildings.size(); i++) {
+                ps.setObject(1, buildings.get(i));
+                ps.setDouble(2, buildingHeights.get(i));
+                addBatch(ps, i);
+            }
+            ps.executeBatch();
+        }
+        int columnCount = 2 + PERIODS.length * (4 + FREQUENCIES.length);
+        StringBuilder roadInsert = new StringBuilder("INSERT INTO " + ROADS_TABLE + " VALUES (DEFAULT");
+        for(int i = 0; i < columnCount; i++) {
+            roadInsert.append(", ?");
+        }
+        roadInsert.append(")");
+        try(PreparedStatement ps = connection.prepareStatement(roadInsert.toString())) {
+            for(int i = 0; i < roads.size(); i++) {
+                Road road = roads.get(i);
+                int column = 1;
+                ps.setObject(column++, road.getGeometry());
+                ps.setString(column++, Road.ROAD_SURFACE);
+                for(int period = 0; period < PERIODS.length; period++) {
+                    ps.setDouble(column++, road.getLvPerHour()[period]);
+                    ps.setDouble(column++, road.getHgvPerHour()[period]);
+                    ps.setDouble(column++, road.getSpeed());
+                    ps.setDouble(column++, road.getSpeed());
+                }
+                for(int period = 0; period < PERIODS.length; period++) {
+                    for(double lw : road.getEmission(period)) {
+                        ps.setDouble(column++, lw);
+                    }
+                }
+                addBatch(ps, i);
+            }
+            ps.executeBatch();
+        }
+        try(PreparedStatement ps = connection.prepareStatement("INSERT INTO " + DEM_TABLE + " VALUES (?)")) {
+            GeometryFactory factory = new GeometryFactory();
+            for(int i = 0; i < topographicPoints.size(); i++) {
+                ps.setObject(1, factory.createPoint(topographicPoints.get(i)));
+                addBatch(ps, i);
+            }
+            ps.executeBatch();
+        }
+        try(PreparedStatement ps = connection.prepareStatement("INSERT INTO " + SOIL_TABLE + " VALUES (?, ?)")) {
+            for(int i = 0; i < soilAreas.size(); i++) {
+                ps.setObject(1, soilAreas.get(i).getGeo());
+                ps.setDouble(2, soilAreas.get(i).getType());
+                addBatch(ps, i);
+            }
+            ps.executeBatch();
+        }
+        try(PreparedStatement ps = connection.prepareStatement("INSERT INTO " + RECEIVERS_TABLE +
+                "(THE_GEOM) VALUES (?)")) {
+            GeometryFactory factory = new GeometryFactory();
+            for(int i = 0; i < receivers.size(); i++) {
+                ps.setObject(1, factory.createPoint(receivers.get(i)));
+                addBatch(ps, i);
+            }
+            ps.executeBatch();
+        }
+        try(Statement st = connection.createStatement()) {
+            for(String table : new String[]{BUILDINGS_TABLE, ROADS_TABLE, DEM_TABLE, SOIL_TABLE, RECEIVERS_TABLE}) {
+                st.execute("CREATE SPATIAL INDEX ON " + table + "(THE_GEOM)");
+            }
+        }
+    }
+
+    private static void addBatch(PreparedStatement ps, int index) throws SQLException {
+        ps.addBatch();
+        if(index % 1000 == 999) {
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Road segment with its traffic
+     */
+    public static final class Road {
+        public static final String ROAD_SURFACE = "NL05";
+        private final LineString geometry;
+        private final boolean mainRoad;
+        private final double[] lvPerHour;
+        private final double[] hgvPerHour;
+        private final double speed;
+
+        public Road(LineString geometry, boolean mainRoad, double[] lvPerHour, double[] hgvPerHour, double speed) {
+            this.geometry = geometry;
+            this.mainRoad = mainRoad;
+            this.lvPerHour = lvPerHour;
+            this.hgvPerHour = hgvPerHour;
+            this.speed = speed;
+        }
+
+        /**
+         * @return Road geometry, Z is the source height relative to the ground
+         */
+        public LineString getGeometry() {
+            return geometry;
+        }
+
+        public boolean isMainRoad() {
+            return mainRoad;
+        }
+
+        /**
+         * @return Light vehicles per hour for each period of {@link #PERIODS}
+         */
+        public double[] getLvPerHour() {
+            return lvPerHour;
+        }
+
+        /**
+         * @return Heavy vehicles per hour for each period of {@link #PERIODS}
+         */
+        public double[] getHgvPerHour() {
+            return hgvPerHour;
+        }
+
+        /**
+         * @return Speed of all vehicles in km/h
+         */
+        public double getSpeed() {
+            return speed;
+        }
+
+        /**
+         * @param period Period index in {@link #PERIODS}
+         * @return Emission in dB per meter for each frequency of {@link #FREQUENCIES}
+         */
+        public double[] getEmission(int period) throws IOException {
+            double[] lw = new double[FREQUENCIES.length];
+            for(int i = 0; i < FREQUENCIES.length; i++) {
+                RSParametersCnossos parameters = new RSParametersCnossos(speed, 0, speed, 0, 0,
+                        lvPerHour[period], 0, hgvPerHour[period], 0, 0, FREQUENCIES[i], 20, ROAD_SURFACE,
+                        0, 0, 100, 2);
+                parameters.setCoeffVer(2);
+                lw[i] = EvaluateRoadSourceCnossos.evaluate(parameters);
+            }
+            return lw;
+        }
+    }
+}
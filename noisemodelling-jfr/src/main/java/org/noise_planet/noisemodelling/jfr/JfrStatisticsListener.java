@@ -0,0 +1,157 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import org.noise_planet.noisemodelling.pathfinder.IPathFinderStatisticsListener;
+import org.noise_planet.noisemodelling.pathfinder.PathFinderStatistics;
+
+/**
+ * Commit the statistics of the path finder as Java Flight Recorder events, one event by phase and by cell, and one
+ * event with the counters of the cell.
+ * The events are recorded when a flight recording is running with the events {@value PhaseEvent#NAME} and
+ * {@value CounterEvent#NAME} enabled. Check {@link #isAvailable()} before creating an instance, the JFR API is not
+ * provided by all Java 8 runtimes.
+ */
+public class JfrStatisticsListener implements IPathFinderStatisticsListener {
+
+    /**
+     * @return True if the runtime provides the JFR API
+     */
+    public static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, JfrStatisticsListener.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    @Override
+    public void cellStatistics(int cellId, PathFinderStatistics statistics) {
+        for (PathFinderStatistics.Phase phase : PathFinderStatistics.Phase.values()) {
+            PhaseEvent event = new PhaseEvent();
+            if (event.isEnabled()) {
+                event.cellId = cellId;
+                event.phase = phase.name();
+                event.time = statistics.getTime(phase);
+                event.count = statistics.getCount(phase);
+                event.commit();
+            }
+        }
+        CounterEvent event = new CounterEvent();
+        if (event.isEnabled()) {
+            event.cellId = cellId;
+            event.receivers = statistics.getCounter(PathFinderStatistics.Counter.RECEIVERS);
+            event.sourceReceiverPairs = statistics.getCounter(PathFinderStatistics.Counter.SOURCE_RECEIVER_PAIRS);
+            event.obstructionTests = statistics.getCounter(PathFinderStatistics.Counter.OBSTRUCTION_TESTS);
+            event.walkedTriangles = statistics.getCounter(PathFinderStatistics.Counter.WALKED_TRIANGLES);
+            event.imageReceivers = statistics.getCounter(PathFinderStatistics.Counter.IMAGE_RECEIVERS);
+            event.reflectionPaths = statistics.getCounter(PathFinderStatistics.Counter.REFLECTION_PATHS);
+            event.horizontalDiffractionPaths =
+                    statistics.getCounter(PathFinderStatistics.Counter.HORIZONTAL_DIFFRACTION_PATHS);
+            event.verticalDiffractionPaths =
+                    statistics.getCounter(PathFinderStatistics.Counter.VERTICAL_DIFFRACTION_PATHS);
+            event.commit();
+        }
+    }
+
+    @Name(PhaseEvent.NAME)
+    @Label("Path Finder Phase")
+    @Description("Time spent by the workers of a cell in a phase of the path finder")
+    @Category("NoiseModelling")
+    @StackTrace(false)
+    static class PhaseEvent extends Event {
+        static final String NAME = "org.noise_planet.noisemodelling.PathFinderPhase";
+
+        @Label("Cell")
+        int cellId;
+
+        @Label("Phase")
+        String phase;
+
+        @Label("Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long time;
+
+        @Label("Count")
+        long count;
+    }
+
+    /**
+     * Fields of {@link PathFinderStatistics.Counter}
+     */
+    @Name(CounterEvent.NAME)
+    @Label("Path Finder Counters")
+    @Description("Items processed by the workers of a cell")
+    @Category("NoiseModelling")
+    @StackTrace(false)
+    static class CounterEvent extends Event {
+        static final String NAME = "org.noise_planet.noisemodelling.PathFinderCounters";
+
+        @Label("Cell")
+        int cellId;
+
+        @Label("Receivers")
+        long receivers;
+
+        @Label("Source Receiver Pairs")
+        long sourceReceiverPairs;
+
+        @Label("Obstruction Tests")
+        long obstructionTests;
+
+        @Label("Walked Triangles")
+        @Description("Triangles visited by the walks of the obstruction tests")
+        long walkedTriangles;
+
+        @Label("Image Receivers")
+        long imageReceivers;
+
+        @Label("Reflection Paths")
+        long reflectionPaths;
+
+        @Label("Horizontal Diffraction Paths")
+        long horizontalDiffractionPaths;
+
+        @Label("Vertical Diffraction Paths")
+        long verticalDiffractionPaths;
+    }
+}
@@ -0,0 +1,85 @@
+package org.noise_planet.noisemodelling.jfr;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assume;
+import org.junit.Test;
+import org.noise_planet.noisemodelling.pathfinder.PathFinderStatistics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestJfrStatisticsListener {
+
+    @Test
+    public void testEvents() throws IOException {
+        Assume.assumeTrue("JFR is not available", JfrStatisticsListener.isAvailable() &&
+                FlightRecorder.isAvailable());
+        PathFinderStatistics statistics = new PathFinderStatistics();
+        for (PathFinderStatistics.Phase phase : PathFinderStatistics.Phase.values()) {
+            for (int i = 0; i <= phase.ordinal(); i++) {
+                statistics.addTime(phase, System.nanoTime() - 1000);
+            }
+        }
+        for (PathFinderStatistics.Counter counter : PathFinderStatistics.Counter.values()) {
+            statistics.increment(counter, counter.ordinal() + 1);
+        }
+        File dump = File.createTempFile("pathfinder", ".jfr");
+        try {
+            try (Recording recording = new Recording()) {
+                recording.enable(JfrStatisticsListener.PhaseEvent.NAME);
+                recording.enable(JfrStatisticsListener.CounterEvent.NAME);
+                recording.start();
+                new JfrStatisticsListener().cellStatistics(7, statistics);
+                recording.stop();
+                recording.dump(dump.toPath());
+            }
+            List<RecordedEvent> events = RecordingFile.readAllEvents(dump.toPath());
+            Set<PathFinderStatistics.Phase> phases = EnumSet.noneOf(PathFinderStatistics.Phase.class);
+            int counterEvents = 0;
+            for (RecordedEvent event : events) {
+                if (JfrStatisticsListener.CounterEvent.NAME.equals(event.getEventType().getName())) {
+                    counterEvents++;
+                    assertEquals(7, event.getInt("cellId"));
+                    assertEquals(statistics.getCounter(PathFinderStatistics.Counter.RECEIVERS),
+                            event.getLong("receivers"));
+                    assertEquals(statistics.getCounter(PathFinderStatistics.Counter.SOURCE_RECEIVER_PAIRS),
+                            event.getLong("sourceReceiverPairs"));
+                    assertEquals(statistics.getCounter(PathFinderStatistics.Counter.OBSTRUCTION_TESTS),
+                            event.getLong("obstructionTests"));
+                    assertEquals(statistics.getCounter(PathFinderStatistics.Counter.WALKED_TRIANGLES),
+                            event.getLong("walkedTriangles"));
+                    assertEquals(statistics.getCounter(PathFinderStatistics.Counter.IMAGE_RECEIVERS),
+                            event.getLong("imageReceivers"));
+                    assertEquals(statistics.getCounter(PathFinderStatistics.Counter.REFLECTION_PATHS),
+                            event.getLong("reflectionPaths"));
+                    assertEquals(statistics.getCounter(PathFinderStatistics.Counter.HORIZONTAL_DIFFRACTION_PATHS),
+                            event.getLong("horizontalDiffractionPaths"));
+                    assertEquals(statistics.getCounter(PathFinderStatistics.Counter.VERTICAL_DIFFRACTION_PATHS),
+                            event.getLong("verticalDiffractionPaths"));
+                    continue;
+                }
+                if (!JfrStatisticsListener.PhaseEvent.NAME.equals(event.getEventType().getName())) {
+                    continue;
+                }
+                PathFinderStatistics.Phase phase = PathFinderStatistics.Phase.valueOf(event.getString("phase"));
+                assertTrue(phase.name(), phases.add(phase));
+                assertEquals(7, event.getInt("cellId"));
+                assertEquals(statistics.getCount(phase), event.getLong("count"));
+                assertEquals(statistics.getTime(phase), event.getDuration("time").toNanos());
+            }
+            assertEquals(EnumSet.allOf(PathFinderStatistics.Phase.class), phases);
+            assertEquals(1, counterEvents);
+        } finally {
+            assertTrue(dump.delete());
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Triangulation stored in flat primitive arrays. Triangle i is made of the vertices
+ * {@code triangleVertices[3i..3i+2]}, the neighbor across the side opposite to the vertex k is
+ * {@code triangleNeighbors[3i+k]} (-1 if none, same side convention than {@link Triangle#getSegment(int)}),
+ * and the vertex j coordinates are {@code vertices[3j..3j+2]}.
+ * Instances are immutable and can be shared between threads.
+ */
+public class CompactMesh {
+    private final int[] triangleVertices;
+    private final int[] triangleNeighbors;
+    private final int[] triangleAttributes;
+    private final double[] vertices;
+
+    /**
+     * @param triangleVertices   Vertex indices, 3 per triangle
+     * @param triangleNeighbors  Neighbor triangle indices, 3 per triangle. If null, they are computed from the shared
+     *                           sides.
+     * @param triangleAttributes Building identifier [1-n] of each triangle, 0 if the triangle is not in a building
+     * @param vertices           Vertex coordinates x,y,z
+     */
+    public CompactMesh(int[] triangleVertices, int[] triangleNeighbors, int[] triangleAttributes, double[] vertices) {
+        if (triangleVertices.length % 3 != 0 || vertices.length % 3 != 0 ||
+                triangleAttributes.length * 3 != triangleVertices.length) {
+            throw new IllegalArgumentException("Inconsistent mesh array sizes");
+        }
+        this.triangleVertices = triangleVertices;
+        this.triangleAttributes = triangleAttributes;
+        this.vertices = vertices;
+        if (triangleNeighbors == null) {
+            this.triangleNeighbors = computeNeighbors(triangleVertices);
+        } else {
+            if (triangleNeighbors.length != triangleVertices.length) {
+                throw new IllegalArgumentException("Inconsistent mesh array sizes");
+            }
+            this.triangleNeighbors = triangleNeighbors;
+        }
+    }
+
+    /**
+     * Copy the output of {@link MeshBuilder} into a compact mesh
+     * @param triangles    Triangles with building identifier as attribute
+     * @param triNeighbors Neighbors of triangles, may be null
+     * @param points       Vertices
+     * @return Compact mesh
+     */
+    public static CompactMesh fromLists(List<Triangle> triangles, List<Triangle> triNeighbors, List<Coordinate> points) {
+        int[] triangleVertices = new int[triangles.size() * 3];
+        int[] triangleAttributes = new int[triangles.size()];
+        for (int i = 0; i < triangles.size(); i++) {
+            Triangle triangle = triangles.get(i);
+            triangleVertices[i * 3] = triangle.getA();
+            triangleVertices[i * 3 + 1] = triangle.getB();
+            triangleVertices[i * 3 + 2] = triangle.getC();
+            triangleAttributes[i] = triangle.getAttribute();
+        }
+        int[] triangleNeighbors = null;
+        if (triNeighbors != null) {
+            triangleNeighbors = new int[triNeighbors.size() * 3];
+            for (int i = 0; i < triNeighbors.size(); i++) {
+                Triangle neighbors = triNeighbors.get(i);
+                triangleNeighbors[i * 3] = neighbors.getA();
+                triangleNeighbors[i * 3 + 1] = neighbors.getB();
+                triangleNeighbors[i * 3 + 2] = neighbors.getC();
+            }
+        }
+        double[] vertices = new double[points.size() * 3];
+        for (int i = 0; i < points.size(); i++) {
+            Coordinate p = points.get(i);
+            vertices[i * 3] = p.x;
+            vertices[i * 3 + 1] = p.y;
+            vertices[i * 3 + 2] = p.z;
+        }
+        return new CompactMesh(triangleVertices, triangleNeighbors, triangleAttributes, vertices);
+    }
+
+    /**
+     * Link triangles that share a side
+     * @param triangleVertices Vertex indices, 3 per triangle
+     * @return Neighbor triangle indices, 3 per triangle
+     */
+    private static int[] computeNeighbors(int[] triangleVertices) {
+        int[] neighbors = new int[triangleVertices.length];
+        Map<Long, Integer> openSides = new HashMap<>(triangleVertices.length);
+        for (int tri = 0; tri < triangleVertices.length / 3; tri++) {
+            for (int side = 0; side < 3; side++) {
+                neighbors[tri * 3 + side] = -1;
+                int a = triangleVertices[tri * 3 + (side + 1) % 3];
+                int b = triangleVertices[tri * 3 + (side + 2) % 3];
+                long key = ((long) Math.min(a, b) << 32) | Math.max(a, b);
+                Integer other = openSides.remove(key);
+                if (other == null) {
+                    openSides.put(key, tri * 3 + side);
+                } else {
+                    neighbors[tri * 3 + side] = other / 3;
+                    neighbors[other] = tri;
+                }
+            }
+        }
+        return neighbors;
+    }
+
+    public int getTriangleCount() {
+        return triangleAttributes.length;
+    }
+
+    public int getVertexCount() {
+        return vertices.length / 3;
+    }
+
+    /**
+     * @param triangle Triangle index
+     * @param corner   Corner [0-2]
+     * @return Vertex index
+     */
+    public int getVertexIndex(int triangle, int corner) {
+        return triangleVertices[triangle * 3 + corner];
+    }
+
+    /**
+     * @param triangle Triangle index
+     * @param side     Side index, the side opposite to the corner of the same index
+     * @return Neighbor triangle index or -1 if the side is on the mesh boundary
+     */
+    public int getNeighbor(int triangle, int side) {
+        return triangleNeighbors[triangle * 3 + side];
+    }
+
+    /**
+     * @param triangle Triangle index
+     * @return Building identifier [1-n], 0 if not in a building
+     */
+    public int getAttribute(int triangle) {
+        return triangleAttributes[triangle];
+    }
+
+    public double getX(int vertex) {
+        return vertices[vertex * 3];
+    }
+
+    public double getY(int vertex) {
+        return vertices[vertex * 3 + 1];
+    }
+
+    public double getZ(int vertex) {
+        return vertices[vertex * 3 + 2];
+    }
+
+    /**
+     * @param vertex Vertex index
+     * @return New coordinate instance of the vertex
+     */
+    public Coordinate getVertex(int vertex) {
+        return new Coordinate(vertices[vertex * 3], vertices[vertex * 3 + 1], vertices[vertex * 3 + 2]);
+    }
+
+    /**
+     * Barycentric error of a point relative to a triangle
+     * @param triangle Triangle index
+     * @param x        X coordinate of the point
+     * @param y        Y coordinate of the point
+     * @return 0 if the point is inside the triangle, greater than 0 otherwise, growing with the distance
+     */
+    public double getBarycentricError(int triangle, double x, double y) {
+        return getBarycentricError(triangle, x, y, 0);
+    }
+
+    /**
+     * @param triangle  Triangle index
+     * @param x         X coordinate of the point
+     * @param y         Y coordinate of the point
+     * @param tolerance Tolerance on the barycentric coordinates
+     * @return 0 if the point is inside the triangle expanded by the tolerance, greater than 0 otherwise
+     */
+    public double getBarycentricError(int triangle, double x, double y, double tolerance) {
+        int a = triangleVertices[triangle * 3] * 3;
+        int b = triangleVertices[triangle * 3 + 1] * 3;
+        int c = triangleVertices[triangle * 3 + 2] * 3;
+        double ax = vertices[a];
+        double ay = vertices[a + 1];
+        double v0x = vertices[c] - ax;
+        double v0y = vertices[c + 1] - ay;
+        double v1x = vertices[b] - ax;
+        double v1y = vertices[b + 1] - ay;
+        double v2x = x - ax;
+        double v2y = y - ay;
+        double dot00 = v0x * v0x + v0y * v0y;
+        double dot01 = v0x * v1x + v0y * v1y;
+        double dot02 = v0x * v2x + v0y * v2y;
+        double dot11 = v1x * v1x + v1y * v1y;
+        double dot12 = v1x * v2x + v1y * v2y;
+        double invDenom = 1 / (dot00 * dot11 - dot01 * dot01);
+        double u = (dot11 * dot02 - dot01 * dot12) * invDenom;
+        double v = (dot00 * dot12 - dot01 * dot02) * invDenom;
+        return Math.max(0, -u - tolerance) + Math.max(0, -v - tolerance) + Math.max(0, (u + v) - 1 - tolerance);
+    }
+
+    /**
+     * @return Bounding box of the vertices
+     */
+    public Envelope getEnvelope() {
+        Envelope envelope = new Envelope();
+        for (int i = 0; i < vertices.length; i += 3) {
+            envelope.expandToInclude(vertices[i], vertices[i + 1]);
+        }
+        return envelope;
+    }
+
+    /**
+     * @return Triangles as objects, debug and serialisation purpose
+     */
+    public List<Triangle> getTriangles() {
+        List<Triangle> triangles = new ArrayList<>(getTriangleCount());
+        for (int i = 0; i < getTriangleCount(); i++) {
+            triangles.add(new Triangle(triangleVertices[i * 3], triangleVertices[i * 3 + 1],
+                    triangleVertices[i * 3 + 2], triangleAttributes[i]));
+        }
+        return triangles;
+    }
+
+    /**
+     * @return Triangles neighbors as objects, debug and serialisation purpose
+     */
+    public List<Triangle> getTriNeighbors() {
+        List<Triangle> triangles = new ArrayList<>(getTriangleCount());
+        for (int i = 0; i < getTriangleCount(); i++) {
+            triangles.add(new Triangle(triangleNeighbors[i * 3], triangleNeighbors[i * 3 + 1],
+                    triangleNeighbors[i * 3 + 2]));
+        }
+        return triangles;
+    }
+
+    /**
+     * @return Vertices as objects, debug and serialisation purpose
+     */
+    public List<Coordinate> getVertices() {
+        List<Coordinate> coordinates = new ArrayList<>(getVertexCount());
+        for (int i = 0; i < getVertexCount(); i++) {
+            coordinates.add(getVertex(i));
+        }
+        return coordinates;
+    }
+}
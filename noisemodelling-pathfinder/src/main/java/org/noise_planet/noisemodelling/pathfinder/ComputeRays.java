@@ -40,18 +40,22 @@ import org.h2gis.utilities.jts_utils.CoordinateUtils;
 import org.locationtech.jts.algorithm.*;
 import org.locationtech.jts.geom.*;
 import org.locationtech.jts.geom.impl.CoordinateArraySequence;
+import org.locationtech.jts.index.ItemVisitor;
 import org.locationtech.jts.index.strtree.STRtree;
 import org.locationtech.jts.math.Vector2D;
 import org.locationtech.jts.math.Vector3D;
 import org.locationtech.jts.triangulate.quadedge.Vertex;
+import org.noise_planet.noisemodelling.pathfinder.utils.IntList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-
-import static org.noise_planet.noisemodelling.pathfinder.utils.AcousticPropagation.getADiv;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -63,10 +67,27 @@ public class ComputeRays {
     // because 20 * LOG10(4) = 12 dB, so small contribution in comparison with diffraction on horizontal edge
     // in order to reduce computational cost
     private final static double MAX_RATIO_HULL_DIRECT_PATH = 4;
+    // Number of chunks per worker when the chunk size is computed automatically in work stealing mode
+    private final static int WORK_STEALING_CHUNKS_PER_THREAD = 16;
+    // Work stealing pools shared by all the instances, by parallelism. The idle workers of a pool are released by
+    // the pool itself
+    private final static Map<Integer, ForkJoinPool> WORK_STEALING_POOLS = new ConcurrentHashMap<>();
+    // Relative margin applied to the distance bounds of line sources, covers the rounding errors
+    private final static double BOUND_MARGIN = 1e-9;
+    // Returned when a source-receiver pair has no propagation path
+    private final static double[] NO_POWER = new double[0];
     private int threadCount;
     private PropagationProcessData data;
+    private boolean workStealing = false;
+    private int workStealingChunkSize = 0;
+    private final Map<String, AtomicLong> workerBusyTime = new ConcurrentHashMap<>();
+    /** Statistics of the workers, merged when a worker is done */
+    private final PathFinderStatistics statistics = new PathFinderStatistics();
+    private IPathFinderStatisticsListener statisticsListener;
 
     private STRtree rTreeOfGeoSoil;
+    /** Rasterised soil areas, used instead of rTreeOfGeoSoil if set */
+    private SoilGrid soilGrid;
     private final static Logger LOGGER = LoggerFactory.getLogger(ComputeRays.class);
 
     /**
@@ -174,6 +195,101 @@ public class ComputeRays {
         this.threadCount = threadCount;
     }
 
+    /**
+     * @return True if receivers are dispatched to a fork-join pool using small stolen chunks
+     */
+    public boolean isWorkStealing() {
+        return workStealing;
+    }
+
+    /**
+     * @param workStealing If true, receivers are split into small chunks processed by a fork-join pool. Idle workers
+     *                     steal the remaining chunks of busy workers instead of waiting for the slowest contiguous
+     *                     receiver range. If false, receivers are split into threadCount ranges.
+     */
+    public void setWorkStealing(boolean workStealing) {
+        this.workStealing = workStealing;
+    }
+
+    /**
+     * @return Maximum number of receivers computed by a single work stealing task. 0 if computed automatically.
+     */
+    public int getWorkStealingChunkSize() {
+        return workStealingChunkSize;
+    }
+
+    /**
+     * @param workStealingChunkSize Maximum number of receivers computed by a single work stealing task.
+     *                              0 to derive it from the receiver count and the thread count.
+     */
+    public void setWorkStealingChunkSize(int workStealingChunkSize) {
+        this.workStealingChunkSize = workStealingChunkSize;
+    }
+
+    /**
+     * @return Time spent computing receivers by each worker thread name, in nanoseconds, since the last call of
+     * {@link #run(IComputeRaysOut)}
+     */
+    public Map<String, Long> getWorkerBusyTime() {
+        Map<String, Long> busyTime = new HashMap<>(workerBusyTime.size());
+        for (Map.Entry<String, AtomicLong> entry : workerBusyTime.entrySet()) {
+            busyTime.put(entry.getKey(), entry.getValue().get());
+        }
+        return busyTime;
+    }
+
+    private void addWorkerBusyTime(long nanoseconds) {
+        String worker = Thread.currentThread().getName();
+        AtomicLong counter = workerBusyTime.get(worker);
+        if (counter == null) {
+            AtomicLong newCounter = new AtomicLong();
+            counter = workerBusyTime.putIfAbsent(worker, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        counter.addAndGet(nanoseconds);
+    }
+
+    /**
+     * @return Copy of the statistics of the path finder phases since the last call of {@link #run(IComputeRaysOut)}
+     */
+    public PathFinderStatistics getStatistics() {
+        PathFinderStatistics copy = new PathFinderStatistics();
+        synchronized (statistics) {
+            copy.merge(statistics);
+        }
+        return copy;
+    }
+
+    private void addStatistics(PathFinderStatistics workerStatistics) {
+        synchronized (statistics) {
+            statistics.merge(workerStatistics);
+        }
+    }
+
+    public IPathFinderStatisticsListener getStatisticsListener() {
+        return statisticsListener;
+    }
+
+    /**
+     * @param statisticsListener Notified with the statistics of the path finder phases at the end of
+     *                           {@link #run(IComputeRaysOut)}, may be null
+     */
+    public void setStatisticsListener(IPathFinderStatisticsListener statisticsListener) {
+        this.statisticsListener = statisticsListener;
+    }
+
+    private void notifyStatistics(IComputeRaysOut computeRaysOut) {
+        PathFinderStatistics cellStatistics = getStatistics();
+        if (statisticsListener != null) {
+            statisticsListener.cellStatistics(data.cellId, cellStatistics);
+        }
+        if (computeRaysOut instanceof IPathFinderStatisticsListener && computeRaysOut != statisticsListener) {
+            ((IPathFinderStatisticsListener) computeRaysOut).cellStatistics(data.cellId, cellStatistics);
+        }
+    }
+
     /**
      * Update ground Z coordinates of sound sources absolute to sea levels
      */
@@ -321,7 +437,19 @@ public class ComputeRays {
     }
 
     public void computeReflexionOverBuildings(Coordinate p0, Coordinate p1, List<PointPath> points, List<SegmentPath> segments, List<SegmentPath> srPath) {
-        List<PropagationPath> propagationPaths = directPath(p0, p1, data.isComputeVerticalDiffraction(), false);
+        WorkerContext context = new WorkerContext();
+        computeReflexionOverBuildings(p0, p1, points, segments, srPath, context);
+        addStatistics(context.getStatistics());
+    }
+
+    /**
+     * @param context Reusable collections and buffers of the calling thread
+     */
+    public void computeReflexionOverBuildings(Coordinate p0, Coordinate p1, List<PointPath> points,
+                                              List<SegmentPath> segments, List<SegmentPath> srPath,
+                                              WorkerContext context) {
+        List<PropagationPath> propagationPaths = directPath(p0, p1, data.isComputeVerticalDiffraction(), false,
+                context, null);
         if (!propagationPaths.isEmpty()) {
             PropagationPath propagationPath = propagationPaths.get(0);
             points.addAll(propagationPath.getPointList());
@@ -349,20 +477,72 @@ public class ComputeRays {
 
     public List<PropagationPath> computeReflexion(Coordinate receiverCoord,
                                                   Coordinate srcCoord, boolean favorable, List<FastObstructionTest.Wall> nearBuildingsWalls) {
+        WorkerContext context = new WorkerContext();
+        List<PropagationPath> propagationPaths = computeReflexion(receiverCoord, srcCoord, favorable,
+                nearBuildingsWalls, context);
+        addStatistics(context.getStatistics());
+        return propagationPaths;
+    }
+
+    /**
+     * @param context Reusable collections and buffers of the calling thread
+     */
+    public List<PropagationPath> computeReflexion(Coordinate receiverCoord, Coordinate srcCoord, boolean favorable,
+                                                   List<FastObstructionTest.Wall> nearBuildingsWalls,
+                                                   WorkerContext context) {
 //                for(FastObstructionTest.Wall wall : nearBuildingsWalls) {
 //                    System.out.println(String.format(Locale.ROOT, "walls.add(new FastObstructionTest.Wall(new Coordinate(%.2f,%.2f), new Coordinate(%.2f,%.2f) , %d));", wall.p0.x, wall.p0.y, wall.p1.x, wall.p1.y, wall.getBuildingId()));
 //                }
         // Compute receiver mirror
+        long start = System.nanoTime();
         LineSegment srcReceiver = new LineSegment(srcCoord, receiverCoord);
-        LineIntersector linters = new RobustLineIntersector();
+        MirrorReceiverTree mirroredReceivers = new MirrorReceiverTree(receiverCoord, nearBuildingsWalls,
+                srcReceiver, Integer.MAX_VALUE, data.reflexionOrder, data.maxSrcDist);
+        context.statistics.addTime(PathFinderStatistics.Phase.MIRROR_ENUMERATION, start);
+        return computeReflexion(receiverCoord, srcCoord, favorable, nearBuildingsWalls, mirroredReceivers, context);
+    }
 
-        List<PropagationPath> reflexionPropagationPaths = new ArrayList<>();
+    /**
+     * Compute reflection paths from the provided image receivers
+     * @param receiverCoord      Receiver position
+     * @param srcCoord           Source position
+     * @param favorable          Favorable propagation conditions
+     * @param nearBuildingsWalls Walls, {@link MirrorReceiverResult#getWallId()} is an index of this list
+     * @param mirroredReceivers  Image receivers to validate
+     * @return Reflection propagation paths
+     */
+    public List<PropagationPath> computeReflexion(Coordinate receiverCoord, Coordinate srcCoord, boolean favorable,
+                                                  List<FastObstructionTest.Wall> nearBuildingsWalls,
+                                                  Iterable<MirrorReceiverResult> mirroredReceivers) {
+        WorkerContext context = new WorkerContext();
+        List<PropagationPath> propagationPaths = computeReflexion(receiverCoord, srcCoord, favorable,
+                nearBuildingsWalls, mirroredReceivers, context);
+        addStatistics(context.getStatistics());
+        return propagationPaths;
+    }
 
+    /**
+     * Compute reflection paths from the provided image receivers
+     * @param receiverCoord      Receiver position
+     * @param srcCoord           Source position
+     * @param favorable          Favorable propagation conditions
+     * @param nearBuildingsWalls Walls, {@link MirrorReceiverResult#getWallId()} is an index of this list
+     * @param mirroredReceivers  Image receivers to validate
+     * @param context            Reusable collections and buffers of the calling thread
+     * @return Reflection propagation paths
+     */
+    public List<PropagationPath> computeReflexion(Coordinate receiverCoord, Coordinate srcCoord, boolean favorable,
+                                                   List<FastObstructionTest.Wall> nearBuildingsWalls,
+                                                   Iterable<MirrorReceiverResult> mirroredReceivers,
+                                                   WorkerContext context) {
+        LineIntersector linters = context.lineIntersector;
+        long start = System.nanoTime();
+        long imageReceiverCount = 0;
 
-        MirrorReceiverIterator.It mirroredReceivers = new MirrorReceiverIterator.It(receiverCoord, nearBuildingsWalls,
-                srcReceiver, Integer.MAX_VALUE, data.reflexionOrder, data.maxSrcDist);
+        List<PropagationPath> reflexionPropagationPaths = new ArrayList<>();
 
         for (MirrorReceiverResult receiverReflection : mirroredReceivers) {
+            imageReceiverCount++;
             // Print wall reflections
             //System.out.println(Arrays.toString(asWallArray(receiverReflection)));
             List<MirrorReceiverResult> rayPath = new ArrayList<>(data.reflexionOrder + 2);
@@ -456,7 +636,8 @@ public class ComputeRays {
                 List<SegmentPath> segments = new ArrayList<SegmentPath>();
                 List<SegmentPath> srPath = new ArrayList<SegmentPath>();
                 // Compute direct path between source and first reflection point, add profile to the data
-                computeReflexionOverBuildings(srcCoord, rayPath.get(0).getReceiverPos(), points, segments, srPath);
+                computeReflexionOverBuildings(srcCoord, rayPath.get(0).getReceiverPos(), points, segments, srPath,
+                        context.getNestedContext());
                 if (points.isEmpty()) {
                     continue;
                 }
@@ -474,7 +655,8 @@ public class ComputeRays {
                 }
                 // Compute direct path between receiver and last reflection point, add profile to the data
                 List<PointPath> lastPts = new ArrayList<>();
-                computeReflexionOverBuildings(rayPath.get(rayPath.size() - 1).getReceiverPos(), receiverCoord, lastPts, segments, srPath);
+                computeReflexionOverBuildings(rayPath.get(rayPath.size() - 1).getReceiverPos(), receiverCoord, lastPts,
+                        segments, srPath, context.getNestedContext());
                 if (lastPts.isEmpty()) {
                     continue;
                 }
@@ -504,6 +686,9 @@ public class ComputeRays {
                 }
             }
         }
+        context.statistics.increment(PathFinderStatistics.Counter.IMAGE_RECEIVERS, imageReceiverCount);
+        context.statistics.increment(PathFinderStatistics.Counter.REFLECTION_PATHS, reflexionPropagationPaths.size());
+        context.statistics.addTime(PathFinderStatistics.Phase.REFLECTION, start);
         return reflexionPropagationPaths;
     }
 
@@ -521,89 +706,163 @@ public class ComputeRays {
      */
     public PropagationPath computeFreefield(Coordinate receiverCoord,
                                             Coordinate srcCoord, List<TriIdWithIntersection> inters) {
+        WorkerContext context = new WorkerContext();
+        PropagationPath propagationPath = computeFreefield(receiverCoord, srcCoord, inters, context);
+        addStatistics(context.getStatistics());
+        return propagationPath;
+    }
 
-        GeometryFactory factory = new GeometryFactory();
-        List<PointPath> points = new ArrayList<PointPath>();
-        List<SegmentPath> segments = new ArrayList<SegmentPath>();
+    /**
+     * @param receiverCoord
+     * @param srcCoord
+     * @param inters        PropagationPath between srcCoord and receiverCoord (or null if must be computed here)
+     * @param context       Reusable collections and buffers of the calling thread
+     */
+    public PropagationPath computeFreefield(Coordinate receiverCoord, Coordinate srcCoord,
+                                            List<TriIdWithIntersection> inters, WorkerContext context) {
+        if (inters == null) {
+            FastObstructionTest.WalkContext walkContext = context.getWalkContext();
+            long visitedTriangles = walkContext.getVisitedTriangleCount();
+            data.freeFieldFinder.computePropagationPath(srcCoord, receiverCoord, false, walkContext, true, true);
+            context.statistics.increment(PathFinderStatistics.Counter.OBSTRUCTION_TESTS, 1);
+            context.statistics.increment(PathFinderStatistics.Counter.WALKED_TRIANGLES,
+                    walkContext.getVisitedTriangleCount() - visitedTriangles);
+            context.setGroundProfile(data.freeFieldFinder, walkContext);
+        } else {
+            context.setGroundProfile(data.freeFieldFinder.getGroundProfile(inters));
+        }
+        return computeFreefieldFromProfile(receiverCoord, srcCoord, context);
+    }
+
+    /**
+     * @param receiverCoord
+     * @param srcCoord
+     * @param context       Worker context with the ground profile between srcCoord and receiverCoord
+     */
+    private PropagationPath computeFreefieldFromProfile(Coordinate receiverCoord, Coordinate srcCoord,
+                                                        WorkerContext context) {
+        PathDescriptor path = context.profilePath;
+        computeFreefieldFromProfile(receiverCoord, srcCoord, context, path);
+        return path.toPropagationPath(srcCoord, receiverCoord);
+    }
 
+    /**
+     * @param receiverCoord
+     * @param srcCoord
+     * @param context       Worker context with the ground profile between srcCoord and receiverCoord
+     * @param path          [out] Key points, G values and mean ground plane of the free field path
+     */
+    private void computeFreefieldFromProfile(Coordinate receiverCoord, Coordinate srcCoord, WorkerContext context,
+                                             PathDescriptor path) {
         double gPath;
         double totRSDistance = 0.;
         double altR = 0;
         double altS = 0;
-        Coordinate projReceiver;
-        Coordinate projSource;
 
 
         //will give a flag here for soil effect
-        final List<GeoWithSoilType> soilTypeList = data.getSoilList();
-        LineString RSZone = factory.createLineString(new Coordinate[]{receiverCoord, srcCoord});
-        List<EnvelopeWithIndex<Integer>> resultZ0 = rTreeOfGeoSoil.query(RSZone.getEnvelopeInternal());
-        for (EnvelopeWithIndex<Integer> envel : resultZ0) {
-            RectangleLineIntersector rectangleLineIntersector = new RectangleLineIntersector(envel);
-            if (rectangleLineIntersector.intersects(receiverCoord, srcCoord)) {
-                try {
-                    //get the geo intersected
-                    Geometry geoInter = RSZone.intersection(soilTypeList.get(envel.getId()).getGeo());
-                    //add the intersected distance with ground effect
-                    totRSDistance += getIntersectedDistance(geoInter) * soilTypeList.get(envel.getId()).getType();
-                } catch (TopologyException | IllegalArgumentException ex) {
-                    // Ignore
+        if (soilGrid != null) {
+            gPath = soilGrid.getGPath(receiverCoord, srcCoord);
+        } else {
+            final List<GeoWithSoilType> soilTypeList = data.getSoilList();
+            LineString RSZone = null;
+            List<EnvelopeWithIndex<Integer>> resultZ0 = context.soilQueryResult;
+            resultZ0.clear();
+            context.soilQueryEnvelope.init(receiverCoord, srcCoord);
+            rTreeOfGeoSoil.query(context.soilQueryEnvelope, context.soilQueryVisitor);
+            for (EnvelopeWithIndex<Integer> envel : resultZ0) {
+                RectangleLineIntersector rectangleLineIntersector = new RectangleLineIntersector(envel);
+                if (rectangleLineIntersector.intersects(receiverCoord, srcCoord)) {
+                    if (RSZone == null) {
+                        RSZone = context.geometryFactory.createLineString(new Coordinate[]{receiverCoord, srcCoord});
+                    }
+                    try {
+                        //get the geo intersected
+                        Geometry geoInter = RSZone.intersection(soilTypeList.get(envel.getId()).getGeo());
+                        //add the intersected distance with ground effect
+                        totRSDistance += getIntersectedDistance(geoInter) * soilTypeList.get(envel.getId()).getType();
+                    } catch (TopologyException | IllegalArgumentException ex) {
+                        // Ignore
+                    }
                 }
             }
+            resultZ0.clear();
+            // Compute GPath using 2D Length
+            gPath = totRSDistance / receiverCoord.distance(srcCoord);
         }
-        // Compute GPath using 2D Length
-        gPath = totRSDistance / RSZone.getLength();
 
-        if (inters == null) {
-            inters = new ArrayList<>();
-            data.freeFieldFinder.computePropagationPath(srcCoord, receiverCoord, false, inters, true);
+        int last = context.groundProfileSize - 1;
+        double[] groundX = context.groundX;
+        double[] groundY = context.groundY;
+        double[] groundZ = context.groundZ;
+        double[] profileU = context.profileU;
+        altR = groundZ[last];    // altitude Receiver
+        altS = groundZ[0]; // altitude Source
+        double angle = Math.atan2(groundY[last] - groundY[0], groundX[last] - groundX[0]);
+        // Unfold the ground profile on the vertical plane of the source-receiver line
+        double sin = Math.sin(angle);
+        double cos = Math.cos(angle);
+        for (int i = 0; i <= last; i++) {
+            profileU[i] = (groundX[i] - groundX[0]) * cos + (groundY[i] - groundY[0]) * sin;
         }
-        List<Coordinate> rSground = data.freeFieldFinder.getGroundProfile(inters);
-        altR = rSground.get(inters.size() - 1).z;    // altitude Receiver
-        altS = rSground.get(0).z; // altitude Source
-        double angle = new LineSegment(rSground.get(0), rSground.get(rSground.size() - 1)).angle();
-        rSground = JTSUtility.getNewCoordinateSystem(rSground);
 
         // Compute mean ground plan
-        double[] ab = JTSUtility.getMeanPlaneCoefficients(rSground.toArray(new Coordinate[rSground.size()]));
-        Coordinate pInit = new Coordinate();
-        Coordinate rotatedReceiver = new Coordinate(rSground.get(rSground.size() - 1));
-        rotatedReceiver.setOrdinate(1, receiverCoord.z);
-        Coordinate rotatedSource = new Coordinate(rSground.get(0));
-        rotatedSource.setOrdinate(1, srcCoord.z);
-        projReceiver = JTSUtility.makeProjectedPoint(ab[0], ab[1], rotatedReceiver);
-        projSource = JTSUtility.makeProjectedPoint(ab[0], ab[1], rotatedSource);
-        pInit = JTSUtility.makeProjectedPoint(ab[0], ab[1], new Coordinate(0, 0, 0));
-        projReceiver = JTSUtility.getOldCoordinateSystem(projReceiver, angle);
-        projSource = JTSUtility.getOldCoordinateSystem(projSource, angle);
-        pInit = JTSUtility.getOldCoordinateSystem(pInit, angle);
-
-        projReceiver.x = srcCoord.x + projReceiver.x;
-        projSource.x = srcCoord.x + projSource.x;
-        projReceiver.y = srcCoord.y + projReceiver.y;
-        projSource.y = srcCoord.y + projSource.y;
-        pInit.x = srcCoord.x + pInit.x;
-        pInit.y = srcCoord.y + pInit.y;
-
-        segments.add(new SegmentPath(gPath, new Vector3D(projSource, projReceiver), pInit));
-
-        points.add(new PointPath(srcCoord, altS, data.gS, new ArrayList<>(), -1, PointPath.POINT_TYPE.SRCE));
-        points.add(new PointPath(receiverCoord, altR, data.gS, new ArrayList<>(), -1, PointPath.POINT_TYPE.RECV));
-
-        return new PropagationPath(false, points, segments, segments);
-
+        double[] ab = context.meanPlane;
+        JTSUtility.getMeanPlaneCoefficients(profileU, groundZ, context.groundProfileSize, ab);
+        // Project the source, the receiver and the origin on the mean plane then go back to the original coordinate
+        // system, see JTSUtility#getOldCoordinateSystem
+        double[] projected = context.projectedPoint;
+        JTSUtility.makeProjectedPoint(ab[0], ab[1], profileU[last], receiverCoord.z, projected);
+        double projReceiverX = srcCoord.x + projected[0] * cos;
+        double projReceiverY = srcCoord.y + projected[0] * sin;
+        double projReceiverZ = projected[1];
+        JTSUtility.makeProjectedPoint(ab[0], ab[1], profileU[0], srcCoord.z, projected);
+        double projSourceX = srcCoord.x + projected[0] * cos;
+        double projSourceY = srcCoord.y + projected[0] * sin;
+        double projSourceZ = projected[1];
+        JTSUtility.makeProjectedPoint(ab[0], ab[1], 0, 0, projected);
+        path.pInitX = srcCoord.x + projected[0] * cos;
+        path.pInitY = srcCoord.y + projected[0] * sin;
+        path.pInitZ = projected[1];
+        path.vectorX = projReceiverX - projSourceX;
+        path.vectorY = projReceiverY - projSourceY;
+        path.vectorZ = projReceiverZ - projSourceZ;
+
+        path.sourceX = srcCoord.x;
+        path.sourceY = srcCoord.y;
+        path.sourceZ = srcCoord.z;
+        path.receiverX = receiverCoord.x;
+        path.receiverY = receiverCoord.y;
+        path.receiverZ = receiverCoord.z;
+        path.sourceAltitude = altS;
+        path.receiverAltitude = altR;
+        path.gs = data.gS;
+        path.gPath = gPath;
     }
 
 
     public PropagationPath computeVerticalEdgeDiffraction(Coordinate receiverCoord,
                                                           Coordinate srcCoord, List<TriIdWithIntersection> allInterPoints, String side) {
+        WorkerContext context = new WorkerContext();
+        PropagationPath propagationPath = computeVerticalEdgeDiffraction(receiverCoord, srcCoord, allInterPoints,
+                side, context);
+        addStatistics(context.getStatistics());
+        return propagationPath;
+    }
+
+    /**
+     * @param context Reusable collections and buffers of the calling thread
+     */
+    public PropagationPath computeVerticalEdgeDiffraction(Coordinate receiverCoord, Coordinate srcCoord,
+                                                          List<TriIdWithIntersection> allInterPoints, String side,
+                                                          WorkerContext context) {
 
         PropagationPath propagationPath = new PropagationPath();
         PropagationPath propagationPath2 = new PropagationPath();
         List<Coordinate> coordinates = new ArrayList<>();
         boolean validDiffraction;
 
-        PropagationPath propagationPath3 = computeFreefield(receiverCoord, srcCoord, allInterPoints);
+        PropagationPath propagationPath3 = computeFreefield(receiverCoord, srcCoord, allInterPoints, context);
 
         if (side == "right") {
             // Right hand
@@ -616,18 +875,18 @@ public class ComputeRays {
 
         if (!coordinates.isEmpty()) {
             if (coordinates.size() > 2) {
-                propagationPath = computeFreefield(coordinates.get(1), coordinates.get(0), null);
+                propagationPath = computeFreefield(coordinates.get(1), coordinates.get(0), null, context);
                 propagationPath.getPointList().get(1).setType(PointPath.POINT_TYPE.DIFV);
                 propagationPath2.setPointList(propagationPath.getPointList());
                 propagationPath2.setSegmentList(propagationPath.getSegmentList());
                 int j;
                 for (j = 1; j < coordinates.size() - 2; j++) {
-                    propagationPath = computeFreefield(coordinates.get(j + 1), coordinates.get(j), null);
+                    propagationPath = computeFreefield(coordinates.get(j + 1), coordinates.get(j), null, context);
                     propagationPath.getPointList().get(1).setType(PointPath.POINT_TYPE.DIFV);
                     propagationPath2.getPointList().add(propagationPath.getPointList().get(1));
                     propagationPath2.getSegmentList().addAll(propagationPath.getSegmentList());
                 }
-                propagationPath = computeFreefield(coordinates.get(j + 1), coordinates.get(j), null);
+                propagationPath = computeFreefield(coordinates.get(j + 1), coordinates.get(j), null, context);
                 propagationPath2.getPointList().add(propagationPath.getPointList().get(1));
                 propagationPath2.getSegmentList().addAll(propagationPath.getSegmentList());
 
@@ -638,6 +897,20 @@ public class ComputeRays {
 
     public PropagationPath computeHorizontalEdgeDiffraction(boolean obstructedSourceReceiver, Coordinate receiverCoord,
                                                             Coordinate srcCoord, List<TriIdWithIntersection> allInterPoints) {
+        WorkerContext context = new WorkerContext();
+        PropagationPath propagationPath = computeHorizontalEdgeDiffraction(obstructedSourceReceiver, receiverCoord,
+                srcCoord, allInterPoints, context);
+        addStatistics(context.getStatistics());
+        return propagationPath;
+    }
+
+    /**
+     * @param context Reusable collections and buffers of the calling thread
+     */
+    public PropagationPath computeHorizontalEdgeDiffraction(boolean obstructedSourceReceiver, Coordinate receiverCoord,
+                                                            Coordinate srcCoord,
+                                                            List<TriIdWithIntersection> allInterPoints,
+                                                            WorkerContext context) {
 
         List<PointPath> points = new ArrayList<PointPath>();
         List<SegmentPath> segments = new ArrayList<SegmentPath>();
@@ -664,7 +937,7 @@ public class ComputeRays {
                 offsetPath.set(i, new Coordinate(dest.x - v.getX(), dest.y - v.getY(), dest.z));
             }
             for (int j = offsetPath.size() - 1; j > 1; j--) {
-                PropagationPath propagationPath1 = computeFreefield(offsetPath.get(j - 1), offsetPath.get(j), null);
+                PropagationPath propagationPath1 = computeFreefield(offsetPath.get(j - 1), offsetPath.get(j), null, context);
                 propagationPath1.getPointList().get(1).setType(PointPath.POINT_TYPE.DIFH);
                 if (j == offsetPath.size() - 1) {
                     propagationPath1.getPointList().get(0).setCoordinate(offsetPath.get(j));
@@ -674,12 +947,12 @@ public class ComputeRays {
                 segments.addAll(propagationPath1.getSegmentList());
             }
 
-            PropagationPath propagationPath2 = computeFreefield(offsetPath.get(0), offsetPath.get(1), null);
+            PropagationPath propagationPath2 = computeFreefield(offsetPath.get(0), offsetPath.get(1), null, context);
             points.add(propagationPath2.getPointList().get(1));
             segments.add(propagationPath2.getSegmentList().get(0));
 
         } else {
-            PropagationPath propagationPath = computeFreefield(receiverCoord, srcCoord, null);
+            PropagationPath propagationPath = computeFreefield(receiverCoord, srcCoord, null, context);
             points.addAll(propagationPath.getPointList());
             segments.addAll(propagationPath.getSegmentList());
             srPath.addAll(propagationPath.getSRList());
@@ -871,10 +1144,30 @@ public class ComputeRays {
 
     public List<PropagationPath> directPath(Coordinate srcCoord,
                                             Coordinate receiverCoord, boolean verticalDiffraction, boolean horizontalDiffraction) {
+        WorkerContext context = new WorkerContext();
+        List<PropagationPath> propagationPaths = directPath(srcCoord, receiverCoord, verticalDiffraction,
+                horizontalDiffraction, context);
+        addStatistics(context.getStatistics());
+        return propagationPaths;
+    }
 
+    /**
+     * @param context Reusable collections and buffers of the calling thread
+     */
+    public List<PropagationPath> directPath(Coordinate srcCoord, Coordinate receiverCoord,
+                                            boolean verticalDiffraction, boolean horizontalDiffraction,
+                                            WorkerContext context) {
+        return directPath(srcCoord, receiverCoord, verticalDiffraction, horizontalDiffraction, context, null);
+    }
 
-        List<PropagationPath> propagationPaths = new ArrayList<>();
-
+    /**
+     * @param context       Worker context, the free field path is computed without intermediate allocations
+     * @param freeFieldPath If not null and the path is free field, the path is stored in this descriptor instead of
+     *                      the returned list
+     */
+    private List<PropagationPath> directPath(Coordinate srcCoord, Coordinate receiverCoord,
+                                             boolean verticalDiffraction, boolean horizontalDiffraction,
+                                             WorkerContext context, PathDescriptor freeFieldPath) {
 
         // Then, check if the source is visible from the receiver (not
         // hidden by a building)
@@ -884,44 +1177,68 @@ public class ComputeRays {
         boolean topographyHideReceiver = false;
         boolean buildingOnPath = false;
 
-        List<TriIdWithIntersection> inters = new ArrayList<>();
-        data.freeFieldFinder.computePropagationPath(srcCoord, receiverCoord, false, inters, true);
-        for (TriIdWithIntersection intersection : inters) {
-            if (intersection.getBuildingId() > 0) {
+        PathFinderStatistics statistics = context.statistics;
+        long start = System.nanoTime();
+        FastObstructionTest.WalkContext walkContext = context.getWalkContext();
+        long visitedTriangles = walkContext.getVisitedTriangleCount();
+        data.freeFieldFinder.computePropagationPath(srcCoord, receiverCoord, false, walkContext, true, true);
+        statistics.increment(PathFinderStatistics.Counter.OBSTRUCTION_TESTS, 1);
+        statistics.increment(PathFinderStatistics.Counter.WALKED_TRIANGLES,
+                walkContext.getVisitedTriangleCount() - visitedTriangles);
+        for (int i = 0; i < walkContext.size(); i++) {
+            if (walkContext.getBuildingId(i) > 0) {
                 topographyHideReceiver = true;
                 buildingOnPath = true;
             }
-            if (intersection.isIntersectionOnBuilding() || intersection.isIntersectionOnTopography()) {
+            if (walkContext.isOnBuilding(i) || walkContext.isOnTopography(i)) {
                 freefield = false;
-                if (intersection.isIntersectionOnTopography()) {
+                if (walkContext.isOnTopography(i)) {
                     topographyHideReceiver = true;
                 }
             }
         }
+        context.setGroundProfile(data.freeFieldFinder, walkContext);
 
         // double fav_probability = favrose[(int) (Math.round(calcRotationAngleInDegrees(srcCoord, receiverCoord) / 30))];
 
         if (freefield) {
-            PropagationPath propagationPath = computeFreefield(receiverCoord, srcCoord, inters);
-            propagationPaths.add(propagationPath);
+            List<PropagationPath> propagationPaths;
+            if (freeFieldPath != null) {
+                computeFreefieldFromProfile(receiverCoord, srcCoord, context, freeFieldPath);
+                freeFieldPath.init();
+                propagationPaths = Collections.emptyList();
+            } else {
+                propagationPaths = new ArrayList<>(1);
+                propagationPaths.add(computeFreefieldFromProfile(receiverCoord, srcCoord, context));
+            }
+            statistics.addTime(PathFinderStatistics.Phase.FREE_FIELD, start);
+            return propagationPaths;
         }
+        List<PropagationPath> propagationPaths = new ArrayList<>();
+
+        // Diffraction paths need the intersections as objects
+        List<TriIdWithIntersection> inters = context.getIntersections(walkContext);
+        start = statistics.addTime(PathFinderStatistics.Phase.FREE_FIELD, start);
 
         //Process diffraction 3D
         // todo include rayleigh criterium
         if (verticalDiffraction && !freefield) {
-            PropagationPath propagationPath3 = computeFreefield(receiverCoord, srcCoord, inters);
-            PropagationPath propagationPath = computeHorizontalEdgeDiffraction(topographyHideReceiver, receiverCoord, srcCoord, inters);
+            PropagationPath propagationPath3 = computeFreefieldFromProfile(receiverCoord, srcCoord, context);
+            PropagationPath propagationPath = computeHorizontalEdgeDiffraction(topographyHideReceiver, receiverCoord, srcCoord,
+                    inters, context.getNestedContext());
             propagationPath.getSRList().addAll(propagationPath3.getSRList());
             propagationPaths.add(propagationPath);
-
-
+            statistics.increment(PathFinderStatistics.Counter.VERTICAL_DIFFRACTION_PATHS, 1);
+            start = statistics.addTime(PathFinderStatistics.Phase.VERTICAL_DIFFRACTION, start);
         }
 
         if (topographyHideReceiver && data.isComputeHorizontalDiffraction() && horizontalDiffraction && !freefield) {
             // todo if one of the points > roof or < floor, get out this path
-            PropagationPath propagationPath3 = computeFreefield(receiverCoord, srcCoord, inters);
+            int sizeBefore = propagationPaths.size();
+            PropagationPath propagationPath3 = computeFreefieldFromProfile(receiverCoord, srcCoord, context);
 
-            PropagationPath propagationPath = computeVerticalEdgeDiffraction(srcCoord, receiverCoord,inters, "left");
+            PropagationPath propagationPath = computeVerticalEdgeDiffraction(srcCoord, receiverCoord, inters, "left",
+                    context.getNestedContext());
             if (propagationPath.getPointList()!=null) {
                 for (int i = 0; i < propagationPath.getSegmentList().size(); i++) {
                     if (propagationPath.getSegmentList().get(i).getSegmentLength() < 0.1) {
@@ -932,7 +1249,8 @@ public class ComputeRays {
                 propagationPath.setSRList(propagationPath3.getSRList());
                 propagationPaths.add(propagationPath);
             }
-            propagationPath = computeVerticalEdgeDiffraction(srcCoord, receiverCoord,inters, "right");
+            propagationPath = computeVerticalEdgeDiffraction(srcCoord, receiverCoord, inters, "right",
+                    context.getNestedContext());
             if (propagationPath.getPointList()!=null) {
                 for (int i = 0; i < propagationPath.getSegmentList().size(); i++) {
                     if (propagationPath.getSegmentList().get(i).getSegmentLength() < 0.1) {
@@ -943,6 +1261,9 @@ public class ComputeRays {
                 propagationPath.setSRList(propagationPath3.getSRList());
                 propagationPaths.add(propagationPath);
             }
+            statistics.increment(PathFinderStatistics.Counter.HORIZONTAL_DIFFRACTION_PATHS,
+                    propagationPaths.size() - sizeBefore);
+            statistics.addTime(PathFinderStatistics.Phase.HORIZONTAL_DIFFRACTION, start);
         }
         return propagationPaths;
     }
@@ -956,138 +1277,362 @@ public class ComputeRays {
      * @param receiverCoord      coordinate of receiver
      * @param rcvId              receiver identifier
      * @param nearBuildingsWalls Walls to use in reflection
+     * @param imageTree          Image receivers of the receiver, null to compute them from nearBuildingsWalls
      * @param debugInfo
      * @param dataOut
+     * @param context            Worker context
      * @return Minimal power level (dB) or maximum attenuation (dB)
      */
     private double[] receiverSourcePropa(Coordinate srcCoord, int srcId, double sourceLi,
                                          Coordinate receiverCoord, int rcvId,
-                                         List<FastObstructionTest.Wall> nearBuildingsWalls, List<PropagationDebugInfo> debugInfo, IComputeRaysOut dataOut) {
+                                         List<FastObstructionTest.Wall> nearBuildingsWalls, ReceiverImageTree imageTree,
+                                         List<PropagationDebugInfo> debugInfo, IComputeRaysOut dataOut,
+                                         WorkerContext context) {
 
         List<PropagationPath> propagationPaths;
         // Build mirrored receiver list from wall list
 
         double PropaDistance = srcCoord.distance(receiverCoord);
         if (PropaDistance < data.maxSrcDist) {
-
-            // Process direct path (including horizontal and vertical diffractions)
-            propagationPaths = directPath(srcCoord, receiverCoord, data.isComputeVerticalDiffraction(), true);
+            context.statistics.increment(PathFinderStatistics.Counter.SOURCE_RECEIVER_PAIRS, 1);
+
+            // Process direct path (including horizontal and vertical diffractions), the free field path is given
+            // as a descriptor if the output supports it
+            PathDescriptor freeFieldPath = null;
+            if (dataOut.isPathDescriptorSupported()) {
+                freeFieldPath = context.directPath;
+                freeFieldPath.clear();
+            }
+            propagationPaths = directPath(srcCoord, receiverCoord, data.isComputeVerticalDiffraction(), true,
+                    context, freeFieldPath);
 
             // Process specular reflection
             if (data.reflexionOrder > 0) {
-                List<PropagationPath> propagationPaths_all = computeReflexion(receiverCoord, srcCoord, false, nearBuildingsWalls);
-                propagationPaths.addAll(propagationPaths_all);
+                List<PropagationPath> propagationPaths_all;
+                if (imageTree != null) {
+                    propagationPaths_all = computeReflexion(receiverCoord, srcCoord, false, imageTree.getWalls(),
+                            imageTree.getImages(srcCoord), context);
+                } else {
+                    propagationPaths_all = computeReflexion(receiverCoord, srcCoord, false, nearBuildingsWalls,
+                            context);
+                }
+                if (propagationPaths.isEmpty()) {
+                    propagationPaths = propagationPaths_all;
+                } else {
+                    propagationPaths.addAll(propagationPaths_all);
+                }
             }
 
-            if (propagationPaths.size() > 0) {
+            boolean freeField = freeFieldPath != null && !freeFieldPath.isEmpty();
+            if (propagationPaths.size() > 0 || freeField) {
                 for (PropagationPath propagationPath : propagationPaths) {
                     propagationPath.idSource = srcId;
                     propagationPath.idReceiver = rcvId;
 
                 }
-                return dataOut.addPropagationPaths(srcId, sourceLi, rcvId, propagationPaths);
+                long start = System.nanoTime();
+                double[] power;
+                if (freeField) {
+                    power = dataOut.addPropagationPaths(srcId, sourceLi, rcvId, freeFieldPath, propagationPaths);
+                } else {
+                    power = dataOut.addPropagationPaths(srcId, sourceLi, rcvId, propagationPaths);
+                }
+                context.statistics.addTime(PathFinderStatistics.Phase.OUTPUT, start);
+                return power;
             }
         }
-        return new double[0];
+        return NO_POWER;
     }
 
-    private static double insertPtSource(Coordinate receiverPos, Coordinate ptpos, double[] wj, double li, Integer sourceId, List<SourcePointInfo> sourceList) {
-        // Compute maximal power at freefield at the receiver position with reflective ground
-        double aDiv = -getADiv(CGAlgorithms3D.distance(receiverPos, ptpos));
-        double[] srcWJ = new double[wj.length];
-        for (int idFreq = 0; idFreq < srcWJ.length; idFreq++) {
-            srcWJ[idFreq] = wj[idFreq] * li * dbaToW(aDiv) * dbaToW(3);
-        }
-        sourceList.add(new SourcePointInfo(srcWJ, sourceId, ptpos, li));
-        return ComputeRays.sumArray(srcWJ.length, srcWJ);
+    private double insertPtSource(Coordinate receiverPos, Coordinate ptpos, double[] wj, double li, Integer sourceId, Collection<SourcePointInfo> sourceList) {
+        // Compute maximal power at the receiver position, the obstruction test is deferred to the queue head
+        IPowerBoundEstimator estimator = data.getPowerBoundEstimator();
+        boolean obstructionTested = !estimator.isObstructionTested();
+        double[] srcWJ = estimator.getPowerBound(obstructionTested ? data.freeFieldFinder : null, receiverPos, ptpos,
+                wj, li);
+        SourcePointInfo src = new SourcePointInfo(srcWJ, sourceId, ptpos, li);
+        src.obstructionTested = obstructionTested;
+        src.boundPosition = ptpos;
+        sourceList.add(src);
+        return src.globalWj;
     }
 
-    private double addLineSource(LineString source, Coordinate receiverCoord, int srcIndex, List<SourcePointInfo> sourceList, double[] wj) {
+    private double addLineSource(LineString source, int geometryIndex, Coordinate receiverCoord, int srcIndex,
+                                 Collection<SourcePointInfo> sourceList, double[] wj) {
         double totalPowerRemaining = 0;
-        ArrayList<Coordinate> pts = new ArrayList<Coordinate>();
+        // The points of the line are not closer to the receiver than its envelope
+        Envelope envelope = source.getEnvelopeInternal();
+        double dx = Math.max(0, Math.max(envelope.getMinX() - receiverCoord.x, receiverCoord.x - envelope.getMaxX()));
+        double dy = Math.max(0, Math.max(envelope.getMinY() - receiverCoord.y, receiverCoord.y - envelope.getMaxY()));
+        double minDistance = Math.sqrt(dx * dx + dy * dy);
+        if (minDistance >= data.maxSrcDist) {
+            return totalPowerRemaining;
+        }
         // Compute li to equation 4.1 NMPB 2008 (June 2009)
-        Coordinate nearestPoint = JTSUtility.getNearestPoint(receiverCoord, source);
-        double segmentSizeConstraint = Math.max(1, receiverCoord.distance3D(nearestPoint) / 2.0);
-        if (Double.isNaN(segmentSizeConstraint)) {
-            segmentSizeConstraint = Math.max(1, receiverCoord.distance(nearestPoint) / 2.0);
-        }
-        double li = splitLineStringIntoPoints(source, segmentSizeConstraint, pts);
-        for (Coordinate pt : pts) {
-            if (pt.distance(receiverCoord) < data.maxSrcDist) {
-                totalPowerRemaining += insertPtSource(receiverCoord, pt, wj, li, srcIndex, sourceList);
+        // The distance to the nearest point is lower than the distance to the first vertex of the line with the
+        // largest height difference of the first segment. The nearest point is not computed if the number of points
+        // is the same for both bounds.
+        Coordinate a = source.getCoordinateN(0);
+        Coordinate b = source.getCoordinateN(1);
+        double dz = Math.max(Math.abs(a.z - receiverCoord.z), Math.abs(b.z - receiverCoord.z));
+        dx = a.x - receiverCoord.x;
+        dy = a.y - receiverCoord.y;
+        double maxDistance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        double segmentSizeConstraint = Math.max(1, maxDistance / 2.0);
+        double length = source.getLength();
+        if (Double.isNaN(maxDistance) || LineSourceCache.getPointCount(length, Math.max(1, minDistance *
+                (1 - BOUND_MARGIN) / 2.0)) != LineSourceCache.getPointCount(length, Math.max(1, maxDistance *
+                (1 + BOUND_MARGIN) / 2.0))) {
+            Coordinate nearestPoint = JTSUtility.getNearestPoint(receiverCoord, source);
+            segmentSizeConstraint = Math.max(1, receiverCoord.distance3D(nearestPoint) / 2.0);
+            if (Double.isNaN(segmentSizeConstraint)) {
+                segmentSizeConstraint = Math.max(1, receiverCoord.distance(nearestPoint) / 2.0);
+            }
+        }
+        LineSourceCache.LineSourcePoints pts = data.getLineSourceCache().getPoints(srcIndex, geometryIndex, source,
+                segmentSizeConstraint);
+        double li = pts.getLi();
+        for (int i = 0; i < pts.size(); i++) {
+            dx = pts.getX(i) - receiverCoord.x;
+            dy = pts.getY(i) - receiverCoord.y;
+            if (Math.sqrt(dx * dx + dy * dy) < data.maxSrcDist) {
+                totalPowerRemaining += insertPtSource(receiverCoord, pts.getCoordinate(i), wj, li, srcIndex, sourceList);
             }
         }
         return totalPowerRemaining;
     }
 
+    /**
+     * Discretize a source into source points
+     * @param srcIndex      Source index
+     * @param receiverCoord Receiver position
+     * @param sourceList    [out] Source points at less than the maximum source distance
+     * @return Sum of the free field power of the added source points
+     */
+    private double addSource(int srcIndex, Coordinate receiverCoord, Collection<SourcePointInfo> sourceList) {
+        double totalPower = 0;
+        Geometry source = data.sourceGeometries.get(srcIndex);
+        double[] wj = data.getMaximalSourcePower(srcIndex);
+        if (source instanceof Point) {
+            Coordinate ptpos = source.getCoordinate();
+            if (ptpos.distance(receiverCoord) < data.maxSrcDist) {
+                totalPower += insertPtSource(receiverCoord, ptpos, wj, 1., srcIndex, sourceList);
+            }
+        } else if (source instanceof LineString) {
+            // Discretization of line into multiple point
+            // First point is the closest point of the LineString from
+            // the receiver
+            totalPower += addLineSource((LineString) source, 0, receiverCoord, srcIndex, sourceList, wj);
+        } else if (source instanceof MultiLineString) {
+            for (int id = 0; id < source.getNumGeometries(); id++) {
+                Geometry subGeom = source.getGeometryN(id);
+                if (subGeom instanceof LineString) {
+                    totalPower += addLineSource((LineString) subGeom, id, receiverCoord, srcIndex, sourceList, wj);
+                }
+            }
+        } else {
+            throw new IllegalArgumentException(String.format("Sound source %s geometry are not supported", source.getGeometryType()));
+        }
+        return totalPower;
+    }
+
+    /**
+     * Queue a source cluster if it is in the maximum source distance
+     * @return Power bound of the queued cluster
+     */
+    private double pushCluster(SourceClusterTree clusterTree, int node, Coordinate receiverCoord,
+                               PriorityQueue<SourceCluster> clusterQueue) {
+        if (clusterTree.getDistance(node, receiverCoord) >= data.maxSrcDist) {
+            return 0;
+        }
+        SourceCluster cluster = new SourceCluster(node, clusterTree.getPowerBound(node, receiverCoord,
+                data.getPowerBoundEstimator()));
+        clusterQueue.add(cluster);
+        return cluster.powerBound;
+    }
+
+    /**
+     * Union of the receiver walls and the source walls
+     * @param receiverIds   Receiver wall identifiers, sorted
+     * @param receiverWalls Receiver walls, same order than receiverIds
+     * @param sourceIds     Source wall identifiers, sorted by this method
+     * @param walls         [out] Walls without duplicates, sorted by wall identifier
+     * @return walls
+     */
+    private List<FastObstructionTest.Wall> mergeWalls(IntList receiverIds, List<FastObstructionTest.Wall> receiverWalls,
+                                                      IntList sourceIds, List<FastObstructionTest.Wall> walls) {
+        sourceIds.sort();
+        walls.clear();
+        int receiverIndex = 0;
+        int sourceIndex = 0;
+        while (receiverIndex < receiverIds.size() || sourceIndex < sourceIds.size()) {
+            if (sourceIndex >= sourceIds.size() || (receiverIndex < receiverIds.size() &&
+                    receiverIds.get(receiverIndex) <= sourceIds.get(sourceIndex))) {
+                if (sourceIndex < sourceIds.size() && receiverIds.get(receiverIndex) == sourceIds.get(sourceIndex)) {
+                    sourceIndex++;
+                }
+                walls.add(receiverWalls.get(receiverIndex++));
+            } else {
+                int wallId = sourceIds.get(sourceIndex++);
+                // Skip duplicates
+                if (sourceIndex == sourceIds.size() || sourceIds.get(sourceIndex) != wallId) {
+                    walls.add(data.freeFieldFinder.getWall(wallId));
+                }
+            }
+        }
+        return walls;
+    }
+
     /**
      * Compute sound level by frequency band at this receiver position
      *
      * @param receiverCoord
      */
     public void computeRaysAtPosition(Coordinate receiverCoord, int idReceiver, List<PropagationDebugInfo> debugInfo, IComputeRaysOut dataOut, ProgressVisitor progressVisitor) {
+        WorkerContext context = new WorkerContext();
+        computeRaysAtPosition(receiverCoord, idReceiver, debugInfo, dataOut, progressVisitor, context);
+        addStatistics(context.getStatistics());
+    }
+
+    /**
+     * Compute sound level by frequency band at this receiver position
+     *
+     * @param receiverCoord
+     * @param context       Reusable collections and buffers of the calling thread
+     */
+    public void computeRaysAtPosition(Coordinate receiverCoord, int idReceiver, List<PropagationDebugInfo> debugInfo,
+                                      IComputeRaysOut dataOut, ProgressVisitor progressVisitor,
+                                      WorkerContext context) {
+        context.clear();
+        PathFinderStatistics statistics = context.statistics;
+        statistics.increment(PathFinderStatistics.Counter.RECEIVERS, 1);
+        long start = System.nanoTime();
         // List of walls within maxReceiverSource distance
-        HashSet<Integer> processedLineSources = new HashSet<Integer>(); //Already processed Raw source (line and/or points)
-        Set<FastObstructionTest.Wall> wallsReceiver = new HashSet<>();
+        Set<Integer> processedLineSources = context.processedSources; //Already processed Raw source (line and/or points)
+        IntList wallsReceiverIds = context.wallsReceiverIds;
+        boolean useImageTree = data.reflexionOrder > 0 && data.isReuseReceiverImageTree();
         if (data.reflexionOrder > 0) {
-            wallsReceiver.addAll(data.freeFieldFinder.getLimitsInRange(
-                    data.maxRefDist, receiverCoord, false));
+            // The image tree is shared by all sources, so it uses the walls reachable by any source
+            data.freeFieldFinder.getWallIdsInRange(useImageTree ? data.maxSrcDist : data.maxRefDist, receiverCoord,
+                    false, wallsReceiverIds);
+            wallsReceiverIds.sort();
+        }
+        List<FastObstructionTest.Wall> wallsReceiver = context.wallsReceiver;
+        for (int i = 0; i < wallsReceiverIds.size(); i++) {
+            wallsReceiver.add(data.freeFieldFinder.getWall(wallsReceiverIds.get(i)));
         }
+        start = statistics.addTime(PathFinderStatistics.Phase.WALL_SEARCH, start);
+        ReceiverImageTree imageTree = null;
+        if (useImageTree) {
+            imageTree = new ReceiverImageTree(receiverCoord, wallsReceiver, data.reflexionOrder, data.maxSrcDist);
+            start = statistics.addTime(PathFinderStatistics.Phase.MIRROR_ENUMERATION, start);
+        }
+        IntList wallsSourceIds = context.wallsSourceIds;
         double searchSourceDistance = data.maxSrcDist;
         Envelope receiverSourceRegion = new Envelope(receiverCoord.x
                 - searchSourceDistance, receiverCoord.x + searchSourceDistance,
                 receiverCoord.y - searchSourceDistance, receiverCoord.y
                 + searchSourceDistance
         );
-        Iterator<Integer> regionSourcesLst = data.sourcesIndex
-                .query(receiverSourceRegion);
-        List<SourcePointInfo> sourceList = new ArrayList<>();
         // Sum of all sources power using only geometric dispersion with direct field
         double totalPowerRemaining = 0;
-        while (regionSourcesLst.hasNext()) {
-            Integer srcIndex = regionSourcesLst.next();
-            if (!processedLineSources.contains(srcIndex)) {
-                processedLineSources.add(srcIndex);
-                Geometry source = data.sourceGeometries.get(srcIndex);
-                double[] wj = data.getMaximalSourcePower(srcIndex);
-                if (source instanceof Point) {
-                    Coordinate ptpos = source.getCoordinate();
-                    if (ptpos.distance(receiverCoord) < data.maxSrcDist) {
-                        totalPowerRemaining += insertPtSource(receiverCoord, ptpos, wj, 1., srcIndex, sourceList);
-                    }
-                } else if (source instanceof LineString) {
-                    // Discretization of line into multiple point
-                    // First point is the closest point of the LineString from
-                    // the receiver
-                    totalPowerRemaining += addLineSource((LineString) source, receiverCoord, srcIndex, sourceList, wj);
-                } else if (source instanceof MultiLineString) {
-                    for (int id = 0; id < source.getNumGeometries(); id++) {
-                        Geometry subGeom = source.getGeometryN(id);
-                        if (subGeom instanceof LineString) {
-                            totalPowerRemaining += addLineSource((LineString) subGeom, receiverCoord, srcIndex, sourceList, wj);
-                        }
-                    }
-                } else {
-                    throw new IllegalArgumentException(String.format("Sound source %s geometry are not supported", source.getGeometryType()));
+        Queue<SourcePointInfo> sourceQueue;
+        PriorityQueue<SourceCluster> clusterQueue = context.clusterQueue;
+        SourceClusterTree clusterTree = null;
+        boolean deferredObstructionTest = data.getPowerBoundEstimator().isObstructionTested();
+        if (data.isSourceClustering()) {
+            // Sources are discretized only when their cluster has the highest power bound
+            sourceQueue = context.sourcePriorityQueue;
+            clusterTree = data.getSourceClusterTree();
+            if (clusterTree.getRoot() != -1) {
+                totalPowerRemaining += pushCluster(clusterTree, clusterTree.getRoot(), receiverCoord, clusterQueue);
+            }
+        } else {
+            Iterator<Integer> regionSourcesLst = data.sourcesIndex
+                    .query(receiverSourceRegion);
+            List<SourcePointInfo> sourceList = context.sourceList;
+            while (regionSourcesLst.hasNext()) {
+                Integer srcIndex = regionSourcesLst.next();
+                if (!processedLineSources.contains(srcIndex)) {
+                    processedLineSources.add(srcIndex);
+                    totalPowerRemaining += addSource(srcIndex, receiverCoord, sourceList);
                 }
             }
+            if (deferredObstructionTest) {
+                // The bounds are lowered when the source points reach the head of the queue
+                context.sourcePriorityQueue.addAll(sourceList);
+                sourceQueue = context.sourcePriorityQueue;
+            } else {
+                // Sort sources by power contribution descending
+                Collections.sort(sourceList);
+                context.sourceDeque.addAll(sourceList);
+                sourceQueue = context.sourceDeque;
+            }
         }
-        // Sort sources by power contribution descending
-        Collections.sort(sourceList);
+        statistics.addTime(PathFinderStatistics.Phase.SOURCE_COLLECTION, start);
         double powerAtSource = 0;
         //Iterate over source point sorted by maximal power by descending order
-        for (SourcePointInfo src : sourceList) {
+        while (true) {
+            // Discretize the clusters that may contribute more than the next source point
+            if (!clusterQueue.isEmpty()) {
+                start = System.nanoTime();
+                while (!clusterQueue.isEmpty() && (sourceQueue.isEmpty() ||
+                        clusterQueue.peek().powerBound >= sourceQueue.peek().globalWj)) {
+                    SourceCluster cluster = clusterQueue.poll();
+                    totalPowerRemaining -= cluster.powerBound;
+                    if (clusterTree.isLeaf(cluster.node)) {
+                        for (int i = 0; i < clusterTree.getSourceCount(cluster.node); i++) {
+                            totalPowerRemaining += addSource(clusterTree.getSource(cluster.node, i), receiverCoord,
+                                    sourceQueue);
+                        }
+                    } else {
+                        totalPowerRemaining += pushCluster(clusterTree, clusterTree.getLeft(cluster.node),
+                                receiverCoord, clusterQueue);
+                        totalPowerRemaining += pushCluster(clusterTree, clusterTree.getRight(cluster.node),
+                                receiverCoord, clusterQueue);
+                    }
+                }
+                statistics.addTime(PathFinderStatistics.Phase.SOURCE_COLLECTION, start);
+            }
+            SourcePointInfo src = sourceQueue.poll();
+            if (src == null) {
+                break;
+            }
+            if (!src.obstructionTested) {
+                // Obstruction test of the bound only for the source point that has the highest bound
+                double[] srcWJ = data.getPowerBoundEstimator().getPowerBound(data.freeFieldFinder, receiverCoord,
+                        src.boundPosition, data.getMaximalSourcePower(src.sourcePrimaryKey), src.li);
+                double previousGlobalWj = src.globalWj;
+                src.setWj(srcWJ);
+                src.obstructionTested = true;
+                if (src.globalWj < previousGlobalWj) {
+                    totalPowerRemaining = Math.max(0, totalPowerRemaining - (previousGlobalWj - src.globalWj));
+                    sourceQueue.add(src);
+                    if (data.maximumError > 0 && wToDba(powerAtSource + totalPowerRemaining) -
+                            wToDba(powerAtSource) < data.maximumError) {
+                        break;
+                    }
+                    continue;
+                }
+            }
             // For each Pt Source - Pt Receiver
             Coordinate srcCoord = src.position;
 
-            Set<FastObstructionTest.Wall> wallsSource = new HashSet<>(wallsReceiver);
-            if (data.reflexionOrder > 0) {
-                wallsSource.addAll(data.freeFieldFinder.getLimitsInRange(
-                        data.maxRefDist, srcCoord, false));
+            List<FastObstructionTest.Wall> wallsSource = wallsReceiver;
+            if (data.reflexionOrder > 0 && !useImageTree) {
+                start = System.nanoTime();
+                wallsSourceIds.clear();
+                data.getSourceWallCache().getWallIdsInRange(data.freeFieldFinder, data.maxRefDist, srcCoord,
+                        wallsSourceIds);
+                wallsSource = mergeWalls(wallsReceiverIds, wallsReceiver, wallsSourceIds, context.wallsSource);
+                statistics.addTime(PathFinderStatistics.Phase.WALL_SEARCH, start);
             }
             double[] power = receiverSourcePropa(srcCoord, src.sourcePrimaryKey, src.li, receiverCoord, idReceiver,
-                    new ArrayList<>(wallsSource), debugInfo, dataOut);
-            double global = ComputeRays.sumArray(power.length, ComputeRays.dbaToW(power));
+                    wallsSource, imageTree, debugInfo, dataOut, context);
+            double global = 0;
+            for (double level : power) {
+                global += dbaToW(level);
+            }
             totalPowerRemaining -= src.globalWj;
             if (power.length > 0) {
                 powerAtSource += global;
@@ -1100,6 +1645,7 @@ public class ComputeRays {
                 break; //Stop looking for more rays
             }
         }
+        context.clear();
         // No more rays for this receiver
         dataOut.finalizeReceiver(idReceiver);
     }
@@ -1110,8 +1656,17 @@ public class ComputeRays {
     public void initStructures() {
         //Build R-tree for soil geometry and soil type
         rTreeOfGeoSoil = new STRtree();
+        soilGrid = null;
         List<GeoWithSoilType> soilTypeList = data.getSoilList();
-        if (soilTypeList != null) {
+        if (soilTypeList != null && data.getSoilGridCellSize() > 0) {
+            long cellCount = SoilGrid.getCellCount(soilTypeList, data.getSoilGridCellSize());
+            if (cellCount <= SoilGrid.MAXIMUM_CELL_COUNT) {
+                soilGrid = new SoilGrid(soilTypeList, data.getSoilGridCellSize());
+            } else {
+                LOGGER.warn(String.format("Soil grid of %d cells is too large, use the soil geometries", cellCount));
+            }
+        }
+        if (soilGrid == null && soilTypeList != null) {
             for (int i = 0; i < soilTypeList.size(); i++) {
                 GeoWithSoilType geoWithSoilType = soilTypeList.get(i);
                 rTreeOfGeoSoil.insert(geoWithSoilType.getGeo().getEnvelopeInternal(),
@@ -1124,6 +1679,11 @@ public class ComputeRays {
 
         initStructures();
 
+        workerBusyTime.clear();
+        synchronized (statistics) {
+            statistics.clear();
+        }
+
         // Computed sound level of vertices
         //dataOut.setVerticesSoundLevel(new double[data.receivers.size()]);
 
@@ -1131,6 +1691,12 @@ public class ComputeRays {
         // maxSrcDist meters
         ProgressVisitor propaProcessProgression = data.cellProg;
 
+        if (workStealing && threadCount != 1) {
+            runWorkStealing(computeRaysOut, debugInfo, propaProcessProgression);
+            notifyStatistics(computeRaysOut);
+            return;
+        }
+
         int splitCount = threadCount;
         ThreadPool threadManager = new ThreadPool(
                 splitCount,
@@ -1159,6 +1725,35 @@ public class ComputeRays {
         } catch (InterruptedException ex) {
             LOGGER.error(ex.getLocalizedMessage(), ex);
         }
+        notifyStatistics(computeRaysOut);
+    }
+
+    /**
+     * Compute all receivers using a fork-join pool. The receiver range is recursively halved down to chunks of
+     * {@link #getWorkStealingChunkSize()} receivers, so workers that are done with their own chunks take over the
+     * pending chunks of the busy ones.
+     */
+    private void runWorkStealing(IComputeRaysOut computeRaysOut, List<PropagationDebugInfo> debugInfo,
+                                 ProgressVisitor propaProcessProgression) {
+        int parallelism = threadCount > 0 ? threadCount : Runtime.getRuntime().availableProcessors();
+        int chunkSize = workStealingChunkSize;
+        if (chunkSize <= 0) {
+            chunkSize = Math.max(1, data.receivers.size() / (parallelism * WORK_STEALING_CHUNKS_PER_THREAD));
+        }
+        getWorkStealingPool(parallelism).invoke(new ReceiversRangeTask(0, data.receivers.size(), chunkSize, this,
+                debugInfo, propaProcessProgression, computeRaysOut));
+    }
+
+    /**
+     * @param parallelism Number of workers
+     * @return The common pool if it has the same parallelism, otherwise a pool shared by the runs of the same
+     * parallelism
+     */
+    static ForkJoinPool getWorkStealingPool(int parallelism) {
+        if (parallelism == ForkJoinPool.getCommonPoolParallelism()) {
+            return ForkJoinPool.commonPool();
+        }
+        return WORK_STEALING_POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
     }
 
     public void run(IComputeRaysOut computeRaysOut) {
@@ -1200,6 +1795,8 @@ private static final class RangeReceiversComputation implements Runnable {
 
     @Override
     public void run() {
+        long start = System.nanoTime();
+        WorkerContext context = new WorkerContext();
         try {
             for (int idReceiver = startReceiver; idReceiver < endReceiver; idReceiver++) {
                 if (progressVisitor != null) {
@@ -1209,7 +1806,8 @@ private static final class RangeReceiversComputation implements Runnable {
                 }
                 Coordinate receiverCoord = propagationProcess.data.receivers.get(idReceiver);
 
-                propagationProcess.computeRaysAtPosition(receiverCoord, idReceiver, debugInfo, dataOut, progressVisitor);
+                propagationProcess.computeRaysAtPosition(receiverCoord, idReceiver, debugInfo, dataOut, progressVisitor,
+                        context);
 
                 if (progressVisitor != null) {
                     progressVisitor.endStep();
@@ -1221,6 +1819,53 @@ private static final class RangeReceiversComputation implements Runnable {
                 progressVisitor.cancel();
             }
             throw ex;
+        } finally {
+            propagationProcess.addWorkerBusyTime(System.nanoTime() - start);
+            propagationProcess.addStatistics(context.getStatistics());
+        }
+    }
+}
+
+/**
+ * Fork-join task of a receiver range. Ranges larger than the chunk size are halved, the upper half being pushed
+ * in the worker queue where it can be stolen by idle workers.
+ */
+private static final class ReceiversRangeTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final int startReceiver; // Included
+    private final int endReceiver; // Excluded
+    private final int chunkSize;
+    private final ComputeRays propagationProcess;
+    private final List<PropagationDebugInfo> debugInfo;
+    private final ProgressVisitor progressVisitor;
+    private final IComputeRaysOut dataOut;
+
+    public ReceiversRangeTask(int startReceiver, int endReceiver, int chunkSize, ComputeRays propagationProcess,
+                              List<PropagationDebugInfo> debugInfo, ProgressVisitor progressVisitor,
+                              IComputeRaysOut dataOut) {
+        this.startReceiver = startReceiver;
+        this.endReceiver = endReceiver;
+        this.chunkSize = chunkSize;
+        this.propagationProcess = propagationProcess;
+        this.debugInfo = debugInfo;
+        this.progressVisitor = progressVisitor;
+        this.dataOut = dataOut;
+    }
+
+    @Override
+    protected void compute() {
+        if (progressVisitor != null && progressVisitor.isCanceled()) {
+            return;
+        }
+        if (endReceiver - startReceiver <= chunkSize) {
+            new RangeReceiversComputation(startReceiver, endReceiver, propagationProcess, debugInfo,
+                    progressVisitor, dataOut.subProcess(startReceiver, endReceiver)).run();
+        } else {
+            int middle = (startReceiver + endReceiver) >>> 1;
+            invokeAll(new ReceiversRangeTask(startReceiver, middle, chunkSize, propagationProcess, debugInfo,
+                            progressVisitor, dataOut),
+                    new ReceiversRangeTask(middle, endReceiver, chunkSize, propagationProcess, debugInfo,
+                            progressVisitor, dataOut));
         }
     }
 }
@@ -1269,12 +1914,193 @@ public static final class AbsoluteCoordinateSequenceFilter implements Coordinate
     }
 }
 
+/**
+ * Collections and buffers reused by the computation of the receivers of a worker, in order to avoid allocations in
+ * the source-receiver loop. A worker creates one instance and provides it to
+ * {@link #computeRaysAtPosition(Coordinate, int, List, IComputeRaysOut, ProgressVisitor, WorkerContext)}.
+ * An instance must not be shared between threads.
+ */
+public static final class WorkerContext {
+    private static final int INITIAL_CAPACITY = 32;
+    // Receiver level collections, cleared for each receiver
+    private final Set<Integer> processedSources = new HashSet<>();
+    private final IntList wallsReceiverIds = new IntList();
+    private final IntList wallsSourceIds = new IntList();
+    private final List<FastObstructionTest.Wall> wallsReceiver = new ArrayList<>();
+    private final List<FastObstructionTest.Wall> wallsSource = new ArrayList<>();
+    private final List<SourcePointInfo> sourceList = new ArrayList<>();
+    private final ArrayDeque<SourcePointInfo> sourceDeque = new ArrayDeque<>();
+    private final PriorityQueue<SourcePointInfo> sourcePriorityQueue = new PriorityQueue<>();
+    private final PriorityQueue<SourceCluster> clusterQueue = new PriorityQueue<>();
+    // Source-receiver level buffers
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+    private final LineIntersector lineIntersector = new RobustLineIntersector();
+    private final Envelope soilQueryEnvelope = new Envelope();
+    private final List<EnvelopeWithIndex<Integer>> soilQueryResult = new ArrayList<>();
+    private final ItemVisitor soilQueryVisitor = new ItemVisitor() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public void visitItem(Object item) {
+            soilQueryResult.add((EnvelopeWithIndex<Integer>) item);
+        }
+    };
+    private FastObstructionTest.WalkContext walkContext;
+    /** Ground profile of the source-receiver line, from the source to the receiver */
+    private double[] groundX = new double[INITIAL_CAPACITY];
+    private double[] groundY = new double[INITIAL_CAPACITY];
+    private double[] groundZ = new double[INITIAL_CAPACITY];
+    /** Ground profile unfolded on the vertical plane of the source-receiver line */
+    private double[] profileU = new double[INITIAL_CAPACITY];
+    private int groundProfileSize = 0;
+    private final double[] meanPlane = new double[2];
+    private final double[] projectedPoint = new double[2];
+    /** Free field path converted to objects */
+    private final PathDescriptor profilePath = new PathDescriptor();
+    /** Free field direct path given to the output */
+    private final PathDescriptor directPath = new PathDescriptor();
+    /** Intersections of the source-receiver line used by the diffraction paths, the items come from the pool */
+    private final List<TriIdWithIntersection> intersections = new ArrayList<>();
+    private final List<TriIdWithIntersection> intersectionPool = new ArrayList<>();
+    private final PathFinderStatistics statistics = new PathFinderStatistics();
+    /** Context of the paths computed while the buffers of this context are in use */
+    private WorkerContext nestedContext;
+
+    /**
+     * @return Context with its own buffers, used by the paths computed while a path of this context is in progress.
+     * Created on the first call.
+     */
+    WorkerContext getNestedContext() {
+        if (nestedContext == null) {
+            nestedContext = new WorkerContext();
+        }
+        return nestedContext;
+    }
+
+    /**
+     * @return Walk context of this worker, created on the first call
+     */
+    public FastObstructionTest.WalkContext getWalkContext() {
+        if (walkContext == null) {
+            walkContext = new FastObstructionTest.WalkContext();
+        }
+        return walkContext;
+    }
+
+    /**
+     * @return Statistics of the receivers computed with this context. The counters of the nested paths are folded
+     * in, their time is already part of the phase of this context that required them.
+     */
+    public PathFinderStatistics getStatistics() {
+        if (nestedContext != null) {
+            statistics.mergeCounters(nestedContext.getStatistics());
+            nestedContext.statistics.clear();
+        }
+        return statistics;
+    }
+
+    /**
+     * Release the references kept by the receiver level collections
+     */
+    public void clear() {
+        processedSources.clear();
+        wallsReceiverIds.clear();
+        wallsSourceIds.clear();
+        wallsReceiver.clear();
+        wallsSource.clear();
+        sourceList.clear();
+        sourceDeque.clear();
+        sourcePriorityQueue.clear();
+        clusterQueue.clear();
+    }
+
+    private void ensureGroundProfileCapacity(int size) {
+        if (groundX.length < size) {
+            int capacity = Math.max(size, groundX.length * 2);
+            groundX = new double[capacity];
+            groundY = new double[capacity];
+            groundZ = new double[capacity];
+            profileU = new double[capacity];
+        }
+        groundProfileSize = size;
+    }
+
+    /**
+     * Copy the intersections recorded by the walk context into the reused intersection list. The list and its items
+     * are overwritten by the next call.
+     * @param walkContext Triangle walk of the source-receiver line
+     * @return Intersections from the source to the receiver
+     */
+    List<TriIdWithIntersection> getIntersections(FastObstructionTest.WalkContext walkContext) {
+        while (intersectionPool.size() < walkContext.size()) {
+            intersectionPool.add(new TriIdWithIntersection(-1, new Coordinate()));
+        }
+        intersections.clear();
+        for (int i = 0; i < walkContext.size(); i++) {
+            TriIdWithIntersection inter = intersectionPool.get(i);
+            inter.setIntersection(walkContext.getTriangle(i), walkContext.getX(i), walkContext.getY(i),
+                    walkContext.getZ(i), walkContext.isOnBuilding(i), walkContext.isOnTopography(i),
+                    walkContext.getBuildingId(i));
+            intersections.add(inter);
+        }
+        return intersections;
+    }
+
+    /**
+     * Copy the ground position of the intersections recorded by the walk context
+     */
+    void setGroundProfile(FastObstructionTest freeFieldFinder, FastObstructionTest.WalkContext walkContext) {
+        ensureGroundProfileCapacity(walkContext.size());
+        for (int i = 0; i < walkContext.size(); i++) {
+            groundX[i] = walkContext.getX(i);
+            groundY[i] = walkContext.getY(i);
+            groundZ[i] = freeFieldFinder.getGroundZ(walkContext, i);
+        }
+    }
+
+    /**
+     * Copy the ground profile
+     * @param groundProfile Ground positions from the source to the receiver
+     */
+    void setGroundProfile(List<Coordinate> groundProfile) {
+        ensureGroundProfileCapacity(groundProfile.size());
+        for (int i = 0; i < groundProfile.size(); i++) {
+            Coordinate p = groundProfile.get(i);
+            groundX[i] = p.x;
+            groundY[i] = p.y;
+            groundZ[i] = p.z;
+        }
+    }
+}
+
+private static final class SourceCluster implements Comparable<SourceCluster> {
+    private final int node;
+    private final double powerBound;
+
+    /**
+     * @param node       Cluster index in {@link SourceClusterTree}
+     * @param powerBound Upper bound of the power received from the cluster
+     */
+    public SourceCluster(int node, double powerBound) {
+        this.node = node;
+        this.powerBound = powerBound;
+    }
+
+    @Override
+    public int compareTo(SourceCluster sourceCluster) {
+        return -Double.compare(powerBound, sourceCluster.powerBound);
+    }
+}
+
 private static final class SourcePointInfo implements Comparable<SourcePointInfo> {
     private double[] wj;
     private double li; //
     private int sourcePrimaryKey;
     private Coordinate position;
     private double globalWj;
+    /** Source point position given to the power bound estimator */
+    private Coordinate boundPosition;
+    /** False if the power bound has been computed without obstruction test */
+    private boolean obstructionTested = true;
 
     /**
      * @param wj               Maximum received power from this source
@@ -48,7 +48,7 @@ import java.util.concurrent.atomic.AtomicLong;
  * @author Nicolas Fortin
  * @author Pierre Aumond
  */
-public class ComputeRaysOut implements IComputeRaysOut {
+public class ComputeRaysOut implements IComputeRaysOut, IPathFinderStatisticsListener {
     public List<PropagationPath> propagationPaths = Collections.synchronizedList(new ArrayList<PropagationPath>());
 
     //public PropagationProcessPathData genericMeteoData;
@@ -146,6 +146,16 @@ public class ComputeRaysOut implements IComputeRaysOut {
         nb_obstr_test.addAndGet(freeFieldTestCount);
     }
 
+    @Override
+    public void cellStatistics(int cellId, PathFinderStatistics statistics) {
+        appendSourceCount(statistics.getCounter(PathFinderStatistics.Counter.SOURCE_RECEIVER_PAIRS));
+        appendFreeFieldTestCount(statistics.getCounter(PathFinderStatistics.Counter.OBSTRUCTION_TESTS));
+        appendImageReceiver(statistics.getCounter(PathFinderStatistics.Counter.IMAGE_RECEIVERS));
+        appendReflexionPath(statistics.getCounter(PathFinderStatistics.Counter.REFLECTION_PATHS));
+        appendDiffractionPath(statistics.getCounter(PathFinderStatistics.Counter.HORIZONTAL_DIFFRACTION_PATHS) +
+                statistics.getCounter(PathFinderStatistics.Counter.VERTICAL_DIFFRACTION_PATHS));
+    }
+
     public synchronized void log(String str) {
 
     }
@@ -0,0 +1,114 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineSegment;
+
+import java.util.List;
+
+/**
+ * Walls oriented toward a receiver and, computed on demand, the walls facing each of them. Shared by the image
+ * receivers trees {@link MirrorReceiverTree} and {@link ReceiverImageTree}. This class is not thread safe.
+ */
+final class FacingWalls {
+    private final List<FastObstructionTest.Wall> walls;
+    /** Walls oriented toward the receiver */
+    private final int[] candidates;
+    /** Lazily computed candidate walls facing each wall */
+    private final int[][] facingWalls;
+
+    /**
+     * @param receiverCoord      Receiver position
+     * @param walls              Walls
+     * @param srcReceiver        Source to receiver segment, null to keep the walls at any distance of the receiver
+     * @param distanceLimitation Maximum distance between walls and the source-receiver segment
+     */
+    FacingWalls(Coordinate receiverCoord, List<FastObstructionTest.Wall> walls, LineSegment srcReceiver,
+                double distanceLimitation) {
+        this.walls = walls;
+        int[] found = new int[walls.size()];
+        int count = 0;
+        for (int wallId = 0; wallId < walls.size(); wallId++) {
+            FastObstructionTest.Wall wall = walls.get(wallId);
+            if (MirrorReceiverIterator.wallPointTest(wall, receiverCoord) &&
+                    (srcReceiver == null || wall.distance(srcReceiver) < distanceLimitation)) {
+                found[count++] = wallId;
+            }
+        }
+        candidates = new int[count];
+        System.arraycopy(found, 0, candidates, 0, count);
+        facingWalls = new int[walls.size()][];
+    }
+
+    /**
+     * @return Walls oriented toward the receiver, in ascending order
+     */
+    int[] getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * @param wallId Parent wall
+     * @return Candidate walls that face the parent wall, in ascending order
+     */
+    int[] getFacingWalls(int wallId) {
+        int[] facing = facingWalls[wallId];
+        if (facing == null) {
+            FastObstructionTest.Wall wall = walls.get(wallId);
+            int[] found = new int[candidates.length];
+            int count = 0;
+            for (int candidate : candidates) {
+                if (candidate != wallId && MirrorReceiverIterator.wallWallTest(wall, walls.get(candidate))) {
+                    found[count++] = candidate;
+                }
+            }
+            facing = new int[count];
+            System.arraycopy(found, 0, facing, 0, count);
+            facingWalls[wallId] = facing;
+        }
+        return facing;
+    }
+
+    /**
+     * @param wallId     Wall
+     * @param receiverIm Receiver or image receiver
+     * @return Image of the receiver through the wall
+     */
+    Coordinate mirror(int wallId, Coordinate receiverIm) {
+        Coordinate intersectionPt = walls.get(wallId).project(receiverIm);
+        return new Coordinate(2 * intersectionPt.x - receiverIm.x, 2 * intersectionPt.y - receiverIm.y,
+                receiverIm.z);
+    }
+}
@@ -43,11 +43,11 @@ import org.locationtech.jts.io.WKTWriter;
 import org.locationtech.jts.math.Vector2D;
 import org.locationtech.jts.triangulate.quadedge.Vertex;
 import org.noise_planet.noisemodelling.pathfinder.utils.Densifier3D;
+import org.noise_planet.noisemodelling.pathfinder.utils.IntList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * FastObstructionTest speed up the search of
@@ -65,18 +65,26 @@ public class FastObstructionTest {
     // Split ray to test up to 200m length (in order to reduce returns results)
     private static final double STRTREE_TRAVERSAL_SPLIT = 300;
     private STRtree polygonIndex;
-    private List<Triangle> triVertices;
-    private List<Coordinate> vertices;
-    private List<Triangle> triNeighbors; // Neighbors
+    private CompactMesh mesh;
+    // List views of the mesh, built on demand
+    private volatile List<Triangle> triangleList = null;
+    private volatile List<Coordinate> vertexList = null;
     private List<Integer> buildingsPK = new ArrayList<>();
     private List<MeshBuilder.PolygonWithHeight> polygonWithHeight = new ArrayList<MeshBuilder.PolygonWithHeight>();//list polygon with height
     private Envelope meshEnvelope;
 
-    private STRtree triIndex = null;
+    private TriangleLocator triangleLocator;
+    private WallIndex wallIndex;
     private List<Float> verticesOpenAngle = null;
     private List<Coordinate> verticesOpenAngleTranslated = null; /*Open angle*/
     private boolean hasBuildingWithHeight;
     private Logger logger = LoggerFactory.getLogger(FastObstructionTest.class);
+    // One context by method that does not take the context from the caller, so that a call cannot overwrite
+    // the walk of another method in progress on the same thread
+    private static final ThreadLocal<WalkContext> WALK_CONTEXT = ThreadLocal.withInitial(WalkContext::new);
+    private static final ThreadLocal<WalkContext> FREE_FIELD_CONTEXT = ThreadLocal.withInitial(WalkContext::new);
+    private static final ThreadLocal<WalkContext> PATH_LIST_CONTEXT = ThreadLocal.withInitial(WalkContext::new);
+    private static final ThreadLocal<WalkContext> WALL_WALK_CONTEXT = ThreadLocal.withInitial(WalkContext::new);
     //data for calculate 3D diffraction,
     //first coordinate is the coordinate after the changing coordinate system, the second parameter will keep the data of original coordinate system
     /**
@@ -90,6 +98,16 @@ public class FastObstructionTest {
      */
     public FastObstructionTest(List<MeshBuilder.PolygonWithHeight> buildings,
                                List<Triangle> triangles, List<Triangle> triNeighbors, List<Coordinate> points) {
+        this(buildings, CompactMesh.fromLists(triangles, triNeighbors, points));
+    }
+
+    /**
+     * Initialize buildings and the triangulation from an already packed mesh
+     *
+     * @param buildings list of buildings with their height
+     * @param mesh      triangulation, triangle attribute is the building identifier [1-n] or 0 if not in building
+     */
+    public FastObstructionTest(List<MeshBuilder.PolygonWithHeight> buildings, CompactMesh mesh) {
 
         List<MeshBuilder.PolygonWithHeight> polygonWithHeightArray = new ArrayList<MeshBuilder.PolygonWithHeight>(buildings.size());
         hasBuildingWithHeight = false;
@@ -104,24 +122,14 @@ public class FastObstructionTest {
             MeshBuilder.PolygonWithHeight p = polygonWithHeightArray.get(i);
             polygonIndex.insert(p.geo.getEnvelopeInternal(), i + 1);
         }
-        this.triVertices = triangles;
-        this.triNeighbors = triNeighbors;
-        this.vertices = points;
-        meshEnvelope = new Envelope();
-        for(Coordinate p : points) {
-            meshEnvelope.expandToInclude(p);
-        }
+        this.mesh = mesh;
+        meshEnvelope = mesh.getEnvelope();
 
         // /////////////////////////////////
         // Feed Query Structure to find triangle, by coordinate
 
-        triIndex = new STRtree();
-        for (int triId = 0; triId < this.triVertices.size(); triId++) {
-            Triangle tri = triVertices.get(triId);
-            Envelope env = new Envelope(vertices.get(tri.getA()), vertices.get(tri.getB()));
-            env.expandToInclude(vertices.get(tri.getC()));
-            triIndex.insert(env, triId);
-        }
+        triangleLocator = new TriangleLocator(mesh);
+        wallIndex = new WallIndex(mesh, MINIMAL_REFLECTION_WALL_LENGTH);
         //give a average height to each building
         setAverageBuildingHeight(this.polygonWithHeight);
     }
@@ -155,124 +163,113 @@ public class FastObstructionTest {
     }
 
     /**
-     * Retrieve triangle list, only for debug and unit test purpose
+     * Retrieve triangle list, only for debug and unit test purpose.
+     * The list is built from the packed arrays on the first call, use {@link #getMesh()} to read the triangles
+     * without copy.
      *
      * @return Triangle list
      */
     public List<Triangle> getTriangles() {
-        return Collections.unmodifiableList(triVertices);
+        List<Triangle> triangles = triangleList;
+        if(triangles == null) {
+            triangles = Collections.unmodifiableList(mesh.getTriangles());
+            triangleList = triangles;
+        }
+        return triangles;
     }
 
 
     /**
-     * @return vertices list, only for debug and unit test purpose
+     * @return vertices list, only for debug and unit test purpose. The list is built from the packed arrays on the
+     * first call, use {@link #getMesh()} to read the vertices without copy.
      */
     public List<Coordinate> getVertices() {
-        return Collections.unmodifiableList(vertices);
+        List<Coordinate> vertices = vertexList;
+        if(vertices == null) {
+            vertices = Collections.unmodifiableList(mesh.getVertices());
+            vertexList = vertices;
+        }
+        return vertices;
+    }
+
+    /**
+     * @return Triangulation used by the triangle walks
+     */
+    public CompactMesh getMesh() {
+        return mesh;
     }
 
 
     /**
      * Compute the next triangle index.Find the shortest intersection point of
-     * triIndex segments to the p1 coordinate
+     * triIndex segments to the p1 coordinate. The intersection with the next triangle is stored in the context.
      *
-     * @param triIndex        Triangle index
-     * @param propagationLine Propagation line
+     * @param triIndex Triangle index
+     * @param p0x      Propagation line start X
+     * @param p0y      Propagation line start Y
+     * @param p0z      Propagation line start Z
+     * @param p1x      Propagation line end X
+     * @param p1y      Propagation line end Y
+     * @param p1z      Propagation line end Z
+     * @param context  Walk context, visited triangles and next intersection output
      * @return Next triangle to the specified direction, -1 if there is no
      * triangle neighbor.
      */
-    private TriIdWithIntersection getNextTri(final int triIndex,
-                                             final LineSegment propagationLine,
-                                             HashSet<Integer> navigationHistory) {
-        final Triangle tri = this.triVertices.get(triIndex);
-        final Triangle triNeighbors = this.triNeighbors.get(triIndex);
+    private int getNextTri(final int triIndex, double p0x, double p0y, double p0z, double p1x, double p1y,
+                           double p1z, WalkContext context) {
         int nearestIntersectionSide = -1;
-        int idneigh;
-
         double nearestIntersectionPtDist = Double.MAX_VALUE;
-        // Find intersection pt
-        final Coordinate aTri = this.vertices.get(tri.getA());
-        final Coordinate bTri = this.vertices.get(tri.getB());
-        final Coordinate cTri = this.vertices.get(tri.getC());
-        double distline_line;
-        Coordinate intersection = new Coordinate();
+        double[] intersectionTest = context.intersectionTest;
+        double intersectionX = 0;
+        double intersectionY = 0;
         //if there is no intersection, by default we set the - max value to Topography intersection to avoid the problem
         double zTopoIntersection = -Double.MAX_VALUE;
         double zPropagationRayIntersection;
-        // Intersection First Side
-        idneigh = triNeighbors.get(2);
-        if (idneigh != -1 && !navigationHistory.contains(idneigh)) {
-            Coordinate[] closestPoints = propagationLine.closestPoints(new LineSegment(aTri, bTri));
-            Coordinate intersectionTest = null;
-            if(closestPoints.length == 2 && closestPoints[0].distance(closestPoints[1]) < epsilon) {
-                intersectionTest = closestPoints[0];
-            }
-            if(intersectionTest != null) {
-                distline_line = propagationLine.p1.distance(intersectionTest);
-                if (distline_line < nearestIntersectionPtDist) {
-                    intersection = intersectionTest;
-                    nearestIntersectionPtDist = distline_line;
-                    nearestIntersectionSide = 2;
-                    //we will get the intersection point coordinate with(x,y,NaN)
-                    //get this point Z using interested segment.
-                    zTopoIntersection = calculateLinearInterpolation(aTri, bTri, intersection);
-                }
-            }
-        }
-        // Intersection Second Side
-        idneigh = triNeighbors.get(0);
-        if (idneigh != -1 && !navigationHistory.contains(idneigh)) {
-            Coordinate[] closestPoints = propagationLine.closestPoints(new LineSegment(bTri, cTri));
-            Coordinate intersectionTest = null;
-            if(closestPoints.length == 2 && closestPoints[0].distance(closestPoints[1]) < epsilon) {
-                intersectionTest = closestPoints[0];
-            }
-            if(intersectionTest != null) {
-                distline_line = propagationLine.p1.distance(intersectionTest);
-                if (distline_line < nearestIntersectionPtDist) {
-                    intersection = intersectionTest;
-                    nearestIntersectionPtDist = distline_line;
-                    nearestIntersectionSide = 0;
-                    //we will get the intersection point coordinate with(x,y,NaN)
-                    //get this point Z using interested segment.
-                    zTopoIntersection = calculateLinearInterpolation(bTri, cTri, intersection);
-                }
-            }
-        }
-        // Intersection Third Side
-        idneigh = triNeighbors.get(1);
-        if (idneigh != -1 && !navigationHistory.contains(idneigh)) {
-            Coordinate[] closestPoints = propagationLine.closestPoints(new LineSegment(cTri, aTri));
-            Coordinate intersectionTest = null;
-            if(closestPoints.length == 2 && closestPoints[0].distance(closestPoints[1]) < epsilon) {
-                intersectionTest = closestPoints[0];
-            }
-            if(intersectionTest != null) {
-                distline_line = propagationLine.p1.distance(intersectionTest);
-                if (distline_line < nearestIntersectionPtDist) {
-                    intersection = intersectionTest;
-                    nearestIntersectionSide = 1;
-                    //we will get the intersection point coordinate with(x,y,NaN)
-                    //get this point Z using interested segment.
-                    zTopoIntersection = calculateLinearInterpolation(cTri, aTri, intersection);
+        // Sides are tested in the order a-b, b-c then c-a
+        for (int sideIndex = 0; sideIndex < 3; sideIndex++) {
+            final int side = (sideIndex + 2) % 3;
+            int idneigh = mesh.getNeighbor(triIndex, side);
+            if (idneigh != -1 && !context.isVisited(idneigh)) {
+                int vA = mesh.getVertexIndex(triIndex, (side + 1) % 3);
+                int vB = mesh.getVertexIndex(triIndex, (side + 2) % 3);
+                if(computeSideIntersection(p0x, p0y, p1x, p1y, mesh.getX(vA), mesh.getY(vA), mesh.getX(vB),
+                        mesh.getY(vB), intersectionTest)) {
+                    double distline_line = distance2D(p1x, p1y, intersectionTest[0], intersectionTest[1]);
+                    if (distline_line < nearestIntersectionPtDist) {
+                        intersectionX = intersectionTest[0];
+                        intersectionY = intersectionTest[1];
+                        nearestIntersectionPtDist = distline_line;
+                        nearestIntersectionSide = side;
+                        //we will get the intersection point coordinate with(x,y,NaN)
+                        //get this point Z using interested segment.
+                        zTopoIntersection = interpolateZ(mesh.getX(vA), mesh.getY(vA), mesh.getZ(vA), mesh.getX(vB),
+                                mesh.getY(vB), mesh.getZ(vB), intersectionX, intersectionY);
+                    }
                 }
             }
         }
         if (nearestIntersectionSide != -1) {
             //get this point Z using propagation line
-            zPropagationRayIntersection = calculateLinearInterpolation(propagationLine.p0, propagationLine.p1, intersection);
+            zPropagationRayIntersection = interpolateZ(p0x, p0y, p0z, p1x, p1y, p1z, intersectionX, intersectionY);
+            final int nextTri = mesh.getNeighbor(triIndex, nearestIntersectionSide);
+            context.nextX = intersectionX;
+            context.nextY = intersectionY;
+            context.nextZ = zPropagationRayIntersection;
+            context.nextOnBuilding = false;
+            context.nextOnTopography = false;
             // Manage blocking buildings
-            int neightBuildingId = this.triVertices.get(triNeighbors.get(nearestIntersectionSide)).getAttribute();
+            int neightBuildingId = mesh.getAttribute(nextTri);
+            int triBuildingId = mesh.getAttribute(triIndex);
             int rayBuildingId = 0;
             // Current tri is in building
-            if(tri.getAttribute() != 0) {
-                rayBuildingId = tri.getAttribute();
-                MeshBuilder.PolygonWithHeight building = polygonWithHeight.get(tri.getAttribute() - 1);
+            if(triBuildingId != 0) {
+                rayBuildingId = triBuildingId;
+                MeshBuilder.PolygonWithHeight building = polygonWithHeight.get(triBuildingId - 1);
                 // Stop propagation if ray collide with the building
                 if(!building.hasHeight() || Double.isNaN(zPropagationRayIntersection) || zPropagationRayIntersection < building.getHeight()) {
-                    return new TriIdWithIntersection(triNeighbors.get(nearestIntersectionSide),
-                            new Coordinate(intersection.x, intersection.y, zPropagationRayIntersection),
-                            true,false, rayBuildingId);
+                    context.nextOnBuilding = true;
+                    context.nextBuildingId = rayBuildingId;
+                    return nextTri;
                 }
             }
             // Next tri is in building
@@ -281,82 +278,176 @@ public class FastObstructionTest {
                 MeshBuilder.PolygonWithHeight building = polygonWithHeight.get(neightBuildingId - 1);
                 // Stop propagation if ray collide with the building
                 if(!building.hasHeight() || Double.isNaN(zPropagationRayIntersection) || zPropagationRayIntersection < building.getHeight()) {
-                    return new TriIdWithIntersection(triNeighbors.get(nearestIntersectionSide),
-                            new Coordinate(intersection.x, intersection.y, zPropagationRayIntersection),
-                            true,false, rayBuildingId);
+                    context.nextOnBuilding = true;
+                    context.nextBuildingId = rayBuildingId;
+                    return nextTri;
                 }
             }
+            context.nextBuildingId = rayBuildingId;
             //If the Z calculated by propagation Line >= Z calculated by intersected line, we will find next triangle
-            if (Double.isNaN(zPropagationRayIntersection) || zPropagationRayIntersection + epsilon >= zTopoIntersection) {
-                return new TriIdWithIntersection(triNeighbors.get(nearestIntersectionSide),
-                        new Coordinate(intersection.x, intersection.y, zPropagationRayIntersection),
-                        false, false, rayBuildingId);
-            }
             //Else, the Z of Topographic intersection > Z calculated by propagation Line, the Topographic intersection will block the propagation line
-            else {
+            if (!Double.isNaN(zPropagationRayIntersection) && zPropagationRayIntersection + epsilon < zTopoIntersection) {
                 //Propagation line blocked by the topography
-                return new TriIdWithIntersection(triNeighbors.get(nearestIntersectionSide),
-                        new Coordinate(intersection.x, intersection.y, zTopoIntersection),
-                        false,true, rayBuildingId);
+                context.nextZ = zTopoIntersection;
+                context.nextOnTopography = true;
             }
+            return nextTri;
         } else {
-            return new TriIdWithIntersection(-1,
-                    new Coordinate(),
-                    false,false, 0);
+            return -1;
+        }
+    }
+
+    static double distance2D(double x0, double y0, double x1, double y1) {
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * @return 2D distance between the point p and the segment a-b
+     */
+    static double distancePointSegment(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double len2 = dx * dx + dy * dy;
+        double r = len2 == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / len2;
+        if (r <= 0) {
+            return distance2D(px, py, ax, ay);
+        } else if (r >= 1) {
+            return distance2D(px, py, bx, by);
+        } else {
+            return distance2D(px, py, ax + r * dx, ay + r * dy);
+        }
+    }
+
+    private static double distancePointSegment(double px, double py, double ax, double ay, double bx, double by,
+                                               double[] closest) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double len2 = dx * dx + dy * dy;
+        double r = len2 == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / len2;
+        if (r <= 0) {
+            closest[0] = ax;
+            closest[1] = ay;
+        } else if (r >= 1) {
+            closest[0] = bx;
+            closest[1] = by;
+        } else {
+            closest[0] = ax + r * dx;
+            closest[1] = ay + r * dy;
+        }
+        return distance2D(px, py, closest[0], closest[1]);
+    }
+
+    /**
+     * Intersection between the propagation segment p0-p1 and the triangle side a-b. Segments that do not cross but
+     * are closer than {@link #epsilon} are considered as intersecting, as done with
+     * {@link LineSegment#closestPoints(LineSegment)}.
+     * @param intersection [out] x,y of the intersection point, located on the propagation segment
+     * @return True if there is an intersection
+     */
+    private static boolean computeSideIntersection(double p0x, double p0y, double p1x, double p1y,
+                                                   double ax, double ay, double bx, double by,
+                                                   double[] intersection) {
+        double rx = p1x - p0x;
+        double ry = p1y - p0y;
+        double sx = bx - ax;
+        double sy = by - ay;
+        double denominator = rx * sy - ry * sx;
+        if (denominator != 0) {
+            double qpx = ax - p0x;
+            double qpy = ay - p0y;
+            double t = (qpx * sy - qpy * sx) / denominator;
+            double u = (qpx * ry - qpy * rx) / denominator;
+            if (t >= 0 && t <= 1 && u >= 0 && u <= 1) {
+                intersection[0] = p0x + t * rx;
+                intersection[1] = p0y + t * ry;
+                return true;
+            }
+        }
+        // No crossing, look for the closest pair of points that contains an endpoint
+        double x = 0, y = 0;
+        double minDistance = Double.MAX_VALUE;
+        double dist = distancePointSegment(ax, ay, p0x, p0y, p1x, p1y, intersection);
+        if (dist < minDistance) {
+            minDistance = dist;
+            x = intersection[0];
+            y = intersection[1];
+        }
+        dist = distancePointSegment(bx, by, p0x, p0y, p1x, p1y, intersection);
+        if (dist < minDistance) {
+            minDistance = dist;
+            x = intersection[0];
+            y = intersection[1];
+        }
+        dist = distancePointSegment(p0x, p0y, ax, ay, bx, by, intersection);
+        if (dist < minDistance) {
+            minDistance = dist;
+            x = p0x;
+            y = p0y;
+        }
+        dist = distancePointSegment(p1x, p1y, ax, ay, bx, by, intersection);
+        if (dist < minDistance) {
+            minDistance = dist;
+            x = p1x;
+            y = p1y;
         }
+        intersection[0] = x;
+        intersection[1] = y;
+        return minDistance < epsilon;
     }
 
-    private boolean dotInTri(Coordinate p, Coordinate a, Coordinate b,
-                             Coordinate c) {
-        return dotInTri(p, a, b, c, null);
+    /**
+     * Linear interpolation of Z along the segment a-b, using the 2D distance from a
+     * @see Vertex#interpolateZ(Coordinate, Coordinate, Coordinate)
+     */
+    private static double interpolateZ(double ax, double ay, double az, double bx, double by, double bz,
+                                       double x, double y) {
+        double segLen = distance2D(ax, ay, bx, by);
+        double ptLen = distance2D(ax, ay, x, y);
+        return az + (bz - az) * (ptLen / segLen);
+    }
+
+    /**
+     * Plane interpolation of Z in the triangle
+     * @see Vertex#interpolateZ(Coordinate, Coordinate, Coordinate, Coordinate)
+     */
+    private double interpolateZ(int triangle, double x, double y) {
+        int v0 = mesh.getVertexIndex(triangle, 0);
+        int v1 = mesh.getVertexIndex(triangle, 1);
+        int v2 = mesh.getVertexIndex(triangle, 2);
+        double x0 = mesh.getX(v0);
+        double y0 = mesh.getY(v0);
+        double a = mesh.getX(v1) - x0;
+        double b = mesh.getX(v2) - x0;
+        double c = mesh.getY(v1) - y0;
+        double d = mesh.getY(v2) - y0;
+        double det = a * d - b * c;
+        double dx = x - x0;
+        double dy = y - y0;
+        double t = (d * dx - b * dy) / det;
+        double u = (-c * dx + a * dy) / det;
+        double z0 = mesh.getZ(v0);
+        return z0 + t * (mesh.getZ(v1) - z0) + u * (mesh.getZ(v2) - z0);
     }
+
     /**
      * Fast dot in triangle test
      * <p/>
      * {@see http://www.blackpawn.com/texts/pointinpoly/default.html}
      *
-     * @param p coordinate of the point
-     * @param a coordinate of the A vertex of triangle
-     * @param b coordinate of the B vertex of triangle
-     * @param c coordinate of the C vertex of triangle
-     * @return True if dot is in triangle
+     * @param triangle Triangle index
+     * @param x        X coordinate of the point
+     * @param y        Y coordinate of the point
+     * @return True if dot is in triangle, with {@link #epsilon} tolerance
      */
-    private boolean dotInTri(Coordinate p, Coordinate a, Coordinate b,
-                             Coordinate c, AtomicReference<Double> error) {
-        Vector2D v0 = new Vector2D(c.x - a.x, c.y - a.y);
-        Vector2D v1 = new Vector2D(b.x - a.x, b.y - a.y);
-        Vector2D v2 = new Vector2D(p.x - a.x, p.y - a.y);
-
-        // Compute dot products
-        double dot00 = v0.dot(v0);
-        double dot01 = v0.dot(v1);
-        double dot02 = v0.dot(v2);
-        double dot11 = v1.dot(v1);
-        double dot12 = v1.dot(v2);
-
-        // Compute barycentric coordinates
-        double invDenom = 1 / (dot00 * dot11 - dot01 * dot01);
-        double u = (dot11 * dot02 - dot01 * dot12) * invDenom;
-        double v = (dot00 * dot12 - dot01 * dot02) * invDenom;
-
-        if(error != null) {
-            double err = 0;
-            err += Math.max(0, -u);
-            err += Math.max(0, -v);
-            err += Math.max(0, (u + v) - 1);
-            error.set(err);
-        }
-
-        // Check if point is in triangle
-        return (u > (0. - epsilon)) && (v > (0. - epsilon))
-                && (u + v < (1. + epsilon));
-
+    private boolean dotInTri(int triangle, double x, double y) {
+        return mesh.getBarycentricError(triangle, x, y, epsilon) <= 0;
     }
 
     Coordinate[] getTriangle(int triIndex) {
-        final Triangle tri = this.triVertices.get(triIndex);
-        return new Coordinate[]{this.vertices.get(tri.getA()),
-                this.vertices.get(tri.getB()), this.vertices.get(tri.getC())};
+        return new Coordinate[]{mesh.getVertex(mesh.getVertexIndex(triIndex, 0)),
+                mesh.getVertex(mesh.getVertexIndex(triIndex, 1)), mesh.getVertex(mesh.getVertexIndex(triIndex, 2))};
     }
 
     /**
@@ -367,22 +458,7 @@ public class FastObstructionTest {
      */
 
     public int getTriangleIdByCoordinate(Coordinate pt) {
-        Envelope ptEnv = new Envelope(pt);
-        ptEnv.expandBy(1);
-        List res = triIndex.query(new Envelope(ptEnv));
-        double minDistance = Double.MAX_VALUE;
-        int minDistanceTriangle = -1;
-        for(Object objInd : res) {
-            int triId = (Integer) objInd;
-            Coordinate[] tri = getTriangle(triId);
-            AtomicReference<Double> err = new AtomicReference<>(0.);
-            dotInTri(pt, tri[0], tri[1], tri[2], err);
-            if (err.get() < minDistance) {
-                minDistance = err.get();
-                minDistanceTriangle = triId;
-            }
-        }
-        return minDistanceTriangle;
+        return triangleLocator.locate(pt.x, pt.y);
     }
 
     /**
@@ -455,59 +531,63 @@ public class FastObstructionTest {
      * @return List of corners within parameters range
      */
     public List<Coordinate> getWideAnglePoints(double minAngle, double maxAngle) {
+        final int vertexCount = mesh.getVertexCount();
         List<Coordinate> wideAnglePts = new ArrayList<Coordinate>(
-                vertices.size());
+                vertexCount);
         if (verticesOpenAngle == null) {
-            verticesOpenAngle = new ArrayList<Float>(vertices.size()); // Reserve
+            verticesOpenAngle = new ArrayList<Float>(vertexCount); // Reserve
             // size
             verticesOpenAngleTranslated = new ArrayList<Coordinate>(
-                    vertices.size());
+                    vertexCount);
             // Vertex open angle. For each vertex
             // [ccwmin,ccwmax,ccwmin,ccwmax,..]
             ArrayList<ArrayList<Double>> verticesOpenAnglesTuples = new ArrayList<ArrayList<Double>>(
-                    vertices.size());
-            for (int idvert = 0; idvert < vertices.size(); idvert++) {
+                    vertexCount);
+            for (int idvert = 0; idvert < vertexCount; idvert++) {
                 verticesOpenAngle.add(0.f);
                 verticesOpenAnglesTuples.add(new ArrayList<Double>());
             }
 
 
-            for (Triangle tri : this.triVertices) {
-                if (tri.getAttribute() < 1) {
+            for (int triId = 0; triId < mesh.getTriangleCount(); triId++) {
+                if (mesh.getAttribute(triId) < 1) {
                     // Compute angle at each corner, then add to vertices angle
                     // array
-                    Coordinate triA = vertices.get(tri.getA());
-                    Coordinate triB = vertices.get(tri.getB());
-                    Coordinate triC = vertices.get(tri.getC());
+                    int a = mesh.getVertexIndex(triId, 0);
+                    int b = mesh.getVertexIndex(triId, 1);
+                    int c = mesh.getVertexIndex(triId, 2);
+                    Coordinate triA = mesh.getVertex(a);
+                    Coordinate triB = mesh.getVertex(b);
+                    Coordinate triC = mesh.getVertex(c);
                     // Add A vertex min/max angle
-                    updateMinMax(tri.getA(), triA, triB, triC,
+                    updateMinMax(a, triA, triB, triC,
                             verticesOpenAnglesTuples);
-                    verticesOpenAngle.set(tri.getA(),
-                            (float) (verticesOpenAngle.get(tri.getA()) + Angle
+                    verticesOpenAngle.set(a,
+                            (float) (verticesOpenAngle.get(a) + Angle
                                     .angleBetween(triB, triA, triC))
                     );
                     // Add B vertex angle
-                    updateMinMax(tri.getB(), triB, triC, triA,
+                    updateMinMax(b, triB, triC, triA,
                             verticesOpenAnglesTuples);
-                    verticesOpenAngle.set(tri.getB(),
-                            (float) (verticesOpenAngle.get(tri.getB()) + Angle
+                    verticesOpenAngle.set(b,
+                            (float) (verticesOpenAngle.get(b) + Angle
                                     .angleBetween(triA, triB, triC))
                     );
                     // Add C vertex angle
-                    updateMinMax(tri.getC(), triC, triA, triB,
+                    updateMinMax(c, triC, triA, triB,
                             verticesOpenAnglesTuples);
-                    verticesOpenAngle.set(tri.getC(),
-                            (float) (verticesOpenAngle.get(tri.getC()) + Angle
+                    verticesOpenAngle.set(c,
+                            (float) (verticesOpenAngle.get(c) + Angle
                                     .angleBetween(triB, triC, triA))
                     );
                 }
             }
 
-            for (int idvert = 0; idvert < vertices.size(); idvert++) {
+            for (int idvert = 0; idvert < vertexCount; idvert++) {
                 // Compute median angle of open angle point
                 ArrayList<Double> curvert = verticesOpenAnglesTuples
                         .get(idvert);
-                Coordinate curVert = vertices.get(idvert);
+                Coordinate curVert = mesh.getVertex(idvert);
                 if (curvert.size() == 2) {
                     double ccw1 = curvert.get(0);
                     double ccw2 = curvert.get(1);
@@ -588,71 +668,109 @@ public class FastObstructionTest {
      */
     public LinkedList<Wall> getLimitsInRange(double maxDist,
                                              Coordinate p1, boolean goThroughWalls) {
+        IntList wallIds = new IntList();
+        getWallIdsInRange(maxDist, p1, goThroughWalls, wallIds);
         LinkedList<Wall> walls = new LinkedList<>();
+        for (int i = 0; i < wallIds.size(); i++) {
+            walls.add(getWall(wallIds.get(i)));
+        }
+        return walls;
+    }
+
+    /**
+     * @param wallId Wall identifier, see {@link #getWallIdsInRange(double, Coordinate, boolean, IntList)}
+     * @return New wall instance
+     */
+    public Wall getWall(int wallId) {
+        return new Wall(mesh.getVertex(wallIndex.getVertex0(wallId)), mesh.getVertex(wallIndex.getVertex1(wallId)),
+                wallIndex.getBuildingId(wallId));
+    }
+
+    /**
+     * @return Walls of buildings
+     */
+    public WallIndex getWallIndex() {
+        return wallIndex;
+    }
+
+    /**
+     * Compute the list of walls reachable from the origin, without going through buildings unless goThroughWalls
+     * is true.
+     * From an origin in the open space, a wall is reachable if it faces the same connected open space area than the
+     * origin and is at a distance lower or equal than maxDist, the walls are read from the {@link WallIndex} grid in
+     * identifier order. Otherwise the walls are found by walking through the triangles sides near the origin, and are given in the
+     * order of the walk.
+     *
+     * @param maxDist        Maximum distance from origin to walls
+     * @param p1             Origin of search
+     * @param goThroughWalls Continue the search inside buildings
+     * @param walls          [out] Wall identifiers, see {@link #getWall(int)}
+     */
+    public void getWallIdsInRange(double maxDist, Coordinate p1, boolean goThroughWalls, IntList walls) {
         int curTri = getTriangleIdByCoordinate(p1);
-        int p1Building = 0;
-        p1Building = triVertices.get(curTri).getAttribute();
-        int nextTri = -1;
-        short firstSide = 0;
-        HashSet<Integer> navigationHistory = new HashSet<Integer>(); // List all
-        // triangles
-        // already
-        // processed
-        Stack<Integer> navigationNodes = new Stack<Integer>(); // List the
-        // current queue
-        // of triangles
-        // the process
-        // go through
-        Stack<Short> navigationSide = new Stack<Short>(); //History of current processing side
+        if (curTri == -1) {
+            return;
+        }
+        if (!goThroughWalls && mesh.getAttribute(curTri) == 0) {
+            wallIndex.queryOpenSpaceWalls(p1.x, p1.y, maxDist, wallIndex.getArea(curTri), walls);
+        } else {
+            walkWallIdsInRange(maxDist, p1, goThroughWalls, walls);
+        }
+    }
 
+    /**
+     * Compute the list of walls reachable from the origin by walking through the triangles sides near the origin
+     * @see #getWallIdsInRange(double, Coordinate, boolean, IntList)
+     */
+    void walkWallIdsInRange(double maxDist, Coordinate p1, boolean goThroughWalls, IntList walls) {
+        int curTri = getTriangleIdByCoordinate(p1);
+        if (curTri == -1) {
+            return;
+        }
+        int p1Building = mesh.getAttribute(curTri);
+        int firstSide = 0;
+        WalkContext context = WALL_WALK_CONTEXT.get();
+        context.startWalk();
+        // Triangle and side (triangle * 3 + side) where to go back when there is no more navigable neighbors
+        IntList navigation = context.navigation;
+        navigation.clear();
         while (curTri != -1) {
             if(firstSide == 0) {
-                navigationHistory.add(curTri);
+                context.visit(curTri);
             }
             // for each side of the triangle
-            Triangle neighbors = this.triNeighbors.get(curTri);
-            nextTri = -1;
-            for (short sideId = firstSide; sideId < 3; sideId++) {
-                Triangle tri = this.triVertices.get(curTri);
-                IntSegment segVerticesIndex = tri
-                        .getSegment(sideId);
-                int wallBuildingId = 0;
-                if(neighbors.get(sideId) != -1) {
-                    wallBuildingId = triVertices.get(neighbors.get(sideId)).getAttribute();
-                }
-                Wall wall = new Wall(
-                        this.vertices.get(segVerticesIndex.getA()),
-                        this.vertices.get(segVerticesIndex.getB()),wallBuildingId);
-                Coordinate closestPoint = wall.closestPoint(p1);
-                if (closestPoint.distance(p1) <= maxDist) {
-                    // Propagate search in this direction if this is not the domain limitation
-                    if (neighbors.get(sideId) != -1) {
-                        // If the triangle side is a wal
-                        if (wall.getBuildingId() >= 1 && wall.getLength() > MINIMAL_REFLECTION_WALL_LENGTH) {
-                            walls.add(wall);
-                        }
-                        if((goThroughWalls || wall.getBuildingId() == 0 || wall.getBuildingId() == p1Building) && !navigationHistory.contains(neighbors.get(sideId))) {
-                            // Store currentTriangle Id. This is where to go
-                            // back when there is no more navigable neighbors at
-                            // the next triangle
-                            navigationNodes.add(curTri);
-                            navigationSide.add(sideId);
-                            firstSide = 0;
-                            nextTri = neighbors.get(sideId);
-                            break; // Next triangle
-                        }
+            int nextTri = -1;
+            for (int sideId = firstSide; sideId < 3; sideId++) {
+                int neighbor = mesh.getNeighbor(curTri, sideId);
+                int vA = mesh.getVertexIndex(curTri, (sideId + 1) % 3);
+                int vB = mesh.getVertexIndex(curTri, (sideId + 2) % 3);
+                // Propagate search in this direction if this is not the domain limitation
+                if (neighbor != -1 && distancePointSegment(p1.x, p1.y, mesh.getX(vA), mesh.getY(vA), mesh.getX(vB),
+                        mesh.getY(vB)) <= maxDist) {
+                    int wallBuildingId = mesh.getAttribute(neighbor);
+                    // If the triangle side is a wall
+                    int wallId = wallIndex.getWall(curTri, sideId);
+                    if (wallId != -1) {
+                        walls.add(wallId);
+                    }
+                    if((goThroughWalls || wallBuildingId == 0 || wallBuildingId == p1Building) &&
+                            !context.isVisited(neighbor)) {
+                        navigation.add(curTri * 3 + sideId);
+                        firstSide = 0;
+                        nextTri = neighbor;
+                        break; // Next triangle
                     }
                 }
             }
-            if (nextTri == -1 && !navigationNodes.empty()) {
-                // All the side have been rejected, go back by one on the
-                // navigation
-                nextTri = navigationNodes.pop();
-                firstSide = (short) (navigationSide.pop() + 1);
+            if (nextTri == -1 && !navigation.isEmpty()) {
+                // All the side have been rejected, go back by one on the navigation
+                int last = navigation.get(navigation.size() - 1);
+                navigation.removeLast();
+                nextTri = last / 3;
+                firstSide = last % 3 + 1;
             }
             curTri = nextTri;
         }
-        return walls;
     }
 
     /**
@@ -675,12 +793,7 @@ public class FastObstructionTest {
     public double getHeightAtPosition(Coordinate p1) {
         int curTri = getTriangleIdByCoordinate(p1);
         if(curTri >= 0) {
-            Triangle triangle = triVertices.get(curTri);
-            org.locationtech.jts.geom.Triangle tri =
-                    new org.locationtech.jts.geom.Triangle(vertices.get(triangle.getA()),
-                            vertices.get(triangle.getB()),vertices.get(triangle.getC()));
-
-            return tri.interpolateZ(p1);
+            return interpolateZ(curTri, p1.x, p1.y);
         } else {
             return Double.NaN;
         }
@@ -722,7 +835,7 @@ public class FastObstructionTest {
      * compute diffraction.
      */
     public boolean isFreeField(Coordinate p1, Coordinate p2) {
-        return computePropagationPath(p1, p2, true, null, false);
+        return computePropagationPath(p1, p2, true, FREE_FIELD_CONTEXT.get(), false, false);
     }
 
     /**
@@ -735,8 +848,35 @@ public class FastObstructionTest {
      * @return True if the propagation goes from p1 to p2.
      */
     public boolean computePropagationPath(Coordinate p1, Coordinate p2, boolean stopOnIntersection, List<TriIdWithIntersection> path, boolean includePoints) {
-        LineSegment propaLine = new LineSegment(p1, p2);
+        WalkContext context = PATH_LIST_CONTEXT.get();
+        boolean result = computePropagationPath(p1, p2, stopOnIntersection, context, path != null, includePoints);
+        if(path != null) {
+            for(int i = 0; i < context.size(); i++) {
+                path.add(new TriIdWithIntersection(context.getTriangle(i),
+                        new Coordinate(context.getX(i), context.getY(i), context.getZ(i)), context.isOnBuilding(i),
+                        context.isOnTopography(i), context.getBuildingId(i)));
+            }
+        }
+        return result;
+    }
 
+    /**
+     * Allocation free version of
+     * {@link #computePropagationPath(Coordinate, Coordinate, boolean, List, boolean)}
+     * @param p1 Start propagation path
+     * @param p2 End propagation path
+     * @param stopOnIntersection Stop if the segment between p1 and p2 intersects with topography or buildings
+     * @param context Walk context, see {@link #getWalkContext()}. The intersections are stored in it if
+     *                recordPath is true.
+     * @param recordPath Store intersection with triangle sides into the context
+     * @param includePoints Include p1 and p2 into path output
+     * @return True if the propagation goes from p1 to p2.
+     */
+    public boolean computePropagationPath(Coordinate p1, Coordinate p2, boolean stopOnIntersection,
+                                          WalkContext context, boolean recordPath, boolean includePoints) {
+        context.clear();
+        context.startWalk();
+        includePoints = includePoints && recordPath;
         //get receiver triangle id
         int curTriP1 = getTriangleIdByCoordinate(p1);
         //get source triangle id
@@ -749,59 +889,54 @@ public class FastObstructionTest {
             logger.error(String.format("Propagation path point (%.2f, %.2f) is outside of bounds", p2.x, p2.y));
             return false;
         }
-        Coordinate[] triP1 = getTriangle(curTriP1);
-        Coordinate[] triP2 = getTriangle(curTriP2);
-        Triangle buildingP1 = this.triVertices.get(curTriP1);
-        Triangle buildingP2 = this.triVertices.get(curTriP2);
+        final int buildingP1 = mesh.getAttribute(curTriP1);
+        final int buildingP2 = mesh.getAttribute(curTriP2);
         if(stopOnIntersection) {
-            if (buildingP1.getAttribute() >= 1) {
-                MeshBuilder.PolygonWithHeight building = polygonWithHeight.get(buildingP1.getAttribute() - 1);
+            if (buildingP1 >= 1) {
+                MeshBuilder.PolygonWithHeight building = polygonWithHeight.get(buildingP1 - 1);
                 if (!building.hasHeight() || Double.isNaN(p1.z) || building.getHeight() >= p1.z) {
                     //receiver is in the building so this propagation line is invisible
                     return false;
                 }
             }
-            if (buildingP2.getAttribute() >= 1) {
-                MeshBuilder.PolygonWithHeight building = polygonWithHeight.get(buildingP2.getAttribute() - 1);
+            if (buildingP2 >= 1) {
+                MeshBuilder.PolygonWithHeight building = polygonWithHeight.get(buildingP2 - 1);
                 if (!building.hasHeight() || Double.isNaN(p2.z) || building.getHeight() >= p2.z) {
                     //receiver is in the building so this propagation line is invisible
                     return false;
                 }
             }
         }
-        double zTopoP1 = getTopoZByGiven3Points(triP1[0], triP1[1], triP1[2], p1);
-        double zTopoP2 = getTopoZByGiven3Points(triP2[0], triP2[1], triP2[2], p2);
+        double zTopoP1 = interpolateZ(curTriP1, p1.x, p1.y);
+        double zTopoP2 = interpolateZ(curTriP2, p2.x, p2.y);
         if(includePoints) {
-            path.add(new TriIdWithIntersection(curTriP1, new Coordinate(p1.x, p1.y, zTopoP1)));
+            context.add(curTriP1, p1.x, p1.y, zTopoP1, false, false, 0);
         }
         if (stopOnIntersection && ((!Double.isNaN(p1.z) && p1.z + epsilon < zTopoP1)
                 || (!Double.isNaN(p2.z) && p2.z + epsilon < zTopoP2))) {
             //Z value of origin or destination is lower than topography. FreeField is always false in this case
             if(includePoints) {
-                path.add(new TriIdWithIntersection(curTriP2, new Coordinate(p2.x, p2.y, zTopoP2), false, false,
-                        buildingP2.getAttribute()));
+                context.add(curTriP2, p2.x, p2.y, zTopoP2, false, false, buildingP2);
             }
             return false;
         }
 
-        HashSet<Integer> navigationHistory = new HashSet<Integer>();
         int navigationTri = curTriP1;
         while (navigationTri != -1) {
-            navigationHistory.add(navigationTri);
-            Coordinate[] tri = getTriangle(navigationTri);
-            if (dotInTri(p2, tri[0], tri[1], tri[2])) {
+            context.visit(navigationTri);
+            if (dotInTri(navigationTri, p2.x, p2.y)) {
                 if(includePoints) {
-                    path.add(new TriIdWithIntersection(curTriP2, new Coordinate(p2.x, p2.y, zTopoP2), false, false,
-                            buildingP2.getAttribute()));
+                    context.add(curTriP2, p2.x, p2.y, zTopoP2, false, false, buildingP2);
                 }
                 return true;
             }
-            TriIdWithIntersection propaTri = this.getNextTri(navigationTri, propaLine, navigationHistory);
-            if (path != null && propaTri.getTriID() >= 0) {
-                path.add(propaTri);
+            int nextTri = getNextTri(navigationTri, p1.x, p1.y, p1.z, p2.x, p2.y, p2.z, context);
+            if (recordPath && nextTri >= 0) {
+                context.add(nextTri, context.nextX, context.nextY, context.nextZ, context.nextOnBuilding,
+                        context.nextOnTopography, context.nextBuildingId);
             }
-            if (!stopOnIntersection || !propaTri.isIntersectionOnBuilding() && !propaTri.isIntersectionOnTopography()) {
-                navigationTri = propaTri.getTriID();
+            if (!stopOnIntersection || !context.nextOnBuilding && !context.nextOnTopography) {
+                navigationTri = nextTri;
             } else {
                 navigationTri = -1;
             }
@@ -810,6 +945,14 @@ public class FastObstructionTest {
         return false;
     }
 
+    /**
+     * @return Walk context of the current thread for the callers that do not keep their own context. It is not used
+     * by the other methods of this class. The context memory depends on the longest walk, not on the mesh size.
+     */
+    public static WalkContext getWalkContext() {
+        return WALK_CONTEXT.get();
+    }
+
     private TriIdWithIntersection updateZ(TriIdWithIntersection pt) {
         if(pt.getBuildingId() > 0) {
             return new TriIdWithIntersection(pt.getTriID(),
@@ -830,14 +973,23 @@ public class FastObstructionTest {
     public List<Coordinate> getGroundProfile(List<TriIdWithIntersection> allInterPoints) {
         List<Coordinate> groundProfile = new ArrayList<>(allInterPoints.size());
         for(TriIdWithIntersection tri : allInterPoints) {
-            Triangle triangle = triVertices.get(tri.getTriID());
-            double zTri = getTopoZByGiven3Points(vertices.get(triangle.getA()), vertices.get(triangle.getB()),
-                    vertices.get(triangle.getC()), tri.getCoorIntersection());
+            double zTri = interpolateZ(tri.getTriID(), tri.getCoorIntersection().x, tri.getCoorIntersection().y);
             groundProfile.add(new Coordinate(tri.getCoorIntersection().x, tri.getCoorIntersection().y, zTri));
         }
         return groundProfile;
     }
 
+    /**
+     * Allocation free version of {@link #getGroundProfile(List)}
+     * @param context Walk context filled by
+     * {@link #computePropagationPath(Coordinate, Coordinate, boolean, WalkContext, boolean, boolean)}
+     * @param index Intersection index in the context
+     * @return Ground height at the intersection position
+     */
+    public double getGroundZ(WalkContext context, int index) {
+        return interpolateZ(context.getTriangle(index), context.getX(index), context.getY(index));
+    }
+
     /**
      * Get the distance of all intersections (after the filtration by algorithm Jarvis March)  between the source and the receiver to compute vertical diffraction
      * Must called after finishPolygonFeeding
@@ -1340,35 +1492,174 @@ public class FastObstructionTest {
     }
 
     /**
-     * Calculate the Z of intersection point
-     * {@see http://en.wikipedia.org/wiki/Linear_interpolation}
-     *
-     * @param p1           a point of intersected segment
-     * @param p2           other point of intersected segment
-     * @param intersection the intersection which includes the x and y
-     * @return z of intersection point
+     * Reusable state of the triangle walk of
+     * {@link #computePropagationPath(Coordinate, Coordinate, boolean, WalkContext, boolean, boolean)}.
+     * Visited triangles are stored in a small hash set stamped with the current walk number, so no clear is needed
+     * between walks and the memory depends on the walk length, not on the mesh size. The intersections with the
+     * triangle sides are stored in growable primitive arrays.
+     * An instance must not be shared between threads.
      */
-    private double calculateLinearInterpolation(Coordinate p1, Coordinate p2, Coordinate intersection) {
-        return Vertex.interpolateZ(intersection, p1,p2);
-    }
+    public static final class WalkContext {
+        private static final int INITIAL_CAPACITY = 32;
+        /** Power of two */
+        private static final int INITIAL_VISITED_CAPACITY = 64;
+        // Open addressing set of visited triangles, a slot belongs to the current walk if its stamp is equal to walk
+        private int[] visitedTriangles = new int[INITIAL_VISITED_CAPACITY];
+        private int[] visitedStamps = new int[INITIAL_VISITED_CAPACITY];
+        private int visitedSize = 0;
+        private int walk = 0;
+        private long visitedTriangleCount = 0;
+        private int size = 0;
+        private int[] triangles = new int[INITIAL_CAPACITY];
+        private double[] coordinates = new double[INITIAL_CAPACITY * 3];
+        private int[] buildingIds = new int[INITIAL_CAPACITY];
+        /** bit 0 intersection on building, bit 1 intersection on topography */
+        private byte[] flags = new byte[INITIAL_CAPACITY];
+        // Back tracking stack of the wall walk
+        private final IntList navigation = new IntList();
+        // getNextTri output
+        private final double[] intersectionTest = new double[2];
+        private double nextX;
+        private double nextY;
+        private double nextZ;
+        private boolean nextOnBuilding;
+        private boolean nextOnTopography;
+        private int nextBuildingId;
+
+        /**
+         * Reset visited triangles
+         */
+        void startWalk() {
+            walk++;
+            visitedSize = 0;
+            if (walk == Integer.MAX_VALUE) {
+                Arrays.fill(visitedStamps, 0);
+                walk = 1;
+            }
+        }
 
-    /**
-     * Equation Plane: ax+by+cz+d=0, can be fixed by 3 given points
-     * When we fix a,b,c,d by given 3 points, we can get Z of given point X,Y
-     * z=-(ax+by+d)/c
-     *
-     * @param p1    first point
-     * @param p2    second point
-     * @param p3    third point
-     * @param point the point which includes the x and y
-     * @return z of point
-     * {@see http://en.wikipedia.org/wiki/Plane_%28geometry%29}
-     */
+        void visit(int triangle) {
+            visitedTriangleCount++;
+            if ((visitedSize + 1) * 2 > visitedTriangles.length) {
+                // Keep the load factor under 0.5
+                int[] oldTriangles = visitedTriangles;
+                int[] oldStamps = visitedStamps;
+                visitedTriangles = new int[oldTriangles.length * 2];
+                visitedStamps = new int[oldTriangles.length * 2];
+                for (int slot = 0; slot < oldTriangles.length; slot++) {
+                    if (oldStamps[slot] == walk) {
+                        insertVisited(oldTriangles[slot]);
+                    }
+                }
+            }
+            if (insertVisited(triangle)) {
+                visitedSize++;
+            }
+        }
+
+        private boolean insertVisited(int triangle) {
+            int mask = visitedTriangles.length - 1;
+            int slot = hash(triangle) & mask;
+            while (visitedStamps[slot] == walk) {
+                if (visitedTriangles[slot] == triangle) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            visitedTriangles[slot] = triangle;
+            visitedStamps[slot] = walk;
+            return true;
+        }
+
+        private static int hash(int triangle) {
+            int h = triangle * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        /**
+         * @return Number of triangles visited by all the walks done with this context
+         */
+        public long getVisitedTriangleCount() {
+            return visitedTriangleCount;
+        }
+
+        boolean isVisited(int triangle) {
+            int mask = visitedTriangles.length - 1;
+            int slot = hash(triangle) & mask;
+            while (visitedStamps[slot] == walk) {
+                if (visitedTriangles[slot] == triangle) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+
+        void add(int triangle, double x, double y, double z, boolean onBuilding, boolean onTopography,
+                 int buildingId) {
+            if (size == triangles.length) {
+                int capacity = size * 2;
+                triangles = Arrays.copyOf(triangles, capacity);
+                coordinates = Arrays.copyOf(coordinates, capacity * 3);
+                buildingIds = Arrays.copyOf(buildingIds, capacity);
+                flags = Arrays.copyOf(flags, capacity);
+            }
+            triangles[size] = triangle;
+            coordinates[size * 3] = x;
+            coordinates[size * 3 + 1] = y;
+            coordinates[size * 3 + 2] = z;
+            buildingIds[size] = buildingId;
+            flags[size] = (byte) ((onBuilding ? 1 : 0) | (onTopography ? 2 : 0));
+            size++;
+        }
+
+        /**
+         * Remove recorded intersections
+         */
+        public void clear() {
+            size = 0;
+        }
+
+        /**
+         * @return Number of recorded intersections
+         */
+        public int size() {
+            return size;
+        }
 
-    private double getTopoZByGiven3Points(Coordinate p1, Coordinate p2, Coordinate p3, Coordinate point) {
-        return Vertex.interpolateZ(point, p1, p2, p3);
+        public int getTriangle(int index) {
+            return triangles[index];
+        }
+
+        public double getX(int index) {
+            return coordinates[index * 3];
+        }
+
+        public double getY(int index) {
+            return coordinates[index * 3 + 1];
+        }
+
+        public double getZ(int index) {
+            return coordinates[index * 3 + 2];
+        }
+
+        public boolean isOnBuilding(int index) {
+            return (flags[index] & 1) != 0;
+        }
+
+        public boolean isOnTopography(int index) {
+            return (flags[index] & 2) != 0;
+        }
+
+        /**
+         * @return Building identifier 1-n (0 if none)
+         */
+        public int getBuildingId(int index) {
+            return buildingIds[index];
+        }
     }
 
+
     public static final class Wall extends LineSegment {
         private int buildingId = 0;
 
@@ -1395,22 +1686,20 @@ public class FastObstructionTest {
         sb.append("CREATE TABLE TRI_NEIGHBOURS(id serial, the_geom LINESTRING);\n");
         GeometryFactory gf = new GeometryFactory();
         WKTWriter wktWriter = new WKTWriter(3);
-        int idTriangle = 0;
-        for( Triangle t : triVertices) {
-            Coordinate[] line = new Coordinate[] {vertices.get(t.getA()), vertices.get(t.getB()), vertices.get(t.getC()), vertices.get(t.getA())};
+        for(int idTriangle = 0; idTriangle < mesh.getTriangleCount(); idTriangle++) {
+            Coordinate[] t = getTriangle(idTriangle);
+            Coordinate[] line = new Coordinate[] {t[0], t[1], t[2], t[0]};
             sb.append(String.format("INSERT INTO TRIANGLES(THE_GEOM) VALUES ('%s');\n", gf.createPolygon(line)));
-            Coordinate from = new org.locationtech.jts.geom.Triangle(vertices.get(t.getA()), vertices.get(t.getB()), vertices.get(t.getC())).centroid();
+            Coordinate from = new org.locationtech.jts.geom.Triangle(t[0], t[1], t[2]).centroid();
             // Dump neighbours links
-            Triangle neigh = triNeighbors.get(idTriangle);
             for(int n = 0; n < 3; n++) {
-                int vIndex = neigh.get(n);
+                int vIndex = mesh.getNeighbor(idTriangle, n);
                 if(vIndex >= 0) {
-                    Triangle tn = triVertices.get(vIndex);
-                    Coordinate to = new org.locationtech.jts.geom.Triangle(vertices.get(tn.getA()), vertices.get(tn.getB()), vertices.get(tn.getC())).centroid();
+                    Coordinate[] tn = getTriangle(vIndex);
+                    Coordinate to = new org.locationtech.jts.geom.Triangle(tn[0], tn[1], tn[2]).centroid();
                     sb.append(String.format("INSERT INTO TRI_NEIGHBOURS(THE_GEOM) VALUES ('%s');\n", gf.createLineString(new Coordinate[]{from, to})));
                 }
             }
-            idTriangle++;
         }
         return sb.toString();
     }
@@ -1,5 +1,6 @@
 package org.noise_planet.noisemodelling.pathfinder;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public interface IComputeRaysOut {
@@ -12,6 +13,34 @@ public interface IComputeRaysOut {
      */
     double[] addPropagationPaths(long sourceId, double sourceLi, long receiverId, List<PropagationPath> propagationPath);
 
+    /**
+     * @return True if the free field direct paths can be given with
+     * {@link #addPropagationPaths(long, double, long, PathDescriptor, List)}, the propagation path objects of these
+     * paths are then not built
+     */
+    default boolean isPathDescriptorSupported() {
+        return false;
+    }
+
+    /**
+     * Add propagation paths, the free field direct path is given as a descriptor
+     * @param sourceId Source identifier
+     * @param sourceLi Source power per meter coefficient ( > 1.0 for line source segments with greater length than 1 meter)
+     * @param receiverId Receiver identifier
+     * @param directPath Free field direct path, the instance is reused by the path finder after this call
+     * @param propagationPath Other propagation paths (reflections)
+     */
+    default double[] addPropagationPaths(long sourceId, double sourceLi, long receiverId, PathDescriptor directPath,
+                                         List<PropagationPath> propagationPath) {
+        List<PropagationPath> paths = new ArrayList<>(propagationPath.size() + 1);
+        PropagationPath path = directPath.toPropagationPath();
+        path.setIdSource((int) sourceId);
+        path.setIdReceiver((int) receiverId);
+        paths.add(path);
+        paths.addAll(propagationPath);
+        return addPropagationPaths(sourceId, sourceLi, receiverId, paths);
+    }
+
     /**
      * No more propagation paths will be pushed for this receiver identifier
      * @param receiverId
@@ -0,0 +1,80 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+
+import static org.noise_planet.noisemodelling.pathfinder.utils.AcousticPropagation.getADiv;
+
+/**
+ * Estimation of the maximal power received from a source point, before computing the propagation paths.
+ * The sum of the estimations of the unprocessed source points is compared with the power already received in order
+ * to stop the computation of a receiver when {@link PropagationProcessData#maximumError} is set, so the estimation
+ * must not be lower than the power that would be computed from the propagation paths.
+ */
+public interface IPowerBoundEstimator {
+
+    /**
+     * @param freeFieldFinder Obstruction test, null to skip the obstruction test
+     * @param receiverPos     Receiver position
+     * @param sourcePos       Source point position
+     * @param wj              Maximal power of the source by frequency band, per meter for lines
+     * @param li              Length coefficient of the source point (1 for point sources)
+     * @return Upper bound of the received power by frequency band
+     */
+    double[] getPowerBound(FastObstructionTest freeFieldFinder, Coordinate receiverPos, Coordinate sourcePos,
+                           double[] wj, double li);
+
+    /**
+     * @return True if {@link #getPowerBound(FastObstructionTest, Coordinate, Coordinate, double[], double)} lowers
+     * the bound of obstructed source points. The source points are then first estimated without obstruction test,
+     * and the obstruction test is only done for the source point that has the highest bound.
+     */
+    default boolean isObstructionTested() {
+        return false;
+    }
+
+    /**
+     * Bound of a group of source points, used by {@link SourceClusterTree}. It must not be lower than the sum of
+     * {@link #getPowerBound(FastObstructionTest, Coordinate, Coordinate, double[], double)} of the source points.
+     * The default implementation is the geometric divergence with a +3 dB reflective ground.
+     * @param distance Distance between the receiver and the nearest source point, or a lower value
+     * @param power    Sum of wj * li of the source points by frequency band
+     * @return Upper bound of the received power, sum of the frequency bands
+     */
+    default double getPowerBound(double distance, double[] power) {
+        return ComputeRays.sumArray(power.length, power) * ComputeRays.dbaToW(-getADiv(distance)) *
+                ComputeRays.dbaToW(3);
+    }
+}
@@ -124,6 +124,24 @@ public class JTSUtility {
         return plane.project(point);
     }
 
+    /**
+     * Allocation free version of {@link #makeProjectedPoint(double, double, Coordinate)}
+     * @param a a plane parameter
+     * @param b b plane parameter
+     * @param x x of the point to project
+     * @param y y of the point to project
+     * @param projected [out] x and y of the projected point
+     */
+    public static void makeProjectedPoint(double a, double b, double x, double y, double[] projected) {
+        double x0 = x - 1;
+        double y0 = a * (x - 1) + b;
+        double dx = (x + 1) - x0;
+        double dy = (a * (x + 1) + b) - y0;
+        double r = ((x - x0) * dx + (y - y0) * dy) / (dx * dx + dy * dy);
+        projected[0] = x0 + r * dx;
+        projected[1] = y0 + r * dy;
+    }
+
     /**
      * Make image (like line y=ax+b would be a mirror) of point
      * @param a a linear parameter
@@ -205,9 +223,31 @@ public class JTSUtility {
      */
     public static double[] getMeanPlaneCoefficients (Coordinate[] profile)
     {
-        int n = profile.length - 1 ;
+        double[] x = new double[profile.length];
+        double[] y = new double[profile.length];
+        for (int i = 0; i < profile.length; i++) {
+            x[i] = profile[i].x;
+            y[i] = profile[i].y;
+        }
+        double[] coefficients = new double[2];
+        getMeanPlaneCoefficients(x, y, profile.length, coefficients);
+        return coefficients;
+    }
+
+    /**
+     * Allocation free version of {@link #getMeanPlaneCoefficients(Coordinate[])}
+     * @param x u coordinates of the profile
+     * @param y v coordinates of the profile
+     * @param size Number of points of the profile
+     * @param coefficients [out] Coefficient A and B
+     */
+    public static void getMeanPlaneCoefficients(double[] x, double[] y, int size, double[] coefficients)
+    {
+        int n = size - 1 ;
         if(n == 0) {
-            return new double[] {0, profile[0].y};
+            coefficients[0] = 0;
+            coefficients[1] = y[0];
+            return;
         }
         double valA1 = 0;
         double valA2 = 0;
@@ -218,15 +258,17 @@ public class JTSUtility {
          */
         for (int i = 0 ; i < n ; i++)
         {
-            Coordinate p1 = profile[i];
-            Coordinate p2 = profile[i+1];
-            double dx = p2.x - p1.x ;
+            double p1x = x[i];
+            double p1y = y[i];
+            double p2x = x[i+1];
+            double p2y = y[i+1];
+            double dx = p2x - p1x ;
             if (dx != 0)
             {
-                double ai = (p2.y - p1.y) / dx;
-                double bi = p1.y - ai * p1.x;
-                double vald2 = Math.pow (p2.x, 2) - Math.pow (p1.x, 2);
-                double vald3 = Math.pow (p2.x, 3) - Math.pow (p1.x, 3);
+                double ai = (p2y - p1y) / dx;
+                double bi = p1y - ai * p1x;
+                double vald2 = Math.pow (p2x, 2) - Math.pow (p1x, 2);
+                double vald3 = Math.pow (p2x, 3) - Math.pow (p1x, 3);
                 valA1 += ai * vald3 ;
                 valA2 += bi * vald2;
                 valB1 += ai * vald2;
@@ -235,17 +277,16 @@ public class JTSUtility {
         }
         double valA = 2/3. * valA1 + valA2;
         double valB = valB1 + 2 * valB2;
-        double dist3 = Math.pow (profile[n].x - profile[0].x, 3) ;
-        double dist4 = Math.pow (profile[n].x - profile[0].x, 4) ;
+        double dist3 = Math.pow (x[n] - x[0], 3) ;
+        double dist4 = Math.pow (x[n] - x[0], 4) ;
         assert (dist3 > 0) ;
         assert (dist4 > 0) ;
         /*
          * equation VI-4
          */
-        double A = 3 * (2 * valA - valB * (profile[n].x + profile[0].x)) / dist3 ;
-        double B = 2 * valB * (Math.pow(profile[n].x, 3) - Math.pow(profile[0].x, 3)) / dist4
-                - 3 * valA * (profile[n].x + profile[0].x) / dist3;
-        return new double[] {A, B};
+        coefficients[0] = 3 * (2 * valA - valB * (x[n] + x[0])) / dist3 ;
+        coefficients[1] = 2 * valB * (Math.pow(x[n], 3) - Math.pow(x[0], 3)) / dist4
+                - 3 * valA * (x[n] + x[0]) / dist3;
     }
 
     /**
@@ -46,6 +46,8 @@ import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
 import org.locationtech.jts.index.strtree.*;
 import org.poly2tri.Poly2Tri;
 import org.poly2tri.geometry.polygon.PolygonPoint;
@@ -59,12 +61,17 @@ import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
 import java.math.MathContext;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class LayerPoly2Tri implements LayerDelaunay {
@@ -203,56 +210,15 @@ public class LayerPoly2Tri implements LayerDelaunay {
     ConstrainedPointSet convertedInput = new ConstrainedPointSet(meshPoints, index);
 
 
-    STRtree buildingsRtree = null;
+    // Triangulate
+    Poly2Tri.triangulate(TriangulationAlgorithm.DTSweep, convertedInput);
+    List<DelaunayTriangle> trianglesDelaunay = convertedInput.getTriangles();
+
     if(maxArea > 0) {
-      // STRtree minimal size is 2
-      buildingsRtree = new STRtree(Math.max(10, buildingWithID.size()));
-      for (Map.Entry<Integer, BuildingWithID> buildingWithIDEntry : buildingWithID.entrySet()) {
-        buildingsRtree.insert(buildingWithIDEntry.getValue().building.getEnvelopeInternal(), buildingWithIDEntry.getKey());
-      }
+      // Insert steiner points into the existing triangulation
+      trianglesDelaunay = refineTriangulation(trianglesDelaunay);
     }
 
-    boolean refine;
-    do {
-      // Triangulate
-      Poly2Tri.triangulate(TriangulationAlgorithm.DTSweep, convertedInput);
-      refine = false;
-
-      // Will triangulate multiple time if refinement is necessary
-      if(buildingsRtree != null && maxArea > 0) {
-        List<DelaunayTriangle> trianglesDelaunay = convertedInput.getTriangles();
-        for (DelaunayTriangle triangle : trianglesDelaunay) {
-          if(triangle.area() > maxArea) {
-            // Insert steiner point in centroid
-            TPoint centroid = triangle.centroid();
-            // Do not add steiner points into buildings
-            Envelope searchEnvelope = new Envelope(TPointToCoordinate(centroid));
-            searchEnvelope.expandBy(1.);
-            List polyInters = buildingsRtree.query(searchEnvelope);
-            boolean inBuilding = false;
-            for (Object id : polyInters) {
-              if (id instanceof Integer) {
-                BuildingWithID inPoly = buildingWithID.get(id);
-                if (inPoly.building.contains(factory.createPoint(TPointToCoordinate(centroid)))) {
-                  inBuilding = true;
-                  break;
-                }
-              }
-            }
-            if(!inBuilding) {
-              meshPoints.add(centroid);
-              refine = true;
-            }
-          }
-        }
-        if(refine) {
-          convertedInput = new ConstrainedPointSet(meshPoints, index);
-        }
-      }
-    } while (refine);
-
-
-    List<DelaunayTriangle> trianglesDelaunay = convertedInput.getTriangles();
     List<Integer> triangleAttribute = Arrays.asList(new Integer[trianglesDelaunay.size()]);
     // Create an index of triangles instance for fast neighbors search
     Map<DelaunayTriangle, Integer> triangleSearch = new HashMap<>(trianglesDelaunay.size());
@@ -307,6 +273,194 @@ public class LayerPoly2Tri implements LayerDelaunay {
   }
 
 
+  /**
+   * Split the triangles greater than maxArea by inserting their centroid, then restore the Delaunay property with
+   * edge flips around the inserted point. Steiner points are not inserted into buildings.
+   * @param trianglesDelaunay Triangulation output of Poly2Tri
+   * @return Refined triangles
+   */
+  private List<DelaunayTriangle> refineTriangulation(List<DelaunayTriangle> trianglesDelaunay) {
+    // Do not add steiner points into buildings
+    STRtree buildingsRtree = new STRtree(Math.max(10, buildingWithID.size()));
+    for (BuildingWithID building : buildingWithID.values()) {
+      buildingsRtree.insert(building.building.getEnvelopeInternal(),
+              PreparedGeometryFactory.prepare(building.building));
+    }
+    List<DelaunayTriangle> refinedTriangles = new ArrayList<>(trianglesDelaunay);
+    // DelaunayTriangle hashCode depends on its points, that are updated by the flips
+    Set<DelaunayTriangle> triangleSet = Collections.newSetFromMap(new IdentityHashMap<DelaunayTriangle, Boolean>());
+    triangleSet.addAll(trianglesDelaunay);
+    Deque<DelaunayTriangle> flipStack = new ArrayDeque<>();
+    boolean refine;
+    do {
+      refine = false;
+      // Triangles appended during the loop are also processed
+      for (int i = 0; i < refinedTriangles.size(); i++) {
+        DelaunayTriangle triangle = refinedTriangles.get(i);
+        if(triangle.area() > maxArea) {
+          TPoint centroid = triangle.centroid();
+          if(!isInBuilding(buildingsRtree, centroid)) {
+            insertPoint(triangle, centroid, refinedTriangles, triangleSet, flipStack);
+            refine = true;
+            // The split triangle is smaller, test it again
+            i--;
+          }
+        }
+      }
+      // Flips may have enlarged already processed triangles
+    } while (refine);
+    return refinedTriangles;
+  }
+
+  private boolean isInBuilding(STRtree buildingsRtree, TPoint point) {
+    Coordinate coordinate = TPointToCoordinate(point);
+    List<?> polyInters = buildingsRtree.query(new Envelope(coordinate));
+    if(polyInters.isEmpty()) {
+      return false;
+    }
+    org.locationtech.jts.geom.Point pt = factory.createPoint(coordinate);
+    for (Object building : polyInters) {
+      if (building instanceof PreparedGeometry && ((PreparedGeometry) building).contains(pt)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int neighborIndex(DelaunayTriangle triangle, DelaunayTriangle neighbor) {
+    for (int i = 0; i < 3; i++) {
+      if (triangle.neighbors[i] == neighbor) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static void replaceNeighbor(DelaunayTriangle triangle, DelaunayTriangle oldNeighbor,
+                                      DelaunayTriangle newNeighbor) {
+    if (triangle != null) {
+      int index = neighborIndex(triangle, oldNeighbor);
+      if (index >= 0) {
+        triangle.neighbors[index] = newNeighbor;
+      }
+    }
+  }
+
+  private static void setTriangle(DelaunayTriangle triangle, TriangulationPoint p0, TriangulationPoint p1,
+                                  TriangulationPoint p2, DelaunayTriangle n0, DelaunayTriangle n1,
+                                  DelaunayTriangle n2, boolean c0, boolean c1, boolean c2) {
+    triangle.points[0] = p0;
+    triangle.points[1] = p1;
+    triangle.points[2] = p2;
+    triangle.neighbors[0] = n0;
+    triangle.neighbors[1] = n1;
+    triangle.neighbors[2] = n2;
+    triangle.cEdge[0] = c0;
+    triangle.cEdge[1] = c1;
+    triangle.cEdge[2] = c2;
+    triangle.clearDelunayEdges();
+  }
+
+  /**
+   * Split a triangle with a point located inside it, then legalize the edges opposite to the new point.
+   * The neighbor at index i of a triangle is across the point at index i.
+   */
+  private static void insertPoint(DelaunayTriangle triangle, TriangulationPoint p, List<DelaunayTriangle> triangles,
+                                  Set<DelaunayTriangle> triangleSet, Deque<DelaunayTriangle> flipStack) {
+    TriangulationPoint a = triangle.points[0];
+    TriangulationPoint b = triangle.points[1];
+    TriangulationPoint c = triangle.points[2];
+    DelaunayTriangle nbc = triangle.neighbors[0];
+    DelaunayTriangle nca = triangle.neighbors[1];
+    DelaunayTriangle nab = triangle.neighbors[2];
+    boolean cbc = triangle.cEdge[0];
+    boolean cca = triangle.cEdge[1];
+    boolean cab = triangle.cEdge[2];
+    DelaunayTriangle tb = new DelaunayTriangle(a, p, c);
+    DelaunayTriangle tc = new DelaunayTriangle(a, b, p);
+    tb.isInterior(triangle.isInterior());
+    tc.isInterior(triangle.isInterior());
+    // The new point is always at the index 0 of the triangle to legalize
+    setTriangle(triangle, p, b, c, nbc, tb, tc, cbc, false, false);
+    setTriangle(tb, p, c, a, nca, tc, triangle, cca, false, false);
+    setTriangle(tc, p, a, b, nab, triangle, tb, cab, false, false);
+    replaceNeighbor(nca, triangle, tb);
+    replaceNeighbor(nab, triangle, tc);
+    triangles.add(tb);
+    triangles.add(tc);
+    triangleSet.add(tb);
+    triangleSet.add(tc);
+    flipStack.push(triangle);
+    flipStack.push(tb);
+    flipStack.push(tc);
+    while (!flipStack.isEmpty()) {
+      legalize(flipStack.pop(), triangleSet, flipStack);
+    }
+  }
+
+  /**
+   * Flip the edge opposite to points[0] if the opposite point of the neighbor is inside the circumcircle
+   * @param triangle Triangle (p, q, r) where p is the inserted point
+   */
+  private static void legalize(DelaunayTriangle triangle, Set<DelaunayTriangle> triangleSet,
+                               Deque<DelaunayTriangle> flipStack) {
+    DelaunayTriangle neighbor = triangle.neighbors[0];
+    if (triangle.cEdge[0] || neighbor == null || !triangleSet.contains(neighbor)) {
+      return;
+    }
+    int j = neighborIndex(neighbor, triangle);
+    if (j < 0) {
+      return;
+    }
+    TriangulationPoint p = triangle.points[0];
+    TriangulationPoint q = triangle.points[1];
+    TriangulationPoint r = triangle.points[2];
+    TriangulationPoint o = neighbor.points[j];
+    if (!isInCircumcircle(p, q, r, o)) {
+      return;
+    }
+    // Neighbors of the quad (p, q, o, r)
+    DelaunayTriangle npr = triangle.neighbors[1];
+    DelaunayTriangle npq = triangle.neighbors[2];
+    boolean cpr = triangle.cEdge[1];
+    boolean cpq = triangle.cEdge[2];
+    int jq = neighbor.index(q);
+    int jr = neighbor.index(r);
+    // Across q in the neighbor is the edge (o, r), across r is the edge (o, q)
+    DelaunayTriangle nor = neighbor.neighbors[jq];
+    DelaunayTriangle noq = neighbor.neighbors[jr];
+    boolean cor = neighbor.cEdge[jq];
+    boolean coq = neighbor.cEdge[jr];
+    setTriangle(triangle, p, q, o, noq, neighbor, npq, coq, false, cpq);
+    setTriangle(neighbor, p, o, r, nor, npr, triangle, cor, cpr, false);
+    replaceNeighbor(npr, triangle, neighbor);
+    replaceNeighbor(noq, neighbor, triangle);
+    flipStack.push(triangle);
+    flipStack.push(neighbor);
+  }
+
+  /**
+   * @return True if d is strictly inside the circumcircle of the triangle (a, b, c)
+   */
+  private static boolean isInCircumcircle(TriangulationPoint a, TriangulationPoint b, TriangulationPoint c,
+                                          TriangulationPoint d) {
+    double adx = a.getX() - d.getX();
+    double ady = a.getY() - d.getY();
+    double bdx = b.getX() - d.getX();
+    double bdy = b.getY() - d.getY();
+    double cdx = c.getX() - d.getX();
+    double cdy = c.getY() - d.getY();
+    double ad = adx * adx + ady * ady;
+    double bd = bdx * bdx + bdy * bdy;
+    double cd = cdx * cdx + cdy * cdy;
+    double det = adx * (bdy * cd - bd * cdy) - ady * (bdx * cd - bd * cdx) + ad * (bdx * cdy - bdy * cdx);
+    double orientation = (b.getX() - a.getX()) * (c.getY() - a.getY()) - (b.getY() - a.getY()) * (c.getX() - a.getX());
+    // Relative tolerance, co-circular points must not be flipped back and forth
+    double magnitude = (Math.abs(adx * bdy) + Math.abs(ady * bdx)) * cd + (Math.abs(bdx * cdy) + Math.abs(bdy * cdx)) * ad
+            + (Math.abs(cdx * ady) + Math.abs(cdy * adx)) * bd;
+    return Math.signum(orientation) * det > magnitude * 1e-12;
+  }
+
   public static final class SetZFilter implements CoordinateSequenceFilter {
     private boolean done = false;
     private boolean resetToZero = false;
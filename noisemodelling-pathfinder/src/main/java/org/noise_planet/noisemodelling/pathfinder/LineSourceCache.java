@@ -0,0 +1,228 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.noise_planet.noisemodelling.pathfinder.utils.StripedLruCache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cache of the discretization of line sources into point sources.
+ * {@link ComputeRays#splitLineStringIntoPoints(LineString, double, List)} only depends on the number of points
+ * {@code ceil(length / segmentSizeConstraint)}, so all the receivers that lead to the same number of points share
+ * the same discretization. Points are stored in packed coordinate arrays.
+ * The least recently used entries are evicted when the memory budget is exhausted. The source indices must refer to
+ * the same source list for the lifetime of the cache. This class is thread safe.
+ */
+public class LineSourceCache {
+    /** Default memory budget in bytes */
+    public static final long DEFAULT_MAXIMUM_MEMORY = 64 * 1024 * 1024;
+    private final StripedLruCache<Key, LineSourcePoints> cache;
+
+    public LineSourceCache() {
+        this(DEFAULT_MAXIMUM_MEMORY);
+    }
+
+    /**
+     * @param maximumMemory Maximum memory used by the discretized lines in bytes, 0 to disable the cache
+     */
+    public LineSourceCache(long maximumMemory) {
+        this.cache = new StripedLruCache<>(maximumMemory, points -> 40 + 8L * points.coordinates.length);
+    }
+
+    /**
+     * @return Maximum memory used by the discretized lines in bytes
+     */
+    public long getMaximumMemory() {
+        return cache.getMaximumMemory();
+    }
+
+    /**
+     * @return Estimation of the memory used by the discretized lines in bytes
+     */
+    public long getMemoryUsage() {
+        return cache.getMemoryUsage();
+    }
+
+    /**
+     * @return Number of queries answered from the cache
+     */
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    /**
+     * @return Number of queries that required a discretization
+     */
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    /**
+     * @return Number of cached discretized lines
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Remove all cached discretized lines
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * @param sourceIndex           Source index
+     * @param geometryIndex         Index of the line in the source geometry (0 for a LineString)
+     * @param line                  Line source geometry
+     * @param segmentSizeConstraint Maximal distance between points
+     * @return Points of the line source and li coefficient
+     */
+    public LineSourcePoints getPoints(int sourceIndex, int geometryIndex, LineString line,
+                                      double segmentSizeConstraint) {
+        if (!cache.isEnabled()) {
+            return split(line, segmentSizeConstraint);
+        }
+        Key key = new Key(sourceIndex, geometryIndex, getPointCount(line.getLength(), segmentSizeConstraint));
+        LineSourcePoints points = cache.get(key);
+        if (points == null) {
+            points = split(line, segmentSizeConstraint);
+            cache.put(key, points);
+        }
+        return points;
+    }
+
+    /**
+     * @param length                Line source length
+     * @param segmentSizeConstraint Maximal distance between points
+     * @return Number of points of the discretization, 0 if the line is replaced by its middle point. The
+     * discretization only depends on this value and it does not increase with segmentSizeConstraint
+     */
+    static int getPointCount(double length, double segmentSizeConstraint) {
+        return length < segmentSizeConstraint ? 0 : (int) Math.ceil(length / segmentSizeConstraint);
+    }
+
+    private static LineSourcePoints split(LineString line, double segmentSizeConstraint) {
+        List<Coordinate> pts = new ArrayList<>();
+        double li = ComputeRays.splitLineStringIntoPoints(line, segmentSizeConstraint, pts);
+        double[] coordinates = new double[pts.size() * 3];
+        for (int i = 0; i < pts.size(); i++) {
+            Coordinate pt = pts.get(i);
+            coordinates[i * 3] = pt.x;
+            coordinates[i * 3 + 1] = pt.y;
+            coordinates[i * 3 + 2] = pt.z;
+        }
+        return new LineSourcePoints(coordinates, li);
+    }
+
+    /**
+     * Discretized line source, immutable
+     */
+    public static final class LineSourcePoints {
+        private final double[] coordinates;
+        private final double li;
+
+        LineSourcePoints(double[] coordinates, double li) {
+            this.coordinates = coordinates;
+            this.li = li;
+        }
+
+        public int size() {
+            return coordinates.length / 3;
+        }
+
+        public double getX(int point) {
+            return coordinates[point * 3];
+        }
+
+        public double getY(int point) {
+            return coordinates[point * 3 + 1];
+        }
+
+        public double getZ(int point) {
+            return coordinates[point * 3 + 2];
+        }
+
+        /**
+         * @return New coordinate instance of the point
+         */
+        public Coordinate getCoordinate(int point) {
+            return new Coordinate(coordinates[point * 3], coordinates[point * 3 + 1], coordinates[point * 3 + 2]);
+        }
+
+        /**
+         * @return li coefficient to apply to the point sources from the sound power per metre of the line source
+         */
+        public double getLi() {
+            return li;
+        }
+    }
+
+    private static final class Key {
+        private final int sourceIndex;
+        private final int geometryIndex;
+        private final int pointCount;
+
+        Key(int sourceIndex, int geometryIndex, int pointCount) {
+            this.sourceIndex = sourceIndex;
+            this.geometryIndex = geometryIndex;
+            this.pointCount = pointCount;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return sourceIndex == other.sourceIndex && geometryIndex == other.geometryIndex &&
+                    pointCount == other.pointCount;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = sourceIndex;
+            result = 31 * result + geometryIndex;
+            result = 31 * result + pointCount;
+            return result;
+        }
+    }
+}
@@ -36,8 +36,17 @@ package org.noise_planet.noisemodelling.pathfinder;
 
 import org.locationtech.jts.geom.*;
 import org.locationtech.jts.index.strtree.STRtree;
-
+import org.locationtech.jts.operation.union.CascadedPolygonUnion;
+import org.locationtech.jts.io.WKBWriter;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.stream.Collectors;
 
 
 /**
@@ -68,6 +77,12 @@ public class MeshBuilder {
     private double maximumArea = 0;
     private GeometryFactory factory = new GeometryFactory();
     private static final int EPSILON_MESH = 2; //Decimal value, Used for merged geometry precision
+    /** Minimal number of buildings for the parallel merge */
+    public static final int PARALLEL_MERGE_MINIMUM_BUILDINGS = 2000;
+    // Average number of buildings in a tile of the parallel merge
+    private static final int PARALLEL_MERGE_TILE_BUILDINGS = 500;
+    private boolean parallelMerge = true;
+    private TerrainSimplifier terrainSimplifier;
 
     public static final class PolygonWithHeight {
         protected final Geometry geo;
@@ -321,66 +336,209 @@ public class MeshBuilder {
         return addGeometry(new PolygonWithHeight(obstructionPoly, heightofBuilding, alphaw));
     }
 
+    /**
+     * Merge the overlapping buildings and split the envelope exterior ring where buildings touch it.
+     * The merged building keeps the primary key, height and absorption of its first input building, the input
+     * building of lowest index. The merged buildings are sorted by their first input building, so the building
+     * identifiers do not depend on the merge method.
+     * Previous versions used the first input building returned by the R-tree query and kept the order of the union
+     * result, the attributes and identifiers of merged buildings may differ from these versions.
+     * @param boundingBoxGeom Envelope of the mesh
+     */
     public void mergeBuildings(Geometry boundingBoxGeom) {
         // Delaunay triangulation request good quality input data
         // We have to merge buildings that may overlap
-        Geometry[] toUnion = new Geometry[polygonWithHeight.size() + 1];
         STRtree buildingsRtree;
-        if(toUnion.length > 10) {
-            buildingsRtree = new STRtree(toUnion.length);
+        if(polygonWithHeight.size() > 9) {
+            buildingsRtree = new STRtree(polygonWithHeight.size() + 1);
         } else {
             buildingsRtree = new STRtree();
         }
         int i = 0;
         for(PolygonWithHeight poly : polygonWithHeight) {
-            toUnion[i] = poly.getGeometry();
             buildingsRtree.insert(poly.getGeometry().getEnvelopeInternal(), i);
             i++;
         }
-        if(boundingBoxGeom instanceof Polygon) {
-          // Add envelope to union of geometry
-          toUnion[i] = ((Polygon)(boundingBoxGeom)).getExteriorRing();
+        Geometry geomCollection;
+        if(parallelMerge && polygonWithHeight.size() >= PARALLEL_MERGE_MINIMUM_BUILDINGS) {
+            geomCollection = unionByTiles(boundingBoxGeom);
         } else {
-          toUnion[i] = factory.createPolygon(new Coordinate[0]);
+            Geometry[] toUnion = new Geometry[polygonWithHeight.size() + 1];
+            i = 0;
+            for(PolygonWithHeight poly : polygonWithHeight) {
+                toUnion[i] = poly.getGeometry();
+                i++;
+            }
+            toUnion[i] = getEnvelopeRing(boundingBoxGeom);
+            geomCollection = factory.createGeometryCollection(toUnion);
+            geomCollection = geomCollection.union();
         }
-        Geometry geomCollection = factory.createGeometryCollection(toUnion);
-        geomCollection = geomCollection.union();
-        List<PolygonWithHeight> mergedPolygonWithHeight = new ArrayList<>(geomCollection.getNumGeometries());
+        final int geomCount = geomCollection.getNumGeometries();
+        List<PolygonWithHeight> mergedPolygonWithHeight = new ArrayList<>(geomCount);
+        // Index of the first input building of each merged building
+        final Map<PolygonWithHeight, Integer> sourceIndex = new IdentityHashMap<>(geomCount);
         // For each merged buildings fetch all contained buildings and take the minimal height then insert into mergedPolygonWithHeight
-        for(int idGeom = 0; idGeom < geomCollection.getNumGeometries(); idGeom++) {
+        for(int idGeom = 0; idGeom < geomCount; idGeom++) {
             //fetch all contained buildings
             Geometry geometryN = geomCollection.getGeometryN(idGeom);
             if(geometryN instanceof Polygon) {
-                List polyInters = buildingsRtree.query(geometryN.getEnvelopeInternal());
+                List<Integer> polyInters = new ArrayList<>();
+                for (Object id : buildingsRtree.query(geometryN.getEnvelopeInternal())) {
+                    if (id instanceof Integer) {
+                        polyInters.add((Integer) id);
+                    }
+                }
+                // The union order depends on the merge method, use the first input building
+                Collections.sort(polyInters);
                 double minHeight = Double.MAX_VALUE;
                 List<Double> minAlpha = new ArrayList<>(ALPHA_DEFAULT_VALUE);
                 int primaryKey = -1;
-                for (Object id : polyInters) {
-                    if (id instanceof Integer) {
-                        PolygonWithHeight inPoly = polygonWithHeight.get((int) id);
-                        if (inPoly.getGeometry().intersects(geometryN)) {
-                            if(inPoly.getPrimaryKey() > -1) {
-                                primaryKey = inPoly.getPrimaryKey();
-                            }
-                            if(inPoly.hasHeight) {
-                                minHeight = Math.min(minHeight, inPoly.getHeight());
-                            }
-                            minAlpha = inPoly.getAlpha();
-                            break;
+                int firstBuilding = Integer.MAX_VALUE;
+                for (int id : polyInters) {
+                    PolygonWithHeight inPoly = polygonWithHeight.get(id);
+                    if (inPoly.getGeometry().intersects(geometryN)) {
+                        if(inPoly.getPrimaryKey() > -1) {
+                            primaryKey = inPoly.getPrimaryKey();
                         }
+                        if(inPoly.hasHeight) {
+                            minHeight = Math.min(minHeight, inPoly.getHeight());
+                        }
+                        minAlpha = inPoly.getAlpha();
+                        firstBuilding = id;
+                        break;
                     }
                 }
                 PolygonWithHeight reconstructedBuilding = new PolygonWithHeight(geometryN, minHeight, minAlpha);
                 reconstructedBuilding.setPrimaryKey(primaryKey);
                 mergedPolygonWithHeight.add(reconstructedBuilding);
+                sourceIndex.put(reconstructedBuilding, firstBuilding);
             } else if(geometryN instanceof LineString) {
               // Exterior envelope
               envelopeSplited.add((LineString)geometryN);
             }
         }
+        // Building identifiers are the index in this list, keep the order of the input buildings
+        mergedPolygonWithHeight.sort(Comparator.comparing(sourceIndex::get));
         polygonWithHeight = mergedPolygonWithHeight;
     }
 
+    private Geometry getEnvelopeRing(Geometry boundingBoxGeom) {
+        if(boundingBoxGeom instanceof Polygon) {
+            // Add envelope to union of geometry
+            return ((Polygon)(boundingBoxGeom)).getExteriorRing();
+        } else {
+            return factory.createPolygon(new Coordinate[0]);
+        }
+    }
+
+    /**
+     * Union of buildings and envelope ring computed by tiles on the common pool.
+     * Each building is unioned in the tile that contains the centre of its envelope. The tile results that intersect
+     * the result of another tile or the envelope ring are then unioned together.
+     * @param boundingBoxGeom Envelope of the mesh
+     * @return Merged buildings and split envelope ring
+     */
+    private Geometry unionByTiles(Geometry boundingBoxGeom) {
+        Envelope buildingsEnvelope = new Envelope();
+        for(PolygonWithHeight poly : polygonWithHeight) {
+            buildingsEnvelope.expandToInclude(poly.getGeometry().getEnvelopeInternal());
+        }
+        final int gridDim = Math.max(2, (int) Math.round(Math.sqrt(polygonWithHeight.size() /
+                (double) PARALLEL_MERGE_TILE_BUILDINGS)));
+        final double tileWidth = buildingsEnvelope.getWidth() / gridDim;
+        final double tileHeight = buildingsEnvelope.getHeight() / gridDim;
+        List<List<Geometry>> tiles = new ArrayList<>(gridDim * gridDim);
+        for(int i = 0; i < gridDim * gridDim; i++) {
+            tiles.add(new ArrayList<>());
+        }
+        for(PolygonWithHeight poly : polygonWithHeight) {
+            Coordinate centre = poly.getGeometry().getEnvelopeInternal().centre();
+            int tileX = tileWidth > 0 ? (int) ((centre.x - buildingsEnvelope.getMinX()) / tileWidth) : 0;
+            int tileY = tileHeight > 0 ? (int) ((centre.y - buildingsEnvelope.getMinY()) / tileHeight) : 0;
+            tiles.get(Math.min(gridDim - 1, tileY) * gridDim + Math.min(gridDim - 1, tileX)).add(poly.getGeometry());
+        }
+        List<Geometry> tileUnions = tiles.parallelStream()
+                .map(tile -> tile.isEmpty() ? null : CascadedPolygonUnion.union(tile))
+                .collect(Collectors.toList());
+        // Stitch tiles
+        List<Geometry> parts = new ArrayList<>();
+        List<Integer> partTile = new ArrayList<>();
+        STRtree partsRtree = new STRtree();
+        for(int tile = 0; tile < tileUnions.size(); tile++) {
+            Geometry tileUnion = tileUnions.get(tile);
+            if(tileUnion != null) {
+                for (int idGeom = 0; idGeom < tileUnion.getNumGeometries(); idGeom++) {
+                    Geometry part = tileUnion.getGeometryN(idGeom);
+                    partsRtree.insert(part.getEnvelopeInternal(), parts.size());
+                    parts.add(part);
+                    partTile.add(tile);
+                }
+            }
+        }
+        Geometry envelopeRing = getEnvelopeRing(boundingBoxGeom);
+        boolean[] onTileBorder = new boolean[parts.size()];
+        for(int idPart = 0; idPart < parts.size(); idPart++) {
+            Geometry part = parts.get(idPart);
+            if(part.intersects(envelopeRing)) {
+                onTileBorder[idPart] = true;
+            }
+            for(Object id : partsRtree.query(part.getEnvelopeInternal())) {
+                int otherPart = (Integer) id;
+                if(!partTile.get(otherPart).equals(partTile.get(idPart)) && part.intersects(parts.get(otherPart))) {
+                    onTileBorder[idPart] = true;
+                    onTileBorder[otherPart] = true;
+                }
+            }
+        }
+        List<Geometry> merged = new ArrayList<>(parts.size());
+        List<Geometry> toStitch = new ArrayList<>();
+        for(int idPart = 0; idPart < parts.size(); idPart++) {
+            if(onTileBorder[idPart]) {
+                toStitch.add(parts.get(idPart));
+            } else {
+                merged.add(parts.get(idPart));
+            }
+        }
+        toStitch.add(envelopeRing);
+        Geometry stitched = factory.buildGeometry(toStitch).union();
+        for(int idGeom = 0; idGeom < stitched.getNumGeometries(); idGeom++) {
+            merged.add(stitched.getGeometryN(idGeom));
+        }
+        return factory.createGeometryCollection(merged.toArray(new Geometry[0]));
+    }
+
+    /**
+     * @return True if the buildings are merged by tiles in parallel when there are many buildings
+     */
+    public boolean isParallelMerge() {
+        return parallelMerge;
+    }
+
+    /**
+     * @param parallelMerge True to merge the buildings by tiles in parallel when there are at least
+     *                      {@link #PARALLEL_MERGE_MINIMUM_BUILDINGS} buildings. The merged buildings and their order
+     *                      are the same as the sequential merge.
+     */
+    public void setParallelMerge(boolean parallelMerge) {
+        this.parallelMerge = parallelMerge;
+    }
+
+    /**
+     * @return Simplifier of the topographic points, null if all the points are triangulated
+     */
+    public TerrainSimplifier getTerrainSimplifier() {
+        return terrainSimplifier;
+    }
+
+    /**
+     * @param terrainSimplifier Simplify the topographic points in {@link #finishPolygonFeeding(Geometry)}, null to
+     *                          triangulate all the points. The removed points are within the maximum error of the
+     *                          final mesh, including near the buildings and the envelope.
+     */
+    public void setTerrainSimplifier(TerrainSimplifier terrainSimplifier) {
+        this.terrainSimplifier = terrainSimplifier;
+    }
+
     /**
      * Add the Topographic Point in the mesh data, to complete the topographic data.
      *
@@ -435,12 +593,34 @@ public class MeshBuilder {
             this.geometriesBoundingBox = boundingBoxGeom.getEnvelopeInternal();
         }
 
-        LayerDelaunay delaunayTool = new LayerPoly2Tri();
-
-
         //merge buildings
         mergeBuildings(boundingBoxGeom);
 
+        if(terrainSimplifier != null && !topoPoints.isEmpty()) {
+            List<Coordinate> points = new ArrayList<>(topoPoints);
+            List<Coordinate> keptPoints = terrainSimplifier.simplify(points);
+            // The ground Z of the buildings is interpolated on the topography of each triangulation
+            double[] buildingsZ = getBuildingsZ();
+            while(true) {
+                triangulate(keptPoints);
+                FastObstructionTest mesh = new FastObstructionTest(new ArrayList<>(Collections.EMPTY_LIST),
+                        triVertices, null, vertices);
+                if(!terrainSimplifier.addOutOfBoundPoints(points, keptPoints, mesh)) {
+                    break;
+                }
+                setBuildingsZ(buildingsZ);
+            }
+        } else {
+            triangulate(topoPoints);
+        }
+    }
+
+    /**
+     * Triangulate the merged buildings, the envelope and the topography
+     * @param topographicPoints Topographic points to insert
+     */
+    private void triangulate(Collection<Coordinate> topographicPoints) throws LayerDelaunayError {
+        LayerDelaunay delaunayTool = new LayerPoly2Tri();
 
         for (LineString lineString : envelopeSplited) {
             delaunayTool.addLineString(lineString, -1);
@@ -449,10 +629,10 @@ public class MeshBuilder {
         //add topoPoints to delaunay
         // If digital elevation models are not provided we ignore buildings ground Z (polygons Z, but we keep building heights)
         boolean resetBuildingsZGround = true;
-        if (!topoPoints.isEmpty() || !topoLines.isEmpty()) {
+        if (!topographicPoints.isEmpty() || !topoLines.isEmpty()) {
             // Do not ignore buildings ground line Z attribute
             resetBuildingsZGround = false;
-            for (Coordinate topoPoint : topoPoints) {
+            for (Coordinate topoPoint : topographicPoints) {
                 delaunayTool.addVertex(topoPoint);
             }
             for(LineString topoLine : topoLines) {
@@ -501,6 +681,163 @@ public class MeshBuilder {
         }
     }
 
+    /**
+     * @return Z of the coordinates of the buildings
+     */
+    private double[] getBuildingsZ() {
+        int count = 0;
+        for (PolygonWithHeight polygon : polygonWithHeight) {
+            count += polygon.getGeometry().getNumPoints();
+        }
+        final double[] z = new double[count];
+        CoordinateSequenceFilter filter = new CoordinateSequenceFilter() {
+            int index = 0;
+
+            @Override
+            public void filter(CoordinateSequence seq, int i) {
+                z[index++] = seq.getOrdinate(i, 2);
+            }
+
+            @Override
+            public boolean isDone() {
+                return false;
+            }
+
+            @Override
+            public boolean isGeometryChanged() {
+                return false;
+            }
+        };
+        for (PolygonWithHeight polygon : polygonWithHeight) {
+            polygon.getGeometry().apply(filter);
+        }
+        return z;
+    }
+
+    /**
+     * @param z Z of the coordinates of the buildings, from {@link #getBuildingsZ()}
+     */
+    private void setBuildingsZ(final double[] z) {
+        CoordinateSequenceFilter filter = new CoordinateSequenceFilter() {
+            int index = 0;
+
+            @Override
+            public void filter(CoordinateSequence seq, int i) {
+                seq.setOrdinate(i, 2, z[index++]);
+            }
+
+            @Override
+            public boolean isDone() {
+                return false;
+            }
+
+            @Override
+            public boolean isGeometryChanged() {
+                return true;
+            }
+        };
+        for (PolygonWithHeight polygon : polygonWithHeight) {
+            polygon.getGeometry().apply(filter);
+        }
+    }
+
+    /**
+     * Digest of the inputs and parameters of the triangulation, must be called before
+     * {@link #finishPolygonFeeding(Envelope)}. The same inputs give the same mesh, so the digest is used as the key of
+     * {@link MeshCacheFile}. All the triangulation options are part of the digest.
+     * @param boundingBoxFilter Envelope that will be provided to {@link #finishPolygonFeeding(Envelope)}
+     * @return Hexadecimal SHA-256 digest
+     */
+    public String computeInputDigest(Envelope boundingBoxFilter) {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        OutputStream nullOutputStream = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+        try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(nullOutputStream, messageDigest))) {
+            out.writeInt(MeshCacheFile.VERSION);
+            out.writeDouble(boundingBoxFilter.getMinX());
+            out.writeDouble(boundingBoxFilter.getMaxX());
+            out.writeDouble(boundingBoxFilter.getMinY());
+            out.writeDouble(boundingBoxFilter.getMaxY());
+            out.writeDouble(maximumArea);
+            out.writeBoolean(computeNeighbors);
+            out.writeBoolean(parallelMerge);
+            out.writeDouble(terrainSimplifier != null ? terrainSimplifier.getMaximumError() : 0);
+            WKBWriter wkbWriter = new WKBWriter(3);
+            out.writeInt(polygonWithHeight.size());
+            for (PolygonWithHeight poly : polygonWithHeight) {
+                byte[] wkb = wkbWriter.write(poly.geo);
+                out.writeInt(wkb.length);
+                out.write(wkb);
+                out.writeDouble(poly.height);
+                out.writeInt(poly.primaryKey);
+                out.writeInt(poly.alpha.size());
+                for (double alpha : poly.alpha) {
+                    out.writeDouble(alpha);
+                }
+            }
+            // The topographic points and lines are stored in hash sets, sort them so the insertion order does
+            // not change the digest
+            List<Coordinate> sortedTopoPoints = new ArrayList<>(topoPoints);
+            sortedTopoPoints.sort(new Comparator<Coordinate>() {
+                @Override
+                public int compare(Coordinate a, Coordinate b) {
+                    int cmp = Double.compare(a.x, b.x);
+                    if (cmp == 0) {
+                        cmp = Double.compare(a.y, b.y);
+                    }
+                    return cmp != 0 ? cmp : Double.compare(a.z, b.z);
+                }
+            });
+            out.writeInt(sortedTopoPoints.size());
+            for (Coordinate topoPoint : sortedTopoPoints) {
+                out.writeDouble(topoPoint.x);
+                out.writeDouble(topoPoint.y);
+                out.writeDouble(topoPoint.z);
+            }
+            List<byte[]> sortedTopoLines = new ArrayList<>(topoLines.size());
+            for (LineString topoLine : topoLines) {
+                sortedTopoLines.add(wkbWriter.write(topoLine));
+            }
+            sortedTopoLines.sort(new Comparator<byte[]>() {
+                @Override
+                public int compare(byte[] a, byte[] b) {
+                    for (int i = 0; i < Math.min(a.length, b.length); i++) {
+                        int cmp = Integer.compare(a[i] & 0xFF, b[i] & 0xFF);
+                        if (cmp != 0) {
+                            return cmp;
+                        }
+                    }
+                    return Integer.compare(a.length, b.length);
+                }
+            });
+            out.writeInt(sortedTopoLines.size());
+            for (byte[] wkb : sortedTopoLines) {
+                out.writeInt(wkb.length);
+                out.write(wkb);
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : messageDigest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
     public void clearBuildings() {
         polygonWithHeight.clear();
     }
@@ -0,0 +1,281 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKBReader;
+import org.locationtech.jts.io.WKBWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary file of a triangulated scene, in order to skip the triangulation of {@link MeshBuilder} when the same
+ * inputs are processed again. See {@link MeshBuilder#computeInputDigest(org.locationtech.jts.geom.Envelope)}.
+ *
+ * The file contains the arrays of {@link CompactMesh} and the buildings {@link MeshBuilder.PolygonWithHeight}.
+ * It is read with a memory mapped {@link FileChannel}, the arrays are copied in bulk into the mesh store. The file
+ * is mapped by chunks as a single mapping cannot exceed 2GB.
+ */
+public final class MeshCacheFile {
+    /** NMMC */
+    private static final int MAGIC = 0x4E4D4D43;
+    /** Version of the file format, also included in the input digest */
+    public static final int VERSION = 1;
+    public static final String FILE_EXTENSION = ".mesh";
+    /** Size of the mapped chunks of the file */
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private MeshCacheFile() {
+    }
+
+    /**
+     * Write the mesh into a file. The file is written next to the destination then moved, so a partially written
+     * file is never read.
+     * @param file Destination file
+     * @param buildings Buildings of the mesh, see {@link MeshBuilder#getPolygonWithHeight()}
+     * @param mesh Triangulation
+     * @throws IOException
+     */
+    public static void write(File file, List<MeshBuilder.PolygonWithHeight> buildings, CompactMesh mesh)
+            throws IOException {
+        File tmpFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                final int vertexCount = mesh.getVertexCount();
+                final int triangleCount = mesh.getTriangleCount();
+                out.writeInt(vertexCount);
+                out.writeInt(triangleCount);
+                out.writeInt(buildings.size());
+                for (int vertex = 0; vertex < vertexCount; vertex++) {
+                    out.writeDouble(mesh.getX(vertex));
+                    out.writeDouble(mesh.getY(vertex));
+                    out.writeDouble(mesh.getZ(vertex));
+                }
+                for (int triangle = 0; triangle < triangleCount; triangle++) {
+                    for (int corner = 0; corner < 3; corner++) {
+                        out.writeInt(mesh.getVertexIndex(triangle, corner));
+                    }
+                }
+                for (int triangle = 0; triangle < triangleCount; triangle++) {
+                    for (int side = 0; side < 3; side++) {
+                        out.writeInt(mesh.getNeighbor(triangle, side));
+                    }
+                }
+                for (int triangle = 0; triangle < triangleCount; triangle++) {
+                    out.writeInt(mesh.getAttribute(triangle));
+                }
+                WKBWriter wkbWriter = new WKBWriter(3);
+                for (MeshBuilder.PolygonWithHeight building : buildings) {
+                    out.writeDouble(building.getHeight());
+                    out.writeInt(building.getPrimaryKey());
+                    List<Double> alpha = building.getAlpha();
+                    out.writeInt(alpha.size());
+                    for (double value : alpha) {
+                        out.writeDouble(value);
+                    }
+                    byte[] wkb = wkbWriter.write(building.getGeometry());
+                    out.writeInt(wkb.length);
+                    out.write(wkb);
+                }
+            }
+            try {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmpFile.toPath());
+        }
+    }
+
+    /**
+     * Read a mesh written by {@link #write(File, List, CompactMesh)}
+     * @param file Mesh file
+     * @return Obstruction test over the stored mesh and buildings
+     * @throws IOException If the file is not a valid mesh file
+     */
+    public static FastObstructionTest read(File file) throws IOException {
+        return read(file, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param file Mesh file
+     * @param chunkSize Maximum size in bytes of the mapped parts of the file
+     * @return Obstruction test over the stored mesh and buildings
+     * @throws IOException If the file is not a valid mesh file
+     */
+    static FastObstructionTest read(File file, int chunkSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < 20) {
+                throw new IOException("Not a mesh file " + file);
+            }
+            ChunkedReader buffer = new ChunkedReader(channel, chunkSize);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a mesh file " + file);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("Unsupported mesh file version %d in %s", version, file));
+            }
+            int vertexCount = buffer.getInt();
+            int triangleCount = buffer.getInt();
+            int buildingCount = buffer.getInt();
+            double[] vertices = new double[vertexCount * 3];
+            buffer.get(vertices);
+            int[] triangleVertices = new int[triangleCount * 3];
+            buffer.get(triangleVertices);
+            int[] triangleNeighbors = new int[triangleCount * 3];
+            buffer.get(triangleNeighbors);
+            int[] triangleAttributes = new int[triangleCount];
+            buffer.get(triangleAttributes);
+            List<MeshBuilder.PolygonWithHeight> buildings = new ArrayList<>(buildingCount);
+            WKBReader wkbReader = new WKBReader();
+            for (int i = 0; i < buildingCount; i++) {
+                double height = buffer.getDouble();
+                int primaryKey = buffer.getInt();
+                int alphaCount = buffer.getInt();
+                List<Double> alpha = new ArrayList<>(alphaCount);
+                for (int j = 0; j < alphaCount; j++) {
+                    alpha.add(buffer.getDouble());
+                }
+                byte[] wkb = new byte[buffer.getInt()];
+                buffer.get(wkb);
+                Geometry geometry = wkbReader.read(wkb);
+                MeshBuilder.PolygonWithHeight building = new MeshBuilder.PolygonWithHeight(geometry, height, alpha);
+                building.setPrimaryKey(primaryKey);
+                buildings.add(building);
+            }
+            return new FastObstructionTest(buildings,
+                    new CompactMesh(triangleVertices, triangleNeighbors, triangleAttributes, vertices));
+        } catch (ParseException | RuntimeException ex) {
+            throw new IOException("Corrupted mesh file " + file, ex);
+        }
+    }
+
+    /**
+     * Sequential reader over a file mapped by chunks. The next chunk is mapped from the current position when the
+     * remaining bytes of the current chunk do not hold the requested value.
+     */
+    private static final class ChunkedReader {
+        private final FileChannel channel;
+        private final long size;
+        private final int chunkSize;
+        private long chunkPosition;
+        private MappedByteBuffer buffer;
+
+        ChunkedReader(FileChannel channel, int chunkSize) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.chunkSize = Math.max(Double.BYTES, chunkSize);
+            map(0);
+        }
+
+        private void map(long position) throws IOException {
+            chunkPosition = position;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(chunkSize, size - position));
+        }
+
+        /**
+         * @param length Number of bytes that must be available in the current chunk
+         */
+        private void require(int length) throws IOException {
+            if (buffer.remaining() < length) {
+                long position = chunkPosition + buffer.position();
+                if (size - position < length) {
+                    throw new EOFException();
+                }
+                map(position);
+            }
+        }
+
+        int getInt() throws IOException {
+            require(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        double getDouble() throws IOException {
+            require(Double.BYTES);
+            return buffer.getDouble();
+        }
+
+        void get(byte[] values) throws IOException {
+            int offset = 0;
+            while (offset < values.length) {
+                require(1);
+                int length = Math.min(buffer.remaining(), values.length - offset);
+                buffer.get(values, offset, length);
+                offset += length;
+            }
+        }
+
+        void get(double[] values) throws IOException {
+            int offset = 0;
+            while (offset < values.length) {
+                require(Double.BYTES);
+                int length = Math.min(buffer.remaining() / Double.BYTES, values.length - offset);
+                buffer.asDoubleBuffer().get(values, offset, length);
+                buffer.position(buffer.position() + length * Double.BYTES);
+                offset += length;
+            }
+        }
+
+        void get(int[] values) throws IOException {
+            int offset = 0;
+            while (offset < values.length) {
+                require(Integer.BYTES);
+                int length = Math.min(buffer.remaining() / Integer.BYTES, values.length - offset);
+                buffer.asIntBuffer().get(values, offset, length);
+                buffer.position(buffer.position() + length * Integer.BYTES);
+                offset += length;
+            }
+        }
+    }
+}
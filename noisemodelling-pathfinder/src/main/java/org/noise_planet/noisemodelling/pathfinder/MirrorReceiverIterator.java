@@ -41,7 +41,7 @@ import java.util.*;
 
 /**
  * Iterator through mirrored receiver
- * TODO Use Binary Space Partitioning in order to optimise wall orientation filter.
+ * @see MirrorReceiverTree Faster enumeration with the same output
  * @author Nicolas Fortin
  */
 public class MirrorReceiverIterator implements Iterator<MirrorReceiverResult> {
@@ -0,0 +1,150 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineSegment;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Image receivers tree, same output and order than {@link MirrorReceiverIterator}.
+ * The walls oriented toward the receiver and the walls facing each wall are computed once, so the depth first
+ * traversal only visits walls that can face the parent wall instead of every wall permutation.
+ */
+public class MirrorReceiverTree implements Iterable<MirrorReceiverResult> {
+    private final Coordinate receiverCoord;
+    private final List<FastObstructionTest.Wall> nearBuildingsWalls;
+    private final LineSegment srcReceiver;
+    private final double propagationLimitation;
+    private final int maxDepth;
+    /** Walls oriented toward the receiver and within the distance limitation */
+    private final FacingWalls facingWalls;
+
+    /**
+     * @param receiverCoord         Receiver position
+     * @param nearBuildingsWalls    Walls
+     * @param srcReceiver           Source to receiver segment
+     * @param distanceLimitation    Maximum distance between walls and the source-receiver segment
+     * @param maxDepth              Maximum reflection order
+     * @param propagationLimitation Maximum distance between image receivers and the source
+     */
+    public MirrorReceiverTree(Coordinate receiverCoord, List<FastObstructionTest.Wall> nearBuildingsWalls,
+                              LineSegment srcReceiver, double distanceLimitation, int maxDepth,
+                              double propagationLimitation) {
+        this.receiverCoord = receiverCoord;
+        this.nearBuildingsWalls = nearBuildingsWalls;
+        this.srcReceiver = srcReceiver;
+        this.propagationLimitation = propagationLimitation;
+        this.maxDepth = maxDepth;
+        this.facingWalls = new FacingWalls(receiverCoord, nearBuildingsWalls, srcReceiver, distanceLimitation);
+    }
+
+    @Override
+    public Iterator<MirrorReceiverResult> iterator() {
+        return new TreeIterator();
+    }
+
+    /**
+     * Depth first traversal of the image receivers
+     */
+    private final class TreeIterator implements Iterator<MirrorReceiverResult> {
+        /** Walls to visit at each depth */
+        private final int[][] levelWalls = new int[maxDepth][];
+        /** Next index in levelWalls at each depth */
+        private final int[] levelIndex = new int[maxDepth];
+        /** Last image receiver at each depth */
+        private final MirrorReceiverResult[] levelResult = new MirrorReceiverResult[maxDepth];
+        private int depth = 0;
+        private MirrorReceiverResult current;
+
+        TreeIterator() {
+            if (maxDepth > 0) {
+                levelWalls[0] = facingWalls.getCandidates();
+            } else {
+                depth = -1;
+            }
+            fetchNext();
+        }
+
+        private void fetchNext() {
+            current = null;
+            while (depth >= 0) {
+                if (levelIndex[depth] >= levelWalls[depth].length) {
+                    // No more walls at this depth
+                    depth--;
+                    continue;
+                }
+                int wallId = levelWalls[depth][levelIndex[depth]++];
+                MirrorReceiverResult parent = depth > 0 ? levelResult[depth - 1] : null;
+                Coordinate receiverIm = parent == null ? receiverCoord : parent.getReceiverPos();
+                Coordinate mirrored = facingWalls.mirror(wallId, receiverIm);
+                if (srcReceiver.p0.distance(mirrored) < propagationLimitation) {
+                    current = new MirrorReceiverResult(mirrored, parent, wallId,
+                            nearBuildingsWalls.get(wallId).getBuildingId());
+                    if (depth + 1 < maxDepth) {
+                        // Visit sub-reflections on the next call
+                        levelResult[depth] = current;
+                        depth++;
+                        levelWalls[depth] = facingWalls.getFacingWalls(wallId);
+                        levelIndex[depth] = 0;
+                    }
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return current != null;
+        }
+
+        @Override
+        public MirrorReceiverResult next() {
+            if (current == null) {
+                throw new NoSuchElementException();
+            }
+            MirrorReceiverResult retValue = current;
+            fetchNext();
+            return retValue;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Not supported");
+        }
+    }
+}
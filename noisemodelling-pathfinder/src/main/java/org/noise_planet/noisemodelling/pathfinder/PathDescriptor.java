@@ -0,0 +1,182 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.math.Vector3D;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact description of a free field propagation path (a source point, a receiver and the mean ground plane
+ * between them) given to {@link IComputeRaysOut#addPropagationPaths(long, double, long, PathDescriptor, List)}.
+ * The path finder reuses the same instance for all the paths of a worker, so the values must be read during the call.
+ * The derived values have the same meaning than the {@link SegmentPath} fields of the equivalent
+ * {@link PropagationPath}, they are computed once by {@link #init()}.
+ */
+public class PathDescriptor {
+    private boolean empty = true;
+    // Key points
+    public double sourceX;
+    public double sourceY;
+    public double sourceZ;
+    public double receiverX;
+    public double receiverY;
+    public double receiverZ;
+    public double sourceAltitude;   // ground altitude at the source position
+    public double receiverAltitude; // ground altitude at the receiver position
+    // G values
+    public double gs;               // G coefficient near the source
+    public double gPath;            // G coefficient of the path
+    // Mean ground plane
+    public double pInitX;
+    public double pInitY;
+    public double pInitZ;
+    public double vectorX;
+    public double vectorY;
+    public double vectorZ;
+
+    // computed in init
+    public double d;                // direct ray between source and receiver
+    public double dp;               // distance between the source and receiver in projection over the mean ground plane
+    public double zs;               // equivalent source height
+    public double zr;               // equivalent receiver height
+    public double zsPrime;
+    public double zrPrime;
+    public double testForm;
+    public double testFormPrime;
+    public double gPathPrime;
+
+    /**
+     * @return True if no path is stored in this descriptor
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Mark this descriptor as empty
+     */
+    public void clear() {
+        empty = true;
+    }
+
+    /**
+     * Compute the derived values from the key points and the mean ground plane, see
+     * {@link PropagationPath#initPropagationPath()}
+     */
+    public void init() {
+        // Projection of the source and the receiver on the mean ground plane
+        double sFactor = projectionFactor(sourceX, sourceY, sourceZ);
+        double rFactor = projectionFactor(receiverX, receiverY, receiverZ);
+        double sGroundX = pInitX + sFactor * vectorX;
+        double sGroundY = pInitY + sFactor * vectorY;
+        double sGroundZ = pInitZ + sFactor * vectorZ;
+        double rGroundX = pInitX + rFactor * vectorX;
+        double rGroundY = pInitY + rFactor * vectorY;
+        double rGroundZ = pInitZ + rFactor * vectorZ;
+        d = distance(sourceX, sourceY, sourceZ, receiverX, receiverY, receiverZ);
+        dp = distance(sGroundX, sGroundY, sGroundZ, rGroundX, rGroundY, rGroundZ);
+        // see Point 5.3 Equivalent heights in AFNOR document
+        zs = sourceZ - sGroundZ;
+        zs = zs > 0 ? zs : 0.000000001;
+        zr = receiverZ - rGroundZ;
+        zr = zr > 0 ? zr : 0.000000001;
+        testForm = dp / (30 * (zs + zr));
+        // Eq 2.5.19
+        double alpha0 = 2 * Math.pow(10, -4);
+        double deltazt = 6 * Math.pow(10, -3) * dp / (zs + zr);
+        double deltazs = alpha0 * Math.pow((zs / (zs + zr)), 2) * (Math.pow(dp, 2) / 2);
+        double deltazr = alpha0 * Math.pow((zr / (zs + zr)), 2) * (Math.pow(dp, 2) / 2);
+        zsPrime = zs + deltazs + deltazt;
+        zrPrime = zr + deltazr + deltazt;
+        testFormPrime = dp / (30 * (zsPrime + zrPrime));
+        // Eq. 2.5.14
+        if (testForm <= 1) {
+            gPathPrime = testForm * gPath + (1 - testForm) * gs;
+        } else {
+            gPathPrime = gPath;
+        }
+        empty = false;
+    }
+
+    /**
+     * @return Position of the projection of the point on the mean ground plane line, see
+     * {@link PropagationPath#projectPointonVector(Coordinate, Vector3D, Coordinate)}
+     */
+    private double projectionFactor(double x, double y, double z) {
+        double abX = (vectorX + pInitX) - pInitX;
+        double abY = (vectorY + pInitY) - pInitY;
+        double abZ = (vectorZ + pInitZ) - pInitZ;
+        return ((x - pInitX) * abX + (y - pInitY) * abY + (z - pInitZ) * abZ) /
+                (abX * abX + abY * abY + abZ * abZ);
+    }
+
+    /**
+     * @return 3D distance, or 2D distance if one of the z value is NaN
+     */
+    private static double distance(double x0, double y0, double z0, double x1, double y1, double z1) {
+        double dx = x0 - x1;
+        double dy = y0 - y1;
+        if (Double.isNaN(z0) || Double.isNaN(z1)) {
+            return Math.sqrt(dx * dx + dy * dy);
+        }
+        double dz = z0 - z1;
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * @return Equivalent propagation path object
+     */
+    public PropagationPath toPropagationPath() {
+        return toPropagationPath(new Coordinate(sourceX, sourceY, sourceZ),
+                new Coordinate(receiverX, receiverY, receiverZ));
+    }
+
+    /**
+     * @param source   Source position, referenced by the source point of the path
+     * @param receiver Receiver position, referenced by the receiver point of the path
+     * @return Equivalent propagation path object
+     */
+    PropagationPath toPropagationPath(Coordinate source, Coordinate receiver) {
+        List<PointPath> points = new ArrayList<PointPath>(2);
+        List<SegmentPath> segments = new ArrayList<SegmentPath>(1);
+        segments.add(new SegmentPath(gPath, new Vector3D(vectorX, vectorY, vectorZ),
+                new Coordinate(pInitX, pInitY, pInitZ)));
+        points.add(new PointPath(source, sourceAltitude, gs, new ArrayList<>(), -1, PointPath.POINT_TYPE.SRCE));
+        points.add(new PointPath(receiver, receiverAltitude, gs, new ArrayList<>(), -1, PointPath.POINT_TYPE.RECV));
+        return new PropagationPath(false, points, segments, segments);
+    }
+}
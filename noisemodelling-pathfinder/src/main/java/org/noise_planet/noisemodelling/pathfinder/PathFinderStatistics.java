@@ -0,0 +1,170 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import java.util.Arrays;
+
+/**
+ * Time spent and number of operations of each phase of the path finder. A worker thread records into its own
+ * instance, without synchronisation, then the instances of the workers are merged into the statistics of the cell.
+ */
+public class PathFinderStatistics {
+
+    /**
+     * Timed phases of the path finder
+     */
+    public enum Phase {
+        /** Query and discretization of the sources around the receiver */
+        SOURCE_COLLECTION,
+        /** Search of the walls near the receiver and near the source points */
+        WALL_SEARCH,
+        /** Enumeration of the image receivers */
+        MIRROR_ENUMERATION,
+        /** Obstruction test of the direct path and free field path */
+        FREE_FIELD,
+        /** Diffraction rays over vertical edges */
+        HORIZONTAL_DIFFRACTION,
+        /** Diffraction rays over horizontal edges */
+        VERTICAL_DIFFRACTION,
+        /** Validation of the reflection paths */
+        REFLECTION,
+        /** Attenuation and storage of the paths, done by {@link IComputeRaysOut} */
+        OUTPUT
+    }
+
+    /**
+     * Counted items
+     */
+    public enum Counter {
+        RECEIVERS,
+        SOURCE_RECEIVER_PAIRS,
+        OBSTRUCTION_TESTS,
+        /** Triangles visited by the walks of the obstruction tests */
+        WALKED_TRIANGLES,
+        IMAGE_RECEIVERS,
+        REFLECTION_PATHS,
+        HORIZONTAL_DIFFRACTION_PATHS,
+        VERTICAL_DIFFRACTION_PATHS
+    }
+
+    private final long[] phaseTime = new long[Phase.values().length];
+    private final long[] phaseCount = new long[Phase.values().length];
+    private final long[] counters = new long[Counter.values().length];
+
+    /**
+     * Add the time elapsed since the start of a phase
+     * @param phase Phase
+     * @param start Value of {@link System#nanoTime()} when the phase has started
+     * @return Current value of {@link System#nanoTime()}, in order to chain phases
+     */
+    public long addTime(Phase phase, long start) {
+        long end = System.nanoTime();
+        phaseTime[phase.ordinal()] += end - start;
+        phaseCount[phase.ordinal()]++;
+        return end;
+    }
+
+    /**
+     * @param counter Counter
+     * @param value   Value to add
+     */
+    public void increment(Counter counter, long value) {
+        counters[counter.ordinal()] += value;
+    }
+
+    /**
+     * @param phase Phase
+     * @return Time spent in the phase, in nanoseconds. The time of the worker threads is summed.
+     */
+    public long getTime(Phase phase) {
+        return phaseTime[phase.ordinal()];
+    }
+
+    /**
+     * @param phase Phase
+     * @return Number of executions of the phase
+     */
+    public long getCount(Phase phase) {
+        return phaseCount[phase.ordinal()];
+    }
+
+    public long getCounter(Counter counter) {
+        return counters[counter.ordinal()];
+    }
+
+    /**
+     * Add the values of other statistics
+     * @param other Statistics to add
+     */
+    public void merge(PathFinderStatistics other) {
+        for (int i = 0; i < phaseTime.length; i++) {
+            phaseTime[i] += other.phaseTime[i];
+            phaseCount[i] += other.phaseCount[i];
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] += other.counters[i];
+        }
+    }
+
+    /**
+     * Add the counters of other statistics, without the time of the phases
+     * @param other Statistics to add
+     */
+    public void mergeCounters(PathFinderStatistics other) {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] += other.counters[i];
+        }
+    }
+
+    /**
+     * Reset all values to 0
+     */
+    public void clear() {
+        Arrays.fill(phaseTime, 0);
+        Arrays.fill(phaseCount, 0);
+        Arrays.fill(counters, 0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            sb.append(String.format("%s: %d ms (%d)\n", phase, getTime(phase) / 1000000, getCount(phase)));
+        }
+        for (Counter counter : Counter.values()) {
+            sb.append(String.format("%s: %d\n", counter, getCounter(counter)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.algorithm.CGAlgorithms3D;
+import org.locationtech.jts.geom.Coordinate;
+
+import static org.noise_planet.noisemodelling.pathfinder.utils.AcousticPropagation.getADiv;
+
+/**
+ * Default power bound, geometric divergence with a +3 dB reflective ground over the direct source-receiver distance.
+ * Sub-classes can add attenuations by frequency band that only grow with the distance, see
+ * {@link #getAttenuation(double, int)}. They are also applied to the source clusters.
+ * Optionally a minimum diffraction loss is applied when the direct line between the source and the receiver is
+ * obstructed by buildings or topography. This is not a strict bound: reflections can bring more power around an
+ * obstacle, so the value must be chosen according to the tolerated error. It is 0 dB by default.
+ */
+public class PowerBoundEstimator implements IPowerBoundEstimator {
+    private double minimumDiffractionLoss = 0;
+
+    /**
+     * @return Attenuation in dB applied to obstructed source points
+     */
+    public double getMinimumDiffractionLoss() {
+        return minimumDiffractionLoss;
+    }
+
+    /**
+     * @param minimumDiffractionLoss Attenuation in dB applied when the direct line between the source point and the
+     *                               receiver is not free, 0 to skip the obstruction test
+     */
+    public void setMinimumDiffractionLoss(double minimumDiffractionLoss) {
+        this.minimumDiffractionLoss = minimumDiffractionLoss;
+    }
+
+    @Override
+    public boolean isObstructionTested() {
+        return minimumDiffractionLoss > 0;
+    }
+
+    /**
+     * @param distance  Direct distance between the source and the receiver, in meters
+     * @param frequency Frequency band index
+     * @return Additional attenuation in dB, must not be greater than the attenuation computed on the propagation paths
+     */
+    protected double getAttenuation(double distance, int frequency) {
+        return 0;
+    }
+
+    @Override
+    public double[] getPowerBound(FastObstructionTest freeFieldFinder, Coordinate receiverPos, Coordinate sourcePos,
+                                  double[] wj, double li) {
+        double distance = CGAlgorithms3D.distance(receiverPos, sourcePos);
+        // Compute maximal power at freefield at the receiver position with reflective ground
+        double aDiv = -getADiv(distance);
+        double loss = 0;
+        if (minimumDiffractionLoss > 0 && freeFieldFinder != null && !Double.isNaN(sourcePos.z) &&
+                !freeFieldFinder.isFreeField(receiverPos, sourcePos)) {
+            loss = minimumDiffractionLoss;
+        }
+        double[] srcWJ = new double[wj.length];
+        for (int idFreq = 0; idFreq < srcWJ.length; idFreq++) {
+            double attenuation = loss + getAttenuation(distance, idFreq);
+            srcWJ[idFreq] = wj[idFreq] * li * ComputeRays.dbaToW(aDiv) * ComputeRays.dbaToW(3);
+            if (attenuation != 0) {
+                srcWJ[idFreq] *= ComputeRays.dbaToW(-attenuation);
+            }
+        }
+        return srcWJ;
+    }
+
+    /**
+     * The attenuations of {@link #getAttenuation(double, int)} are applied at the given distance. The minimum
+     * diffraction loss is not applied as the obstruction is only known for each source point.
+     */
+    @Override
+    public double getPowerBound(double distance, double[] power) {
+        double aDiv = ComputeRays.dbaToW(-getADiv(distance)) * ComputeRays.dbaToW(3);
+        double bound = 0;
+        for (int idFreq = 0; idFreq < power.length; idFreq++) {
+            bound += power[idFreq] * aDiv * ComputeRays.dbaToW(-getAttenuation(distance, idFreq));
+        }
+        return bound;
+    }
+}
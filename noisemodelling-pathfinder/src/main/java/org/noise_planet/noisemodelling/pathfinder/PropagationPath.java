@@ -63,6 +63,7 @@ public class PropagationPath {
     int idSource;
     int idReceiver;
     private boolean initialized = false;
+    private int srPrimeIndex = -1; // index of the S'R path in srList, SR' follows
     // computed in Augmented Path
     public List<Integer> difHPoints = new ArrayList<Integer>(); // diffraction points indices on horizontal edges
     public List<Integer> difVPoints = new ArrayList<Integer>(); // diffraction points indices on vertical edges
@@ -190,7 +191,10 @@ public class PropagationPath {
 
     public void setSegmentList(List<SegmentPath>  segmentList) {this.segmentList = segmentList;}
 
-    public void setSRList(List<SegmentPath> srList) {this.srList = srList;}
+    public void setSRList(List<SegmentPath> srList) {
+        this.srList = srList;
+        this.srPrimeIndex = -1;
+    }
 
 
     public PropagationPath(List<SegmentPath> segmentList) {
@@ -201,9 +205,17 @@ public class PropagationPath {
         return favorable;
     }
 
+    /**
+     * @param favorable If true, favorable meteorological condition path. If the path is initialised only the values
+     *                  depending on the condition are computed again.
+     */
     public void setFavorable(boolean favorable) {
-        this.favorable =  favorable;
-        setInitialized(false);
+        if(this.favorable != favorable) {
+            this.favorable = favorable;
+            if(isInitialized()) {
+                computeFavorableCondition();
+            }
+        }
     }
 
 
@@ -316,112 +328,7 @@ public class PropagationPath {
 
         // diffraction on horizontal edges
         if (difHPoints.size()>0) {
-
-            dPath = 0;
-
-            // Symmetric coordinates to the gound mean plane see Figure 2.5.c
-            Coordinate SGroundSeg = this.segmentList.get(0).sGround;
-            Coordinate RGroundSeg = this.segmentList.get(segmentList.size()-1).rGround;
-            Coordinate Sprime = new Coordinate(2 * SGroundSeg.x - S.x, 2 * SGroundSeg.y - S.y, 2 * SGroundSeg.z - S.z);
-            Coordinate Rprime = new Coordinate(2 * RGroundSeg.x - R.x, 2 * RGroundSeg.y - R.y, 2 * RGroundSeg.z - R.z);
-
-            double gpath = SR.gPath;
-            SegmentPath SRp = new SegmentPath(gpath, new Vector3D(S, Rprime),SR.pInit);
-            SegmentPath SpR = new SegmentPath(gpath, new Vector3D(Sprime, R),Sprime);
-
-            SpR.d = CGAlgorithms3D.distance(Sprime, R);
-            SRp.d = CGAlgorithms3D.distance(S, Rprime);
-
-            SRp.dp = SR.dp;
-            SpR.dp = SR.dp;
-
-            if (!this.favorable){
-                for (int idPoint = 2; idPoint < pointList.size()-1; idPoint++) {
-                    dPath += CGAlgorithms3D.distance(pointList.get(idPoint - 1).coordinate, pointList.get(idPoint).coordinate);
-                }
-
-                if (pointList.size()>3){
-                    SR.eLength = dPath;
-                    SpR.eLength = dPath;
-                    SRp.eLength = dPath;
-                }
-                SR.dPath = dPath
-                        + CGAlgorithms3D.distance(S, pointList.get(1).coordinate)
-                        + CGAlgorithms3D.distance(pointList.get(pointList.size()-2).coordinate,R);
-                SpR.dPath = dPath
-                        + CGAlgorithms3D.distance(Sprime, pointList.get(1).coordinate)
-                        + CGAlgorithms3D.distance(pointList.get(pointList.size()-2).coordinate,R);
-                SRp.dPath = dPath
-                        + CGAlgorithms3D.distance(S, pointList.get(1).coordinate)
-                        + CGAlgorithms3D.distance(pointList.get(pointList.size()-2).coordinate,Rprime);
-
-                SpR.dc = SpR.d;
-                SRp.dc = SRp.d;
-                SR.dc = SR.d;
-
-                // if path is convex, delta is positive, otherwise negative
-                double convex = Vector3D.dot(S,R,S,pointList.get(difHPoints.get(0)).coordinate)<0 ? -1 : 1;
-
-                SR.delta = convex * (SR.dPath - SR.d);
-                SRp.delta = convex * (SRp.dPath - SRp.d);
-                SpR.delta = convex * (SpR.dPath - SpR.d);
-            }
-            else
-            {
-
-                // if the straight sound ray SR is masked by the obstacle (1st and 2nd case in Figure 2.5.e)
-                for (int idPoint = 2; idPoint < pointList.size()-1; idPoint++) {
-                    dPath += getRayCurveLength(CGAlgorithms3D.distance(pointList.get(idPoint - 1).coordinate, pointList.get(idPoint).coordinate), SR.d);
-                }
-
-                if (difHPoints.size()>1){
-                    double dDif = CGAlgorithms3D.distance(pointList.get(difHPoints.get(0)).coordinate,pointList.get(difHPoints.get(difHPoints.size()-1)).coordinate);
-                    SR.eLength = getRayCurveLength(dDif,SR.d);
-                    SpR.eLength = SR.eLength;
-                    SRp.eLength = SR.eLength;
-                }
-
-                SR.dPath = dPath
-                        + getRayCurveLength(CGAlgorithms3D.distance(S, pointList.get(1).coordinate), SR.d)
-                        + getRayCurveLength(CGAlgorithms3D.distance(pointList.get(pointList.size()-2).coordinate, R), SR.d);
-                SR.dc = getRayCurveLength(SR.d, SR.d);
-
-                if (difHPoints.size()>0) {
-                    SpR.dPath = dPath
-                            + getRayCurveLength(CGAlgorithms3D.distance(Sprime, pointList.get(1).coordinate), SR.d)
-                            + getRayCurveLength(CGAlgorithms3D.distance(pointList.get(pointList.size() - 2).coordinate, R), SR.d);
-                    SpR.dc = getRayCurveLength(SpR.d, SR.d);
-
-                    SRp.dPath = dPath
-                            + getRayCurveLength(CGAlgorithms3D.distance(S, pointList.get(1).coordinate), SR.d)
-                            + getRayCurveLength(CGAlgorithms3D.distance(pointList.get(pointList.size() - 2).coordinate, Rprime), SR.d);
-                    SRp.dc = getRayCurveLength(SRp.d, SR.d);
-                }
-
-                // todo for the multiple diffractions in favourable conditions: Eq. 2.5.28
-
-                // Iif the straight sound ray SR is not masked by the obstacle (3rd case in Figure 2.5.e)
-                if (Vector3D.dot(S,R,S,pointList.get(difHPoints.get(0)).coordinate)<0) {
-                    Coordinate A = projectPointonVector(pointList.get(difHPoints.get(0)).coordinate,SR.vector3D, SR.pInit);
-                    double SA = getRayCurveLength(CGAlgorithms3D.distance(S, A), SR.d);
-                    double AR = getRayCurveLength(CGAlgorithms3D.distance(A, R), SR.d);
-                    double SO = getRayCurveLength(CGAlgorithms3D.distance(S, pointList.get(difHPoints.get(0)).coordinate), SR.d);
-                    double OR = getRayCurveLength(CGAlgorithms3D.distance(pointList.get(difHPoints.get(0)).coordinate, R), SR.d);
-                    double SpA = getRayCurveLength(CGAlgorithms3D.distance(Sprime, A), SR.d);
-                    double ARp = getRayCurveLength(CGAlgorithms3D.distance(A, Rprime), SR.d);
-                    double SpO = getRayCurveLength(CGAlgorithms3D.distance(Sprime, pointList.get(difHPoints.get(0)).coordinate), SR.d);
-                    double ORp = getRayCurveLength(CGAlgorithms3D.distance(pointList.get(difHPoints.get(0)).coordinate, Rprime), SR.d);
-                    SR.delta =  2*SA+2*AR-SO-OR-SR.dc; // Eq. 2.5.27
-                    SRp.delta =  2*SA+2*ARp-SO-ORp-SRp.dc;
-                    SpR.delta = 2*SpA+2*AR-SpO-OR-SpR.dc;
-                }else {
-                    SR.delta =  SR.dPath - SR.dc; // Eq. 2.5.26
-                    SRp.delta = SRp.dPath - SRp.dc;
-                    SpR.delta = SpR.dPath - SpR.dc;
-                }
-            }
-            this.srList.add(SpR);
-            this.srList.add(SRp);
+            computeHorizontalDiffractionSRPath(SR);
         }
 
 
@@ -457,6 +364,145 @@ public class PropagationPath {
     }
 
 
+    /**
+     * Compute the source-receiver paths of the diffraction on horizontal edges (SR, S'R and SR'), these values depend
+     * on the meteorological condition
+     * @param SR Source-receiver path
+     */
+    private void computeHorizontalDiffractionSRPath(SegmentPath SR) {
+        Coordinate S = pointList.get(0).coordinate;
+        Coordinate R = pointList.get(pointList.size()-1).coordinate;
+        double dPath = 0;
+
+        // Symmetric coordinates to the gound mean plane see Figure 2.5.c
+        Coordinate SGroundSeg = this.segmentList.get(0).sGround;
+        Coordinate RGroundSeg = this.segmentList.get(segmentList.size()-1).rGround;
+        Coordinate Sprime = new Coordinate(2 * SGroundSeg.x - S.x, 2 * SGroundSeg.y - S.y, 2 * SGroundSeg.z - S.z);
+        Coordinate Rprime = new Coordinate(2 * RGroundSeg.x - R.x, 2 * RGroundSeg.y - R.y, 2 * RGroundSeg.z - R.z);
+
+        double gpath = SR.gPath;
+        SegmentPath SRp = new SegmentPath(gpath, new Vector3D(S, Rprime),SR.pInit);
+        SegmentPath SpR = new SegmentPath(gpath, new Vector3D(Sprime, R),Sprime);
+
+        SpR.d = CGAlgorithms3D.distance(Sprime, R);
+        SRp.d = CGAlgorithms3D.distance(S, Rprime);
+
+        SRp.dp = SR.dp;
+        SpR.dp = SR.dp;
+
+        if (!this.favorable){
+            for (int idPoint = 2; idPoint < pointList.size()-1; idPoint++) {
+                dPath += CGAlgorithms3D.distance(pointList.get(idPoint - 1).coordinate, pointList.get(idPoint).coordinate);
+            }
+
+            if (pointList.size()>3){
+                SR.eLength = dPath;
+                SpR.eLength = dPath;
+                SRp.eLength = dPath;
+            }
+            SR.dPath = dPath
+                    + CGAlgorithms3D.distance(S, pointList.get(1).coordinate)
+                    + CGAlgorithms3D.distance(pointList.get(pointList.size()-2).coordinate,R);
+            SpR.dPath = dPath
+                    + CGAlgorithms3D.distance(Sprime, pointList.get(1).coordinate)
+                    + CGAlgorithms3D.distance(pointList.get(pointList.size()-2).coordinate,R);
+            SRp.dPath = dPath
+                    + CGAlgorithms3D.distance(S, pointList.get(1).coordinate)
+                    + CGAlgorithms3D.distance(pointList.get(pointList.size()-2).coordinate,Rprime);
+
+            SpR.dc = SpR.d;
+            SRp.dc = SRp.d;
+            SR.dc = SR.d;
+
+            // if path is convex, delta is positive, otherwise negative
+            double convex = Vector3D.dot(S,R,S,pointList.get(difHPoints.get(0)).coordinate)<0 ? -1 : 1;
+
+            SR.delta = convex * (SR.dPath - SR.d);
+            SRp.delta = convex * (SRp.dPath - SRp.d);
+            SpR.delta = convex * (SpR.dPath - SpR.d);
+        }
+        else
+        {
+
+            // if the straight sound ray SR is masked by the obstacle (1st and 2nd case in Figure 2.5.e)
+            for (int idPoint = 2; idPoint < pointList.size()-1; idPoint++) {
+                dPath += getRayCurveLength(CGAlgorithms3D.distance(pointList.get(idPoint - 1).coordinate, pointList.get(idPoint).coordinate), SR.d);
+            }
+
+            if (difHPoints.size()>1){
+                double dDif = CGAlgorithms3D.distance(pointList.get(difHPoints.get(0)).coordinate,pointList.get(difHPoints.get(difHPoints.size()-1)).coordinate);
+                SR.eLength = getRayCurveLength(dDif,SR.d);
+                SpR.eLength = SR.eLength;
+                SRp.eLength = SR.eLength;
+            }
+
+            SR.dPath = dPath
+                    + getRayCurveLength(CGAlgorithms3D.distance(S, pointList.get(1).coordinate), SR.d)
+                    + getRayCurveLength(CGAlgorithms3D.distance(pointList.get(pointList.size()-2).coordinate, R), SR.d);
+            SR.dc = getRayCurveLength(SR.d, SR.d);
+
+            if (difHPoints.size()>0) {
+                SpR.dPath = dPath
+                        + getRayCurveLength(CGAlgorithms3D.distance(Sprime, pointList.get(1).coordinate), SR.d)
+                        + getRayCurveLength(CGAlgorithms3D.distance(pointList.get(pointList.size() - 2).coordinate, R), SR.d);
+                SpR.dc = getRayCurveLength(SpR.d, SR.d);
+
+                SRp.dPath = dPath
+                        + getRayCurveLength(CGAlgorithms3D.distance(S, pointList.get(1).coordinate), SR.d)
+                        + getRayCurveLength(CGAlgorithms3D.distance(pointList.get(pointList.size() - 2).coordinate, Rprime), SR.d);
+                SRp.dc = getRayCurveLength(SRp.d, SR.d);
+            }
+
+            // todo for the multiple diffractions in favourable conditions: Eq. 2.5.28
+
+            // Iif the straight sound ray SR is not masked by the obstacle (3rd case in Figure 2.5.e)
+            if (Vector3D.dot(S,R,S,pointList.get(difHPoints.get(0)).coordinate)<0) {
+                Coordinate A = projectPointonVector(pointList.get(difHPoints.get(0)).coordinate,SR.vector3D, SR.pInit);
+                double SA = getRayCurveLength(CGAlgorithms3D.distance(S, A), SR.d);
+                double AR = getRayCurveLength(CGAlgorithms3D.distance(A, R), SR.d);
+                double SO = getRayCurveLength(CGAlgorithms3D.distance(S, pointList.get(difHPoints.get(0)).coordinate), SR.d);
+                double OR = getRayCurveLength(CGAlgorithms3D.distance(pointList.get(difHPoints.get(0)).coordinate, R), SR.d);
+                double SpA = getRayCurveLength(CGAlgorithms3D.distance(Sprime, A), SR.d);
+                double ARp = getRayCurveLength(CGAlgorithms3D.distance(A, Rprime), SR.d);
+                double SpO = getRayCurveLength(CGAlgorithms3D.distance(Sprime, pointList.get(difHPoints.get(0)).coordinate), SR.d);
+                double ORp = getRayCurveLength(CGAlgorithms3D.distance(pointList.get(difHPoints.get(0)).coordinate, Rprime), SR.d);
+                SR.delta =  2*SA+2*AR-SO-OR-SR.dc; // Eq. 2.5.27
+                SRp.delta =  2*SA+2*ARp-SO-ORp-SRp.dc;
+                SpR.delta = 2*SpA+2*AR-SpO-OR-SpR.dc;
+            }else {
+                SR.delta =  SR.dPath - SR.dc; // Eq. 2.5.26
+                SRp.delta = SRp.dPath - SRp.dc;
+                SpR.delta = SpR.dPath - SpR.dc;
+            }
+        }
+        // The prime paths are replaced when the meteorological condition changes
+        if (srPrimeIndex < 0 || srPrimeIndex + 2 > srList.size()) {
+            srPrimeIndex = srList.size();
+            this.srList.add(SpR);
+            this.srList.add(SRp);
+        } else {
+            this.srList.set(srPrimeIndex, SpR);
+            this.srList.set(srPrimeIndex + 1, SRp);
+        }
+    }
+
+    /**
+     * Update the values that depend on the meteorological condition, the geometry of the path is not computed again
+     */
+    private void computeFavorableCondition() {
+        for (SegmentPath segment : segmentList) {
+            segment.dc = favorable ? getRayCurveLength(segment.d, segment.d) : segment.d;
+        }
+        SegmentPath SR = srList.get(0);
+        if (difVPoints.isEmpty()) {
+            SR.dc = favorable ? getRayCurveLength(SR.d, SR.d) : SR.d;
+        }
+        if (!difHPoints.isEmpty()) {
+            computeHorizontalDiffractionSRPath(SR);
+        }
+    }
+
+
     void computeAugmentedSegments() {
         for (int idSegment = 0; idSegment < segmentList.size(); idSegment++) {
 
@@ -91,12 +91,29 @@ public class PropagationProcessData {
 
     /** maximum dB Error, stop calculation if the sum of further sources contributions are smaller than this value */
     public double maximumError = Double.NEGATIVE_INFINITY;
+    /** Estimation of the maximal power of source points, used with maximumError */
+    protected IPowerBoundEstimator powerBoundEstimator = new PowerBoundEstimator();
     /** cellId only used in output data */
     public int cellId;
     /** Progression information */
     public ProgressVisitor cellProg;
     /** list Geometry of soil and the type of this soil */
     protected List<GeoWithSoilType> soilList = new ArrayList<>();
+    /** If greater than 0, soil areas are rasterised with this cell size, see {@link SoilGrid} */
+    protected double soilGridCellSize = 0;
+    /** Compute the image receivers once per receiver for all sources, see {@link ReceiverImageTree} */
+    protected boolean reuseReceiverImageTree = false;
+    /** Walls found near source points, shared by all receivers */
+    protected SourceWallCache sourceWallCache = new SourceWallCache();
+    /**
+     * Discretization of line sources, shared by all receivers. Disabled by default, splitting a road segment again
+     * is not slower than the cache lookup
+     */
+    protected LineSourceCache lineSourceCache = new LineSourceCache(0);
+    /** Process the sources from a cluster tree in order to skip the clusters bellow the maximum error */
+    protected boolean sourceClustering = false;
+    /** Cluster tree of sources, built on the first use */
+    private SourceClusterTree sourceClusterTree = null;
 
 
 
@@ -107,6 +124,7 @@ public class PropagationProcessData {
     public void addSource(Geometry geom) {
         sourceGeometries.add(geom);
         sourcesIndex.appendGeometry(geom, sourceGeometries.size() - 1);
+        sourceClusterTree = null;
     }
 
     public void addSource(Long pk, Geometry geom) {
@@ -129,6 +147,8 @@ public class PropagationProcessData {
             sourcesIndex.appendGeometry(source, i++);
         }
         this.sourceGeometries = sourceGeometries;
+        lineSourceCache.clear();
+        sourceClusterTree = null;
     }
 
     /**
@@ -161,6 +181,23 @@ public class PropagationProcessData {
         return soilList;
     }
 
+    /**
+     * @return Cell size of the soil grid in meters, 0 if the soil areas are intersected with each path
+     */
+    public double getSoilGridCellSize() {
+        return soilGridCellSize;
+    }
+
+    /**
+     * @param soilGridCellSize Rasterise the soil areas with this cell size in meters, in order to compute the ground
+     *                         factor of paths without polygon intersection. 0 to use the exact soil geometries.
+     *                         The soil geometries are also used if the grid would exceed
+     *                         {@link SoilGrid#MAXIMUM_CELL_COUNT} cells.
+     */
+    public void setSoilGridCellSize(double soilGridCellSize) {
+        this.soilGridCellSize = soilGridCellSize;
+    }
+
     public void addReceiver(Coordinate... receiver) {
         receivers.addAll(Arrays.asList(receiver));
     }
@@ -203,6 +240,100 @@ public class PropagationProcessData {
         return computeVerticalDiffraction;
     }
 
+    /**
+     * @return True if the image receivers are computed once per receiver for all sources
+     */
+    public boolean isReuseReceiverImageTree() {
+        return reuseReceiverImageTree;
+    }
+
+    /**
+     * @param reuseReceiverImageTree If true the image receivers are computed once per receiver, using the walls
+     *                               reachable from the receiver within {@link #maxSrcDist}, then filtered for each
+     *                               source. If false (default) the image receivers are computed for each source
+     *                               using the walls within {@link #maxRefDist} of the receiver and of the source.
+     */
+    public void setReuseReceiverImageTree(boolean reuseReceiverImageTree) {
+        this.reuseReceiverImageTree = reuseReceiverImageTree;
+    }
+
+    /**
+     * @return Cache of walls found near source points
+     */
+    public SourceWallCache getSourceWallCache() {
+        return sourceWallCache;
+    }
+
+    /**
+     * @param sourceWallCache Cache of walls found near source points, a cache with a maximum memory of 0 disable it
+     */
+    public void setSourceWallCache(SourceWallCache sourceWallCache) {
+        this.sourceWallCache = sourceWallCache;
+    }
+
+    /**
+     * @return Cache of line sources discretization
+     */
+    public LineSourceCache getLineSourceCache() {
+        return lineSourceCache;
+    }
+
+    /**
+     * @param lineSourceCache Cache of line sources discretization, a cache with a maximum memory of 0 disable it
+     */
+    public void setLineSourceCache(LineSourceCache lineSourceCache) {
+        this.lineSourceCache = lineSourceCache;
+    }
+
+    /**
+     * @return Estimation of the maximal power received from source points
+     */
+    public IPowerBoundEstimator getPowerBoundEstimator() {
+        return powerBoundEstimator;
+    }
+
+    /**
+     * @param powerBoundEstimator Estimation of the maximal power received from source points. A tighter estimation
+     *                            let {@link #maximumError} stop the computation earlier.
+     */
+    public void setPowerBoundEstimator(IPowerBoundEstimator powerBoundEstimator) {
+        this.powerBoundEstimator = powerBoundEstimator;
+    }
+
+    /**
+     * @return True if the sources are processed from a cluster tree
+     */
+    public boolean isSourceClustering() {
+        return sourceClustering;
+    }
+
+    /**
+     * The sources are processed in a best-first order from a tree of source clusters, the clusters are discretized
+     * only when their power upper bound is the highest remaining one. When {@link #maximumError} is set, the
+     * computation of a receiver stops when the level difference between the received power and the received power
+     * plus the upper bound of all unprocessed clusters and sources is bellow maximumError, so distant clusters are
+     * skipped without being discretized. The error on the receiver level is then lower than maximumError dB.
+     * @param sourceClustering True to process the sources from a cluster tree
+     * @see SourceClusterTree
+     */
+    public void setSourceClustering(boolean sourceClustering) {
+        this.sourceClustering = sourceClustering;
+    }
+
+    /**
+     * @return Cluster tree of the sources, built on the first call
+     */
+    public synchronized SourceClusterTree getSourceClusterTree() {
+        if (sourceClusterTree == null) {
+            double[][] sourcePower = new double[sourceGeometries.size()][];
+            for (int i = 0; i < sourcePower.length; i++) {
+                sourcePower[i] = SourceClusterTree.getSourcePower(sourceGeometries.get(i), getMaximalSourcePower(i));
+            }
+            sourceClusterTree = new SourceClusterTree(sourceGeometries, sourcePower);
+        }
+        return sourceClusterTree;
+    }
+
 
 }
 
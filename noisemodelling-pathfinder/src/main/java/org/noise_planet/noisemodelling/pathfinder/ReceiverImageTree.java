@@ -0,0 +1,244 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Image receivers of a receiver, shared by all the sources of this receiver. The image receivers only depend on the
+ * receiver position and the walls, the source position is only used to filter them.
+ * The tree is expanded on demand. Images farther than twice the maximum source distance from the receiver are not
+ * kept because they cannot be closer than the maximum source distance from a source located at less than the maximum
+ * source distance from the receiver. When the tree holds the maximum node count, the children of the next expanded
+ * images are computed for the current traversal only and are not kept.
+ * For a source, the image receivers returned are the same, in the same order, than
+ * {@link MirrorReceiverTree} with the same walls. This class is not thread safe.
+ */
+public class ReceiverImageTree {
+    /** Default maximum number of image receivers kept in the tree */
+    public static final int DEFAULT_MAXIMUM_NODE_COUNT = 100000;
+    private final Coordinate receiverCoord;
+    private final List<FastObstructionTest.Wall> walls;
+    private final int maxDepth;
+    private final double maxSrcDist;
+    private final int maxNodeCount;
+    /** Walls oriented toward the receiver and walls facing each of them */
+    private final FacingWalls facingWalls;
+    private Node[] roots = null;
+    private int nodeCount = 0;
+
+    /**
+     * @param receiverCoord Receiver position
+     * @param walls         Walls near the receiver
+     * @param maxDepth      Maximum reflection order
+     * @param maxSrcDist    Maximum distance between the sources and the receiver
+     */
+    public ReceiverImageTree(Coordinate receiverCoord, List<FastObstructionTest.Wall> walls, int maxDepth,
+                             double maxSrcDist) {
+        this(receiverCoord, walls, maxDepth, maxSrcDist, DEFAULT_MAXIMUM_NODE_COUNT);
+    }
+
+    /**
+     * @param receiverCoord Receiver position
+     * @param walls         Walls near the receiver
+     * @param maxDepth      Maximum reflection order
+     * @param maxSrcDist    Maximum distance between the sources and the receiver
+     * @param maxNodeCount  Maximum number of image receivers kept in the tree
+     */
+    public ReceiverImageTree(Coordinate receiverCoord, List<FastObstructionTest.Wall> walls, int maxDepth,
+                             double maxSrcDist, int maxNodeCount) {
+        this.receiverCoord = receiverCoord;
+        this.walls = walls;
+        this.maxDepth = maxDepth;
+        this.maxSrcDist = maxSrcDist;
+        this.maxNodeCount = maxNodeCount;
+        this.facingWalls = new FacingWalls(receiverCoord, walls, null, 0);
+    }
+
+    /**
+     * @return Walls used by the image receivers, {@link MirrorReceiverResult#getWallId()} is an index of this list
+     */
+    public List<FastObstructionTest.Wall> getWalls() {
+        return walls;
+    }
+
+    /**
+     * @return Number of image receivers kept in the tree
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    private Node[] expand(MirrorReceiverResult parent, int[] wallIds, int depth) {
+        Coordinate receiverIm = parent == null ? receiverCoord : parent.getReceiverPos();
+        Node[] nodes = new Node[wallIds.length];
+        int count = 0;
+        for (int wallId : wallIds) {
+            Coordinate mirrored = facingWalls.mirror(wallId, receiverIm);
+            if (receiverCoord.distance(mirrored) < 2 * maxSrcDist) {
+                nodes[count++] = new Node(new MirrorReceiverResult(mirrored, parent, wallId,
+                        walls.get(wallId).getBuildingId()), depth);
+            }
+        }
+        if (count == nodes.length) {
+            return nodes;
+        }
+        Node[] kept = new Node[count];
+        System.arraycopy(nodes, 0, kept, 0, count);
+        return kept;
+    }
+
+    private Node[] getRoots() {
+        if (roots == null) {
+            Node[] nodes = expand(null, facingWalls.getCandidates(), 1);
+            if (!keep(nodes)) {
+                return nodes;
+            }
+            roots = nodes;
+        }
+        return roots;
+    }
+
+    private Node[] getChildren(Node node) {
+        if (node.children == null) {
+            Node[] nodes = expand(node.result, facingWalls.getFacingWalls(node.result.getWallId()), node.depth + 1);
+            if (!keep(nodes)) {
+                return nodes;
+            }
+            node.children = nodes;
+        }
+        return node.children;
+    }
+
+    /**
+     * @param nodes Expanded nodes
+     * @return True if the nodes can be kept in the tree without exceeding the maximum node count
+     */
+    private boolean keep(Node[] nodes) {
+        if (nodeCount + nodes.length > maxNodeCount) {
+            return false;
+        }
+        nodeCount += nodes.length;
+        return true;
+    }
+
+    /**
+     * @param source Source position, at less than the maximum source distance from the receiver
+     * @return Image receivers at less than the maximum source distance from the source
+     */
+    public Iterable<MirrorReceiverResult> getImages(final Coordinate source) {
+        return new Iterable<MirrorReceiverResult>() {
+            @Override
+            public Iterator<MirrorReceiverResult> iterator() {
+                return new ImageIterator(source);
+            }
+        };
+    }
+
+    private static final class Node {
+        private final MirrorReceiverResult result;
+        private final int depth;
+        private Node[] children = null;
+
+        Node(MirrorReceiverResult result, int depth) {
+            this.result = result;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * Depth first traversal of the image receivers near a source
+     */
+    private final class ImageIterator implements Iterator<MirrorReceiverResult> {
+        private final Coordinate source;
+        private final Node[][] levelNodes = new Node[maxDepth][];
+        private final int[] levelIndex = new int[maxDepth];
+        private int depth = 0;
+        private MirrorReceiverResult current;
+
+        ImageIterator(Coordinate source) {
+            this.source = source;
+            if (maxDepth > 0) {
+                levelNodes[0] = getRoots();
+            } else {
+                depth = -1;
+            }
+            fetchNext();
+        }
+
+        private void fetchNext() {
+            current = null;
+            while (depth >= 0) {
+                if (levelIndex[depth] >= levelNodes[depth].length) {
+                    depth--;
+                    continue;
+                }
+                Node node = levelNodes[depth][levelIndex[depth]++];
+                if (source.distance(node.result.getReceiverPos()) < maxSrcDist) {
+                    current = node.result;
+                    if (depth + 1 < maxDepth) {
+                        depth++;
+                        levelNodes[depth] = getChildren(node);
+                        levelIndex[depth] = 0;
+                    }
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return current != null;
+        }
+
+        @Override
+        public MirrorReceiverResult next() {
+            if (current == null) {
+                throw new NoSuchElementException();
+            }
+            MirrorReceiverResult retValue = current;
+            fetchNext();
+            return retValue;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Not supported");
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ground factor G rasterised in a regular grid. A cell holds the sum of the G of the soil areas that contain its
+ * center, cells outside of all soil areas are G=0 as in the overlay computation.
+ * The G-weighted length of a segment is accumulated by walking the cells crossed by the segment, so the soil
+ * polygons are not intersected for each propagation path. The precision depends on the cell size, the result is
+ * exact when the soil areas boundaries are aligned on the grid.
+ * Queries do not allocate and instances can be shared between threads.
+ */
+public class SoilGrid {
+    /** Maximum number of cells of a grid (128 MB of cells) */
+    public static final long MAXIMUM_CELL_COUNT = 1L << 24;
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    private final double[] cells;
+
+    /**
+     * @param soilList Soil areas with their G coefficient
+     * @param cellSize Size of the side of a cell, in meters
+     * @throws IllegalArgumentException If the grid would have more than {@link #MAXIMUM_CELL_COUNT} cells
+     */
+    public SoilGrid(List<GeoWithSoilType> soilList, double cellSize) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("Cell size must be greater than 0");
+        }
+        Envelope envelope = getEnvelope(soilList);
+        long cellCount = getCellCount(envelope, cellSize);
+        if (cellCount > MAXIMUM_CELL_COUNT) {
+            throw new IllegalArgumentException(String.format("Soil grid of %d cells exceeds the maximum of %d cells",
+                    cellCount, MAXIMUM_CELL_COUNT));
+        }
+        this.cellSize = cellSize;
+        minX = envelope.getMinX();
+        minY = envelope.getMinY();
+        columns = (int) Math.max(1, Math.ceil(envelope.getWidth() / cellSize));
+        rows = (int) Math.max(1, Math.ceil(envelope.getHeight() / cellSize));
+        cells = new double[columns * rows];
+        for (GeoWithSoilType soil : soilList) {
+            addGeometry(soil.getGeo(), soil.getType());
+        }
+    }
+
+    private static Envelope getEnvelope(List<GeoWithSoilType> soilList) {
+        Envelope envelope = new Envelope();
+        for (GeoWithSoilType soil : soilList) {
+            envelope.expandToInclude(soil.getGeo().getEnvelopeInternal());
+        }
+        if (envelope.isNull()) {
+            envelope = new Envelope(0, 0, 0, 0);
+        }
+        return envelope;
+    }
+
+    private static long getCellCount(Envelope envelope, double cellSize) {
+        double columns = Math.max(1, Math.ceil(envelope.getWidth() / cellSize));
+        double rows = Math.max(1, Math.ceil(envelope.getHeight() / cellSize));
+        // Saturated conversion, the product may exceed the long range
+        return (long) Math.min(columns * rows, (double) Long.MAX_VALUE);
+    }
+
+    /**
+     * @param soilList Soil areas with their G coefficient
+     * @param cellSize Size of the side of a cell, in meters
+     * @return Number of cells of the grid of these soil areas, may be greater than {@link #MAXIMUM_CELL_COUNT}
+     */
+    public static long getCellCount(List<GeoWithSoilType> soilList, double cellSize) {
+        return getCellCount(getEnvelope(soilList), cellSize);
+    }
+
+    private void addGeometry(Geometry geometry, double g) {
+        if (geometry instanceof Polygon) {
+            addPolygon((Polygon) geometry, g);
+        } else {
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                Geometry part = geometry.getGeometryN(i);
+                if (part != geometry) {
+                    addGeometry(part, g);
+                }
+            }
+        }
+    }
+
+    /**
+     * Scanline fill of the cells whose center is inside the polygon (even-odd rule, holes included)
+     */
+    private void addPolygon(Polygon polygon, double g) {
+        if (polygon.isEmpty()) {
+            return;
+        }
+        Coordinate[][] rings = new Coordinate[polygon.getNumInteriorRing() + 1][];
+        rings[0] = polygon.getExteriorRing().getCoordinates();
+        int segmentCount = rings[0].length;
+        for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+            LinearRing hole = (LinearRing) polygon.getInteriorRingN(i);
+            rings[i + 1] = hole.getCoordinates();
+            segmentCount += rings[i + 1].length;
+        }
+        double[] crossings = new double[segmentCount];
+        Envelope envelope = polygon.getEnvelopeInternal();
+        int firstRow = Math.max(0, (int) Math.ceil((envelope.getMinY() - minY) / cellSize - 0.5));
+        int lastRow = Math.min(rows - 1, (int) Math.floor((envelope.getMaxY() - minY) / cellSize - 0.5));
+        for (int row = firstRow; row <= lastRow; row++) {
+            double y = minY + (row + 0.5) * cellSize;
+            int crossingCount = 0;
+            for (Coordinate[] ring : rings) {
+                for (int i = 1; i < ring.length; i++) {
+                    Coordinate a = ring[i - 1];
+                    Coordinate b = ring[i];
+                    if ((a.y <= y) != (b.y <= y)) {
+                        crossings[crossingCount++] = a.x + (y - a.y) * (b.x - a.x) / (b.y - a.y);
+                    }
+                }
+            }
+            Arrays.sort(crossings, 0, crossingCount);
+            for (int i = 0; i + 1 < crossingCount; i += 2) {
+                int firstColumn = Math.max(0, (int) Math.ceil((crossings[i] - minX) / cellSize - 0.5));
+                int lastColumn = Math.min(columns - 1, (int) Math.ceil((crossings[i + 1] - minX) / cellSize - 0.5) - 1);
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    cells[row * columns + column] += g;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @return G value at this location, 0 outside of the grid
+     */
+    public double getG(double x, double y) {
+        int column = (int) Math.floor((x - minX) / cellSize);
+        int row = (int) Math.floor((y - minY) / cellSize);
+        if (column < 0 || column >= columns || row < 0 || row >= rows) {
+            return 0;
+        }
+        return cells[row * columns + column];
+    }
+
+    /**
+     * Integral of G along the 2D segment
+     * @param x0 First point X
+     * @param y0 First point Y
+     * @param x1 Second point X
+     * @param y1 Second point Y
+     * @return Sum of the length of the segment parts multiplied by their G value
+     */
+    public double getWeightedLength(double x0, double y0, double x1, double y1) {
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        double length = Math.sqrt(dx * dx + dy * dy);
+        if (length < FastObstructionTest.epsilon) {
+            return 0;
+        }
+        // Clip the segment to the grid extent
+        double tEnter = 0;
+        double tExit = 1;
+        if (dx == 0) {
+            if (x0 < minX || x0 > minX + columns * cellSize) {
+                return 0;
+            }
+        } else {
+            double t0 = (minX - x0) / dx;
+            double t1 = (minX + columns * cellSize - x0) / dx;
+            tEnter = Math.max(tEnter, Math.min(t0, t1));
+            tExit = Math.min(tExit, Math.max(t0, t1));
+        }
+        if (dy == 0) {
+            if (y0 < minY || y0 > minY + rows * cellSize) {
+                return 0;
+            }
+        } else {
+            double t0 = (minY - y0) / dy;
+            double t1 = (minY + rows * cellSize - y0) / dy;
+            tEnter = Math.max(tEnter, Math.min(t0, t1));
+            tExit = Math.min(tExit, Math.max(t0, t1));
+        }
+        if (tEnter >= tExit) {
+            return 0;
+        }
+        // Walk the crossed cells
+        int column = Math.max(0, Math.min(columns - 1, (int) Math.floor((x0 + dx * tEnter - minX) / cellSize)));
+        int row = Math.max(0, Math.min(rows - 1, (int) Math.floor((y0 + dy * tEnter - minY) / cellSize)));
+        int stepX = dx > 0 ? 1 : -1;
+        int stepY = dy > 0 ? 1 : -1;
+        double tDeltaX = dx != 0 ? cellSize / Math.abs(dx) : Double.POSITIVE_INFINITY;
+        double tDeltaY = dy != 0 ? cellSize / Math.abs(dy) : Double.POSITIVE_INFINITY;
+        double tMaxX = dx != 0 ? (minX + (column + (dx > 0 ? 1 : 0)) * cellSize - x0) / dx : Double.POSITIVE_INFINITY;
+        double tMaxY = dy != 0 ? (minY + (row + (dy > 0 ? 1 : 0)) * cellSize - y0) / dy : Double.POSITIVE_INFINITY;
+        double t = tEnter;
+        double weightedLength = 0;
+        while (true) {
+            double tNext = Math.min(tExit, Math.min(tMaxX, tMaxY));
+            weightedLength += (tNext - t) * cells[row * columns + column];
+            t = tNext;
+            if (t >= tExit) {
+                break;
+            }
+            if (tMaxX < tMaxY) {
+                column += stepX;
+                tMaxX += tDeltaX;
+            } else {
+                row += stepY;
+                tMaxY += tDeltaY;
+            }
+            if (column < 0 || column >= columns || row < 0 || row >= rows) {
+                break;
+            }
+        }
+        return weightedLength * length;
+    }
+
+    /**
+     * @param receiverCoord Receiver position
+     * @param srcCoord      Source position
+     * @return Mean G along the 2D source-receiver segment
+     */
+    public double getGPath(Coordinate receiverCoord, Coordinate srcCoord) {
+        double length = receiverCoord.distance(srcCoord);
+        if (length < FastObstructionTest.epsilon) {
+            return getG(receiverCoord.x, receiverCoord.y);
+        }
+        return getWeightedLength(receiverCoord.x, receiverCoord.y, srcCoord.x, srcCoord.y) / length;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    public int getCellCount() {
+        return cells.length;
+    }
+}
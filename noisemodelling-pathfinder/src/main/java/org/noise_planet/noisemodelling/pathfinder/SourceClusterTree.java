@@ -0,0 +1,290 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Lineal;
+import org.locationtech.jts.geom.LineString;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary tree of source clusters. Each cluster holds the bounding box of its sources and their aggregated maximal
+ * power by frequency band, so that the maximal power received from all the sources of a cluster can be bounded
+ * without discretizing them, see {@link IPowerBoundEstimator#getPowerBound(double, double[])}. The bound is computed
+ * at the 2D distance d between the receiver and the cluster bounding box. With the default estimator it is
+ * {@code power * 10^(-ADiv(d) / 10) * 10^(3 / 10)}, minus the attenuations of the estimator that grow with the
+ * distance. This is never lower than the sum of the estimations of the source points computed by
+ * {@link ComputeRays}, as d is lower than the 3D distance of every source point.
+ * The power of a source is {@link PropagationProcessData#getMaximalSourcePower(int)}, multiplied for lines by twice
+ * their 3D length (the discretization can produce one extra point).
+ * Instances are immutable and can be shared between threads.
+ */
+public class SourceClusterTree {
+    /** Maximum number of sources in a leaf cluster */
+    public static final int LEAF_SIZE = 8;
+    private final int[] sourceOrder;
+    private int nodeCount = 0;
+    private double[] minX;
+    private double[] minY;
+    private double[] maxX;
+    private double[] maxY;
+    /** Aggregated power by frequency band of each cluster */
+    private double[][] power;
+    private int[] left;
+    private int[] right;
+    private int[] start;
+    private int[] end;
+
+    /**
+     * @param sourceGeometries Source geometries
+     * @param sourcePower      Aggregated maximal power by frequency band of each source, see
+     *                         {@link #getSourcePower(Geometry, double[])}
+     */
+    public SourceClusterTree(List<Geometry> sourceGeometries, double[][] sourcePower) {
+        int sourceCount = sourceGeometries.size();
+        sourceOrder = new int[sourceCount];
+        double[] centerX = new double[sourceCount];
+        double[] centerY = new double[sourceCount];
+        Envelope[] envelopes = new Envelope[sourceCount];
+        for (int i = 0; i < sourceCount; i++) {
+            sourceOrder[i] = i;
+            envelopes[i] = sourceGeometries.get(i).getEnvelopeInternal();
+            centerX[i] = (envelopes[i].getMinX() + envelopes[i].getMaxX()) / 2;
+            centerY[i] = (envelopes[i].getMinY() + envelopes[i].getMaxY()) / 2;
+        }
+        int capacity = Math.max(1, 2 * sourceCount);
+        minX = new double[capacity];
+        minY = new double[capacity];
+        maxX = new double[capacity];
+        maxY = new double[capacity];
+        power = new double[capacity][];
+        left = new int[capacity];
+        right = new int[capacity];
+        start = new int[capacity];
+        end = new int[capacity];
+        if (sourceCount > 0) {
+            build(0, sourceCount, envelopes, centerX, centerY, sourcePower);
+        }
+    }
+
+    /**
+     * @param geometry Source geometry
+     * @param wj       Maximal power of the source by frequency band, per meter for lines
+     * @return Aggregated maximal power of the source by frequency band
+     */
+    public static double[] getSourcePower(Geometry geometry, double[] wj) {
+        double[] sourcePower = wj.clone();
+        if (geometry instanceof Lineal) {
+            double length = 0;
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                Coordinate[] coordinates = ((LineString) geometry.getGeometryN(i)).getCoordinates();
+                for (int j = 1; j < coordinates.length; j++) {
+                    double segmentLength = coordinates[j - 1].distance3D(coordinates[j]);
+                    if (Double.isNaN(segmentLength)) {
+                        segmentLength = coordinates[j - 1].distance(coordinates[j]);
+                    }
+                    length += segmentLength;
+                }
+            }
+            for (int i = 0; i < sourcePower.length; i++) {
+                sourcePower[i] *= 2 * length;
+            }
+        }
+        return sourcePower;
+    }
+
+    private int build(int from, int to, Envelope[] envelopes, double[] centerX, double[] centerY,
+                      double[][] sourcePower) {
+        int node = nodeCount++;
+        minX[node] = Double.POSITIVE_INFINITY;
+        minY[node] = Double.POSITIVE_INFINITY;
+        maxX[node] = Double.NEGATIVE_INFINITY;
+        maxY[node] = Double.NEGATIVE_INFINITY;
+        double[] nodePower = new double[0];
+        double centerMinX = Double.POSITIVE_INFINITY;
+        double centerMinY = Double.POSITIVE_INFINITY;
+        double centerMaxX = Double.NEGATIVE_INFINITY;
+        double centerMaxY = Double.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            int source = sourceOrder[i];
+            minX[node] = Math.min(minX[node], envelopes[source].getMinX());
+            minY[node] = Math.min(minY[node], envelopes[source].getMinY());
+            maxX[node] = Math.max(maxX[node], envelopes[source].getMaxX());
+            maxY[node] = Math.max(maxY[node], envelopes[source].getMaxY());
+            centerMinX = Math.min(centerMinX, centerX[source]);
+            centerMinY = Math.min(centerMinY, centerY[source]);
+            centerMaxX = Math.max(centerMaxX, centerX[source]);
+            centerMaxY = Math.max(centerMaxY, centerY[source]);
+            if (sourcePower[source].length > nodePower.length) {
+                nodePower = Arrays.copyOf(nodePower, sourcePower[source].length);
+            }
+            for (int band = 0; band < sourcePower[source].length; band++) {
+                nodePower[band] += sourcePower[source][band];
+            }
+        }
+        power[node] = nodePower;
+        start[node] = from;
+        end[node] = to;
+        if (to - from <= LEAF_SIZE) {
+            left[node] = -1;
+            right[node] = -1;
+        } else {
+            // Split at the median of the source centers along the longest axis
+            double[] keys = centerMaxX - centerMinX >= centerMaxY - centerMinY ? centerX : centerY;
+            int middle = (from + to) >>> 1;
+            select(from, to - 1, middle, keys);
+            left[node] = build(from, middle, envelopes, centerX, centerY, sourcePower);
+            right[node] = build(middle, to, envelopes, centerX, centerY, sourcePower);
+        }
+        return node;
+    }
+
+    /**
+     * Partial sort of sourceOrder[from..to] so that the element at index k is the one of a complete sort
+     */
+    private void select(int from, int to, int k, double[] keys) {
+        while (from < to) {
+            double pivot = keys[sourceOrder[(from + to) >>> 1]];
+            int i = from;
+            int j = to;
+            while (i <= j) {
+                while (keys[sourceOrder[i]] < pivot) {
+                    i++;
+                }
+                while (keys[sourceOrder[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int tmp = sourceOrder[i];
+                    sourceOrder[i] = sourceOrder[j];
+                    sourceOrder[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                to = j;
+            } else if (k >= i) {
+                from = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return Root cluster index, -1 if there is no sources
+     */
+    public int getRoot() {
+        return nodeCount > 0 ? 0 : -1;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @param node Cluster index
+     * @return True if the cluster has no sub-clusters
+     */
+    public boolean isLeaf(int node) {
+        return left[node] == -1;
+    }
+
+    public int getLeft(int node) {
+        return left[node];
+    }
+
+    public int getRight(int node) {
+        return right[node];
+    }
+
+    /**
+     * @param node Cluster index
+     * @return Number of sources in the cluster
+     */
+    public int getSourceCount(int node) {
+        return end[node] - start[node];
+    }
+
+    /**
+     * @param node  Cluster index
+     * @param index Source index in the cluster [0-getSourceCount(node)[
+     * @return Source index in {@link PropagationProcessData#sourceGeometries}
+     */
+    public int getSource(int node, int index) {
+        return sourceOrder[start[node] + index];
+    }
+
+    /**
+     * @param node Cluster index
+     * @return Aggregated maximal power of the sources of the cluster, sum of the frequency bands
+     */
+    public double getPower(int node) {
+        return ComputeRays.sumArray(power[node].length, power[node]);
+    }
+
+    /**
+     * @param node Cluster index
+     * @return Aggregated maximal power of the sources of the cluster by frequency band, must not be modified
+     */
+    public double[] getPowerByBand(int node) {
+        return power[node];
+    }
+
+    /**
+     * @param node     Cluster index
+     * @param receiver Receiver position
+     * @return 2D distance between the receiver and the cluster bounding box
+     */
+    public double getDistance(int node, Coordinate receiver) {
+        double dx = Math.max(0, Math.max(minX[node] - receiver.x, receiver.x - maxX[node]));
+        double dy = Math.max(0, Math.max(minY[node] - receiver.y, receiver.y - maxY[node]));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * @param node      Cluster index
+     * @param receiver  Receiver position
+     * @param estimator Power bound of the source points
+     * @return Upper bound of the power received from the sources of the cluster
+     */
+    public double getPowerBound(int node, Coordinate receiver, IPowerBoundEstimator estimator) {
+        return estimator.getPowerBound(getDistance(node, receiver), power[node]);
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.pathfinder.utils.IntList;
+import org.noise_planet.noisemodelling.pathfinder.utils.StripedLruCache;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Cache of the walls found near source points. Source points are snapped to a square of {@link #getQuantum()}
+ * meters, the cache holds the walls of the wall index found from the center of the square with a search distance
+ * enlarged by the half diagonal. The walls of a source point are then filtered from the cached set by distance,
+ * so the result is the same than {@link FastObstructionTest#getWallIdsInRange(double, Coordinate, boolean, IntList)}.
+ * The least recently used entries are evicted when the memory budget is exhausted. The cache only keeps a weak
+ * reference to the obstruction test. This class is thread safe.
+ */
+public class SourceWallCache {
+    /** Default memory budget in bytes */
+    public static final long DEFAULT_MAXIMUM_MEMORY = 32 * 1024 * 1024;
+    public static final double DEFAULT_QUANTUM = 5.0;
+    private final double quantum;
+    private final StripedLruCache<Key, int[]> cache;
+    private volatile WeakReference<FastObstructionTest> freeFieldFinder = new WeakReference<>(null);
+
+    public SourceWallCache() {
+        this(DEFAULT_MAXIMUM_MEMORY, DEFAULT_QUANTUM);
+    }
+
+    /**
+     * @param maximumMemory Maximum memory used by the cached walls in bytes, 0 to disable the cache
+     * @param quantum       Side length of the source squares in meters
+     */
+    public SourceWallCache(long maximumMemory, double quantum) {
+        if (quantum <= 0) {
+            throw new IllegalArgumentException("Quantum must be greater than 0");
+        }
+        this.quantum = quantum;
+        this.cache = new StripedLruCache<>(maximumMemory, walls -> 16 + 4L * walls.length);
+    }
+
+    /**
+     * @return Maximum memory used by the cached walls in bytes
+     */
+    public long getMaximumMemory() {
+        return cache.getMaximumMemory();
+    }
+
+    /**
+     * @return Estimation of the memory used by the cached walls in bytes
+     */
+    public long getMemoryUsage() {
+        return cache.getMemoryUsage();
+    }
+
+    public double getQuantum() {
+        return quantum;
+    }
+
+    /**
+     * @return Number of queries answered from the cache
+     */
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    /**
+     * @return Number of queries that required a search in the wall index
+     */
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    /**
+     * @return Number of cached source squares
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Remove all cached walls
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Find the walls reachable from a source point without going through buildings
+     * @param freeFieldFinder Obstruction test, the cache is cleared if it is not the same than the previous call
+     * @param maxDist         Maximum distance from the source to walls
+     * @param source          Source position
+     * @param walls           [out] Wall identifiers
+     */
+    public void getWallIdsInRange(FastObstructionTest freeFieldFinder, double maxDist, Coordinate source,
+                                  IntList walls) {
+        int triangle = freeFieldFinder.getTriangleIdByCoordinate(source);
+        if (!cache.isEnabled() || triangle == -1 || freeFieldFinder.getMesh().getAttribute(triangle) != 0) {
+            // Not in open space, no cache
+            freeFieldFinder.getWallIdsInRange(maxDist, source, false, walls);
+            return;
+        }
+        if (this.freeFieldFinder.get() != freeFieldFinder) {
+            synchronized (this) {
+                if (this.freeFieldFinder.get() != freeFieldFinder) {
+                    cache.clear();
+                    this.freeFieldFinder = new WeakReference<>(freeFieldFinder);
+                }
+            }
+        }
+        WallIndex wallIndex = freeFieldFinder.getWallIndex();
+        Key key = new Key((long) Math.floor(source.x / quantum), (long) Math.floor(source.y / quantum),
+                wallIndex.getArea(triangle), maxDist);
+        int[] cachedWalls = cache.get(key);
+        if (cachedWalls == null) {
+            IntList found = new IntList();
+            wallIndex.queryOpenSpaceWalls((key.x + 0.5) * quantum, (key.y + 0.5) * quantum,
+                    maxDist + quantum * Math.sqrt(2) / 2, key.area, found);
+            cachedWalls = found.toArray();
+            cache.put(key, cachedWalls);
+        }
+        // The cached walls are in identifier order, as the walls of the wall index
+        for (int wall : cachedWalls) {
+            if (FastObstructionTest.distancePointSegment(source.x, source.y, wallIndex.getX0(wall),
+                    wallIndex.getY0(wall), wallIndex.getX1(wall), wallIndex.getY1(wall)) <= maxDist) {
+                walls.add(wall);
+            }
+        }
+    }
+
+    private static final class Key {
+        private final long x;
+        private final long y;
+        private final int area;
+        private final double maxDist;
+
+        Key(long x, long y, int area, double maxDist) {
+            this.x = x;
+            this.y = y;
+            this.area = area;
+            this.maxDist = maxDist;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return x == other.x && y == other.y && area == other.area &&
+                    Double.compare(maxDist, other.maxDist) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Long.hashCode(x);
+            result = 31 * result + Long.hashCode(y);
+            result = 31 * result + area;
+            result = 31 * result + Double.hashCode(maxDist);
+            return result;
+        }
+    }
+}
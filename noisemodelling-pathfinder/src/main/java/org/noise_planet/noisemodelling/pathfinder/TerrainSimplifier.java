@@ -0,0 +1,346 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.algorithm.ConvexHull;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineSegment;
+import org.locationtech.jts.geom.Triangle;
+import org.locationtech.jts.triangulate.IncrementalDelaunayTriangulator;
+import org.locationtech.jts.triangulate.quadedge.QuadEdge;
+import org.locationtech.jts.triangulate.quadedge.QuadEdgeSubdivision;
+import org.locationtech.jts.triangulate.quadedge.Vertex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Error bounded simplification of the topographic points, done before feeding the {@link MeshBuilder}.
+ * The points are inserted by greedy insertion in a Delaunay triangulation: starting from the convex hull, at each
+ * pass the point with the largest vertical error is inserted in every triangle, until all the points are within the
+ * maximum error of the triangulation of the kept points.
+ * The constrained triangulation of the {@link MeshBuilder} differs from the Delaunay triangulation of the kept points
+ * near the buildings and the envelope, {@link #addOutOfBoundPoints(List, List, FastObstructionTest)} inserts the
+ * points again until the bound holds for the final mesh. See {@link MeshBuilder#setTerrainSimplifier(TerrainSimplifier)}.
+ */
+public class TerrainSimplifier {
+    /** Resolution of the Z-order curve used to sort the points */
+    private static final int Z_ORDER_BITS = 16;
+    private final double maximumError;
+    private int inputPointCount = 0;
+    private int outputPointCount = 0;
+    private int passCount = 0;
+    private int reinsertionPassCount = 0;
+
+    /**
+     * @param maximumError Maximum vertical distance in meters between a removed point and the triangulation
+     */
+    public TerrainSimplifier(double maximumError) {
+        this.maximumError = maximumError;
+    }
+
+    /**
+     * @return Maximum vertical distance in meters between a removed point and the triangulation
+     */
+    public double getMaximumError() {
+        return maximumError;
+    }
+
+    /**
+     * @return Number of points given to the last call of {@link #simplify(List)}
+     */
+    public int getInputPointCount() {
+        return inputPointCount;
+    }
+
+    /**
+     * @return Number of points kept by the last call of {@link #simplify(List)}
+     */
+    public int getOutputPointCount() {
+        return outputPointCount;
+    }
+
+    /**
+     * @return Number of insertion passes of the last call of {@link #simplify(List)}
+     */
+    public int getPassCount() {
+        return passCount;
+    }
+
+    /**
+     * @return Number of calls of {@link #addOutOfBoundPoints(List, List, FastObstructionTest)} that added points since
+     * the last call of {@link #simplify(List)}
+     */
+    public int getReinsertionPassCount() {
+        return reinsertionPassCount;
+    }
+
+    /**
+     * @param points Topographic points
+     * @return Kept points, in the input order
+     */
+    public List<Coordinate> simplify(List<Coordinate> points) {
+        inputPointCount = points.size();
+        passCount = 0;
+        reinsertionPassCount = 0;
+        if(points.size() <= 4) {
+            outputPointCount = points.size();
+            return new ArrayList<>(points);
+        }
+        Envelope envelope = new Envelope();
+        for(Coordinate point : points) {
+            envelope.expandToInclude(point);
+        }
+        boolean[] kept = new boolean[points.size()];
+        QuadEdgeSubdivision subdivision = new QuadEdgeSubdivision(envelope, 0);
+        IncrementalDelaunayTriangulator triangulator = new IncrementalDelaunayTriangulator(subdivision);
+        // Start with the convex hull, so that all the points are inside the triangulation of the kept points
+        Coordinate[] coordinates = points.toArray(new Coordinate[0]);
+        Set<Coordinate> hull = new HashSet<>(Arrays.asList(
+                new ConvexHull(coordinates, new GeometryFactory()).getConvexHull().getCoordinates()));
+        for(int id = 0; id < coordinates.length; id++) {
+            if(hull.remove(coordinates[id])) {
+                kept[id] = true;
+                triangulator.insertSite(new IndexedVertex(coordinates[id], id));
+            }
+        }
+        // The remaining points are visited along a Z-order curve, so successive locations only walk a few triangles
+        int[] remaining = zOrder(points, envelope);
+        int remainingCount = remaining.length;
+        double[] pointError = new double[points.size()];
+        Map<QuadEdge, Integer> worstPoints = new IdentityHashMap<>();
+        while(true) {
+            passCount++;
+            worstPoints.clear();
+            int newCount = 0;
+            for(int i = 0; i < remainingCount; i++) {
+                int id = remaining[i];
+                if(kept[id]) {
+                    continue;
+                }
+                remaining[newCount++] = id;
+                Coordinate point = points.get(id);
+                QuadEdge edge = subdivision.locate(point);
+                if(isFrameTriangle(subdivision, edge) && subdivision.isOnEdge(edge, point)) {
+                    // On the convex hull, use the inner triangle
+                    edge = edge.sym();
+                }
+                QuadEdge triangle = getTriangleKey(edge);
+                double error = getVerticalError(subdivision, triangle, point);
+                // NaN error (degenerated triangle or missing Z) is considered as out of bound
+                if(!(error <= maximumError)) {
+                    pointError[id] = Double.isNaN(error) ? Double.POSITIVE_INFINITY : error;
+                    Integer worst = worstPoints.get(triangle);
+                    if(worst == null || pointError[worst] < pointError[id]) {
+                        worstPoints.put(triangle, id);
+                    }
+                }
+            }
+            remainingCount = newCount;
+            if(worstPoints.isEmpty()) {
+                break;
+            }
+            for(int id : worstPoints.values()) {
+                kept[id] = true;
+            }
+            // Insert in the Z-order
+            for(int i = 0; i < remainingCount; i++) {
+                int id = remaining[i];
+                if(kept[id]) {
+                    triangulator.insertSite(new IndexedVertex(points.get(id), id));
+                }
+            }
+        }
+        List<Coordinate> keptPoints = new ArrayList<>(points.size() - remainingCount);
+        for(int id = 0; id < points.size(); id++) {
+            if(kept[id]) {
+                keptPoints.add(points.get(id));
+            }
+        }
+        outputPointCount = keptPoints.size();
+        return keptPoints;
+    }
+
+    /**
+     * Check the removed points against the final triangulation of the kept points, the worst out of bound point of
+     * each triangle is kept.
+     * @param points     Topographic points given to {@link #simplify(List)}
+     * @param keptPoints [in,out] Kept points, in the input order
+     * @param mesh       Triangulation of the kept points and of the constraints
+     * @return True if points have been added, the triangulation must be computed and checked again
+     */
+    public boolean addOutOfBoundPoints(List<Coordinate> points, List<Coordinate> keptPoints,
+                                       FastObstructionTest mesh) {
+        Set<Coordinate> kept = Collections.newSetFromMap(new IdentityHashMap<Coordinate, Boolean>());
+        kept.addAll(keptPoints);
+        Map<Integer, Coordinate> worstPoints = new HashMap<>();
+        Map<Integer, Double> worstErrors = new HashMap<>();
+        for(Coordinate point : points) {
+            if(kept.contains(point)) {
+                continue;
+            }
+            int triangle = mesh.getTriangleIdByCoordinate(point);
+            if(triangle < 0) {
+                // Outside of the mesh envelope
+                continue;
+            }
+            double error = Math.abs(point.z - mesh.getHeightAtPosition(point));
+            if(!(error <= maximumError)) {
+                error = Double.isNaN(error) ? Double.POSITIVE_INFINITY : error;
+                Double worst = worstErrors.get(triangle);
+                if(worst == null || worst < error) {
+                    worstErrors.put(triangle, error);
+                    worstPoints.put(triangle, point);
+                }
+            }
+        }
+        if(worstPoints.isEmpty()) {
+            return false;
+        }
+        reinsertionPassCount++;
+        kept.addAll(worstPoints.values());
+        keptPoints.clear();
+        for(Coordinate point : points) {
+            if(kept.contains(point)) {
+                keptPoints.add(point);
+            }
+        }
+        outputPointCount = keptPoints.size();
+        return true;
+    }
+
+    /**
+     * @param edge Edge of a triangle on its left side
+     * @return The edge of the triangle starting from the lowest vertex, see {@link #compareVertices(Vertex, Vertex)}.
+     * The same edge is returned whatever the edge of the triangle provided.
+     */
+    private static QuadEdge getTriangleKey(QuadEdge edge) {
+        QuadEdge key = edge;
+        QuadEdge next = edge.lNext();
+        for(int i = 0; i < 2; i++) {
+            if(compareVertices(next.orig(), key.orig()) < 0) {
+                key = next;
+            }
+            next = next.lNext();
+        }
+        return key;
+    }
+
+    /**
+     * Frame vertices have the lowest index, they share the same index and are sorted by their location
+     */
+    private static int compareVertices(Vertex a, Vertex b) {
+        int cmp = Integer.compare(getIndex(a), getIndex(b));
+        return cmp != 0 ? cmp : a.getCoordinate().compareTo(b.getCoordinate());
+    }
+
+    private static int getIndex(Vertex vertex) {
+        return vertex instanceof IndexedVertex ? ((IndexedVertex) vertex).index : -1;
+    }
+
+    private static double getVerticalError(QuadEdgeSubdivision subdivision, QuadEdge triangle, Coordinate point) {
+        if(!isFrameTriangle(subdivision, triangle)) {
+            return Math.abs(point.z - Triangle.interpolateZ(point, triangle.orig().getCoordinate(),
+                    triangle.dest().getCoordinate(), triangle.lNext().dest().getCoordinate()));
+        }
+        // The triangles linked to the frame vertices cover thin areas along the convex hull,
+        // use the kept edge of the triangle
+        QuadEdge edge = triangle;
+        for(int i = 0; i < 3; i++) {
+            if(!subdivision.isFrameVertex(edge.orig()) && !subdivision.isFrameVertex(edge.dest())) {
+                Coordinate a = edge.orig().getCoordinate();
+                Coordinate b = edge.dest().getCoordinate();
+                LineSegment segment = new LineSegment(a, b);
+                double fraction = Math.max(0, Math.min(1, segment.projectionFactor(point)));
+                return Math.abs(point.z - (a.z + (b.z - a.z) * fraction));
+            }
+            edge = edge.lNext();
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    private static boolean isFrameTriangle(QuadEdgeSubdivision subdivision, QuadEdge edge) {
+        return subdivision.isFrameVertex(edge.orig()) || subdivision.isFrameVertex(edge.dest()) ||
+                subdivision.isFrameVertex(edge.lNext().dest());
+    }
+
+    /**
+     * @param points   Points
+     * @param envelope Envelope of the points
+     * @return Indices of the points sorted along a Z-order curve
+     */
+    private static int[] zOrder(List<Coordinate> points, Envelope envelope) {
+        final double maxCode = (1 << Z_ORDER_BITS) - 1;
+        double scaleX = envelope.getWidth() > 0 ? maxCode / envelope.getWidth() : 0;
+        double scaleY = envelope.getHeight() > 0 ? maxCode / envelope.getHeight() : 0;
+        long[] codes = new long[points.size()];
+        for(int id = 0; id < points.size(); id++) {
+            Coordinate point = points.get(id);
+            long x = (long) ((point.x - envelope.getMinX()) * scaleX);
+            long y = (long) ((point.y - envelope.getMinY()) * scaleY);
+            long code = 0;
+            for(int bit = 0; bit < Z_ORDER_BITS; bit++) {
+                code |= ((x >> bit) & 1L) << (2 * bit) | ((y >> bit) & 1L) << (2 * bit + 1);
+            }
+            codes[id] = code << 32 | id;
+        }
+        Arrays.sort(codes);
+        int[] sorted = new int[codes.length];
+        for(int i = 0; i < codes.length; i++) {
+            sorted[i] = (int) (codes[i] & 0xFFFFFFFFL);
+        }
+        return sorted;
+    }
+
+    /**
+     * Vertex of the triangulation with the index of the input point
+     */
+    private static final class IndexedVertex extends Vertex {
+        private final int index;
+
+        IndexedVertex(Coordinate coordinate, int index) {
+            super(coordinate);
+            this.index = index;
+        }
+    }
+}
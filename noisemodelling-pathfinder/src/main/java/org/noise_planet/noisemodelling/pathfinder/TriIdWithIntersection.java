@@ -43,9 +43,9 @@ import org.locationtech.jts.geom.Coordinate;
 public class TriIdWithIntersection extends Coordinate {
 
     private int triID;//triangle id
-    private final boolean intersectionOnBuilding; //if this intersection is on building
-    private final boolean intersectionOnTopography;
-    private final int buildingId;
+    private boolean intersectionOnBuilding; //if this intersection is on building
+    private boolean intersectionOnTopography;
+    private int buildingId;
 
     public TriIdWithIntersection(int triID, Coordinate coorIntersection, boolean intersectionOnBuilding, boolean intersectionOnTopography, int buildingId) {
         super(coorIntersection);
@@ -71,6 +71,20 @@ public class TriIdWithIntersection extends Coordinate {
         this.buildingId = other.getBuildingId();
     }
 
+    /**
+     * Overwrite this intersection, used to reuse the instances of a worker
+     */
+    void setIntersection(int triID, double x, double y, double z, boolean intersectionOnBuilding,
+                         boolean intersectionOnTopography, int buildingId) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.triID = triID;
+        this.intersectionOnBuilding = intersectionOnBuilding;
+        this.intersectionOnTopography = intersectionOnTopography;
+        this.buildingId = buildingId;
+    }
+
     /**
      * @return Triangle ID
      */
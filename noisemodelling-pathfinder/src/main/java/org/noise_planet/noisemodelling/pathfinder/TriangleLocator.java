@@ -0,0 +1,245 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * Point location in a {@link CompactMesh}. Triangles are registered in the buckets of a regular grid (compressed in two
+ * arrays) that they intersect, so that locating a point only requires scanning the few triangles of its bucket. Queries do not allocate and instances can be shared between threads.
+ */
+public class TriangleLocator {
+    /** Mean number of triangles per bucket used to compute the grid resolution */
+    private static final int TRIANGLES_PER_CELL = 2;
+    /** Search distance around the point when it is not inside a triangle, in meters */
+    private static final double SEARCH_DISTANCE = 1.0;
+    private final CompactMesh mesh;
+    private final double minX;
+    private final double minY;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int columns;
+    private final int rows;
+    /** Triangles of the cell i are cellTriangles[cellStart[i]] to cellTriangles[cellStart[i + 1] - 1] */
+    private final int[] cellStart;
+    private final int[] cellTriangles;
+
+    /**
+     * @param mesh Triangulation to index
+     */
+    public TriangleLocator(CompactMesh mesh) {
+        this.mesh = mesh;
+        Envelope envelope = mesh.getEnvelope();
+        int triangleCount = mesh.getTriangleCount();
+        if (envelope.isNull()) {
+            envelope = new Envelope(0, 0, 0, 0);
+        }
+        minX = envelope.getMinX();
+        minY = envelope.getMinY();
+        double width = Math.max(envelope.getWidth(), FastObstructionTest.epsilon);
+        double height = Math.max(envelope.getHeight(), FastObstructionTest.epsilon);
+        int cellCount = Math.max(1, triangleCount / TRIANGLES_PER_CELL);
+        double cellSize = Math.sqrt(width * height / cellCount);
+        columns = (int) Math.max(1, Math.min(cellCount, Math.ceil(width / cellSize)));
+        rows = (int) Math.max(1, Math.min(cellCount, Math.ceil(height / cellSize)));
+        cellWidth = width / columns;
+        cellHeight = height / rows;
+        // First pass, count the triangles of each cell
+        cellStart = new int[columns * rows + 1];
+        double[] extent = new double[2];
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            int firstRow = getRow(minY(triangle));
+            int lastRow = getRow(maxY(triangle));
+            for (int row = firstRow; row <= lastRow; row++) {
+                getRowExtent(triangle, row, extent);
+                for (int column = getColumn(extent[0]); column <= getColumn(extent[1]); column++) {
+                    cellStart[row * columns + column + 1]++;
+                }
+            }
+        }
+        for (int cell = 0; cell < columns * rows; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        // Second pass, fill the cells
+        cellTriangles = new int[cellStart[columns * rows]];
+        int[] cellFill = new int[columns * rows];
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            int firstRow = getRow(minY(triangle));
+            int lastRow = getRow(maxY(triangle));
+            for (int row = firstRow; row <= lastRow; row++) {
+                getRowExtent(triangle, row, extent);
+                for (int column = getColumn(extent[0]); column <= getColumn(extent[1]); column++) {
+                    int cell = row * columns + column;
+                    cellTriangles[cellStart[cell] + cellFill[cell]++] = triangle;
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute the X extent of the part of the triangle that is inside a row of cells, so that long thin triangles
+     * are only registered in the cells they cross and not in all the cells of their bounding box.
+     * @param triangle Triangle index
+     * @param row      Row of cells
+     * @param extent   Output minimum and maximum X
+     */
+    private void getRowExtent(int triangle, int row, double[] extent) {
+        // The first and last rows also contain the points outside of the grid
+        double rowMinY = row == 0 ? Double.NEGATIVE_INFINITY : minY + row * cellHeight - FastObstructionTest.epsilon;
+        double rowMaxY = row == rows - 1 ? Double.POSITIVE_INFINITY :
+                minY + (row + 1) * cellHeight + FastObstructionTest.epsilon;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (int corner = 0; corner < 3; corner++) {
+            int a = mesh.getVertexIndex(triangle, corner);
+            int b = mesh.getVertexIndex(triangle, (corner + 1) % 3);
+            double ax = mesh.getX(a);
+            double ay = mesh.getY(a);
+            double bx = mesh.getX(b);
+            double by = mesh.getY(b);
+            if (ay >= rowMinY && ay <= rowMaxY) {
+                min = Math.min(min, ax);
+                max = Math.max(max, ax);
+            }
+            // Intersection of the side with the row borders
+            for (int border = 0; border < 2; border++) {
+                double y = border == 0 ? rowMinY : rowMaxY;
+                if ((ay - y) * (by - y) < 0) {
+                    double x = ax + (y - ay) * (bx - ax) / (by - ay);
+                    min = Math.min(min, x);
+                    max = Math.max(max, x);
+                }
+            }
+        }
+        if (min > max) {
+            // Only touches the row border
+            min = minX(triangle);
+            max = min;
+        }
+        extent[0] = min - FastObstructionTest.epsilon;
+        extent[1] = max + FastObstructionTest.epsilon;
+    }
+
+    private int getColumn(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) ((x - minX) / cellWidth)));
+    }
+
+    private int getRow(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) ((y - minY) / cellHeight)));
+    }
+
+    private double minX(int triangle) {
+        return Math.min(mesh.getX(mesh.getVertexIndex(triangle, 0)), Math.min(mesh.getX(mesh.getVertexIndex(triangle, 1)),
+                mesh.getX(mesh.getVertexIndex(triangle, 2))));
+    }
+
+    private double maxX(int triangle) {
+        return Math.max(mesh.getX(mesh.getVertexIndex(triangle, 0)), Math.max(mesh.getX(mesh.getVertexIndex(triangle, 1)),
+                mesh.getX(mesh.getVertexIndex(triangle, 2))));
+    }
+
+    private double minY(int triangle) {
+        return Math.min(mesh.getY(mesh.getVertexIndex(triangle, 0)), Math.min(mesh.getY(mesh.getVertexIndex(triangle, 1)),
+                mesh.getY(mesh.getVertexIndex(triangle, 2))));
+    }
+
+    private double maxY(int triangle) {
+        return Math.max(mesh.getY(mesh.getVertexIndex(triangle, 0)), Math.max(mesh.getY(mesh.getVertexIndex(triangle, 1)),
+                mesh.getY(mesh.getVertexIndex(triangle, 2))));
+    }
+
+    /**
+     * @return Number of triangle references stored in the buckets
+     */
+    public int getCellEntryCount() {
+        return cellTriangles.length;
+    }
+
+    /**
+     * @return Number of buckets
+     */
+    public int getCellCount() {
+        return columns * rows;
+    }
+
+    /**
+     * Find the triangle that contains the point. If the point is not inside the mesh, the triangle with the lowest
+     * barycentric error among triangles with a bounding box at less than 1 meter of the point is returned.
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @return Triangle index or -1 if there is no triangle near the point
+     */
+    public int locate(double x, double y) {
+        double minError = Double.MAX_VALUE;
+        int minErrorTriangle = -1;
+        // Look for the containing triangle in the bucket of the point
+        if (x >= minX && y >= minY && x <= minX + cellWidth * columns && y <= minY + cellHeight * rows) {
+            int cell = getRow(y) * columns + getColumn(x);
+            for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                int triangle = cellTriangles[i];
+                double err = mesh.getBarycentricError(triangle, x, y);
+                if (err <= 0) {
+                    return triangle;
+                }
+            }
+        }
+        // Not inside a triangle, look for the nearest one
+        if (x < minX - SEARCH_DISTANCE || y < minY - SEARCH_DISTANCE ||
+                x > minX + cellWidth * columns + SEARCH_DISTANCE || y > minY + cellHeight * rows + SEARCH_DISTANCE) {
+            return -1;
+        }
+        int firstColumn = getColumn(x - SEARCH_DISTANCE);
+        int lastColumn = getColumn(x + SEARCH_DISTANCE);
+        int firstRow = getRow(y - SEARCH_DISTANCE);
+        int lastRow = getRow(y + SEARCH_DISTANCE);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * columns + column;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    int triangle = cellTriangles[i];
+                    if (minX(triangle) > x + SEARCH_DISTANCE || maxX(triangle) < x - SEARCH_DISTANCE ||
+                            minY(triangle) > y + SEARCH_DISTANCE || maxY(triangle) < y - SEARCH_DISTANCE) {
+                        continue;
+                    }
+                    double err = mesh.getBarycentricError(triangle, x, y);
+                    if (err < minError) {
+                        minError = err;
+                        minErrorTriangle = triangle;
+                    }
+                }
+            }
+        }
+        return minErrorTriangle;
+    }
+}
@@ -0,0 +1,304 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.noise_planet.noisemodelling.pathfinder.utils.IntList;
+
+import java.util.Arrays;
+
+/**
+ * Building walls of a {@link CompactMesh}, computed once. A wall is a triangle side shared with a building triangle.
+ * Walls seen from the open space (a triangle outside of buildings) are stored in a regular grid of buckets with the
+ * connected open space area they face, so that the walls reachable from a point within a given distance are found
+ * without walking the triangulation. Queries do not allocate and instances can be shared between threads.
+ */
+public class WallIndex {
+    /** Mean number of walls per bucket used to compute the grid resolution */
+    private static final int WALLS_PER_CELL = 4;
+    private final CompactMesh mesh;
+    /** Wall identifier of each triangle side, -1 if the side is not a wall */
+    private final int[] sideWall;
+    /** Triangle and side of each wall */
+    private final int[] wallSide;
+    /** Connected open space area of each triangle, -1 for building triangles */
+    private final int[] triangleArea;
+    private final double minX;
+    private final double minY;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int columns;
+    private final int rows;
+    /** Open space walls of the cell i are cellWalls[cellStart[i]] to cellWalls[cellStart[i + 1] - 1] */
+    private final int[] cellStart;
+    private final int[] cellWalls;
+
+    /**
+     * @param mesh              Triangulation, triangle attribute is the building identifier [1-n] or 0
+     * @param minimalWallLength Ignore walls with a length lower or equal than this value
+     */
+    public WallIndex(CompactMesh mesh, double minimalWallLength) {
+        this.mesh = mesh;
+        int triangleCount = mesh.getTriangleCount();
+        sideWall = new int[triangleCount * 3];
+        IntList walls = new IntList();
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            for (int side = 0; side < 3; side++) {
+                sideWall[triangle * 3 + side] = -1;
+                int neighbor = mesh.getNeighbor(triangle, side);
+                if (neighbor != -1 && mesh.getAttribute(neighbor) >= 1) {
+                    int vA = mesh.getVertexIndex(triangle, (side + 1) % 3);
+                    int vB = mesh.getVertexIndex(triangle, (side + 2) % 3);
+                    if (FastObstructionTest.distance2D(mesh.getX(vA), mesh.getY(vA), mesh.getX(vB), mesh.getY(vB))
+                            > minimalWallLength) {
+                        sideWall[triangle * 3 + side] = walls.size();
+                        walls.add(triangle * 3 + side);
+                    }
+                }
+            }
+        }
+        wallSide = walls.toArray();
+        // Label connected open space triangles
+        triangleArea = new int[triangleCount];
+        Arrays.fill(triangleArea, -1);
+        IntList stack = new IntList();
+        int areaCount = 0;
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            if (mesh.getAttribute(triangle) == 0 && triangleArea[triangle] == -1) {
+                triangleArea[triangle] = areaCount;
+                stack.add(triangle);
+                while (!stack.isEmpty()) {
+                    int current = stack.get(stack.size() - 1);
+                    stack.removeLast();
+                    for (int side = 0; side < 3; side++) {
+                        int neighbor = mesh.getNeighbor(current, side);
+                        if (neighbor != -1 && mesh.getAttribute(neighbor) == 0 && triangleArea[neighbor] == -1) {
+                            triangleArea[neighbor] = areaCount;
+                            stack.add(neighbor);
+                        }
+                    }
+                }
+                areaCount++;
+            }
+        }
+        // Bucket grid of open space walls
+        double envMinX = Double.MAX_VALUE, envMinY = Double.MAX_VALUE;
+        double envMaxX = -Double.MAX_VALUE, envMaxY = -Double.MAX_VALUE;
+        int openWallCount = 0;
+        for (int wall = 0; wall < wallSide.length; wall++) {
+            if (isOpenSpaceWall(wall)) {
+                openWallCount++;
+                envMinX = Math.min(envMinX, Math.min(getX0(wall), getX1(wall)));
+                envMinY = Math.min(envMinY, Math.min(getY0(wall), getY1(wall)));
+                envMaxX = Math.max(envMaxX, Math.max(getX0(wall), getX1(wall)));
+                envMaxY = Math.max(envMaxY, Math.max(getY0(wall), getY1(wall)));
+            }
+        }
+        if (openWallCount == 0) {
+            envMinX = envMinY = envMaxX = envMaxY = 0;
+        }
+        minX = envMinX;
+        minY = envMinY;
+        double width = Math.max(envMaxX - envMinX, FastObstructionTest.epsilon);
+        double height = Math.max(envMaxY - envMinY, FastObstructionTest.epsilon);
+        int cellCount = Math.max(1, openWallCount / WALLS_PER_CELL);
+        double cellSize = Math.sqrt(width * height / cellCount);
+        columns = (int) Math.max(1, Math.min(cellCount, Math.ceil(width / cellSize)));
+        rows = (int) Math.max(1, Math.min(cellCount, Math.ceil(height / cellSize)));
+        cellWidth = width / columns;
+        cellHeight = height / rows;
+        cellStart = new int[columns * rows + 1];
+        for (int wall = 0; wall < wallSide.length; wall++) {
+            if (isOpenSpaceWall(wall)) {
+                for (int row = getRow(Math.min(getY0(wall), getY1(wall))); row <= getRow(Math.max(getY0(wall),
+                        getY1(wall))); row++) {
+                    for (int column = getColumn(Math.min(getX0(wall), getX1(wall))); column <= getColumn(
+                            Math.max(getX0(wall), getX1(wall))); column++) {
+                        cellStart[row * columns + column + 1]++;
+                    }
+                }
+            }
+        }
+        for (int cell = 0; cell < columns * rows; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        cellWalls = new int[cellStart[columns * rows]];
+        int[] cellFill = new int[columns * rows];
+        for (int wall = 0; wall < wallSide.length; wall++) {
+            if (isOpenSpaceWall(wall)) {
+                for (int row = getRow(Math.min(getY0(wall), getY1(wall))); row <= getRow(Math.max(getY0(wall),
+                        getY1(wall))); row++) {
+                    for (int column = getColumn(Math.min(getX0(wall), getX1(wall))); column <= getColumn(
+                            Math.max(getX0(wall), getX1(wall))); column++) {
+                        int cell = row * columns + column;
+                        cellWalls[cellStart[cell] + cellFill[cell]++] = wall;
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean isOpenSpaceWall(int wall) {
+        return mesh.getAttribute(getTriangle(wall)) == 0;
+    }
+
+    private int getColumn(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) ((x - minX) / cellWidth)));
+    }
+
+    private int getRow(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) ((y - minY) / cellHeight)));
+    }
+
+    /**
+     * @return Number of walls
+     */
+    public int getWallCount() {
+        return wallSide.length;
+    }
+
+    /**
+     * @param triangle Triangle index
+     * @param side     Side index
+     * @return Wall identifier or -1 if the triangle side is not a wall
+     */
+    public int getWall(int triangle, int side) {
+        return sideWall[triangle * 3 + side];
+    }
+
+    /**
+     * @param wall Wall identifier
+     * @return Triangle on the front side of the wall
+     */
+    public int getTriangle(int wall) {
+        return wallSide[wall] / 3;
+    }
+
+    /**
+     * @param wall Wall identifier
+     * @return First vertex index, the vertices are ordered as in the triangle on the front side of the wall
+     */
+    public int getVertex0(int wall) {
+        return mesh.getVertexIndex(wallSide[wall] / 3, (wallSide[wall] % 3 + 1) % 3);
+    }
+
+    /**
+     * @param wall Wall identifier
+     * @return Second vertex index
+     */
+    public int getVertex1(int wall) {
+        return mesh.getVertexIndex(wallSide[wall] / 3, (wallSide[wall] % 3 + 2) % 3);
+    }
+
+    public double getX0(int wall) {
+        return mesh.getX(getVertex0(wall));
+    }
+
+    public double getY0(int wall) {
+        return mesh.getY(getVertex0(wall));
+    }
+
+    public double getX1(int wall) {
+        return mesh.getX(getVertex1(wall));
+    }
+
+    public double getY1(int wall) {
+        return mesh.getY(getVertex1(wall));
+    }
+
+    /**
+     * @param wall Wall identifier
+     * @return Building identifier [1-n] behind the wall
+     */
+    public int getBuildingId(int wall) {
+        return mesh.getAttribute(mesh.getNeighbor(wallSide[wall] / 3, wallSide[wall] % 3));
+    }
+
+    /**
+     * @param triangle Triangle index
+     * @return Connected open space area identifier of the triangle, -1 if the triangle is in a building
+     */
+    public int getArea(int triangle) {
+        return triangleArea[triangle];
+    }
+
+    /**
+     * Find the walls facing the given open space area at a distance lower or equal than maxDist of the point.
+     * The walls are given in identifier order, some of them may be hidden from the point by buildings, see
+     * {@link FastObstructionTest#getWallIdsInRange(double, Coordinate, boolean, IntList)}.
+     * @param x       Point X
+     * @param y       Point Y
+     * @param maxDist Maximum distance from the point to the walls
+     * @param area    Open space area identifier, see {@link #getArea(int)}
+     * @param walls   [out] Wall identifiers
+     */
+    public void queryOpenSpaceWalls(double x, double y, double maxDist, int area, IntList walls) {
+        double qMinX = x - maxDist;
+        double qMaxX = x + maxDist;
+        double qMinY = y - maxDist;
+        double qMaxY = y + maxDist;
+        if (cellWalls.length == 0 || qMaxX < minX || qMaxY < minY || qMinX > minX + cellWidth * columns ||
+                qMinY > minY + cellHeight * rows) {
+            return;
+        }
+        int first = walls.size();
+        int firstColumn = getColumn(qMinX);
+        int lastColumn = getColumn(qMaxX);
+        int firstRow = getRow(qMinY);
+        int lastRow = getRow(qMaxY);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * columns + column;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    int wall = cellWalls[i];
+                    if (triangleArea[getTriangle(wall)] != area) {
+                        continue;
+                    }
+                    double x0 = getX0(wall);
+                    double y0 = getY0(wall);
+                    double x1 = getX1(wall);
+                    double y1 = getY1(wall);
+                    // A wall is registered in several cells, report it only in the first cell of the query
+                    if (column != Math.max(firstColumn, getColumn(Math.min(x0, x1))) ||
+                            row != Math.max(firstRow, getRow(Math.min(y0, y1)))) {
+                        continue;
+                    }
+                    if (FastObstructionTest.distancePointSegment(x, y, x0, y0, x1, y1) <= maxDist) {
+                        walls.add(wall);
+                    }
+                }
+            }
+        }
+        walls.sort(first, walls.size());
+    }
+}
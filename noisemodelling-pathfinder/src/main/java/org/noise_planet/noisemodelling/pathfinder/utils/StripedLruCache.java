@@ -0,0 +1,200 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder.utils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * Least recently used cache bounded by an estimation of the memory used by the entries.
+ * The keys are spread in segments that have their own lock and their own share of the memory budget, so that
+ * threads working on different keys rarely wait for each other. This class is thread safe.
+ * @param <K> Key, must implement equals and hashCode
+ * @param <V> Value, must be immutable as it is shared between threads
+ */
+public class StripedLruCache<K, V> {
+    /** Estimation of the memory used by a map entry and its key, in bytes */
+    public static final long ENTRY_OVERHEAD = 64;
+    private static final int SEGMENT_COUNT = 16;
+    private final long maximumMemory;
+    private final ToLongFunction<V> weigher;
+    private final List<Segment<K, V>> segments;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param maximumMemory Maximum memory used by the cached entries in bytes, 0 to disable the cache
+     * @param weigher       Estimation of the memory used by a value in bytes
+     */
+    public StripedLruCache(long maximumMemory, ToLongFunction<V> weigher) {
+        this.maximumMemory = Math.max(0, maximumMemory);
+        this.weigher = weigher;
+        segments = new ArrayList<>(SEGMENT_COUNT);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments.add(new Segment<>(this.maximumMemory / SEGMENT_COUNT));
+        }
+    }
+
+    /**
+     * @return False if the maximum memory is too low to keep any entry
+     */
+    public boolean isEnabled() {
+        return maximumMemory / SEGMENT_COUNT > ENTRY_OVERHEAD;
+    }
+
+    /**
+     * @return Maximum memory used by the cached entries in bytes
+     */
+    public long getMaximumMemory() {
+        return maximumMemory;
+    }
+
+    /**
+     * @return Estimation of the memory used by the cached entries in bytes
+     */
+    public long getMemoryUsage() {
+        long memory = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                memory += segment.memory;
+            }
+        }
+        return memory;
+    }
+
+    /**
+     * @return Number of get calls that found the key
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return Number of get calls that did not find the key
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return Number of cached entries
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Remove all cached entries
+     */
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+                segment.memory = 0;
+            }
+        }
+    }
+
+    private Segment<K, V> getSegment(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return segments.get((h ^ (h >>> 16)) & (SEGMENT_COUNT - 1));
+    }
+
+    /**
+     * @param key Key
+     * @return Cached value or null
+     */
+    public V get(K key) {
+        Segment<K, V> segment = getSegment(key);
+        V value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Add a value, the least recently used entries of the segment are removed if the memory budget is exceeded.
+     * A value bigger than the budget of a segment is not cached.
+     * @param key   Key
+     * @param value Value
+     */
+    public void put(K key, V value) {
+        long weight = weigher.applyAsLong(value) + ENTRY_OVERHEAD;
+        Segment<K, V> segment = getSegment(key);
+        synchronized (segment) {
+            if (weight > segment.maximumMemory) {
+                return;
+            }
+            V old = segment.put(key, value);
+            if (old != null) {
+                segment.memory -= weigher.applyAsLong(old) + ENTRY_OVERHEAD;
+            }
+            segment.memory += weight;
+            Iterator<Map.Entry<K, V>> it = segment.entrySet().iterator();
+            while (segment.memory > segment.maximumMemory && it.hasNext()) {
+                Map.Entry<K, V> eldest = it.next();
+                segment.memory -= weigher.applyAsLong(eldest.getValue()) + ENTRY_OVERHEAD;
+                it.remove();
+            }
+        }
+    }
+
+    private static final class Segment<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+        private final long maximumMemory;
+        private long memory = 0;
+
+        Segment(long maximumMemory) {
+            super(16, 0.75f, true);
+            this.maximumMemory = maximumMemory;
+        }
+    }
+}
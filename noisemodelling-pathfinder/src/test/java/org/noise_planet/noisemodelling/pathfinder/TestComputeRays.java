@@ -5,12 +5,14 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.cts.crs.CRSException;
 import org.cts.op.CoordinateOperationException;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 import org.locationtech.jts.geom.*;
 import org.locationtech.jts.geom.util.AffineTransformation;
 import org.locationtech.jts.io.ParseException;
 import org.locationtech.jts.io.WKTReader;
 import org.locationtech.jts.math.Vector2D;
+import org.noise_planet.noisemodelling.pathfinder.utils.AcousticPropagation;
 import org.noise_planet.noisemodelling.pathfinder.utils.Densifier3D;
 import org.noise_planet.noisemodelling.pathfinder.utils.GeoJSONDocument;
 import org.noise_planet.noisemodelling.pathfinder.utils.KMLDocument;
@@ -19,10 +21,16 @@ import org.slf4j.LoggerFactory;
 
 import javax.xml.stream.XMLStreamException;
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.*;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 
 public class TestComputeRays {
@@ -373,6 +381,541 @@ public class TestComputeRays {
 
     }
 
+    private static Map<Integer, Integer> countRaysPerReceiver(List<PropagationPath> propagationPaths) {
+        Map<Integer, Integer> rayCount = new TreeMap<>();
+        for(PropagationPath path : propagationPaths) {
+            Integer count = rayCount.get(path.getIdReceiver());
+            rayCount.put(path.getIdReceiver(), count == null ? 1 : count + 1);
+        }
+        return rayCount;
+    }
+
+    @Test
+    public void testWorkStealingReceiverScheduler() throws LayerDelaunayError {
+        GeometryFactory factory = new GeometryFactory();
+        Envelope cellEnvelope = new Envelope(new Coordinate(-300., -300., 0.), new Coordinate(300, 300, 0.));
+        MeshBuilder mesh = new MeshBuilder();
+        mesh.addGeometry(factory.createPolygon(new Coordinate[]{
+                new Coordinate(55.0, 5.0, 0),
+                new Coordinate(65.0, 5.0, 0),
+                new Coordinate(65.0, 15.0, 0),
+                new Coordinate(55.0, 15.0, 0),
+                new Coordinate(55.0, 5.0, 0)}), 8);
+        mesh.addGeometry(factory.createPolygon(new Coordinate[]{
+                new Coordinate(70, 14.5, 0),
+                new Coordinate(80.0, 10.2, 0),
+                new Coordinate(80.0, 20.2, 0),
+                new Coordinate(70, 14.5, 0)}), 12);
+        mesh.finishPolygonFeeding(cellEnvelope);
+        FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+                mesh.getTriNeighbors(), mesh.getVertices());
+
+        PropagationProcessData rayData = new PropagationProcessData(manager);
+        for(int x = 0; x < 8; x++) {
+            for(int y = 0; y < 5; y++) {
+                rayData.addReceiver(new Coordinate(85 + x * 5, y * 7, 4));
+            }
+        }
+        rayData.addSource(factory.createPoint(new Coordinate(40, 10, 1)));
+        rayData.setComputeHorizontalDiffraction(true);
+        rayData.setComputeVerticalDiffraction(true);
+        rayData.reflexionOrder = 1;
+
+        ComputeRaysOut rangeOut = new ComputeRaysOut(true);
+        ComputeRays computeRays = new ComputeRays(rayData);
+        computeRays.setThreadCount(4);
+        computeRays.run(rangeOut);
+
+        ComputeRaysOut workStealingOut = new ComputeRaysOut(true);
+        computeRays.setWorkStealing(true);
+        computeRays.setWorkStealingChunkSize(3);
+        computeRays.run(workStealingOut);
+
+        assertEquals(countRaysPerReceiver(rangeOut.getPropagationPaths()),
+                countRaysPerReceiver(workStealingOut.getPropagationPaths()));
+        Map<String, Long> busyTime = computeRays.getWorkerBusyTime();
+        assertFalse(busyTime.isEmpty());
+        assertTrue(busyTime.size() <= 4);
+        for(long workerTime : busyTime.values()) {
+            assertTrue(workerTime > 0);
+        }
+        // The pool is kept for the next runs
+        assertSame(ComputeRays.getWorkStealingPool(4), ComputeRays.getWorkStealingPool(4));
+        ComputeRaysOut secondRunOut = new ComputeRaysOut(true);
+        computeRays.run(secondRunOut);
+        assertEquals(countRaysPerReceiver(rangeOut.getPropagationPaths()),
+                countRaysPerReceiver(secondRunOut.getPropagationPaths()));
+    }
+
+    @Test
+    public void testPathFinderStatistics() throws LayerDelaunayError {
+        GeometryFactory factory = new GeometryFactory();
+        Envelope cellEnvelope = new Envelope(new Coordinate(-300., -300., 0.), new Coordinate(300, 300, 0.));
+        MeshBuilder mesh = new MeshBuilder();
+        mesh.addGeometry(factory.createPolygon(new Coordinate[]{
+                new Coordinate(55.0, 5.0, 0),
+                new Coordinate(65.0, 5.0, 0),
+                new Coordinate(65.0, 15.0, 0),
+                new Coordinate(55.0, 15.0, 0),
+                new Coordinate(55.0, 5.0, 0)}), 8);
+        mesh.addGeometry(factory.createPolygon(new Coordinate[]{
+                new Coordinate(70, 14.5, 0),
+                new Coordinate(80.0, 10.2, 0),
+                new Coordinate(80.0, 20.2, 0),
+                new Coordinate(70, 14.5, 0)}), 12);
+        mesh.finishPolygonFeeding(cellEnvelope);
+        FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+                mesh.getTriNeighbors(), mesh.getVertices());
+
+        PropagationProcessData rayData = new PropagationProcessData(manager);
+        for(int x = 0; x < 8; x++) {
+            for(int y = 0; y < 5; y++) {
+                rayData.addReceiver(new Coordinate(85 + x * 5, y * 7, 4));
+            }
+        }
+        rayData.addSource(factory.createPoint(new Coordinate(40, 10, 1)));
+        rayData.setComputeHorizontalDiffraction(true);
+        rayData.setComputeVerticalDiffraction(true);
+        rayData.reflexionOrder = 1;
+        rayData.cellId = 7;
+
+        final List<PathFinderStatistics> cellStatistics = new ArrayList<>();
+        ComputeRaysOut out = new ComputeRaysOut(true);
+        ComputeRays computeRays = new ComputeRays(rayData);
+        computeRays.setThreadCount(4);
+        computeRays.setStatisticsListener(new IPathFinderStatisticsListener() {
+            @Override
+            public void cellStatistics(int cellId, PathFinderStatistics statistics) {
+                assertEquals(7, cellId);
+                cellStatistics.add(statistics);
+            }
+        });
+        computeRays.run(out);
+
+        assertEquals(1, cellStatistics.size());
+        PathFinderStatistics statistics = cellStatistics.get(0);
+        assertEquals(40, statistics.getCounter(PathFinderStatistics.Counter.RECEIVERS));
+        assertEquals(40, statistics.getCounter(PathFinderStatistics.Counter.SOURCE_RECEIVER_PAIRS));
+        // One direct path per pair, plus the walks of the diffraction and reflection paths
+        long obstructionTests = statistics.getCounter(PathFinderStatistics.Counter.OBSTRUCTION_TESTS);
+        assertTrue(obstructionTests > 40);
+        long diffractionPaths = statistics.getCounter(PathFinderStatistics.Counter.HORIZONTAL_DIFFRACTION_PATHS) +
+                statistics.getCounter(PathFinderStatistics.Counter.VERTICAL_DIFFRACTION_PATHS);
+        assertTrue(diffractionPaths > 0);
+        assertTrue(statistics.getCounter(PathFinderStatistics.Counter.IMAGE_RECEIVERS) > 0);
+        assertTrue(statistics.getCount(PathFinderStatistics.Phase.OUTPUT) > 0);
+        assertTrue(statistics.getTime(PathFinderStatistics.Phase.SOURCE_COLLECTION) > 0);
+        assertTrue(out.rayCount.get() >= diffractionPaths +
+                statistics.getCounter(PathFinderStatistics.Counter.REFLECTION_PATHS));
+        // The counters of ComputeRaysOut are fed by the statistics
+        assertEquals(40, out.nb_couple_receiver_src.get());
+        assertEquals(obstructionTests, out.nb_obstr_test.get());
+        assertEquals(diffractionPaths, out.nb_diffraction_path.get());
+        assertEquals(statistics.getCounter(PathFinderStatistics.Counter.REFLECTION_PATHS),
+                out.nb_reflexion_path.get());
+        assertEquals(statistics.getCounter(PathFinderStatistics.Counter.IMAGE_RECEIVERS),
+                out.nb_image_receiver.get());
+
+        // Same counters with a single worker
+        computeRays.setThreadCount(1);
+        computeRays.setStatisticsListener(null);
+        computeRays.run(new ComputeRaysOut(false));
+        PathFinderStatistics singleThread = computeRays.getStatistics();
+        for (PathFinderStatistics.Counter counter : PathFinderStatistics.Counter.values()) {
+            assertEquals(counter.name(), statistics.getCounter(counter), singleThread.getCounter(counter));
+        }
+    }
+
+    @Test
+    public void testLineSourceCache() throws LayerDelaunayError, ParseException {
+        GeometryFactory factory = new GeometryFactory();
+        WKTReader wktReader = new WKTReader();
+        MeshBuilder mesh = new MeshBuilder();
+        mesh.addGeometry(factory.toGeometry(new Envelope(40, 60, 20, 30)), 10);
+        mesh.finishPolygonFeeding(new Envelope(-300, 300, -300, 300));
+        FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+                mesh.getTriNeighbors(), mesh.getVertices());
+        PropagationProcessData rayData = new PropagationProcessData(manager);
+        for(int x = 0; x < 6; x++) {
+            rayData.addReceiver(new Coordinate(20 + x * 10, 60, 4));
+            rayData.addReceiver(new Coordinate(20 + x * 10, 62, 4));
+        }
+        rayData.addSource(wktReader.read("LINESTRING (-100 0 0.05, 0 5 0.05, 150 0 0.05)"));
+        rayData.addSource(wktReader.read("MULTILINESTRING ((10 -20 0.05, 90 -25 0.05), (90 -25 0.05, 120 -60 0.05))"));
+        rayData.setComputeHorizontalDiffraction(false);
+        rayData.setComputeVerticalDiffraction(true);
+        // Disabled by default
+        assertEquals(0, rayData.getLineSourceCache().getMaximumMemory());
+        ComputeRaysOut expectedOut = new ComputeRaysOut(true);
+        ComputeRays computeRays = new ComputeRays(rayData);
+        computeRays.setThreadCount(1);
+        computeRays.run(expectedOut);
+
+        LineSourceCache cache = new LineSourceCache();
+        rayData.setLineSourceCache(cache);
+        ComputeRaysOut cachedOut = new ComputeRaysOut(true);
+        computeRays.run(cachedOut);
+
+        assertTrue(cache.getHitCount() > 0);
+        assertTrue(cache.size() < 3 * rayData.receivers.size());
+        assertTrue(cache.getMemoryUsage() <= cache.getMaximumMemory());
+        List<PropagationPath> expectedPaths = expectedOut.getPropagationPaths();
+        List<PropagationPath> cachedPaths = cachedOut.getPropagationPaths();
+        assertEquals(expectedPaths.size(), cachedPaths.size());
+        for(int i = 0; i < expectedPaths.size(); i++) {
+            assertEquals(expectedPaths.get(i).getIdReceiver(), cachedPaths.get(i).getIdReceiver());
+            assertEquals(expectedPaths.get(i).getPointList().get(0).coordinate,
+                    cachedPaths.get(i).getPointList().get(0).coordinate);
+        }
+    }
+
+    @Test
+    public void testSourceClusterTree() throws LayerDelaunayError, ParseException {
+        GeometryFactory factory = new GeometryFactory();
+        WKTReader wktReader = new WKTReader();
+        MeshBuilder mesh = new MeshBuilder();
+        mesh.addGeometry(factory.toGeometry(new Envelope(40, 60, 20, 30)), 10);
+        mesh.finishPolygonFeeding(new Envelope(-500, 500, -500, 500));
+        FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+                mesh.getTriNeighbors(), mesh.getVertices());
+        PropagationProcessData rayData = new PropagationProcessData(manager) {
+            @Override
+            public double[] getMaximalSourcePower(int sourceId) {
+                return new double[] {1e6, 1e6, 1e6};
+            }
+        };
+        rayData.addReceiver(new Coordinate(50, 50, 4));
+        rayData.addReceiver(new Coordinate(-200, 100, 4));
+        Random random = new Random(42);
+        for(int i = 0; i < 200; i++) {
+            rayData.addSource(factory.createPoint(new Coordinate(random.nextDouble() * 900 - 450,
+                    random.nextDouble() * 900 - 450, 0.05)));
+        }
+        rayData.addSource(wktReader.read("LINESTRING (-100 0 0.05, 0 5 0.05, 150 0 0.05)"));
+        rayData.maxSrcDist = 400;
+        rayData.setComputeHorizontalDiffraction(false);
+        rayData.setComputeVerticalDiffraction(false);
+
+        SourceClusterTree tree = rayData.getSourceClusterTree();
+        int[] sourceCount = new int[rayData.sourceGeometries.size()];
+        for(int node = 0; node < tree.getNodeCount(); node++) {
+            if(tree.isLeaf(node)) {
+                assertTrue(tree.getSourceCount(node) <= SourceClusterTree.LEAF_SIZE);
+                for(int i = 0; i < tree.getSourceCount(node); i++) {
+                    sourceCount[tree.getSource(node, i)]++;
+                }
+            } else {
+                assertEquals(tree.getPower(node), tree.getPower(tree.getLeft(node)) +
+                        tree.getPower(tree.getRight(node)), 1e-6 * tree.getPower(node));
+            }
+        }
+        for(int count : sourceCount) {
+            assertEquals(1, count);
+        }
+
+        ComputeRays computeRays = new ComputeRays(rayData);
+        computeRays.setThreadCount(1);
+        ComputeRaysOut expectedOut = new ComputeRaysOut(true);
+        computeRays.run(expectedOut);
+
+        // Without maximum error all the sources are processed
+        rayData.setSourceClustering(true);
+        ComputeRaysOut clusterOut = new ComputeRaysOut(true);
+        computeRays.run(clusterOut);
+        assertEquals(countRaysPerReceiver(expectedOut.getPropagationPaths()),
+                countRaysPerReceiver(clusterOut.getPropagationPaths()));
+
+        // With maximum error the clusters of distant sources are skipped
+        rayData.maximumError = 1;
+        ComputeRaysOut clusterErrorOut = new ComputeRaysOut(true);
+        computeRays.run(clusterErrorOut);
+        assertTrue(clusterErrorOut.getPropagationPaths().size() < expectedOut.getPropagationPaths().size());
+
+        // The level error stays bellow maximumError against all the sources, with the default bound and with a
+        // bound that includes an attenuation growing with the distance
+        rayData.reflexionOrder = 0;
+        for(double attenuationPerMeter : new double[] {0, 0.02}) {
+            PowerBoundEstimator estimator = new PowerBoundEstimator() {
+                @Override
+                protected double getAttenuation(double distance, int frequency) {
+                    return distance * attenuationPerMeter;
+                }
+            };
+            rayData.setPowerBoundEstimator(estimator);
+            // The cluster bound includes the attenuation of the estimator
+            int farCluster = tree.getLeft(tree.getRoot());
+            Coordinate receiverPosition = rayData.receivers.get(0);
+            if(attenuationPerMeter > 0 && tree.getDistance(farCluster, receiverPosition) > 0) {
+                assertTrue(tree.getPowerBound(farCluster, receiverPosition, estimator) <
+                        tree.getPowerBound(farCluster, receiverPosition, new PowerBoundEstimator()));
+            }
+            rayData.setSourceClustering(false);
+            rayData.maximumError = 0;
+            DivergenceOut allSourcesOut = new DivergenceOut(rayData, attenuationPerMeter);
+            computeRays.run(allSourcesOut);
+            rayData.setSourceClustering(true);
+            rayData.maximumError = 1;
+            DivergenceOut clusterLevelOut = new DivergenceOut(rayData, attenuationPerMeter);
+            computeRays.run(clusterLevelOut);
+            assertTrue(clusterLevelOut.pathCount < allSourcesOut.pathCount);
+            for(int receiver = 0; receiver < rayData.receivers.size(); receiver++) {
+                double expectedLevel = ComputeRays.wToDba(allSourcesOut.receiverPower[receiver]);
+                double clusterLevel = ComputeRays.wToDba(clusterLevelOut.receiverPower[receiver]);
+                assertTrue(clusterLevel <= expectedLevel + 1e-6);
+                assertEquals(expectedLevel, clusterLevel, rayData.maximumError);
+            }
+        }
+    }
+
+    /**
+     * Received power of the direct paths, geometric divergence and an attenuation proportional to the distance
+     */
+    private static final class DivergenceOut implements IComputeRaysOut {
+        private final PropagationProcessData data;
+        private final double attenuationPerMeter;
+        private final double[] receiverPower;
+        private int pathCount = 0;
+
+        DivergenceOut(PropagationProcessData data, double attenuationPerMeter) {
+            this.data = data;
+            this.attenuationPerMeter = attenuationPerMeter;
+            this.receiverPower = new double[data.receivers.size()];
+        }
+
+        @Override
+        public double[] addPropagationPaths(long sourceId, double sourceLi, long receiverId,
+                                            List<PropagationPath> propagationPath) {
+            List<PointPath> points = propagationPath.get(0).getPointList();
+            double distance = points.get(0).coordinate.distance3D(points.get(points.size() - 1).coordinate);
+            double[] wj = data.getMaximalSourcePower((int) sourceId);
+            double[] levels = new double[wj.length];
+            for(int i = 0; i < wj.length; i++) {
+                double power = wj[i] * sourceLi * ComputeRays.dbaToW(-AcousticPropagation.getADiv(distance) -
+                        distance * attenuationPerMeter);
+                levels[i] = ComputeRays.wToDba(power);
+                receiverPower[(int) receiverId] += power;
+            }
+            pathCount++;
+            return levels;
+        }
+
+        @Override
+        public void finalizeReceiver(long receiverId) {
+        }
+
+        @Override
+        public IComputeRaysOut subProcess(int receiverStart, int receiverEnd) {
+            return this;
+        }
+    }
+
+    /**
+     * With a minimum diffraction loss, the obstruction test of the power bound is only done for the source points
+     * that reach the head of the queue
+     */
+    @Test
+    public void testDeferredObstructionTest() throws LayerDelaunayError {
+        GeometryFactory factory = new GeometryFactory();
+        MeshBuilder mesh = new MeshBuilder();
+        mesh.addGeometry(factory.toGeometry(new Envelope(20, 40, -100, 100)), 20);
+        mesh.finishPolygonFeeding(new Envelope(-500, 500, -500, 500));
+        FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+                mesh.getTriNeighbors(), mesh.getVertices());
+        PropagationProcessData rayData = new PropagationProcessData(manager) {
+            @Override
+            public double[] getMaximalSourcePower(int sourceId) {
+                return new double[] {1e6, 1e6, 1e6};
+            }
+        };
+        rayData.addReceiver(new Coordinate(0, 0, 4));
+        Random random = new Random(42);
+        for(int i = 0; i < 300; i++) {
+            rayData.addSource(factory.createPoint(new Coordinate(random.nextDouble() * 800 - 400,
+                    random.nextDouble() * 800 - 400, 0.05)));
+        }
+        rayData.maxSrcDist = 400;
+        rayData.reflexionOrder = 0;
+        rayData.setComputeHorizontalDiffraction(false);
+        rayData.setComputeVerticalDiffraction(false);
+        final int[] boundCount = new int[2];
+        PowerBoundEstimator estimator = new PowerBoundEstimator() {
+            @Override
+            public double[] getPowerBound(FastObstructionTest freeFieldFinder, Coordinate receiverPos,
+                                          Coordinate sourcePos, double[] wj, double li) {
+                boundCount[freeFieldFinder == null ? 0 : 1]++;
+                return super.getPowerBound(freeFieldFinder, receiverPos, sourcePos, wj, li);
+            }
+        };
+        estimator.setMinimumDiffractionLoss(10);
+        rayData.setPowerBoundEstimator(estimator);
+        ComputeRays computeRays = new ComputeRays(rayData);
+        computeRays.setThreadCount(1);
+
+        // All the source points are processed, each of them is tested once
+        ComputeRaysOut allOut = new ComputeRaysOut(true);
+        computeRays.run(allOut);
+        int sourcePointCount = boundCount[0];
+        assertTrue(sourcePointCount > 0);
+        assertEquals(sourcePointCount, boundCount[1]);
+
+        // With maximum error only the source points processed or near to be processed are tested
+        rayData.maximumError = 1;
+        boundCount[0] = 0;
+        boundCount[1] = 0;
+        ComputeRaysOut errorOut = new ComputeRaysOut(true);
+        computeRays.run(errorOut);
+        assertEquals(sourcePointCount, boundCount[0]);
+        assertTrue(boundCount[1] >= errorOut.getPropagationPaths().size());
+        assertTrue(boundCount[1] < sourcePointCount);
+    }
+
+    @Test
+    public void testSoilGrid() throws LayerDelaunayError, ParseException {
+        GeometryFactory factory = new GeometryFactory();
+        MeshBuilder mesh = new MeshBuilder();
+        mesh.finishPolygonFeeding(new Envelope(-300, 300, -300, 300));
+        FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+                mesh.getTriNeighbors(), mesh.getVertices());
+        PropagationProcessData rayData = new PropagationProcessData(manager);
+        rayData.addSoilType(new GeoWithSoilType(factory.toGeometry(new Envelope(0, 50, -20, 80)), 0.9));
+        rayData.addSoilType(new GeoWithSoilType(factory.toGeometry(new Envelope(50, 150, -20, 80)), 0.5));
+        rayData.addSoilType(new GeoWithSoilType(factory.toGeometry(new Envelope(150, 225, -20, 80)), 0.2));
+        ComputeRays exactRays = new ComputeRays(rayData);
+        exactRays.initStructures();
+        Coordinate[][] paths = new Coordinate[][] {
+                {new Coordinate(200, 50, 4), new Coordinate(10, 10, 1)},
+                {new Coordinate(-40, 30, 4), new Coordinate(250, 20, 1)},
+                {new Coordinate(100, -100, 4), new Coordinate(120, 150, 1)},
+                {new Coordinate(30, 0, 4), new Coordinate(30, 60, 1)}};
+        double[] expected = new double[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            expected[i] = exactRays.computeFreefield(paths[i][0], paths[i][1], null).getSegmentList().get(0).gPath;
+        }
+        // Soil boundaries are aligned on the grid, the rasterised G path is exact
+        rayData.setSoilGridCellSize(1);
+        ComputeRays gridRays = new ComputeRays(rayData);
+        gridRays.initStructures();
+        for (int i = 0; i < paths.length; i++) {
+            assertEquals(expected[i], gridRays.computeFreefield(paths[i][0], paths[i][1], null).getSegmentList().get(0).gPath, 1e-9);
+        }
+        // Too many cells (the cell count overflows an int), fall back to the soil geometries
+        rayData.setSoilGridCellSize(1e-3);
+        assertTrue(SoilGrid.getCellCount(rayData.getSoilList(), 1e-3) > Integer.MAX_VALUE);
+        ComputeRays largeGridRays = new ComputeRays(rayData);
+        largeGridRays.initStructures();
+        for (int i = 0; i < paths.length; i++) {
+            assertEquals(expected[i], largeGridRays.computeFreefield(paths[i][0], paths[i][1], null).getSegmentList().get(0).gPath, 1e-9);
+        }
+        try {
+            new SoilGrid(rayData.getSoilList(), 1e-3);
+            fail("Oversized grid must be rejected");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        // Non aligned polygon with a hole, the error is bounded by the cell size
+        WKTReader wktReader = new WKTReader();
+        Geometry soil = wktReader.read("POLYGON ((3 7, 93 31, 71 98, 12 81, 3 7), (30 40, 60 45, 50 70, 30 40))");
+        List<GeoWithSoilType> soilList = Collections.singletonList(new GeoWithSoilType(soil, 1));
+        SoilGrid soilGrid = new SoilGrid(soilList, 0.5);
+        Random random = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            Coordinate p0 = new Coordinate(random.nextDouble() * 120 - 10, random.nextDouble() * 120 - 10);
+            Coordinate p1 = new Coordinate(random.nextDouble() * 120 - 10, random.nextDouble() * 120 - 10);
+            double exact = factory.createLineString(new Coordinate[]{p0, p1}).intersection(soil).getLength();
+            assertEquals(exact, soilGrid.getWeightedLength(p0.x, p0.y, p1.x, p1.y), 4 * 0.5);
+        }
+    }
+
+    /**
+     * With a worker context and an output consuming path descriptors, a free field source-receiver pair must not
+     * allocate, whatever the number of triangles crossed by the path
+     */
+    @Test
+    public void testWorkerContextAllocation() throws LayerDelaunayError {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue("Thread allocation measurement is not available",
+                threadMXBean instanceof com.sun.management.ThreadMXBean &&
+                ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported() &&
+                ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemoryEnabled());
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadMXBean;
+        MeshBuilder mesh = new MeshBuilder();
+        Random random = new Random(42);
+        for (int i = 0; i < 400; i++) {
+            mesh.addTopographicPoint(new Coordinate(1 + random.nextDouble() * 398, random.nextDouble() * 98 - 49,
+                    random.nextDouble()));
+        }
+        mesh.finishPolygonFeeding(new Envelope(0, 400, -50, 50));
+        FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+                mesh.getTriNeighbors(), mesh.getVertices());
+        PropagationProcessData rayData = new PropagationProcessData(manager);
+        rayData.addSource(new GeometryFactory().createPoint(new Coordinate(5, 1, 10)));
+        Coordinate nearReceiver = new Coordinate(25, 1, 10);
+        Coordinate farReceiver = new Coordinate(395, 1, 10);
+        rayData.addReceiver(nearReceiver, farReceiver);
+        rayData.setComputeHorizontalDiffraction(false);
+        rayData.reflexionOrder = 0;
+        ComputeRays computeRays = new ComputeRays(rayData);
+        computeRays.initStructures();
+        final double[] noAttenuation = new double[0];
+        final int[] pathCount = new int[1];
+        IComputeRaysOut dataOut = new IComputeRaysOut() {
+            @Override
+            public boolean isPathDescriptorSupported() {
+                return true;
+            }
+
+            @Override
+            public double[] addPropagationPaths(long sourceId, double sourceLi, long receiverId,
+                                                PathDescriptor directPath, List<PropagationPath> propagationPath) {
+                pathCount[0] += propagationPath.size() + 1;
+                return noAttenuation;
+            }
+
+            @Override
+            public double[] addPropagationPaths(long sourceId, double sourceLi, long receiverId,
+                                                List<PropagationPath> propagationPath) {
+                pathCount[0] += propagationPath.size();
+                return noAttenuation;
+            }
+
+            @Override
+            public void finalizeReceiver(long receiverId) {
+            }
+
+            @Override
+            public IComputeRaysOut subProcess(int receiverStart, int receiverEnd) {
+                return this;
+            }
+        };
+        FastObstructionTest.WalkContext walkContext = new FastObstructionTest.WalkContext();
+        manager.computePropagationPath(rayData.sourceGeometries.get(0).getCoordinate(), farReceiver, false,
+                walkContext, true, true);
+        assertTrue(walkContext.size() > 50);
+        ComputeRays.WorkerContext context = new ComputeRays.WorkerContext();
+        long threadId = Thread.currentThread().getId();
+        long[] allocated = new long[] {Long.MAX_VALUE, Long.MAX_VALUE};
+        // warm up then keep the lowest measure, the JIT may still allocate during the first runs
+        for (int run = 0; run < 4; run++) {
+            for (int idReceiver = 0; idReceiver < 2; idReceiver++) {
+                Coordinate receiver = rayData.receivers.get(idReceiver);
+                long before = bean.getThreadAllocatedBytes(threadId);
+                for (int i = 0; i < 1000; i++) {
+                    computeRays.computeRaysAtPosition(receiver, idReceiver, null, dataOut, null, context);
+                }
+                allocated[idReceiver] = Math.min(allocated[idReceiver], bean.getThreadAllocatedBytes(threadId) - before);
+            }
+        }
+        assertEquals(8000, pathCount[0]);
+        // Only the receiver and source point setup allocates, a PropagationPath alone is more than 1 kB
+        for (int idReceiver = 0; idReceiver < 2; idReceiver++) {
+            long perCall = allocated[idReceiver] / 1000;
+            assertTrue("The receiver " + idReceiver + " allocated " + perCall + " bytes per call", perCall < 512);
+        }
+        // The path allocates nothing, whatever the number of crossed triangles
+        long delta = Math.abs(allocated[1] - allocated[0]) / 1000;
+        assertTrue("The far receiver allocated " + delta + " more bytes per pair", delta < 8);
+    }
+
     @Test
     public void testVerticalSideDiffractionRaysOutOfDomain() throws LayerDelaunayError, ParseException  {
 
@@ -417,6 +960,23 @@ public class TestComputeRays {
         // 1 over the building / 1 left side
         assertEquals(2, prop.size());
 
+        // The public call records its statistics, including the walks of the diffraction paths
+        PathFinderStatistics statistics = computeRays.getStatistics();
+        assertEquals(1, statistics.getCounter(PathFinderStatistics.Counter.VERTICAL_DIFFRACTION_PATHS));
+        assertEquals(1, statistics.getCounter(PathFinderStatistics.Counter.HORIZONTAL_DIFFRACTION_PATHS));
+        assertTrue(statistics.getCounter(PathFinderStatistics.Counter.OBSTRUCTION_TESTS) > 1);
+        assertTrue(statistics.getCounter(PathFinderStatistics.Counter.WALKED_TRIANGLES) > 0);
+
+        // The caller's context receives the statistics instead
+        ComputeRays.WorkerContext context = new ComputeRays.WorkerContext();
+        assertEquals(2, computeRays.directPath(p2, p1, true, true, context).size());
+        for (PathFinderStatistics.Counter counter : PathFinderStatistics.Counter.values()) {
+            assertEquals(counter.name(), statistics.getCounter(counter),
+                    context.getStatistics().getCounter(counter));
+            assertEquals(counter.name(), statistics.getCounter(counter),
+                    computeRays.getStatistics().getCounter(counter));
+        }
+
     }
 
     /**
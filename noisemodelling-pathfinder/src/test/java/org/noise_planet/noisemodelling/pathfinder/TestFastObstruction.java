@@ -38,12 +38,19 @@ import org.junit.Test;
 import org.locationtech.jts.algorithm.RectangleLineIntersector;
 import org.locationtech.jts.geom.*;
 import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.index.strtree.STRtree;
 import org.locationtech.jts.io.WKTReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 public class TestFastObstruction extends TestCase {
+	private static final Logger LOGGER = LoggerFactory.getLogger(TestFastObstruction.class);
 
 	static boolean isBarelyEqual(double v1, double v2) {
 		return Math.abs(v1 - v2) < 1e-7;
@@ -229,6 +236,463 @@ public class TestFastObstruction extends TestCase {
 
 	}
 
+	/**
+	 * Neighbours rebuilt by CompactMesh from the triangle vertices must match the ones computed by MeshBuilder
+	 * @throws LayerDelaunayError
+	 */
+	@Test
+	public void testCompactMeshNeighbors() throws LayerDelaunayError {
+		GeometryFactory factory = new GeometryFactory();
+		Coordinate[] building1Coords = { new Coordinate(15., 5.,0.),
+				new Coordinate(30., 5.,0.), new Coordinate(30., 30.,0.),
+				new Coordinate(15., 30.,0.), new Coordinate(15., 5.,0.) };
+		Polygon building1 = factory.createPolygon(factory.createLinearRing(building1Coords));
+		MeshBuilder mesh = new MeshBuilder();
+		mesh.addGeometry(building1, 5);
+		mesh.finishPolygonFeeding(new Envelope(new Coordinate(0., 0.,0.),
+				new Coordinate(45., 45.,0.)));
+		CompactMesh computed = CompactMesh.fromLists(mesh.getTriangles(), null, mesh.getVertices());
+		CompactMesh provided = CompactMesh.fromLists(mesh.getTriangles(), mesh.getTriNeighbors(), mesh.getVertices());
+		assertEquals(mesh.getTriangles().size(), computed.getTriangleCount());
+		assertEquals(mesh.getVertices().size(), computed.getVertexCount());
+		for(int tri = 0; tri < computed.getTriangleCount(); tri++) {
+			assertEquals(mesh.getTriangles().get(tri).getAttribute(), computed.getAttribute(tri));
+			for(int side = 0; side < 3; side++) {
+				assertEquals(provided.getNeighbor(tri, side), computed.getNeighbor(tri, side));
+			}
+		}
+		FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), computed);
+		assertTrue(manager.isFreeField(new Coordinate(5, 20, 5.5), new Coordinate(40, 20, 5.5)));
+		assertFalse(manager.isFreeField(new Coordinate(5, 20, 1), new Coordinate(40, 20, 9)));
+	}
+
+	/**
+	 * Compare the bucket grid point location with a STRtree lookup of the triangle bounding boxes
+	 * @throws LayerDelaunayError
+	 */
+	@Test
+	public void testTriangleLocator() throws LayerDelaunayError {
+		GeometryFactory factory = new GeometryFactory();
+		MeshBuilder mesh = new MeshBuilder();
+		for(int x = 0; x < 20; x++) {
+			for(int y = 0; y < 20; y++) {
+				mesh.addGeometry(factory.toGeometry(new Envelope(x * 50 + 10, x * 50 + 35, y * 50 + 10, y * 50 + 25)), 10);
+			}
+		}
+		mesh.finishPolygonFeeding(new Envelope(0, 1000, 0, 1000));
+		CompactMesh compactMesh = CompactMesh.fromLists(mesh.getTriangles(), mesh.getTriNeighbors(), mesh.getVertices());
+		TriangleLocator locator = new TriangleLocator(compactMesh);
+		STRtree triIndex = new STRtree();
+		for (int triId = 0; triId < compactMesh.getTriangleCount(); triId++) {
+			Envelope env = new Envelope();
+			for(int corner = 0; corner < 3; corner++) {
+				int v = compactMesh.getVertexIndex(triId, corner);
+				env.expandToInclude(compactMesh.getX(v), compactMesh.getY(v));
+			}
+			triIndex.insert(env, triId);
+		}
+		Random random = new Random(42);
+		int nbQueries = 50000;
+		double[] points = new double[nbQueries * 2];
+		for(int i = 0; i < points.length; i++) {
+			// Some points are outside of the mesh
+			points[i] = random.nextDouble() * 1004 - 2;
+		}
+		int[] expected = new int[nbQueries];
+		for(int i = 0; i < nbQueries; i++) {
+			Envelope ptEnv = new Envelope(points[i * 2], points[i * 2], points[i * 2 + 1], points[i * 2 + 1]);
+			ptEnv.expandBy(1);
+			double minError = Double.MAX_VALUE;
+			expected[i] = -1;
+			for(Object triId : triIndex.query(ptEnv)) {
+				double err = compactMesh.getBarycentricError((Integer) triId, points[i * 2], points[i * 2 + 1]);
+				if(err < minError) {
+					minError = err;
+					expected[i] = (Integer) triId;
+				}
+			}
+		}
+		int[] got = new int[nbQueries];
+		for(int i = 0; i < nbQueries; i++) {
+			got[i] = locator.locate(points[i * 2], points[i * 2 + 1]);
+		}
+		for(int i = 0; i < nbQueries; i++) {
+			if(expected[i] == -1) {
+				assertEquals(-1, got[i]);
+			} else {
+				// Points on triangle sides may be located in any of the neighbors triangles
+				assertEquals(compactMesh.getBarycentricError(expected[i], points[i * 2], points[i * 2 + 1]),
+						compactMesh.getBarycentricError(got[i], points[i * 2], points[i * 2 + 1]), 0);
+			}
+		}
+	}
+
+	/**
+	 * Long thin triangles must only be registered in the buckets they cross
+	 */
+	@Test
+	public void testTriangleLocatorSlivers() {
+		// Strips of 1000 m x 2 m rotated by 45 degrees
+		List<Coordinate> vertices = new ArrayList<>();
+		List<Triangle> triangles = new ArrayList<>();
+		List<Triangle> neighbors = new ArrayList<>();
+		int stripCount = 500;
+		for(int strip = 0; strip <= stripCount; strip++) {
+			for(double x : new double[] {0, 1000}) {
+				double y = strip * 2;
+				vertices.add(new Coordinate((x - y) / Math.sqrt(2), (x + y) / Math.sqrt(2)));
+			}
+			if(strip > 0) {
+				int a = (strip - 1) * 2;
+				triangles.add(new Triangle(a, a + 1, a + 3, 0));
+				triangles.add(new Triangle(a, a + 3, a + 2, 0));
+				neighbors.add(new Triangle(-1, -1, -1));
+				neighbors.add(new Triangle(-1, -1, -1));
+			}
+		}
+		CompactMesh compactMesh = CompactMesh.fromLists(triangles, neighbors, vertices);
+		TriangleLocator locator = new TriangleLocator(compactMesh);
+		int sideCells = (int) Math.ceil(Math.sqrt(locator.getCellCount()));
+		assertTrue(locator.getCellEntryCount() < compactMesh.getTriangleCount() * 2 * (sideCells + 2));
+		Random random = new Random(42);
+		for(int i = 0; i < 10000; i++) {
+			double along = random.nextDouble() * 1000;
+			double across = random.nextDouble() * stripCount * 2;
+			double x = (along - across) / Math.sqrt(2);
+			double y = (along + across) / Math.sqrt(2);
+			int triangle = locator.locate(x, y);
+			assertTrue(triangle >= 0);
+			assertEquals(0, compactMesh.getBarycentricError(triangle, x, y), 1e-9);
+		}
+	}
+
+	/**
+	 * The primitive walk context must give the same path than the list output, and free field test must not allocate
+	 * @throws LayerDelaunayError
+	 */
+	@Test
+	public void testWalkContext() throws LayerDelaunayError {
+		GeometryFactory factory = new GeometryFactory();
+		MeshBuilder mesh = new MeshBuilder();
+		for(int x = 0; x < 5; x++) {
+			mesh.addGeometry(factory.toGeometry(new Envelope(x * 50 + 10, x * 50 + 35, 10, 25)), 10);
+		}
+		mesh.finishPolygonFeeding(new Envelope(0, 260, 0, 40));
+		FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+				mesh.getTriNeighbors(), mesh.getVertices());
+		Coordinate p1 = new Coordinate(2, 17, 4);
+		Coordinate p2 = new Coordinate(255, 19, 4);
+		List<TriIdWithIntersection> path = new ArrayList<>();
+		assertTrue(manager.computePropagationPath(p1, p2, false, path, true));
+		FastObstructionTest.WalkContext context = new FastObstructionTest.WalkContext();
+		for(int run = 0; run < 2; run++) {
+			assertTrue(manager.computePropagationPath(p1, p2, false, context, true, true));
+			assertEquals(path.size(), context.size());
+			for (int i = 0; i < path.size(); i++) {
+				TriIdWithIntersection expected = path.get(i);
+				assertEquals(expected.getTriID(), context.getTriangle(i));
+				assertEquals(expected.x, context.getX(i), FastObstructionTest.epsilon);
+				assertEquals(expected.y, context.getY(i), FastObstructionTest.epsilon);
+				assertEquals(expected.z, context.getZ(i), FastObstructionTest.epsilon);
+				assertEquals(expected.isIntersectionOnBuilding(), context.isOnBuilding(i));
+				assertEquals(expected.isIntersectionOnTopography(), context.isOnTopography(i));
+				assertEquals(expected.getBuildingId(), context.getBuildingId(i));
+			}
+		}
+		assertTrue(path.size() > 10);
+		// The other methods do not overwrite the thread context
+		FastObstructionTest.WalkContext threadContext = FastObstructionTest.getWalkContext();
+		assertTrue(manager.computePropagationPath(p1, p2, false, threadContext, true, true));
+		assertTrue(manager.isFreeField(new Coordinate(2, 17, 11), new Coordinate(120, 19, 11)));
+		assertTrue(manager.computePropagationPath(p1, new Coordinate(120, 19, 4), false, new ArrayList<>(), true));
+		assertEquals(path.size(), threadContext.size());
+		assertEquals(path.get(path.size() - 1).getTriID(), threadContext.getTriangle(path.size() - 1));
+		assertFalse(manager.isFreeField(p1, p2));
+		assertTrue(manager.isFreeField(new Coordinate(2, 17, 11), new Coordinate(255, 19, 11)));
+		java.lang.management.ThreadMXBean threadMXBean = java.lang.management.ManagementFactory.getThreadMXBean();
+		if(threadMXBean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadMXBean;
+			if(bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+				Coordinate p3 = new Coordinate(2, 17, 11);
+				Coordinate p4 = new Coordinate(255, 19, 11);
+				// warm up
+				for(int i = 0; i < 10000; i++) {
+					manager.isFreeField(p3, p4);
+					manager.isFreeField(p1, p2);
+				}
+				long threadId = Thread.currentThread().getId();
+				long before = bean.getThreadAllocatedBytes(threadId);
+				for(int i = 0; i < 1000; i++) {
+					manager.isFreeField(p3, p4);
+					manager.isFreeField(p1, p2);
+				}
+				long allocated = bean.getThreadAllocatedBytes(threadId) - before;
+				// getThreadAllocatedBytes itself may allocate a few bytes
+				assertTrue("isFreeField allocated " + allocated + " bytes", allocated < 1000);
+			}
+		}
+	}
+
+	@Test
+	public void testMeshRefinement() throws LayerDelaunayError {
+		GeometryFactory factory = new GeometryFactory();
+		MeshBuilder mesh = new MeshBuilder();
+		for(int x = 0; x < 5; x++) {
+			mesh.addGeometry(factory.toGeometry(new Envelope(x * 50 + 10, x * 50 + 35, 10, 25)), 10);
+		}
+		Random random = new Random(1);
+		for(int i = 0; i < 50; i++) {
+			mesh.addTopographicPoint(new Coordinate(random.nextDouble() * 260, random.nextDouble() * 40,
+					random.nextDouble() * 5));
+		}
+		final double maximumArea = 5;
+		mesh.setMaximumArea(maximumArea);
+		Envelope envelope = new Envelope(0, 260, 0, 40);
+		mesh.finishPolygonFeeding(envelope);
+		CompactMesh compactMesh = CompactMesh.fromLists(mesh.getTriangles(), mesh.getTriNeighbors(),
+				mesh.getVertices());
+		double totalArea = 0;
+		for(int triangle = 0; triangle < compactMesh.getTriangleCount(); triangle++) {
+			double area = Math.abs(org.locationtech.jts.geom.Triangle.area(
+					compactMesh.getVertex(compactMesh.getVertexIndex(triangle, 0)),
+					compactMesh.getVertex(compactMesh.getVertexIndex(triangle, 1)),
+					compactMesh.getVertex(compactMesh.getVertexIndex(triangle, 2))));
+			totalArea += area;
+			if(compactMesh.getAttribute(triangle) == 0) {
+				assertTrue(area <= maximumArea);
+			}
+			Coordinate circumCentre = org.locationtech.jts.geom.Triangle.circumcentre(
+					compactMesh.getVertex(compactMesh.getVertexIndex(triangle, 0)),
+					compactMesh.getVertex(compactMesh.getVertexIndex(triangle, 1)),
+					compactMesh.getVertex(compactMesh.getVertexIndex(triangle, 2)));
+			double radius = circumCentre.distance(compactMesh.getVertex(compactMesh.getVertexIndex(triangle, 0)));
+			for(int side = 0; side < 3; side++) {
+				int neighbor = compactMesh.getNeighbor(triangle, side);
+				if(neighbor >= 0) {
+					// Neighbors are symmetric
+					boolean found = false;
+					for(int neighborSide = 0; neighborSide < 3; neighborSide++) {
+						found = found || compactMesh.getNeighbor(neighbor, neighborSide) == triangle;
+					}
+					assertTrue(found);
+					if(compactMesh.getAttribute(triangle) == 0 && compactMesh.getAttribute(neighbor) == 0) {
+						// Delaunay property between ground triangles
+						for(int corner = 0; corner < 3; corner++) {
+							Coordinate vertex = compactMesh.getVertex(compactMesh.getVertexIndex(neighbor, corner));
+							assertTrue(circumCentre.distance(vertex) >= radius * (1 - 1e-6));
+						}
+					}
+				}
+			}
+		}
+		assertEquals(envelope.getArea(), totalArea, 1e-6);
+		assertTrue(compactMesh.getTriangleCount() > envelope.getArea() / maximumArea);
+	}
+
+	@Test
+	public void testMeshCacheFile() throws LayerDelaunayError, IOException {
+		GeometryFactory factory = new GeometryFactory();
+		MeshBuilder mesh = new MeshBuilder();
+		for(int x = 0; x < 5; x++) {
+			MeshBuilder.PolygonWithHeight poly = mesh.addGeometry(factory.toGeometry(
+					new Envelope(x * 50 + 10, x * 50 + 35, 10, 25)), 10 + x, new double[] {0.1, 0.2, 0.3});
+			poly.setPrimaryKey(x + 100);
+		}
+		Random random = new Random(1);
+		for(int i = 0; i < 50; i++) {
+			mesh.addTopographicPoint(new Coordinate(random.nextDouble() * 260, random.nextDouble() * 40,
+					random.nextDouble() * 5));
+		}
+		Envelope envelope = new Envelope(0, 260, 0, 40);
+		String digest = mesh.computeInputDigest(envelope);
+		assertEquals(digest, mesh.computeInputDigest(envelope));
+		assertFalse(digest.equals(mesh.computeInputDigest(new Envelope(0, 260, 0, 41))));
+		mesh.setParallelMerge(false);
+		assertFalse(digest.equals(mesh.computeInputDigest(envelope)));
+		mesh.setParallelMerge(true);
+		// The digest does not depend on the insertion order of the topographic points
+		MeshBuilder reversed = new MeshBuilder();
+		for(MeshBuilder.PolygonWithHeight poly : mesh.getPolygonWithHeight()) {
+			reversed.addGeometry(poly.getGeometry(), poly.getHeight(), new double[] {0.1, 0.2, 0.3})
+					.setPrimaryKey(poly.getPrimaryKey());
+		}
+		List<Coordinate> topoPoints = new ArrayList<>();
+		random = new Random(1);
+		for(int i = 0; i < 50; i++) {
+			topoPoints.add(new Coordinate(random.nextDouble() * 260, random.nextDouble() * 40,
+					random.nextDouble() * 5));
+		}
+		for(int i = topoPoints.size() - 1; i >= 0; i--) {
+			reversed.addTopographicPoint(topoPoints.get(i));
+		}
+		assertEquals(digest, reversed.computeInputDigest(envelope));
+		mesh.finishPolygonFeeding(envelope);
+		CompactMesh compactMesh = CompactMesh.fromLists(mesh.getTriangles(), mesh.getTriNeighbors(),
+				mesh.getVertices());
+		File file = File.createTempFile("testMeshCacheFile", MeshCacheFile.FILE_EXTENSION);
+		try {
+			MeshCacheFile.write(file, mesh.getPolygonWithHeight(), compactMesh);
+			FastObstructionTest expected = new FastObstructionTest(mesh.getPolygonWithHeight(), compactMesh);
+			// Small chunks to read the values across the mapped chunks
+			for(int chunkSize : new int[] {MeshCacheFile.DEFAULT_CHUNK_SIZE, 13}) {
+				FastObstructionTest loaded = MeshCacheFile.read(file, chunkSize);
+				CompactMesh loadedMesh = loaded.getMesh();
+				assertEquals(compactMesh.getVertexCount(), loadedMesh.getVertexCount());
+				assertEquals(compactMesh.getTriangleCount(), loadedMesh.getTriangleCount());
+				for(int vertex = 0; vertex < compactMesh.getVertexCount(); vertex++) {
+					assertEquals(compactMesh.getVertex(vertex), loadedMesh.getVertex(vertex));
+					assertEquals(compactMesh.getZ(vertex), loadedMesh.getZ(vertex), 0);
+				}
+				for(int triangle = 0; triangle < compactMesh.getTriangleCount(); triangle++) {
+					assertEquals(compactMesh.getAttribute(triangle), loadedMesh.getAttribute(triangle));
+					for(int i = 0; i < 3; i++) {
+						assertEquals(compactMesh.getVertexIndex(triangle, i), loadedMesh.getVertexIndex(triangle, i));
+						assertEquals(compactMesh.getNeighbor(triangle, i), loadedMesh.getNeighbor(triangle, i));
+					}
+				}
+				assertEquals(expected.getBuildingCount(), loaded.getBuildingCount());
+				for(int i = 0; i < expected.getPolygonWithHeight().size(); i++) {
+					MeshBuilder.PolygonWithHeight expectedPoly = expected.getPolygonWithHeight().get(i);
+					MeshBuilder.PolygonWithHeight loadedPoly = loaded.getPolygonWithHeight().get(i);
+					assertTrue(expectedPoly.getGeometry().equalsExact(loadedPoly.getGeometry()));
+					assertEquals(expectedPoly.getHeight(), loadedPoly.getHeight(), 0);
+					assertEquals(expectedPoly.getPrimaryKey(), loadedPoly.getPrimaryKey());
+					assertEquals(expectedPoly.getAlpha(), loadedPoly.getAlpha());
+				}
+				Coordinate p1 = new Coordinate(2, 17, 4);
+				Coordinate p2 = new Coordinate(255, 19, 4);
+				assertEquals(expected.isFreeField(p1, p2), loaded.isFreeField(p1, p2));
+				assertEquals(expected.getHeightAtPosition(p1), loaded.getHeightAtPosition(p1), 0);
+			}
+		} finally {
+			assertTrue(file.delete());
+		}
+	}
+
+	@Test
+	public void testParallelMergeBuildings() {
+		GeometryFactory factory = new GeometryFactory();
+		Envelope envelope = new Envelope(0, 1000, 0, 1000);
+		MeshBuilder sequential = new MeshBuilder();
+		sequential.setParallelMerge(false);
+		MeshBuilder parallel = new MeshBuilder();
+		Random random = new Random(1);
+		for(int i = 0; i < MeshBuilder.PARALLEL_MERGE_MINIMUM_BUILDINGS + 500; i++) {
+			double x = random.nextDouble() * 1000;
+			double y = random.nextDouble() * 1000;
+			Geometry building = factory.toGeometry(new Envelope(x, x + 5 + random.nextDouble() * 20, y,
+					y + 5 + random.nextDouble() * 20));
+			double height = 5 + random.nextInt(20);
+			double[] alpha = new double[] {random.nextDouble(), 0.2, 0.3};
+			sequential.addGeometry(building, height, alpha).setPrimaryKey(i);
+			parallel.addGeometry(building, height, alpha).setPrimaryKey(i);
+		}
+		Geometry boundingBox = factory.toGeometry(envelope);
+		sequential.mergeBuildings(boundingBox);
+		parallel.mergeBuildings(boundingBox);
+		List<MeshBuilder.PolygonWithHeight> expected = sequential.getPolygonWithHeight();
+		List<MeshBuilder.PolygonWithHeight> merged = parallel.getPolygonWithHeight();
+		assertEquals(expected.size(), merged.size());
+		assertTrue(expected.size() < MeshBuilder.PARALLEL_MERGE_MINIMUM_BUILDINGS);
+		// Same building at the same index, so the building identifiers of both meshes are the same
+		for(int i = 0; i < expected.size(); i++) {
+			MeshBuilder.PolygonWithHeight expectedPoly = expected.get(i);
+			MeshBuilder.PolygonWithHeight mergedPoly = merged.get(i);
+			assertTrue(mergedPoly.getGeometry().equalsTopo(expectedPoly.getGeometry()));
+			assertEquals(expectedPoly.getPrimaryKey(), mergedPoly.getPrimaryKey());
+			assertEquals(expectedPoly.getHeight(), mergedPoly.getHeight(), 0);
+			assertEquals(expectedPoly.getAlpha(), mergedPoly.getAlpha());
+		}
+		// Sorted by first input building
+		for(int i = 1; i < merged.size(); i++) {
+			assertTrue(merged.get(i - 1).getPrimaryKey() < merged.get(i).getPrimaryKey());
+		}
+	}
+
+	/**
+	 * Behaviour change of mergeBuildings: the merged building used the attributes of the first building returned by
+	 * the R-tree query (building 102 here) and the order of the union result (the lone building 101 first).
+	 */
+	@Test
+	public void testMergeBuildingsFirstInputBuilding() {
+		GeometryFactory factory = new GeometryFactory();
+		MeshBuilder mesh = new MeshBuilder();
+		mesh.addGeometry(factory.toGeometry(new Envelope(20, 40, 20, 40)), 10).setPrimaryKey(100);
+		mesh.addGeometry(factory.toGeometry(new Envelope(60, 80, 10, 30)), 12).setPrimaryKey(101);
+		mesh.addGeometry(factory.toGeometry(new Envelope(30, 50, 10, 30)), 8).setPrimaryKey(102);
+		mesh.mergeBuildings(factory.toGeometry(new Envelope(0, 100, 0, 50)));
+		List<MeshBuilder.PolygonWithHeight> merged = mesh.getPolygonWithHeight();
+		assertEquals(2, merged.size());
+		assertEquals(100, merged.get(0).getPrimaryKey());
+		assertEquals(10, merged.get(0).getHeight(), 0);
+		assertEquals(new Envelope(20, 50, 10, 40), merged.get(0).getGeometry().getEnvelopeInternal());
+		assertEquals(101, merged.get(1).getPrimaryKey());
+		assertEquals(12, merged.get(1).getHeight(), 0);
+	}
+
+	@Test
+	public void testTerrainSimplifier() throws LayerDelaunayError {
+		GeometryFactory factory = new GeometryFactory();
+		Envelope envelope = new Envelope(-1, 401, -1, 401);
+		Random random = new Random(1);
+		List<Coordinate> points = new ArrayList<>();
+		for(int y = 0; y <= 400; y += 2) {
+			for(int x = 0; x <= 400; x += 2) {
+				double px = Math.min(400, x + random.nextDouble() * 0.2);
+				double py = Math.min(400, y + random.nextDouble() * 0.2);
+				points.add(new Coordinate(px, py, 10 * Math.sin(px / 80) * Math.cos(py / 120) +
+						random.nextDouble() * 0.1));
+			}
+		}
+		final double maximumError = 0.5;
+		TerrainSimplifier simplifier = new TerrainSimplifier(maximumError);
+		List<Coordinate> keptPoints = simplifier.simplify(points);
+		assertEquals(points.size(), simplifier.getInputPointCount());
+		assertEquals(keptPoints.size(), simplifier.getOutputPointCount());
+		assertTrue(keptPoints.size() < points.size() / 10);
+		// The walk crosses less triangles
+		long[] visitedTriangles = new long[2];
+		for(int test = 0; test < 2; test++) {
+			MeshBuilder mesh = new MeshBuilder();
+			for(int x = 50; x < 400; x += 100) {
+				for(int y = 50; y < 400; y += 100) {
+					mesh.addGeometry(factory.toGeometry(new Envelope(x, x + 30, y, y + 12)), 10);
+				}
+			}
+			if(test == 1) {
+				mesh.setTerrainSimplifier(simplifier);
+			}
+			for(Coordinate point : points) {
+				mesh.addTopographicPoint(point);
+			}
+			mesh.finishPolygonFeeding(envelope);
+			FastObstructionTest obstructionTest = new FastObstructionTest(mesh.getPolygonWithHeight(),
+					mesh.getTriangles(), mesh.getTriNeighbors(), mesh.getVertices());
+			FastObstructionTest.WalkContext walkContext = new FastObstructionTest.WalkContext();
+			Random pathRandom = new Random(2);
+			for(int path = 0; path < 100; path++) {
+				Coordinate p1 = new Coordinate(pathRandom.nextDouble() * 400, pathRandom.nextDouble() * 400, 15);
+				Coordinate p2 = new Coordinate(pathRandom.nextDouble() * 400, pathRandom.nextDouble() * 400, 15);
+				obstructionTest.computePropagationPath(p1, p2, false, walkContext, true, true);
+			}
+			visitedTriangles[test] = walkContext.getVisitedTriangleCount();
+			if(test == 1) {
+				// The removed points are within the maximum error of the mesh, including near the buildings and the
+				// envelope
+				assertTrue(simplifier.getOutputPointCount() >= keptPoints.size());
+				assertTrue(simplifier.getOutputPointCount() < points.size() / 10);
+				for(Coordinate point : points) {
+					assertEquals(point.z, obstructionTest.getHeightAtPosition(point), maximumError + 1e-6);
+				}
+			}
+		}
+		LOGGER.info(String.format("DEM simplified from %d to %d points in %d passes and %d reinsertion passes, walk " +
+						"length from %d to %d triangles", points.size(), simplifier.getOutputPointCount(),
+				simplifier.getPassCount(), simplifier.getReinsertionPassCount(), visitedTriangles[0],
+				visitedTriangles[1]));
+		assertTrue(visitedTriangles[1] < visitedTriangles[0] / 2);
+	}
+
 	@Test
 	public void testIntersectionRayEnvelope() {
 		Envelope env = new Envelope(new Coordinate(2, 3), new Coordinate(6, 6));
@@ -38,10 +38,12 @@ import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
 import org. locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LineSegment;
+import org.locationtech.jts.geom.LinearRing;
 
 import junit.framework.TestCase;
 import org.locationtech.jts.io.ParseException;
 import org.locationtech.jts.io.WKTReader;
+import org.noise_planet.noisemodelling.pathfinder.utils.IntList;
 
 import java.util.*;
 
@@ -366,4 +368,279 @@ public class TestWallReflection extends TestCase {
         assertEquals(PointPath.POINT_TYPE.RECV, pts.get(3).type);
         assertEquals(0, receiver.distance(pts.get(3).coordinate), 1e-6);
     }
+
+    /**
+     * Walls reachable from the origin, walked as getLimitsInRange did before the wall index
+     */
+    private static void referenceWalk(FastObstructionTest manager, double maxDist, Coordinate p1, IntList walls) {
+        CompactMesh mesh = manager.getMesh();
+        int curTri = manager.getTriangleIdByCoordinate(p1);
+        int p1Building = mesh.getAttribute(curTri);
+        short firstSide = 0;
+        HashSet<Integer> navigationHistory = new HashSet<Integer>();
+        Stack<Integer> navigationNodes = new Stack<Integer>();
+        Stack<Short> navigationSide = new Stack<Short>();
+        while (curTri != -1) {
+            if(firstSide == 0) {
+                navigationHistory.add(curTri);
+            }
+            int nextTri = -1;
+            for (short sideId = firstSide; sideId < 3; sideId++) {
+                int neighbor = mesh.getNeighbor(curTri, sideId);
+                Coordinate a = mesh.getVertex(mesh.getVertexIndex(curTri, (sideId + 1) % 3));
+                Coordinate b = mesh.getVertex(mesh.getVertexIndex(curTri, (sideId + 2) % 3));
+                if (new LineSegment(a, b).distance(p1) <= maxDist && neighbor != -1) {
+                    int wallBuildingId = mesh.getAttribute(neighbor);
+                    int wallId = manager.getWallIndex().getWall(curTri, sideId);
+                    if (wallId != -1) {
+                        walls.add(wallId);
+                    }
+                    if((wallBuildingId == 0 || wallBuildingId == p1Building) &&
+                            !navigationHistory.contains(neighbor)) {
+                        navigationNodes.add(curTri);
+                        navigationSide.add(sideId);
+                        firstSide = 0;
+                        nextTri = neighbor;
+                        break;
+                    }
+                }
+            }
+            if (nextTri == -1 && !navigationNodes.empty()) {
+                nextTri = navigationNodes.pop();
+                firstSide = (short) (navigationSide.pop() + 1);
+            }
+            curTri = nextTri;
+        }
+    }
+
+    /**
+     * Compare the walls found with the precomputed wall index with the walls found by walking the triangulation
+     */
+    @Test
+    public void testWallIndex() throws LayerDelaunayError {
+        GeometryFactory factory = new GeometryFactory();
+        MeshBuilder mesh = new MeshBuilder();
+        Random random = new Random(7);
+        for(int x = 0; x < 10; x++) {
+            for(int y = 0; y < 10; y++) {
+                // Buildings with random sizes, one of them enclose a courtyard
+                double w = 10 + random.nextDouble() * 25;
+                double h = 10 + random.nextDouble() * 25;
+                mesh.addGeometry(factory.toGeometry(new Envelope(x * 50 + 5, x * 50 + 5 + w, y * 50 + 5,
+                        y * 50 + 5 + h)), 10);
+            }
+        }
+        mesh.addGeometry(factory.createPolygon(factory.createLinearRing(new Coordinate[]{new Coordinate(510, 10),
+                new Coordinate(580, 10), new Coordinate(580, 80), new Coordinate(510, 80), new Coordinate(510, 10)}),
+                new LinearRing[]{factory.createLinearRing(new Coordinate[]{
+                        new Coordinate(530, 30), new Coordinate(560, 30), new Coordinate(560, 60),
+                        new Coordinate(530, 60), new Coordinate(530, 30)})}), 10);
+        mesh.finishPolygonFeeding(new Envelope(0, 600, 0, 500));
+        FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+                mesh.getTriNeighbors(), mesh.getVertices());
+        IntList indexed = new IntList();
+        IntList walked = new IntList();
+        List<Coordinate> points = new ArrayList<>();
+        // Receiver in the courtyard
+        points.add(new Coordinate(545, 45));
+        while(points.size() < 200) {
+            Coordinate p = new Coordinate(random.nextDouble() * 600, random.nextDouble() * 500);
+            int tri = manager.getTriangleIdByCoordinate(p);
+            if(tri >= 0 && manager.getMesh().getAttribute(tri) == 0) {
+                points.add(p);
+            }
+        }
+        for(Coordinate p : points) {
+            for(double maxDist : new double[] {20, 50, 150}) {
+                indexed.clear();
+                walked.clear();
+                manager.getWallIdsInRange(maxDist, p, false, indexed);
+                referenceWalk(manager, maxDist, p, walked);
+                // Walls in range facing the same open space area
+                WallIndex wallIndex = manager.getWallIndex();
+                int area = wallIndex.getArea(manager.getTriangleIdByCoordinate(p));
+                IntList expected = new IntList();
+                for(int wall = 0; wall < wallIndex.getWallCount(); wall++) {
+                    if(wallIndex.getArea(wallIndex.getTriangle(wall)) == area && FastObstructionTest.distancePointSegment(
+                            p.x, p.y, wallIndex.getX0(wall), wallIndex.getY0(wall), wallIndex.getX1(wall),
+                            wallIndex.getY1(wall)) <= maxDist) {
+                        expected.add(wall);
+                    }
+                }
+                assertArrayEquals(expected.toArray(), indexed.toArray());
+                // The walk done before the wall index found a subset of these walls
+                int[] sortedIndexed = indexed.toArray();
+                for(int i = 0; i < walked.size(); i++) {
+                    assertTrue(Arrays.binarySearch(sortedIndexed, walked.get(i)) >= 0);
+                }
+            }
+        }
+        // Courtyard walls are not visible from outside
+        indexed.clear();
+        manager.getWallIdsInRange(150, new Coordinate(545, 5), false, indexed);
+        for(int i = 0; i < indexed.size(); i++) {
+            FastObstructionTest.Wall wall = manager.getWall(indexed.get(i));
+            assertFalse(wall.p0.x > 529 && wall.p0.x < 561 && wall.p0.y > 29 && wall.p0.y < 61 &&
+                    wall.p1.x > 529 && wall.p1.x < 561 && wall.p1.y > 29 && wall.p1.y < 61);
+        }
+        indexed.clear();
+        manager.getWallIdsInRange(150, new Coordinate(545, 45), false, indexed);
+        assertEquals(4, indexed.size());
+    }
+
+    /**
+     * The source wall cache must give the same walls than the wall index
+     */
+    @Test
+    public void testSourceWallCache() throws LayerDelaunayError {
+        GeometryFactory factory = new GeometryFactory();
+        MeshBuilder mesh = new MeshBuilder();
+        for(int x = 0; x < 8; x++) {
+            for(int y = 0; y < 8; y++) {
+                mesh.addGeometry(factory.toGeometry(new Envelope(x * 40 + 5, x * 40 + 30, y * 40 + 5,
+                        y * 40 + 20)), 10);
+            }
+        }
+        mesh.finishPolygonFeeding(new Envelope(0, 320, 0, 320));
+        FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+                mesh.getTriNeighbors(), mesh.getVertices());
+        SourceWallCache cache = new SourceWallCache(64 * 1024, 5);
+        IntList expected = new IntList();
+        IntList got = new IntList();
+        // Road along x, sampled many times with small offsets as for line sources seen from several receivers
+        Random random = new Random(3);
+        for(int i = 0; i < 2000; i++) {
+            Coordinate source = new Coordinate(random.nextDouble() * 320, 35 + random.nextDouble() * 5, 0.05);
+            expected.clear();
+            got.clear();
+            manager.getWallIdsInRange(50, source, false, expected);
+            cache.getWallIdsInRange(manager, 50, source, got);
+            assertArrayEquals(expected.toArray(), got.toArray());
+        }
+        assertTrue(cache.getMemoryUsage() <= cache.getMaximumMemory());
+        assertEquals(2000, cache.getHitCount() + cache.getMissCount());
+        assertTrue(cache.getHitCount() > cache.getMissCount());
+        // The least recently used squares are evicted when the memory budget is exhausted
+        SourceWallCache smallCache = new SourceWallCache(4 * 1024, 5);
+        for(int i = 0; i < 2000; i++) {
+            Coordinate source = new Coordinate(random.nextDouble() * 320, 35 + random.nextDouble() * 5, 0.05);
+            got.clear();
+            smallCache.getWallIdsInRange(manager, 50, source, got);
+        }
+        assertTrue(smallCache.size() > 0);
+        assertTrue(smallCache.size() < smallCache.getMissCount());
+        assertTrue(smallCache.getMemoryUsage() <= smallCache.getMaximumMemory());
+        // Enabled by default
+        assertTrue(new PropagationProcessData(manager).getSourceWallCache().getMaximumMemory() > 0);
+        // Disabled cache
+        SourceWallCache disabled = new SourceWallCache(0, 5);
+        got.clear();
+        disabled.getWallIdsInRange(manager, 50, new Coordinate(100, 37), got);
+        assertEquals(0, disabled.size());
+        assertEquals(0, disabled.getMissCount());
+    }
+
+    /**
+     * The image receivers tree must give the same image receivers, in the same order, than the iterator
+     */
+    @Test
+    public void testMirrorReceiverTree() throws LayerDelaunayError {
+        GeometryFactory factory = new GeometryFactory();
+        MeshBuilder mesh = new MeshBuilder();
+        for(int x = 0; x < 4; x++) {
+            for(int y = 0; y < 4; y++) {
+                mesh.addGeometry(factory.toGeometry(new Envelope(x * 30 + 5, x * 30 + 20, y * 30 + 5,
+                        y * 30 + 15)), 10);
+            }
+        }
+        mesh.finishPolygonFeeding(new Envelope(0, 120, 0, 120));
+        FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+                mesh.getTriNeighbors(), mesh.getVertices());
+        Coordinate receiver = new Coordinate(25, 22, 4);
+        Coordinate source = new Coordinate(87, 53, 0.05);
+        List<FastObstructionTest.Wall> walls = manager.getLimitsInRange(50, receiver, false);
+        for(int order = 1; order <= 4; order++) {
+            LineSegment srcReceiver = new LineSegment(source, receiver);
+            Iterator<MirrorReceiverResult> expectedIt = new MirrorReceiverIterator.It(receiver, walls, srcReceiver,
+                    Integer.MAX_VALUE, order, 200).iterator();
+            Iterator<MirrorReceiverResult> it = new MirrorReceiverTree(receiver, walls, srcReceiver,
+                    Integer.MAX_VALUE, order, 200).iterator();
+            int count = 0;
+            while(expectedIt.hasNext()) {
+                assertTrue(it.hasNext());
+                MirrorReceiverResult expected = expectedIt.next();
+                MirrorReceiverResult got = it.next();
+                assertEquals(expected.getReceiverPos(), got.getReceiverPos());
+                assertEquals(expected.getWallId(), got.getWallId());
+                assertEquals(expected.getBuildingId(), got.getBuildingId());
+                MirrorReceiverResult expectedParent = expected.getParentMirror();
+                MirrorReceiverResult gotParent = got.getParentMirror();
+                while(expectedParent != null) {
+                    assertNotNull(gotParent);
+                    assertEquals(expectedParent.getWallId(), gotParent.getWallId());
+                    expectedParent = expectedParent.getParentMirror();
+                    gotParent = gotParent.getParentMirror();
+                }
+                assertNull(gotParent);
+                count++;
+            }
+            assertFalse(it.hasNext());
+            assertTrue(count > 0);
+        }
+    }
+
+    public void testReceiverImageTree() throws LayerDelaunayError {
+        GeometryFactory factory = new GeometryFactory();
+        MeshBuilder mesh = new MeshBuilder();
+        for(int x = 0; x < 4; x++) {
+            for(int y = 0; y < 4; y++) {
+                mesh.addGeometry(factory.toGeometry(new Envelope(x * 30 + 5, x * 30 + 20, y * 30 + 5,
+                        y * 30 + 15)), 10);
+            }
+        }
+        mesh.finishPolygonFeeding(new Envelope(0, 120, 0, 120));
+        FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+                mesh.getTriNeighbors(), mesh.getVertices());
+        Coordinate receiver = new Coordinate(25, 22, 4);
+        double maxSrcDist = 80;
+        List<FastObstructionTest.Wall> walls = manager.getLimitsInRange(maxSrcDist, receiver, false);
+        Coordinate[] sources = new Coordinate[] {new Coordinate(87, 53, 0.05), new Coordinate(2, 2, 0.05),
+                new Coordinate(55, 80, 0.05), new Coordinate(26, 25, 0.05)};
+        for(int order = 1; order <= 3; order++) {
+            ReceiverImageTree imageTree = new ReceiverImageTree(receiver, walls, order, maxSrcDist);
+            assertSameImages(receiver, walls, order, maxSrcDist, sources, imageTree);
+            assertTrue(imageTree.getNodeCount() > 0);
+            // The nodes above the maximum node count are not kept but the images are the same
+            int maxNodeCount = imageTree.getNodeCount() / 2;
+            ReceiverImageTree cappedTree = new ReceiverImageTree(receiver, walls, order, maxSrcDist, maxNodeCount);
+            assertSameImages(receiver, walls, order, maxSrcDist, sources, cappedTree);
+            assertTrue(cappedTree.getNodeCount() <= maxNodeCount);
+        }
+    }
+
+    private static void assertSameImages(Coordinate receiver, List<FastObstructionTest.Wall> walls, int order,
+                                         double maxSrcDist, Coordinate[] sources, ReceiverImageTree imageTree) {
+        for (Coordinate source : sources) {
+            Iterator<MirrorReceiverResult> expectedIt = new MirrorReceiverTree(receiver, walls,
+                    new LineSegment(source, receiver), Integer.MAX_VALUE, order, maxSrcDist).iterator();
+            Iterator<MirrorReceiverResult> it = imageTree.getImages(source).iterator();
+            while (expectedIt.hasNext()) {
+                assertTrue(it.hasNext());
+                MirrorReceiverResult expected = expectedIt.next();
+                MirrorReceiverResult got = it.next();
+                assertEquals(expected.getReceiverPos(), got.getReceiverPos());
+                assertEquals(expected.getWallId(), got.getWallId());
+                MirrorReceiverResult expectedParent = expected.getParentMirror();
+                MirrorReceiverResult gotParent = got.getParentMirror();
+                while (expectedParent != null) {
+                    assertNotNull(gotParent);
+                    assertEquals(expectedParent.getWallId(), gotParent.getWallId());
+                    expectedParent = expectedParent.getParentMirror();
+                    gotParent = gotParent.getParentMirror();
+                }
+                assertNull(gotParent);
+            }
+            assertFalse(it.hasNext());
+        }
+    }
 }
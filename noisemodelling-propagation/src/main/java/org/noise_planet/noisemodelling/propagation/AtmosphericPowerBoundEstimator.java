@@ -0,0 +1,60 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.propagation;
+
+import org.noise_planet.noisemodelling.pathfinder.PowerBoundEstimator;
+
+/**
+ * Power bound with the atmospheric absorption of {@link PropagationProcessPathData#getAlpha_atmo()} over the direct
+ * source-receiver distance. Propagation paths are never shorter than the direct distance, so the bound is kept.
+ */
+public class AtmosphericPowerBoundEstimator extends PowerBoundEstimator {
+    private final PropagationProcessPathData pathData;
+
+    /**
+     * @param pathData Propagation parameters used to compute the propagation paths attenuation
+     */
+    public AtmosphericPowerBoundEstimator(PropagationProcessPathData pathData) {
+        this.pathData = pathData;
+    }
+
+    @Override
+    protected double getAttenuation(double distance, int frequency) {
+        double[] alphaAtmo = pathData.getAlpha_atmo();
+        if (alphaAtmo == null || frequency >= alphaAtmo.length) {
+            return 0;
+        }
+        return EvaluateAttenuationCnossos.getAAtm(distance, alphaAtmo[frequency]);
+    }
+}
@@ -54,7 +54,7 @@ import java.util.concurrent.atomic.AtomicLong;
  * @author Nicolas Fortin
  * @author Pierre Aumond
  */
-public class ComputeRaysOut implements IComputeRaysOut {
+public class ComputeRaysOut implements IComputeRaysOut, IPathFinderStatisticsListener {
     public ConcurrentLinkedDeque<VerticeSL> receiversAttenuationLevels = new ConcurrentLinkedDeque<>();
     public List<PropagationPath> propagationPaths = Collections.synchronizedList(new ArrayList<PropagationPath>());
 
@@ -89,8 +89,17 @@ public class ComputeRaysOut implements IComputeRaysOut {
      * @return rose index
      */
     public static int getRoseIndex(Coordinate receiver, Coordinate source) {
+        return getRoseIndex(Angle.angle(receiver, source));
+    }
+
+    /**
+     * get the rose index to search the mean occurrence p of favourable conditions in the direction of the path (S,R):
+     * @param angle Angle of the path with the x axis, see {@link Angle#angle(Coordinate, Coordinate)}
+     * @return rose index
+     */
+    public static int getRoseIndex(double angle) {
         // Angle from cos -1 sin 0
-        double angleRad = -(Angle.angle(receiver, source) - Math.PI);
+        double angleRad = -(angle - Math.PI);
         // Offset angle by PI / 2 (North),
         // the north slice ranges is [PI / 2 + angle_section / 2; PI / 2 - angle_section / 2]
         angleRad -= (Math.PI / 2 - angle_section / 2);
@@ -145,73 +154,99 @@ public class ComputeRaysOut implements IComputeRaysOut {
         if(pathData != null) {
             // Compute receiver/source attenuation
             EvaluateAttenuationCnossos evaluateAttenuationCnossos = new EvaluateAttenuationCnossos();
+            // Wave lengths only depends on pathData
+            evaluateAttenuationCnossos.initEvaluateAttenutation(pathData);
+            return computeAttenuation(evaluateAttenuationCnossos, pathData, sourceId, sourceLi, receiverId, null,
+                    propagationPath);
+        } else {
+            return new double[0];
+        }
+    }
+
+    /**
+     * Compute the attenuation of a free field direct path given as a primitive descriptor and of the other paths.
+     * Override this method and {@link #computeAttenuation(PropagationProcessPathData, long, double, long, List)}
+     * to post process the attenuation of all the paths.
+     * @param evaluateAttenuationCnossos Evaluator initialised with pathData, reused by the calls of a thread
+     * @param pathData Propagation data
+     * @param sourceId Source identifier
+     * @param sourceLi Source power per meter coefficient
+     * @param receiverId Receiver identifier
+     * @param directPath Free field direct path, null if the direct path is in propagationPath
+     * @param propagationPath Propagation paths
+     * @return Attenuation by frequency band, empty if there is no path
+     */
+    public double[] computeAttenuation(EvaluateAttenuationCnossos evaluateAttenuationCnossos,
+                                       PropagationProcessPathData pathData, long sourceId, double sourceLi,
+                                       long receiverId, PathDescriptor directPath,
+                                       List<PropagationPath> propagationPath) {
+        double[] aGlobalMeteo = null;
+        if (directPath != null) {
+            int roseindex = getRoseIndex(Math.atan2(directPath.receiverY - directPath.sourceY,
+                    directPath.receiverX - directPath.sourceX));
+            aGlobalMeteo = new double[pathData.freq_lvl.size()];
+            EvaluateAttenuationCnossos.evaluate(directPath, pathData, pathData.getWindRose()[roseindex],
+                    aGlobalMeteo);
+        }
+        for (PropagationPath propath : propagationPath) {
+            List<PointPath> ptList = propath.getPointList();
 
+            // Initialise the path once, changing the condition only updates the values depending on it
+            propath.initPropagationPath();
 
-            double[] aGlobalMeteo = null;
-            for (PropagationPath propath : propagationPath) {
-                List<PointPath> ptList = propath.getPointList();
+            double[] Adiv = evaluateAttenuationCnossos.evaluateAdiv(propath, pathData);
 
-                propath.initPropagationPath();
-                evaluateAttenuationCnossos.initEvaluateAttenutation(pathData);
+            double[] Aatm;
+            // In addition, Aatm and Aground shall be calculated from the total length of the propagation path.
+            if (propath.difVPoints.size() > 0) {
+                Aatm = evaluateAttenuationCnossos.evaluateAatm(pathData, propath.getSRList().get(0).dPath);
+            }else{
+                Aatm = evaluateAttenuationCnossos.evaluateAatm(pathData, propath.getSRList().get(0).d);
+            }
 
-                double[] Adiv = evaluateAttenuationCnossos.evaluateAdiv(propath, pathData);
+            double[] Aref = evaluateAttenuationCnossos.evaluateAref(propath, pathData);
 
-                double[] Aatm;
-                // In addition, Aatm and Aground shall be calculated from the total length of the propagation path.
-                if (propath.difVPoints.size() > 0) {
-                    Aatm = evaluateAttenuationCnossos.evaluateAatm(pathData, propath.getSRList().get(0).dPath);
-                }else{
-                    Aatm = evaluateAttenuationCnossos.evaluateAatm(pathData, propath.getSRList().get(0).d);
-                }
+            //
+            int roseindex = getRoseIndex(ptList.get(0).coordinate, ptList.get(ptList.size() - 1).coordinate);
+            double[] aGlobalMeteoHom = new double[pathData.freq_lvl.size()];
+            double[] aGlobalMeteoFav = new double[pathData.freq_lvl.size()];
+            double[] Aboundary;
 
-                double[] Aref = evaluateAttenuationCnossos.evaluateAref(propath, pathData);
-
-                //
-                int roseindex = getRoseIndex(ptList.get(0).coordinate, ptList.get(ptList.size() - 1).coordinate);
-                double[] aGlobalMeteoHom = new double[pathData.freq_lvl.size()];
-                double[] aGlobalMeteoFav = new double[pathData.freq_lvl.size()];
-                double[] Aboundary;
-
-                if (pathData.getWindRose()[roseindex]!=1) {
-                    // Compute homogeneous conditions attenuation
-                    propath.setFavorable(false);
-                    propath.initPropagationPath();
-                    Aboundary = evaluateAttenuationCnossos.evaluateAboundary(propath, pathData, false);
-                    for (int idfreq = 0; idfreq < pathData.freq_lvl.size(); idfreq++) {
-                        aGlobalMeteoHom[idfreq] = -(Adiv[idfreq] + Aatm[idfreq] + Aboundary[idfreq] + Aref[idfreq]); // Eq. 2.5.6
-                    }
+            if (pathData.getWindRose()[roseindex]!=1) {
+                // Compute homogeneous conditions attenuation
+                propath.setFavorable(false);
+                Aboundary = evaluateAttenuationCnossos.evaluateAboundary(propath, pathData, false);
+                for (int idfreq = 0; idfreq < pathData.freq_lvl.size(); idfreq++) {
+                    aGlobalMeteoHom[idfreq] = -(Adiv[idfreq] + Aatm[idfreq] + Aboundary[idfreq] + Aref[idfreq]); // Eq. 2.5.6
                 }
+            }
 
-                // Compute favorable conditions attenuation
-                if (pathData.getWindRose()[roseindex]!=0) {
-                    propath.setFavorable(true);
-                    propath.initPropagationPath();
-                    Aboundary = evaluateAttenuationCnossos.evaluateAboundary(propath, pathData, true);
-                    for (int idfreq = 0; idfreq < pathData.freq_lvl.size(); idfreq++) {
-                        aGlobalMeteoFav[idfreq] = -(Adiv[idfreq] + Aatm[idfreq] + Aboundary[idfreq]+ Aref[idfreq]); // Eq. 2.5.8
-                    }
+            // Compute favorable conditions attenuation
+            if (pathData.getWindRose()[roseindex]!=0) {
+                propath.setFavorable(true);
+                Aboundary = evaluateAttenuationCnossos.evaluateAboundary(propath, pathData, true);
+                for (int idfreq = 0; idfreq < pathData.freq_lvl.size(); idfreq++) {
+                    aGlobalMeteoFav[idfreq] = -(Adiv[idfreq] + Aatm[idfreq] + Aboundary[idfreq]+ Aref[idfreq]); // Eq. 2.5.8
                 }
+            }
 
-                // Compute attenuation under the wind conditions using the ray direction
-                double[] aGlobalMeteoRay = ComputeRays.sumArrayWithPonderation(aGlobalMeteoFav, aGlobalMeteoHom, pathData.getWindRose()[roseindex]);
+            // Compute attenuation under the wind conditions using the ray direction
+            double[] aGlobalMeteoRay = ComputeRays.sumArrayWithPonderation(aGlobalMeteoFav, aGlobalMeteoHom, pathData.getWindRose()[roseindex]);
 
-                if (aGlobalMeteo != null) {
-                    aGlobalMeteo = ComputeRays.sumDbArray(aGlobalMeteoRay, aGlobalMeteo);
-                } else {
-                    aGlobalMeteo = aGlobalMeteoRay;
-                }
-            }
             if (aGlobalMeteo != null) {
-                // For line source, take account of li coefficient
-                if(sourceLi > 1.0) {
-                    for (int i = 0; i < aGlobalMeteo.length; i++) {
-                        aGlobalMeteo[i] = ComputeRays.wToDba(ComputeRays.dbaToW(aGlobalMeteo[i]) * sourceLi);
-                    }
-                }
-                return aGlobalMeteo;
+                aGlobalMeteo = ComputeRays.sumDbArray(aGlobalMeteoRay, aGlobalMeteo);
             } else {
-                return new double[0];
+                aGlobalMeteo = aGlobalMeteoRay;
+            }
+        }
+        if (aGlobalMeteo != null) {
+            // For line source, take account of li coefficient
+            if(sourceLi > 1.0) {
+                for (int i = 0; i < aGlobalMeteo.length; i++) {
+                    aGlobalMeteo[i] = ComputeRays.wToDba(ComputeRays.dbaToW(aGlobalMeteo[i]) * sourceLi);
+                }
             }
+            return aGlobalMeteo;
         } else {
             return new double[0];
         }
@@ -252,6 +287,16 @@ public class ComputeRaysOut implements IComputeRaysOut {
         nb_obstr_test.addAndGet(freeFieldTestCount);
     }
 
+    @Override
+    public void cellStatistics(int cellId, PathFinderStatistics statistics) {
+        appendSourceCount(statistics.getCounter(PathFinderStatistics.Counter.SOURCE_RECEIVER_PAIRS));
+        appendFreeFieldTestCount(statistics.getCounter(PathFinderStatistics.Counter.OBSTRUCTION_TESTS));
+        appendImageReceiver(statistics.getCounter(PathFinderStatistics.Counter.IMAGE_RECEIVERS));
+        appendReflexionPath(statistics.getCounter(PathFinderStatistics.Counter.REFLECTION_PATHS));
+        appendDiffractionPath(statistics.getCounter(PathFinderStatistics.Counter.HORIZONTAL_DIFFRACTION_PATHS) +
+                statistics.getCounter(PathFinderStatistics.Counter.VERTICAL_DIFFRACTION_PATHS));
+    }
+
     public synchronized void log(String str) {
 
     }
@@ -292,11 +337,42 @@ public class ComputeRaysOut implements IComputeRaysOut {
         protected ComputeRaysOut multiThreadParent;
         protected List<VerticeSL> receiverAttenuationLevels = new ArrayList<>();
         public List<PropagationPath> propagationPaths = new ArrayList<PropagationPath>();
+        private EvaluateAttenuationCnossos evaluateAttenuationCnossos;
 
         public ThreadRaysOut(ComputeRaysOut multiThreadParent) {
             this.multiThreadParent = multiThreadParent;
         }
 
+
+        /**
+         * @return True if the rays are not kept, the free field direct paths are then evaluated without building the
+         * propagation path objects
+         */
+        @Override
+        public boolean isPathDescriptorSupported() {
+            return !multiThreadParent.keepRays && multiThreadParent.genericMeteoData != null;
+        }
+
+        @Override
+        public double[] addPropagationPaths(long sourceId, double sourceLi, long receiverId, PathDescriptor directPath,
+                                            List<PropagationPath> propagationPath) {
+            if (multiThreadParent.keepRays) {
+                return IComputeRaysOut.super.addPropagationPaths(sourceId, sourceLi, receiverId, directPath,
+                        propagationPath);
+            }
+            PropagationProcessPathData pathData = multiThreadParent.genericMeteoData;
+            if (evaluateAttenuationCnossos == null) {
+                // The evaluator is reused by all the paths of this thread
+                evaluateAttenuationCnossos = new EvaluateAttenuationCnossos();
+                evaluateAttenuationCnossos.initEvaluateAttenutation(pathData);
+            }
+            double[] aGlobalMeteo = multiThreadParent.computeAttenuation(evaluateAttenuationCnossos, pathData,
+                    sourceId, sourceLi, receiverId, directPath, propagationPath);
+            multiThreadParent.rayCount.addAndGet(propagationPath.size() + 1);
+            receiverAttenuationLevels.add(new VerticeSL(receiverId, sourceId, aGlobalMeteo));
+            return aGlobalMeteo;
+        }
+
         @Override
         public double[] addPropagationPaths(long sourceId, double sourceLi, long receiverId, List<PropagationPath> propagationPath) {
             double[] aGlobalMeteo = multiThreadParent.computeAttenuation(multiThreadParent.genericMeteoData, sourceId, sourceLi, receiverId, propagationPath);
@@ -33,6 +33,8 @@
  */
 package org.noise_planet.noisemodelling.propagation;
 
+import org.noise_planet.noisemodelling.pathfinder.ComputeRays;
+import org.noise_planet.noisemodelling.pathfinder.PathDescriptor;
 import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
 import org.noise_planet.noisemodelling.pathfinder.SegmentPath;
 
@@ -145,49 +147,70 @@ public class EvaluateAttenuationCnossos {
     public static double[] getAGroundCore(PropagationPath path, SegmentPath segmentPath, PropagationProcessPathData data) {
 
         double[] aGround = new double[data.freq_lvl.size()];
-        double aGroundmin;
-        double AGround;
 
         for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
-            //NF S 31-133 page 41 c
-            double k = 2 * Math.PI * data.freq_lvl.get(idfreq) / data.getCelerity();
-            //NF S 31-113 page 41 w
-            double w = 0.0185 * Math.pow(data.freq_lvl.get(idfreq), 2.5) * Math.pow(segmentPath.gw, 2.6) /
-                    (Math.pow(data.freq_lvl.get(idfreq), 1.5) * Math.pow(segmentPath.gw, 2.6) + 1.3 * Math.pow(10, 3) * Math.pow(data.freq_lvl.get(idfreq), 0.75) * Math.pow(segmentPath.gw, 1.3) + 1.16 * Math.pow(10, 6));
-            //NF S 31-113 page 41 Cf
-            double cf = segmentPath.dp * (1 + 3 * w * segmentPath.dp * Math.pow(Math.E, -Math.sqrt(w * segmentPath.dp))) / (1 + w * segmentPath.dp);
-            //NF S 31-113 page 41 A sol
+            aGround[idfreq] = getAGroundCore(data.freq_lvl.get(idfreq), data, path.isFavorable(), segmentPath.gw,
+                    segmentPath.gm, segmentPath.dp, segmentPath.zs, segmentPath.zr, segmentPath.zsPrime,
+                    segmentPath.zrPrime, segmentPath.testForm, segmentPath.testFormPrime);
+        }
+        return aGround;
+    }
 
-            if (path.isFavorable()) {
-                if (data.isPrime2520()) {
-                    if (segmentPath.testFormPrime <= 1) {
-                        aGroundmin = -3 * (1 - segmentPath.gm);
-                    } else {
-                        aGroundmin = -3 * (1 - segmentPath.gm) * (1 + 2 * (1 - (1 / segmentPath.testFormPrime)));
-                    }
+    /**
+     * Eq. 2.5.15 and Eq. 2.5.20 for one frequency band
+     * @param frequency Frequency band (Hz)
+     * @param favorable True for favorable conditions
+     * @return Aground
+     */
+    private static double getAGroundCore(double frequency, PropagationProcessPathData data, boolean favorable,
+                                         double gw, double gm, double dp, double zs, double zr, double zsPrime,
+                                         double zrPrime, double testForm, double testFormPrime) {
+        double aGroundmin;
+        double AGround;
+        //NF S 31-133 page 41 c
+        double k = 2 * Math.PI * frequency / data.getCelerity();
+        //NF S 31-113 page 41 w
+        double w = 0.0185 * Math.pow(frequency, 2.5) * Math.pow(gw, 2.6) /
+                (Math.pow(frequency, 1.5) * Math.pow(gw, 2.6) + 1.3 * Math.pow(10, 3) * Math.pow(frequency, 0.75) * Math.pow(gw, 1.3) + 1.16 * Math.pow(10, 6));
+        //NF S 31-113 page 41 Cf
+        double cf = dp * (1 + 3 * w * dp * Math.pow(Math.E, -Math.sqrt(w * dp))) / (1 + w * dp);
+        //NF S 31-113 page 41 A sol
+
+        if (favorable) {
+            if (data.isPrime2520()) {
+                if (testFormPrime <= 1) {
+                    aGroundmin = -3 * (1 - gm);
                 } else {
-                    if (segmentPath.testForm <= 1) {
-                        aGroundmin = -3 * (1 - segmentPath.gm);
-                    } else {
-                        aGroundmin = -3 * (1 - segmentPath.gm) * (1 + 2 * (1 - (1 / segmentPath.testForm)));
-                    }
+                    aGroundmin = -3 * (1 - gm) * (1 + 2 * (1 - (1 / testFormPrime)));
                 }
-                /** eq. 2.5.20**/
-                AGround = -10 * Math.log10(4 * Math.pow(k, 2) / Math.pow(segmentPath.dp, 2) *
-                        (Math.pow(segmentPath.zsPrime, 2) - Math.sqrt(2 * cf / k) * segmentPath.zsPrime + cf / k) *
-                        (Math.pow(segmentPath.zrPrime, 2) - Math.sqrt(2 * cf / k) * segmentPath.zrPrime + cf / k));
             } else {
-                /** eq. 2.5.15**/
-                AGround = -10 * Math.log10(4 * Math.pow(k, 2) / Math.pow(segmentPath.dp, 2) *
-                        (Math.pow(segmentPath.zs, 2) - Math.sqrt(2 * cf / k) * segmentPath.zs + cf / k) *
-                        (Math.pow(segmentPath.zr, 2) - Math.sqrt(2 * cf / k) * segmentPath.zr + cf / k));
-                /** eq. 2.5.18**/
-                aGroundmin = -3 * (1 - segmentPath.gm);
+                aGroundmin = getAGroundFavorableMin(gm, testForm);
             }
-            aGround[idfreq] = Math.max(AGround, aGroundmin);
+            /** eq. 2.5.20**/
+            AGround = -10 * Math.log10(4 * Math.pow(k, 2) / Math.pow(dp, 2) *
+                    (Math.pow(zsPrime, 2) - Math.sqrt(2 * cf / k) * zsPrime + cf / k) *
+                    (Math.pow(zrPrime, 2) - Math.sqrt(2 * cf / k) * zrPrime + cf / k));
+        } else {
+            /** eq. 2.5.15**/
+            AGround = -10 * Math.log10(4 * Math.pow(k, 2) / Math.pow(dp, 2) *
+                    (Math.pow(zs, 2) - Math.sqrt(2 * cf / k) * zs + cf / k) *
+                    (Math.pow(zr, 2) - Math.sqrt(2 * cf / k) * zr + cf / k));
+            /** eq. 2.5.18**/
+            aGroundmin = -3 * (1 - gm);
+        }
+        return Math.max(AGround, aGroundmin);
+    }
 
+    /**
+     * The lower bound of Aground,F (calculated with unmodified heights) depends on the geometry of the path
+     * @return Minimal Aground in favorable conditions
+     */
+    private static double getAGroundFavorableMin(double gm, double testForm) {
+        if (testForm <= 1) {
+            return -3 * (1 - gm);
+        } else {
+            return -3 * (1 - gm) * (1 + 2 * (1 - (1 / testForm)));
         }
-        return aGround;
     }
 
     /**
@@ -241,12 +264,7 @@ public class EvaluateAttenuationCnossos {
         // In Directive 2015-2019, isgDisc == true because the term – 3(1 – Gm) takes into account the fact that when the source and the receiver are far apart, the first reflection source side is no longer on the platform but on natural land.
         if (segmentPath.gPath == 0 && data.isgDisc()) {
             if (path.isFavorable()) {
-                // The lower bound of Aground,F (calculated with unmodified heights) depends on the geometry of the path
-                if (segmentPath.testForm <= 1) {
-                    aGroundmin = -3 * (1 - segmentPath.gm);
-                } else {
-                    aGroundmin = -3 * (1 - segmentPath.gm) * (1 + 2 * (1 - (1 / segmentPath.testForm)));
-                }
+                aGroundmin = getAGroundFavorableMin(segmentPath.gm, segmentPath.testForm);
             } else {
                 aGroundmin = -3;
             }
@@ -431,6 +449,51 @@ public class EvaluateAttenuationCnossos {
 
 
 
+    /**
+     * Attenuation of a free field path given as a descriptor, the homogeneous (Eq. 2.5.6) and favorable (Eq. 2.5.8)
+     * attenuations are weighted by the occurrence of favorable conditions in the direction of the path.
+     * Same result than {@link ComputeRaysOut#computeAttenuation} with the equivalent propagation path.
+     * @param path         Free field path, initialised
+     * @param data         Propagation data
+     * @param p            Occurrence of favorable conditions in the direction of the path
+     * @param aGlobalMeteo [out] Attenuation by frequency band
+     */
+    public static void evaluate(PathDescriptor path, PropagationProcessPathData data, double p,
+                                double[] aGlobalMeteo) {
+        double aDiv = getADiv(path.d);
+        double[] alpha_atmo = data.getAlpha_atmo();
+        for (int idfreq = 0; idfreq < aGlobalMeteo.length; idfreq++) {
+            double frequency = data.freq_lvl.get(idfreq);
+            double aAtm = getAAtm(path.d, alpha_atmo[idfreq]);
+            double aGlobalMeteoHom = 0;
+            double aGlobalMeteoFav = 0;
+            if (p != 1) {
+                // Gw = Gm = G'path - Table 2.5.b
+                double aGround;
+                if (path.gPath == 0 && data.isgDisc()) {
+                    aGround = -3;
+                } else {
+                    aGround = getAGroundCore(frequency, data, false, path.gPathPrime, path.gPathPrime, path.dp,
+                            path.zs, path.zr, path.zsPrime, path.zrPrime, path.testForm, path.testFormPrime);
+                }
+                aGlobalMeteoHom = -(aDiv + aAtm + aGround);
+            }
+            if (p != 0) {
+                // Gw = Gpath, Gm = G'path - Table 2.5.b
+                double aGround;
+                if (path.gPath == 0 && data.isgDisc()) {
+                    aGround = getAGroundFavorableMin(path.gPathPrime, path.testForm);
+                } else {
+                    aGround = getAGroundCore(frequency, data, true, path.gPath, path.gPathPrime, path.dp,
+                            path.zs, path.zr, path.zsPrime, path.zrPrime, path.testForm, path.testFormPrime);
+                }
+                aGlobalMeteoFav = -(aDiv + aAtm + aGround);
+            }
+            aGlobalMeteo[idfreq] = ComputeRays.wToDba(p * ComputeRays.dbaToW(aGlobalMeteoFav) +
+                    (1 - p) * ComputeRays.dbaToW(aGlobalMeteoHom));
+        }
+    }
+
     /**
      * Only for propagation Path Cnossos
      * // todo erase evaluate
@@ -34,11 +34,20 @@
 package org.noise_planet.noisemodelling.propagation;
 
 import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.noise_planet.noisemodelling.pathfinder.ComputeRays;
+import org.noise_planet.noisemodelling.pathfinder.FastObstructionTest;
+import org.noise_planet.noisemodelling.pathfinder.LayerDelaunayError;
+import org.noise_planet.noisemodelling.pathfinder.MeshBuilder;
+import org.noise_planet.noisemodelling.pathfinder.PowerBoundEstimator;
 
 import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 
 /**
@@ -113,4 +122,40 @@ public class AtmosphericAttenuationTest {
             assertEquals(expected[idfreq], coefAttAtmos, EPSILON);
         }
     }
+
+    @Test
+    public void testAtmosphericPowerBound() throws LayerDelaunayError {
+        GeometryFactory factory = new GeometryFactory();
+        MeshBuilder mesh = new MeshBuilder();
+        mesh.addGeometry(factory.toGeometry(new Envelope(90, 110, -10, 10)), 20);
+        mesh.finishPolygonFeeding(new Envelope(-500, 500, -500, 500));
+        FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+                mesh.getTriNeighbors(), mesh.getVertices());
+        PropagationProcessPathData pathData = new PropagationProcessPathData();
+        double[] wj = new double[pathData.freq_lvl.size()];
+        Arrays.fill(wj, 1e6);
+        Coordinate receiver = new Coordinate(0, 0, 4);
+        Coordinate freeSource = new Coordinate(0, 300, 0.05);
+        Coordinate hiddenSource = new Coordinate(300, 0, 0.05);
+        PowerBoundEstimator defaultEstimator = new PowerBoundEstimator();
+        AtmosphericPowerBoundEstimator estimator = new AtmosphericPowerBoundEstimator(pathData);
+        double[] expected = defaultEstimator.getPowerBound(manager, receiver, freeSource, wj, 1);
+        double[] bound = estimator.getPowerBound(manager, receiver, freeSource, wj, 1);
+        double distance = receiver.distance3D(freeSource);
+        for(int idfreq = 0; idfreq < wj.length; idfreq++) {
+            assertEquals(ComputeRays.wToDba(expected[idfreq]) - EvaluateAttenuationCnossos.getAAtm(distance,
+                    pathData.getAlpha_atmo()[idfreq]), ComputeRays.wToDba(bound[idfreq]), 1e-6);
+            assertTrue(bound[idfreq] <= expected[idfreq]);
+        }
+        // The minimum diffraction loss is only applied when the source is hidden
+        estimator.setMinimumDiffractionLoss(5);
+        double[] freeBound = estimator.getPowerBound(manager, receiver, freeSource, wj, 1);
+        double[] hiddenBound = estimator.getPowerBound(manager, receiver, hiddenSource, wj, 1);
+        double[] hiddenExpected = defaultEstimator.getPowerBound(manager, receiver, hiddenSource, wj, 1);
+        for(int idfreq = 0; idfreq < wj.length; idfreq++) {
+            assertEquals(bound[idfreq], freeBound[idfreq], 1e-12 * bound[idfreq]);
+            assertEquals(ComputeRays.wToDba(hiddenExpected[idfreq]) - 5 - EvaluateAttenuationCnossos.getAAtm(distance,
+                    pathData.getAlpha_atmo()[idfreq]), ComputeRays.wToDba(hiddenBound[idfreq]), 1e-6);
+        }
+    }
 }
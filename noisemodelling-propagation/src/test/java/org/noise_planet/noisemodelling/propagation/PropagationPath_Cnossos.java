@@ -14,6 +14,8 @@ import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class PropagationPath_Cnossos {
 
@@ -71,6 +73,59 @@ public class PropagationPath_Cnossos {
         evaluateAttenuationCnossos.evaluate(propagationPath, propData);
     }
 
+    /**
+     * Diffraction path on horizontal edges used by TestPropagationPathFavorable
+     */
+    private static PropagationPath makeDiffractionPath(boolean favorable) {
+        List<PointPath> points = new ArrayList<PointPath>();
+        List<SegmentPath>  segments = new ArrayList<SegmentPath>();
+        List<SegmentPath> srPath = new ArrayList<SegmentPath>();
+        Vector3D flatTopography = new Vector3D(new Coordinate(0,0,0),new Coordinate(0,0,0));
+
+        points.add(new PointPath(new Coordinate(0,0,0),1,0,new double[0], -1, PointPath.POINT_TYPE.SRCE));
+        points.add(new PointPath(new Coordinate(10,0,0),1,Double.NaN,Collections.nCopies(8, 0.5), -1, PointPath.POINT_TYPE.DIFH));
+        points.add(new PointPath(new Coordinate(20,0,0),1,Double.NaN,Collections.nCopies(8, 0.5), -1, PointPath.POINT_TYPE.DIFH));
+        points.add(new PointPath(new Coordinate(30,30,0),1,0,new double[0], -1, PointPath.POINT_TYPE.RECV));
+        segments.add(new SegmentPath(1, flatTopography,new Coordinate(0,0,0)));
+        segments.add(new SegmentPath(1, flatTopography,new Coordinate(0,0,0)));
+        srPath.add(new SegmentPath(1,flatTopography,new Coordinate(0,0,0)));
+
+        return new PropagationPath(favorable,points,segments,srPath);
+    }
+
+    /**
+     * Changing the meteorological condition must not initialise the path again, only the values depending on the
+     * condition are updated
+     */
+    @Test
+    public void TestPropagationPathFavorable(){
+        PropagationPath propagationPath = makeDiffractionPath(false);
+        propagationPath.initPropagationPath();
+        int srCount = propagationPath.getSRList().size();
+        propagationPath.setFavorable(false);
+        assertTrue(propagationPath.isInitialized());
+        propagationPath.initPropagationPath();
+        assertEquals(srCount, propagationPath.getSRList().size());
+        propagationPath.setFavorable(true);
+        assertTrue(propagationPath.isInitialized());
+        assertEquals(srCount, propagationPath.getSRList().size());
+        // Same values than a path initialised in favorable conditions
+        PropagationPath favorablePath = makeDiffractionPath(true);
+        favorablePath.initPropagationPath();
+        assertEquals(favorablePath.getSRList().size(), propagationPath.getSRList().size());
+        for (int i = 0; i < srCount; i++) {
+            SegmentPath expected = favorablePath.getSRList().get(i);
+            SegmentPath sr = propagationPath.getSRList().get(i);
+            assertEquals(expected.dPath, sr.dPath, 1e-12);
+            assertEquals(expected.dc, sr.dc, 1e-12);
+            assertEquals(expected.delta, sr.delta, 1e-12);
+            assertEquals(expected.eLength, sr.eLength, 1e-12);
+        }
+        for (int i = 0; i < favorablePath.getSegmentList().size(); i++) {
+            assertEquals(favorablePath.getSegmentList().get(i).dc, propagationPath.getSegmentList().get(i).dc, 1e-12);
+        }
+    }
+
     /**
      * Sound propagation
      * T01